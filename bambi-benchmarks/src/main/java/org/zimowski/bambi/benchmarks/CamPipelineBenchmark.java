@@ -0,0 +1,77 @@
+package org.zimowski.bambi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openimaj.image.MBFImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zimowski.bambi.editor.studio.cam.CamFilterOps;
+import org.zimowski.bambi.editor.studio.cam.FramePipeline;
+import org.zimowski.bambi.editor.studio.cam.SyntheticFrameSource;
+import org.zimowski.bambi.editor.studio.cam.VideoFrameComponent;
+import org.zimowski.bambi.editor.studio.eventbus.events.CamFilterEvent;
+
+/**
+ * Measures web cam frames delivered to the display per second by
+ * {@link FramePipeline} running a web cam filter, fed by an unpaced
+ * {@link SyntheticFrameSource} so that no camera is needed. Compare
+ * <code>workers=1</code> with more workers to see how filtering scales
+ * across cores.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CamPipelineBenchmark {
+
+	/**
+	 * Frame dimensions as WIDTHxHEIGHT, as captured by the web cam panel.
+	 */
+	@Param({ "320x240", "1024x768" })
+	public String size;
+
+	@Param({ "None", "Solarize", "Grayscale", "Denoise", "Canny" })
+	public String filter;
+
+	@Param({ "1", "2", "4" })
+	public int workers;
+
+	private FramePipeline pipeline;
+
+
+	@Setup
+	public void setup() {
+		String[] dimensions = size.split("x");
+		int width = Integer.parseInt(dimensions[0]);
+		int height = Integer.parseInt(dimensions[1]);
+		VideoFrameComponent processor = new VideoFrameComponent();
+		processor.onFilter(new CamFilterEvent(CamFilterOps.valueOf(filter)));
+		pipeline = new FramePipeline(
+				new SyntheticFrameSource(width, height, 0), processor, workers);
+		pipeline.start();
+	}
+
+	@TearDown
+	public void tearDown() {
+		pipeline.close();
+	}
+
+	@Benchmark
+	public MBFImage frame() {
+		return pipeline.getNextFrame();
+	}
+}
@@ -0,0 +1,70 @@
+package org.zimowski.bambi.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zimowski.bambi.editor.filters.ColorAdjustFilter;
+
+/**
+ * Measures composite color adjustment the way editor applies it, with RGB, 
+ * brightness and contrast active, which go through per channel tables, and 
+ * with hue and saturation on top, which are computed per pixel. Also 
+ * measures what it costs to rebuild the tables, which editor pays on every 
+ * slider move.
+ * 
+ * @author Adam Zimowski (mrazjava)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColorAdjustBenchmark extends ImageState {
+
+	@Param({ "false", "true" })
+	public boolean hsb;
+
+	private ColorAdjustFilter colorFilter;
+
+	private float red = 0.1f;
+
+
+	@Setup
+	public void setupFilter() {
+		colorFilter = new ColorAdjustFilter();
+		colorFilter.setRed(red);
+		colorFilter.setGreen(-0.1f);
+		colorFilter.setBlue(0.05f);
+		if(hsb) {
+			colorFilter.setHue(0.2f);
+			colorFilter.setSaturation(-0.3f);
+		}
+		colorFilter.setBrightness(1.1f);
+		colorFilter.setContrast(1.2f);
+	}
+
+	@Benchmark
+	public BufferedImage filter() {
+		return colorFilter.filter(image, null);
+	}
+
+	/**
+	 * Changes a parameter before each pass, forcing lookup tables to be 
+	 * rebuilt as when a slider is dragged.
+	 */
+	@Benchmark
+	public BufferedImage adjustAndFilter() {
+		red = -red;
+		colorFilter.setRed(red);
+		return colorFilter.filter(image, null);
+	}
+}
@@ -0,0 +1,39 @@
+package org.zimowski.bambi.benchmarks;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zimowski.bambi.editor.studio.image.EditorImageUtil;
+
+/**
+ * Measures rotation as performed by the editor on rotate and zoom.
+ * 
+ * @author Adam Zimowski (mrazjava)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EditorImageUtilBenchmark extends ImageState {
+
+	@Param({ "90", "45" })
+	public int angle;
+
+	@Param({ "1.0", "0.5" })
+	public double scale;
+
+	@Benchmark
+	public BufferedImage rotate() {
+		return EditorImageUtil.rotate(image, angle, Color.WHITE, scale, scale);
+	}
+}
@@ -0,0 +1,75 @@
+package org.zimowski.bambi.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures filters from both jhlabs packages with their default settings. 
+ * Filters are named by simple class name and looked up in 
+ * <code>com.jhlabs.image</code> first, then in 
+ * <code>org.zimowski.bambi.jhlabs.image</code>, so any filter with a no 
+ * argument constructor can be measured with <code>-p filter=...</code> 
+ * without changing this class.
+ * 
+ * @author Adam Zimowski (mrazjava)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark extends ImageState {
+
+	private static final String[] PACKAGES = { 
+		"com.jhlabs.image.", "org.zimowski.bambi.jhlabs.image." 
+	};
+
+	@Param({
+		// point filters
+		"GrayscaleFilter", "InvertFilter", "PosterizeFilter", "SolarizeFilter", 
+		"ContrastFilter", "HSBAdjustFilter", 
+		// neighbourhood filters
+		"GaussianFilter", "BoxBlurFilter", "ConvolveFilter", "SharpenFilter", 
+		"DespeckleFilter", "ReduceNoiseFilter", "MedianFilter", "OilFilter", 
+		"EmbossFilter", "EdgeFilter", "LensBlurFilter", 
+		// transform filters
+		"TwirlFilter", "RotateFilter"
+	})
+	public String filter;
+
+	private BufferedImageOp op;
+
+
+	@Setup
+	public void setupFilter() throws Exception {
+		op = (BufferedImageOp)findFilterClass(filter).getDeclaredConstructor().newInstance();
+	}
+
+	private static Class<?> findFilterClass(String name) throws ClassNotFoundException {
+		for(String pkg : PACKAGES) {
+			try {
+				return Class.forName(pkg + name);
+			}
+			catch(ClassNotFoundException e) {
+				// try next package
+			}
+		}
+		throw new ClassNotFoundException(name);
+	}
+
+	@Benchmark
+	public BufferedImage filter() {
+		return op.filter(image, null);
+	}
+}
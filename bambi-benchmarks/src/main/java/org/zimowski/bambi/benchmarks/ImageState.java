@@ -0,0 +1,73 @@
+package org.zimowski.bambi.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Base state of image benchmarks. Provides a source image parameterized over 
+ * size and {@link BufferedImage} type, so that every benchmark is measured 
+ * against the same matrix of inputs. Image content is a smooth gradient with 
+ * deterministic noise, which resembles a photo well enough for filters 
+ * whose cost depends on content (such as median or oil).
+ * 
+ * @author Adam Zimowski (mrazjava)
+ */
+@State(Scope.Benchmark)
+public abstract class ImageState {
+
+	/**
+	 * Image dimensions as WIDTHxHEIGHT: thumbnail, VGA webcam frame, full HD 
+	 * screen and a 12 megapixel photo.
+	 */
+	@Param({ "160x120", "640x480", "1920x1080", "4000x3000" })
+	public String size;
+
+	/**
+	 * Name of {@link BufferedImage} TYPE_ constant
+	 */
+	@Param({ "TYPE_INT_RGB", "TYPE_INT_ARGB", "TYPE_3BYTE_BGR" })
+	public String type;
+
+	protected BufferedImage image;
+
+
+	@Setup
+	public void setupImage() throws Exception {
+		String[] dimensions = size.split("x");
+		int width = Integer.parseInt(dimensions[0]);
+		int height = Integer.parseInt(dimensions[1]);
+		int imageType = BufferedImage.class.getField(type).getInt(null);
+		image = createImage(width, height, imageType);
+	}
+
+	/**
+	 * @param width image width
+	 * @param height image height
+	 * @param imageType {@link BufferedImage} type
+	 * @return image with repeatable, photo like content
+	 */
+	public static BufferedImage createImage(int width, int height, int imageType) {
+		Random random = new Random(width * 31 + height);
+		BufferedImage image = new BufferedImage(width, height, imageType);
+		int[] row = new int[width];
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				int r = clamp(x * 255 / width + random.nextInt(32) - 16);
+				int g = clamp(y * 255 / height + random.nextInt(32) - 16);
+				int b = clamp((x + y) * 255 / (width + height) + random.nextInt(32) - 16);
+				row[x] = 0xff000000 | (r << 16) | (g << 8) | b;
+			}
+			image.setRGB(0, y, width, 1, row, 0, width);
+		}
+		return image;
+	}
+
+	private static int clamp(int c) {
+		return c < 0 ? 0 : (c > 255 ? 255 : c);
+	}
+}
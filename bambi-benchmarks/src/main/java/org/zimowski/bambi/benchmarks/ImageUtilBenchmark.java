@@ -0,0 +1,52 @@
+package org.zimowski.bambi.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zimowski.bambi.commons.ImageUtil;
+
+/**
+ * Measures image copying and encoding used when saving, uploading and 
+ * taking webcam pictures.
+ * 
+ * @author Adam Zimowski (mrazjava)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageUtilBenchmark extends ImageState {
+
+	/**
+	 * Encoding parameters; kept separate so that copying is not repeated 
+	 * for every format.
+	 */
+	@State(Scope.Benchmark)
+	public static class Encoding {
+
+		@Param({ "jpg", "png" })
+		public String format;
+	}
+
+	@Benchmark
+	public BufferedImage deepCopy() {
+		return ImageUtil.deepCopy(image);
+	}
+
+	@Benchmark
+	public byte[] bufferedImageToByteArray(Encoding encoding) throws IOException {
+		return ImageUtil.bufferedImageToByteArray(image, encoding.format);
+	}
+}
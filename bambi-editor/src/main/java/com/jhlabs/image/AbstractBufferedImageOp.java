@@ -24,6 +24,7 @@ import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
 import java.awt.image.ColorModel;
 
+import org.zimowski.bambi.editor.filters.FilterCancelledException;
 import org.zimowski.bambi.editor.filters.FilterListener;
 import org.zimowski.bambi.editor.filters.ImageFilterOpSupport;
 import org.zimowski.bambi.editor.filters.ImageFilterOps;
@@ -43,7 +44,11 @@ public abstract class AbstractBufferedImageOp
 	public void setFilterListener(FilterListener listener) {
 		this.filterListener = listener;
 	}
-	
+
+	public FilterListener getFilterListener() {
+		return filterListener;
+	}
+
 	public BufferedImage createCompatibleDestImage(BufferedImage src, ColorModel dstCM) {
 		return createCompatibleDestImage(src, dstCM, null, null);
 	}
@@ -132,8 +137,16 @@ public abstract class AbstractBufferedImageOp
 		if(filterListener != null) filterListener.filterStart(totalPixels);
 	}
 
+	/**
+	 * Reports progress to the listener. This is also the cancellation hook 
+	 * for filter loops: if listener no longer needs the result, the filter 
+	 * is interrupted.
+	 * 
+	 * @throws FilterCancelledException if listener cancelled the filter run
+	 */
 	@Override
 	public void filterProgress(int percentComplete) {
+		if(isFilterCancelled()) throw new FilterCancelledException(toString());
 		if(filterListener != null) filterListener.filterProgress(percentComplete);
 	}
 
@@ -142,6 +155,11 @@ public abstract class AbstractBufferedImageOp
 		if(filterListener != null) filterListener.filterDone();
 	}
 
+	@Override
+	public boolean isFilterCancelled() {
+		return filterListener != null && filterListener.isFilterCancelled();
+	}
+
 	/**
 	 * Bambi filter metadata. This implementation always returns throws 
 	 * exception because this method can only be called if defined. This method 
@@ -30,6 +30,7 @@ public class GrayscaleFilter extends PointFilter {
 	
 	public GrayscaleFilter() {
 		canFilterIndexColorModel = true;
+		canFilterInParallel = true;
 	}
 
 	public int filterRGB(int x, int y, int rgb) {
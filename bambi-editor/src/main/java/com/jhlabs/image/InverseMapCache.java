@@ -0,0 +1,143 @@
+package com.jhlabs.image;
+
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps inverse coordinate maps computed by {@link TransformFilter}s which
+ * {@link TransformFilter#setCacheInverseMap cache} them, so that applying a
+ * distortion with the same settings to an image of the same size skips all
+ * the trigonometry of {@link TransformFilter#transformInverse}. Maps are
+ * shared by all filter instances; filters are usually created anew each
+ * time they are applied.
+ * <p>
+ * A map takes 8 bytes per output pixel. Total size of kept maps is capped
+ * (an eighth of maximum heap by default) and least recently used maps are
+ * dropped first. Maps are held softly, so that collector reclaims them
+ * before image buffers run out of heap; filters ask whether a map
+ * {@link #accepts fits} before allocating one. Maps are never modified once
+ * stored. All methods are thread safe.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class InverseMapCache {
+
+	private static final Map<Object, MapReference> maps =
+			new LinkedHashMap<Object, MapReference>(16, 0.75f, true);
+
+	private static long capacity = Runtime.getRuntime().maxMemory() / 8;
+
+	private static long retained;
+
+	private static long hits;
+
+	private static long misses;
+
+
+	/**
+	 * Soft reference which remembers size of the map after it is cleared.
+	 */
+	private static class MapReference extends SoftReference<float[]> {
+
+		final long bytes;
+
+		MapReference(float[] map) {
+			super(map);
+			bytes = map.length * 4L;
+		}
+	}
+
+
+	private InverseMapCache() {
+		// static utility
+	}
+
+	/**
+	 * @param key transform key and image size
+	 * @return map of interleaved x and y input positions per output pixel,
+	 * 	or null if not cached
+	 */
+	static synchronized float[] get(Object key) {
+		MapReference reference = maps.get(key);
+		float[] map = reference == null ? null : reference.get();
+		if(reference != null && map == null) {
+			// reclaimed by collector
+			maps.remove(key);
+			retained -= reference.bytes;
+		}
+		if(map == null) misses++;
+		else hits++;
+		return map;
+	}
+
+	/**
+	 * @param length number of floats in a map
+	 * @return true if a map of given length would be kept by
+	 * 	{@link #put}; false if it is not worth computing
+	 */
+	static synchronized boolean accepts(long length) {
+		return length * 4L <= capacity;
+	}
+
+	/**
+	 * @param key transform key and image size
+	 * @param map complete map of interleaved x and y input positions
+	 */
+	static synchronized void put(Object key, float[] map) {
+		MapReference reference = new MapReference(map);
+		if(reference.bytes > capacity) return;
+		MapReference previous = maps.put(key, reference);
+		if(previous != null) retained -= previous.bytes;
+		retained += reference.bytes;
+		trim();
+	}
+
+	private static void trim() {
+		Iterator<MapReference> eldest = maps.values().iterator();
+		while(retained > capacity && eldest.hasNext()) {
+			retained -= eldest.next().bytes;
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * @return maximum number of bytes kept in the cache
+	 */
+	public static synchronized long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @param bytes maximum number of bytes kept in the cache; 0 disables
+	 * 	caching
+	 */
+	public static synchronized void setCapacity(long bytes) {
+		capacity = Math.max(0, bytes);
+		trim();
+	}
+
+	/**
+	 * Drops all cached maps.
+	 */
+	public static synchronized void clear() {
+		maps.clear();
+		retained = 0;
+	}
+
+	/**
+	 * @return number of bytes currently cached
+	 */
+	public static synchronized long getRetainedBytes() {
+		return retained;
+	}
+
+	/**
+	 * @return fraction (0-1) of lookups served from the cache
+	 */
+	public static synchronized double getHitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double)hits / total;
+	}
+}
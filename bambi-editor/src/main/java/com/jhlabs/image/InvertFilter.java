@@ -29,6 +29,7 @@ public class InvertFilter extends PointFilter {
 	
 	public InvertFilter() {
 		canFilterIndexColorModel = true;
+		canFilterInParallel = true;
 	}
 
 	public int filterRGB(int x, int y, int rgb) {
@@ -19,6 +19,8 @@ package com.jhlabs.image;
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
 
+import org.zimowski.bambi.editor.filters.BandScheduler;
+
 /**
  * An abstract superclass for point filters. The interface is the same as the 
  * old RGBImageFilter.
@@ -30,22 +32,53 @@ public abstract class PointFilter extends AbstractBufferedImageOp {
 
 	protected boolean canFilterIndexColorModel = false;
 
-    public BufferedImage filter( BufferedImage src, BufferedImage dst ) {
+	/**
+	 * Set to true by filters whose {@link #filterRGB(int, int, int)} depends 
+	 * on nothing but its arguments and immutable settings. Such filters are 
+	 * split into row bands and processed on all cores by 
+	 * {@link BandScheduler}, producing the same result as the serial pass.
+	 */
+	protected boolean canFilterInParallel = false;
+
+    public BufferedImage filter( final BufferedImage src, BufferedImage dst ) {
 
         int width = src.getWidth();
         int height = src.getHeight();
-		int type = src.getType();
-		WritableRaster srcRaster = src.getRaster();
 
         if ( dst == null )
             dst = createCompatibleDestImage( src, null );
-		WritableRaster dstRaster = dst.getRaster();
+        final BufferedImage target = dst;
 
         setDimensions( width, height);
 
         filterStart(width*height);
+        BandScheduler.run(width, height, canFilterInParallel, new BandScheduler.BandTask() {
+			@Override
+			public void processBand(int startRow, int endRow) {
+				filterRows(src, target, startRow, endRow);
+			}
+		}, this);
+        filterDone();
+
+        return dst;
+    }
+
+	/**
+	 * Filters a horizontal band of rows from source into destination.
+	 * 
+	 * @param src source image
+	 * @param dst destination image
+	 * @param startRow first row to filter (inclusive)
+	 * @param endRow last row to filter (exclusive)
+	 */
+	protected void filterRows( BufferedImage src, BufferedImage dst, int startRow, int endRow ) {
+        int width = src.getWidth();
+		int type = src.getType();
+		WritableRaster srcRaster = src.getRaster();
+		WritableRaster dstRaster = dst.getRaster();
+
 		int[] inPixels = new int[width];
-        for ( int y = 0; y < height; y++ ) {
+        for ( int y = startRow; y < endRow; y++ ) {
 			// We try to avoid calling getRGB on images as it causes them to become unmanaged, causing horrible performance problems.
 			if ( type == BufferedImage.TYPE_INT_ARGB ) {
 				srcRaster.getDataElements( 0, y, width, 1, inPixels );
@@ -60,12 +93,8 @@ public abstract class PointFilter extends AbstractBufferedImageOp {
 				}
 				dst.setRGB( 0, y, width, 1, inPixels, 0, width );
 			}
-			if(y%100==0) filterProgress(Math.round(((float)y/height)*100));
         }
-        filterDone();
-
-        return dst;
-    }
+	}
 
 /*
 	public BufferedImage filter( BufferedImage src, BufferedImage dst ) {
@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import java.awt.image.BufferedImage;
+
 import org.zimowski.bambi.editor.filters.ImageFilterOps;
 
 
@@ -33,6 +35,7 @@ public class PosterizeFilter extends PointFilter {
 
 	public PosterizeFilter() {
 		setNumLevels(6);
+		canFilterInParallel = true;
 	}
 	
 	/**
@@ -64,6 +67,16 @@ public class PosterizeFilter extends PointFilter {
 				levels[i] = 255 * (numLevels*i / 256) / (numLevels-1);
 	}
 	
+	@Override
+	public BufferedImage filter(BufferedImage src, BufferedImage dst) {
+		// initialize up front; lazy init in filterRGB would race between bands
+		if (!initialized) {
+			initialized = true;
+			initialize();
+		}
+		return super.filter(src, dst);
+	}
+
 	public int filterRGB(int x, int y, int rgb) {
 		if (!initialized) {
 			initialized = true;
@@ -34,6 +34,7 @@ public class RGBAdjustFilter extends PointFilter {
 		gFactor = 1+g;
 		bFactor = 1+b;
 		canFilterIndexColorModel = true;
+		canFilterInParallel = true;
 	}
 
 	public void setRFactor( float rFactor ) {
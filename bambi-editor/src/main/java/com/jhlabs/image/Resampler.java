@@ -0,0 +1,296 @@
+package com.jhlabs.image;
+
+import java.awt.geom.AffineTransform;
+
+import org.zimowski.bambi.editor.filters.BandScheduler;
+import org.zimowski.bambi.editor.filters.BufferPool;
+import org.zimowski.bambi.editor.filters.FilterListener;
+
+/**
+ * Resamples ARGB pixels with an interpolation kernel wider than bilinear:
+ * {@link TransformFilter#BICUBIC} (Keys, a = -0.5) or
+ * {@link TransformFilter#LANCZOS3}. Kernel weights are tabulated at
+ * {@link #PHASES} subpixel positions when the resampler is created, so
+ * resampling a pixel is a table lookup and a weighted sum, never an
+ * evaluation of the kernel.
+ * <p>
+ * Arbitrary transforms sample a square neighbourhood around every input
+ * position with {@link #sample}. Affine transforms go through
+ * {@link #affine}, which splits the transform into a horizontal pass over
+ * input rows followed by a vertical pass over output columns, each a one
+ * dimensional resampling with its own weight table: <i>taps</i> rather than
+ * <i>taps</i><sup>2</sup> multiplications per pixel, and a kernel widened to
+ * the scale factor when an axis is scaled down, so that it doesn't alias.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class Resampler {
+
+	/**
+	 * Number of subpixel positions at which kernel weights are tabulated
+	 */
+	public static final int PHASES = 256;
+
+	/**
+	 * Number of input pixels weighted along each axis
+	 */
+	final int taps;
+
+	/**
+	 * Offset of the first tap from the input pixel under the sample
+	 * position
+	 */
+	final int first;
+
+	/**
+	 * Weights of all taps for every phase, normalized to sum to 1
+	 */
+	final float[] weights;
+
+	/**
+	 * @param interpolation BILINEAR, BICUBIC or LANCZOS3 of
+	 * 	{@link TransformFilter}
+	 * @param scale number of input pixels per output pixel; the kernel is
+	 * 	widened by it when greater than 1
+	 */
+	public Resampler(int interpolation, float scale) {
+		float radius = getRadius(interpolation);
+		float stretch = Math.max(1, scale);
+		int half = (int)Math.ceil(radius * stretch);
+		taps = 2 * half;
+		first = half - 1;
+		weights = new float[(PHASES + 1) * taps];
+		for(int p = 0; p <= PHASES; p++) {
+			float fraction = (float)p / PHASES;
+			float sum = 0;
+			for(int t = 0; t < taps; t++) {
+				float w = evaluate(interpolation, (t - first - fraction) / stretch);
+				weights[p * taps + t] = w;
+				sum += w;
+			}
+			for(int t = 0; t < taps; t++) weights[p * taps + t] /= sum;
+		}
+	}
+
+	private static float getRadius(int interpolation) {
+		switch(interpolation) {
+		case TransformFilter.BILINEAR: return 1;
+		case TransformFilter.BICUBIC: return 2;
+		case TransformFilter.LANCZOS3: return 3;
+		default: throw new IllegalArgumentException("no kernel for interpolation " + interpolation);
+		}
+	}
+
+	private static float evaluate(int interpolation, float x) {
+		x = Math.abs(x);
+		switch(interpolation) {
+		case TransformFilter.BILINEAR:
+			return x < 1 ? 1 - x : 0;
+		case TransformFilter.BICUBIC:
+			if(x < 1) return (1.5f * x - 2.5f) * x * x + 1;
+			if(x < 2) return ((-0.5f * x + 2.5f) * x - 4) * x + 2;
+			return 0;
+		default:
+			if(x == 0) return 1;
+			if(x >= 3) return 0;
+			double px = Math.PI * x;
+			return (float)(3 * Math.sin(px) * Math.sin(px / 3) / (px * px));
+		}
+	}
+
+	/**
+	 * @param fraction position within the pixel, 0-1
+	 * @return index of the weights for the position in {@link #weights}
+	 */
+	final int phase(float fraction) {
+		return (int)(fraction * PHASES + 0.5f) * taps;
+	}
+
+	/**
+	 * Samples ARGB pixels at a position. The neighbourhood of the position
+	 * is read from the pixels directly when it lies inside, and through
+	 * the edge action otherwise.
+	 * @param pixels input pixels
+	 * @param width input width
+	 * @param height input height
+	 * @param x sample x position
+	 * @param y sample y position
+	 * @param edgeAction edge action of {@link TransformFilter}
+	 * @param neighbourhood work array of taps<sup>2</sup> pixels, used near
+	 * 	edges
+	 * @return interpolated pixel
+	 */
+	final int sample(int[] pixels, int width, int height, float x, float y, int edgeAction, int[] neighbourhood) {
+		int srcX = (int)Math.floor(x);
+		int srcY = (int)Math.floor(y);
+		int wx = phase(x - srcX);
+		int wy = phase(y - srcY);
+		int x0 = srcX - first;
+		int y0 = srcY - first;
+		if(x0 >= 0 && x0 + taps <= width && y0 >= 0 && y0 + taps <= height)
+			return convolve(pixels, y0 * width + x0, width, wx, wy);
+
+		// some of the neighbourhood is off the image
+		for(int j = 0, i = 0; j < taps; j++)
+			for(int k = 0; k < taps; k++)
+				neighbourhood[i++] = TransformFilter.getPixel(pixels, x0 + k, y0 + j, width, height, edgeAction);
+		return convolve(neighbourhood, 0, taps, wx, wy);
+	}
+
+	private int convolve(int[] pixels, int index, int stride, int wx, int wy) {
+		float a = 0, r = 0, g = 0, b = 0;
+		for(int j = 0; j < taps; j++, index += stride) {
+			float ra = 0, rr = 0, rg = 0, rb = 0;
+			for(int k = 0; k < taps; k++) {
+				int rgb = pixels[index + k];
+				float w = weights[wx + k];
+				ra += w * (rgb >>> 24);
+				rr += w * ((rgb >> 16) & 0xff);
+				rg += w * ((rgb >> 8) & 0xff);
+				rb += w * (rgb & 0xff);
+			}
+			float w = weights[wy + j];
+			a += w * ra;
+			r += w * rr;
+			g += w * rg;
+			b += w * rb;
+		}
+		return pack(a, r, g, b);
+	}
+
+	private static int pack(float a, float r, float g, float b) {
+		return (clamp(a) << 24) | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+	}
+
+	private static int clamp(float c) {
+		int i = (int)(c + 0.5f);
+		return i < 0 ? 0 : i > 255 ? 255 : i;
+	}
+
+	/**
+	 * Tells whether {@link #affine} can resample an inverse transform. The
+	 * horizontal pass shears rows by the vertical component of the
+	 * transform, which stretches rows beyond recovery once the transform
+	 * rotates by more than 45 degrees.
+	 * @param inverse transform from output to input positions
+	 * @return true if the transform is close enough to axis aligned
+	 */
+	public static boolean isSeparable(AffineTransform inverse) {
+		return inverse.getScaleY() != 0
+				&& Math.abs(inverse.getScaleY()) >= Math.abs(inverse.getShearY())
+				&& Math.abs(inverse.getScaleX()) >= Math.abs(inverse.getShearX());
+	}
+
+	/**
+	 * Resamples pixels through an affine inverse transform in two separable
+	 * passes, processing rows of both in parallel bands.
+	 * @param in input pixels
+	 * @param srcWidth input width
+	 * @param srcHeight input height
+	 * @param out output pixels
+	 * @param outX x of the first output pixel in output space
+	 * @param outY y of the first output pixel in output space
+	 * @param outWidth output width
+	 * @param outHeight output height
+	 * @param inverse transform from output to input positions; must be
+	 * 	{@link #isSeparable separable}
+	 * @param interpolation BILINEAR, BICUBIC or LANCZOS3 of
+	 * 	{@link TransformFilter}
+	 * @param edgeAction edge action of {@link TransformFilter}
+	 * @param progress listener notified of the progress of the vertical
+	 * 	pass, or null
+	 */
+	public static void affine(final int[] in, final int srcWidth, final int srcHeight,
+			final int[] out, final int outX, final int outY, final int outWidth, final int outHeight,
+			AffineTransform inverse, int interpolation, final int edgeAction, FilterListener progress) {
+		// input y depends on output x and y; express input x in terms of
+		// output x and input y instead, which makes the horizontal pass
+		// independent of output rows
+		final double d = inverse.getShearY(), e = inverse.getScaleY(), f = inverse.getTranslateY();
+		final double a = inverse.getScaleX() - inverse.getShearX() * d / e;
+		final double b = inverse.getShearX() / e;
+		final double c = inverse.getTranslateX() - inverse.getShearX() * f / e;
+		final Resampler horizontal = new Resampler(interpolation, (float)Math.abs(inverse.getScaleX()));
+		final Resampler vertical = new Resampler(interpolation, (float)Math.abs(e));
+
+		// input rows the vertical pass reaches
+		double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for(int corner = 0; corner < 4; corner++) {
+			double y = d * (outX + (corner & 1) * (outWidth - 1)) + e * (outY + (corner >> 1) * (outHeight - 1)) + f;
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+		}
+		final int firstRow = (int)Math.floor(minY) - vertical.first - 1;
+		final int rows = (int)Math.floor(maxY) - vertical.first + vertical.taps + 1 - firstRow;
+		final int[] rowPixels = BufferPool.borrowInts(rows * outWidth);
+
+		BandScheduler.run(outWidth, rows, true, new BandScheduler.BandTask() {
+			@Override
+			public void processBand(int startRow, int endRow) {
+				float[] w = horizontal.weights;
+				int taps = horizontal.taps;
+				for(int row = startRow; row < endRow; row++) {
+					int y = firstRow + row;
+					boolean inside = y >= 0 && y < srcHeight;
+					double offset = b * y + c;
+					for(int x = 0, index = row * outWidth; x < outWidth; x++, index++) {
+						float srcX = (float)(a * (outX + x) + offset);
+						int x0 = (int)Math.floor(srcX);
+						int wx = horizontal.phase(srcX - x0);
+						x0 -= horizontal.first;
+						float sa = 0, sr = 0, sg = 0, sb = 0;
+						if(inside && x0 >= 0 && x0 + taps <= srcWidth) {
+							for(int k = 0, i = y * srcWidth + x0; k < taps; k++, i++) {
+								int rgb = in[i];
+								float weight = w[wx + k];
+								sa += weight * (rgb >>> 24);
+								sr += weight * ((rgb >> 16) & 0xff);
+								sg += weight * ((rgb >> 8) & 0xff);
+								sb += weight * (rgb & 0xff);
+							}
+						}
+						else {
+							for(int k = 0; k < taps; k++) {
+								int rgb = TransformFilter.getPixel(in, x0 + k, y, srcWidth, srcHeight, edgeAction);
+								float weight = w[wx + k];
+								sa += weight * (rgb >>> 24);
+								sr += weight * ((rgb >> 16) & 0xff);
+								sg += weight * ((rgb >> 8) & 0xff);
+								sb += weight * (rgb & 0xff);
+							}
+						}
+						rowPixels[index] = pack(sa, sr, sg, sb);
+					}
+				}
+			}
+		}, null);
+
+		BandScheduler.run(outWidth, outHeight, true, new BandScheduler.BandTask() {
+			@Override
+			public void processBand(int startRow, int endRow) {
+				float[] w = vertical.weights;
+				int taps = vertical.taps;
+				for(int y = startRow; y < endRow; y++) {
+					double offset = e * (outY + y) + f;
+					for(int x = 0, index = y * outWidth; x < outWidth; x++, index++) {
+						float srcY = (float)(d * (outX + x) + offset);
+						int y0 = (int)Math.floor(srcY);
+						int wy = vertical.phase(srcY - y0);
+						int i = (y0 - vertical.first - firstRow) * outWidth + x;
+						float sa = 0, sr = 0, sg = 0, sb = 0;
+						for(int k = 0; k < taps; k++, i += outWidth) {
+							int rgb = rowPixels[i];
+							float weight = w[wy + k];
+							sa += weight * (rgb >>> 24);
+							sr += weight * ((rgb >> 16) & 0xff);
+							sg += weight * ((rgb >> 8) & 0xff);
+							sb += weight * (rgb & 0xff);
+						}
+						out[index] = pack(sa, sr, sg, sb);
+					}
+				}
+			}
+		}, progress);
+		BufferPool.giveBack(rowPixels);
+	}
+}
@@ -17,8 +17,17 @@ limitations under the License.
 package com.jhlabs.image;
 
 import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
-
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.zimowski.bambi.editor.filters.BandScheduler;
+import org.zimowski.bambi.editor.filters.BufferPool;
 import org.zimowski.bambi.jhlabs.image.ImageMath;
 
 /**
@@ -61,6 +70,16 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
      */
 	public final static int BILINEAR = 1;
 
+    /**
+     * Use bicubic interpolation over 4x4 pixels.
+     */
+	public final static int BICUBIC = 2;
+
+    /**
+     * Use Lanczos interpolation over 6x6 pixels, the sharpest of all.
+     */
+	public final static int LANCZOS3 = 3;
+
     /**
      * The action to take for pixels off the image edge.
      */
@@ -71,6 +90,18 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
      */
 	protected int interpolation = BILINEAR;
 
+	/**
+	 * Set to false by filters whose {@link #transformInverse(int, int, float[])}
+	 * is not safe to call from several threads at once. Otherwise output rows
+	 * are split into bands and processed on all cores by {@link BandScheduler}.
+	 */
+	protected boolean canFilterInParallel = true;
+
+	/**
+	 * Whether computed inverse maps are kept in {@link InverseMapCache}.
+	 */
+	private boolean cacheInverseMap = false;
+
     /**
      * The output image rectangle.
      */
@@ -101,7 +132,7 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
 	
     /**
      * Set the type of interpolation to perform.
-     * @param interpolation one of NEAREST_NEIGHBOUR or BILINEAR
+     * @param interpolation one of NEAREST_NEIGHBOUR, BILINEAR, BICUBIC or LANCZOS3
      * @see #getInterpolation
      */
 	public void setInterpolation(int interpolation) {
@@ -110,15 +141,39 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
 
     /**
      * Get the type of interpolation to perform.
-     * @return one of NEAREST_NEIGHBOUR or BILINEAR
+     * @return one of NEAREST_NEIGHBOUR, BILINEAR, BICUBIC or LANCZOS3
      * @see #setInterpolation
      */
 	public int getInterpolation() {
 		return interpolation;
 	}
 	
+    /**
+     * Set whether to cache the inverse coordinate map of this transform.
+     * When set, the input position computed for every output pixel is kept
+     * in {@link InverseMapCache} under the {@link #getTransformKey transform key}
+     * and image size, so applying the same distortion again, to another
+     * image of the same size or to the next webcam frame, only resamples.
+     * @param cacheInverseMap true to cache the inverse map
+     * @see #getCacheInverseMap
+     */
+	public void setCacheInverseMap(boolean cacheInverseMap) {
+		this.cacheInverseMap = cacheInverseMap;
+	}
+
+    /**
+     * Get whether to cache the inverse coordinate map of this transform.
+     * @return true if the inverse map is cached
+     * @see #setCacheInverseMap
+     */
+	public boolean getCacheInverseMap() {
+		return cacheInverseMap;
+	}
+
     /**
      * Inverse transform a point. This method needs to be overriden by all subclasses.
+     * Unless {@link #canFilterInParallel} is cleared, it is called from several
+     * threads at once and must not modify the filter.
      * @param x the X position of the pixel in the output image
      * @param y the Y position of the pixel in the output image
      * @param out the position of the pixel in the input image
@@ -132,6 +187,17 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
 	protected void transformSpace(Rectangle rect) {
 	}
 
+    /**
+     * Get the inverse transform as an affine transform, for subclasses whose
+     * transform is one. BICUBIC and LANCZOS3 interpolation then resample in
+     * two separable passes, see {@link Resampler#affine}. Called after
+     * {@link #transformSpace}.
+     * @return the inverse transform, or null if it is not affine
+     */
+	protected AffineTransform getInverseTransform() {
+		return null;
+	}
+
     public BufferedImage filter( BufferedImage src, BufferedImage dst ) {
         int width = src.getWidth();
         int height = src.getHeight();
@@ -144,59 +210,186 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
         	dst = createCompatibleDestImage(src, null, transformedSpace.width, transformedSpace.height);
 		}
 
-		int[] inPixels = getRGB( src, 0, 0, width, height, null );
-
-		if ( interpolation == NEAREST_NEIGHBOUR )
-			return filterPixelsNN( dst, width, height, inPixels, transformedSpace );
-
-		final int totalPixels = width * height;
-		int srcWidth = width;
-		int srcHeight = height;
-		int srcWidth1 = width-1;
-		int srcHeight1 = height-1;
-		int outWidth = transformedSpace.width;
-		int outHeight = transformedSpace.height;
-		int outX, outY;
-		int[] outPixels = new int[outWidth];
-
-		outX = transformedSpace.x;
-		outY = transformedSpace.y;
-		float[] out = new float[2];
-
-		filterStart(totalPixels);
-		for (int y = 0; y < outHeight; y++) {
-			for (int x = 0; x < outWidth; x++) {
-				transformInverse(outX+x, outY+y, out);
-				int srcX = (int)Math.floor( out[0] );
-				int srcY = (int)Math.floor( out[1] );
-				float xWeight = out[0]-srcX;
-				float yWeight = out[1]-srcY;
-				int nw, ne, sw, se;
-
-				if ( srcX >= 0 && srcX < srcWidth1 && srcY >= 0 && srcY < srcHeight1) {
-					// Easy case, all corners are in the image
-					int i = srcWidth*srcY + srcX;
-					nw = inPixels[i];
-					ne = inPixels[i+1];
-					sw = inPixels[i+srcWidth];
-					se = inPixels[i+srcWidth+1];
-				} else {
-					// Some of the corners are off the image
-					nw = getPixel( inPixels, srcX, srcY, srcWidth, srcHeight );
-					ne = getPixel( inPixels, srcX+1, srcY, srcWidth, srcHeight );
-					sw = getPixel( inPixels, srcX, srcY+1, srcWidth, srcHeight );
-					se = getPixel( inPixels, srcX+1, srcY+1, srcWidth, srcHeight );
+		int[] inPixels = getRGB( src, 0, 0, width, height, BufferPool.borrowInts( width*height ) );
+		Object mapKey = cacheInverseMap ? getInverseMapKey( width, height ) : null;
+
+		if ( interpolation == NEAREST_NEIGHBOUR ) {
+			filterPixelsNN( dst, width, height, inPixels, transformedSpace, mapKey );
+			BufferPool.giveBack( inPixels );
+			return dst;
+		}
+
+		if ( interpolation == BICUBIC || interpolation == LANCZOS3 ) {
+			filterPixelsKernel( dst, width, height, inPixels, transformedSpace, mapKey );
+			BufferPool.giveBack( inPixels );
+			return dst;
+		}
+
+		final int[] srcPixels = inPixels;
+		final int srcWidth = width;
+		final int srcHeight = height;
+		final int srcWidth1 = width-1;
+		final int srcHeight1 = height-1;
+		final int outWidth = transformedSpace.width;
+		final int outHeight = transformedSpace.height;
+		final int outX = transformedSpace.x;
+		final int outY = transformedSpace.y;
+		final int[] outPixels = BufferPool.borrowInts( outWidth*outHeight );
+		final float[] cached = mapKey == null ? null : InverseMapCache.get( mapKey );
+		final float[] map = newInverseMap( mapKey, cached, outWidth, outHeight );
+		final boolean fillMap = map != cached;
+
+		filterStart(width * height);
+		BandScheduler.run(outWidth, outHeight, canFilterInParallel, new BandScheduler.BandTask() {
+			@Override
+			public void processBand(int startRow, int endRow) {
+				float[] out = new float[2];
+				int index = startRow*outWidth;
+				for (int y = startRow; y < endRow; y++) {
+					for (int x = 0; x < outWidth; x++, index++) {
+						inverse(outX+x, outY+y, out, map, index, fillMap);
+						int srcX = (int)Math.floor( out[0] );
+						int srcY = (int)Math.floor( out[1] );
+						float xWeight = out[0]-srcX;
+						float yWeight = out[1]-srcY;
+						int nw, ne, sw, se;
+
+						if ( srcX >= 0 && srcX < srcWidth1 && srcY >= 0 && srcY < srcHeight1) {
+							// Easy case, all corners are in the image
+							int i = srcWidth*srcY + srcX;
+							nw = srcPixels[i];
+							ne = srcPixels[i+1];
+							sw = srcPixels[i+srcWidth];
+							se = srcPixels[i+srcWidth+1];
+						} else {
+							// Some of the corners are off the image
+							nw = getPixel( srcPixels, srcX, srcY, srcWidth, srcHeight );
+							ne = getPixel( srcPixels, srcX+1, srcY, srcWidth, srcHeight );
+							sw = getPixel( srcPixels, srcX, srcY+1, srcWidth, srcHeight );
+							se = getPixel( srcPixels, srcX+1, srcY+1, srcWidth, srcHeight );
+						}
+						outPixels[index] = ImageMath.bilinearInterpolate(xWeight, yWeight, nw, ne, sw, se);
+					}
 				}
-				outPixels[x] = ImageMath.bilinearInterpolate(xWeight, yWeight, nw, ne, sw, se);
 			}
-			setRGB( dst, 0, y, transformedSpace.width, 1, outPixels );
-			if(y%100==0) filterProgress(Math.round(((float)y/outHeight)*100));
-		}
+		}, this);
+		if ( fillMap )
+			InverseMapCache.put( mapKey, map );
+
+		setRGB( dst, 0, 0, outWidth, outHeight, outPixels );
+		BufferPool.giveBack( inPixels );
+		BufferPool.giveBack( outPixels );
 		filterDone();
 		return dst;
 	}
 
+	/**
+	 * Allocate an inverse map to fill, unless a cached one was found or the
+	 * cache would not keep a map of this size anyway.
+	 * @param cached the map found in the cache, or null
+	 * @return the map to use, which is the cached one if not to be filled,
+	 * or null if points are not to be mapped at all
+	 */
+	private static float[] newInverseMap(Object mapKey, float[] cached, int outWidth, int outHeight) {
+		long length = 2L*outWidth*outHeight;
+		if ( mapKey == null || cached != null || !InverseMapCache.accepts( length ) )
+			return cached;
+		return new float[(int)length];
+	}
+
+	/**
+	 * Inverse transform a point, or look it up in the inverse map. When the
+	 * map is being filled the transformed point is recorded in it.
+	 * @param index the index of the pixel in the output image
+	 */
+	private void inverse(int x, int y, float[] out, float[] map, int index, boolean fillMap) {
+		if ( map == null ) {
+			transformInverse(x, y, out);
+		} else if ( fillMap ) {
+			transformInverse(x, y, out);
+			map[2*index] = out[0];
+			map[2*index+1] = out[1];
+		} else {
+			out[0] = map[2*index];
+			out[1] = map[2*index+1];
+		}
+	}
+
+	/**
+	 * @return the key of the inverse map in {@link InverseMapCache}, or null
+	 * if this transform cannot be cached
+	 */
+	private Object getInverseMapKey(int width, int height) {
+		Object key = getTransformKey();
+		return key == null ? null : Arrays.asList(key, width, height);
+	}
+
+    /**
+     * Get a key identifying the transform for {@link #setCacheInverseMap caching}.
+     * Two filters with equal keys must map every output pixel to the same
+     * input position, given the same image size. The default implementation
+     * collects the class and the values of all instance fields declared
+     * by the subclasses, and returns null, meaning the transform is not
+     * cached, if any of the fields holds an object other than a primitive
+     * array, a String or an enum. Subclasses whose transform does not
+     * depend on their fields alone should override this to return null.
+     * @return the key, or null if the transform cannot be cached
+     */
+	protected Object getTransformKey() {
+		List<Object> key = new ArrayList<Object>();
+		key.add(getClass());
+		for (Class<?> c = getClass(); c != TransformFilter.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers()))
+					continue;
+				Object value;
+				try {
+					field.setAccessible(true);
+					value = field.get(this);
+				} catch (Exception e) {
+					return null;
+				}
+				if (value != null && value.getClass().isArray() && value.getClass().getComponentType().isPrimitive())
+					key.add(new ArrayValue(value));
+				else if (value == null || field.getType().isPrimitive() || value instanceof String || value instanceof Enum)
+					key.add(value);
+				else
+					return null;
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * Copy of a primitive array compared by content.
+	 */
+	private static class ArrayValue {
+
+		private final Object[] array;
+
+		ArrayValue(Object array) {
+			int length = Array.getLength(array);
+			Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+			System.arraycopy(array, 0, copy, 0, length);
+			this.array = new Object[] { copy };
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof ArrayValue && Arrays.deepEquals(array, ((ArrayValue)o).array);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.deepHashCode(array);
+		}
+	}
+
 	final private int getPixel( int[] pixels, int x, int y, int width, int height ) {
+		return getPixel( pixels, x, y, width, height, edgeAction );
+	}
+
+	static int getPixel( int[] pixels, int x, int y, int width, int height, int edgeAction ) {
 		if (x < 0 || x >= width || y < 0 || y >= height) {
 			switch (edgeAction) {
 			case ZERO:
@@ -213,50 +406,103 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
 		return pixels[ y*width+x ];
 	}
 
+	private BufferedImage filterPixelsKernel( BufferedImage dst, final int width, final int height, final int[] inPixels, Rectangle transformedSpace, Object mapKey ) {
+		final int outWidth = transformedSpace.width;
+		final int outHeight = transformedSpace.height;
+		final int outX = transformedSpace.x;
+		final int outY = transformedSpace.y;
+		final int[] outPixels = BufferPool.borrowInts( outWidth*outHeight );
+
+		filterStart(width * height);
+		AffineTransform inverse = getInverseTransform();
+		if ( inverse != null && Resampler.isSeparable( inverse ) ) {
+			Resampler.affine( inPixels, width, height, outPixels, outX, outY, outWidth, outHeight, inverse, interpolation, edgeAction, this );
+		} else {
+			final Resampler resampler = new Resampler( interpolation, 1 );
+			final float[] cached = mapKey == null ? null : InverseMapCache.get( mapKey );
+			final float[] map = newInverseMap( mapKey, cached, outWidth, outHeight );
+			final boolean fillMap = map != cached;
+
+			BandScheduler.run(outWidth, outHeight, canFilterInParallel, new BandScheduler.BandTask() {
+				@Override
+				public void processBand(int startRow, int endRow) {
+					float[] out = new float[2];
+					int[] neighbourhood = new int[resampler.taps*resampler.taps];
+					int index = startRow*outWidth;
+					for (int y = startRow; y < endRow; y++) {
+						for (int x = 0; x < outWidth; x++, index++) {
+							inverse(outX+x, outY+y, out, map, index, fillMap);
+							outPixels[index] = resampler.sample( inPixels, width, height, out[0], out[1], edgeAction, neighbourhood );
+						}
+					}
+				}
+			}, this);
+			if ( fillMap )
+				InverseMapCache.put( mapKey, map );
+		}
+
+		setRGB( dst, 0, 0, outWidth, outHeight, outPixels );
+		BufferPool.giveBack( outPixels );
+		filterDone();
+		return dst;
+	}
+
 	protected BufferedImage filterPixelsNN( BufferedImage dst, int width, int height, int[] inPixels, Rectangle transformedSpace ) {
-		int srcWidth = width;
-		int srcHeight = height;
-		int outWidth = transformedSpace.width;
-		int outHeight = transformedSpace.height;
-		int outX, outY, srcX, srcY;
-		int[] outPixels = new int[outWidth];
-
-		outX = transformedSpace.x;
-		outY = transformedSpace.y;
-		int[] rgb = new int[4];
-		float[] out = new float[2];
-
-		for (int y = 0; y < outHeight; y++) {
-			for (int x = 0; x < outWidth; x++) {
-				transformInverse(outX+x, outY+y, out);
-				srcX = (int)out[0];
-				srcY = (int)out[1];
-				// int casting rounds towards zero, so we check out[0] < 0, not srcX < 0
-				if (out[0] < 0 || srcX >= srcWidth || out[1] < 0 || srcY >= srcHeight) {
-					int p;
-					switch (edgeAction) {
-					case ZERO:
-					default:
-						p = 0;
-						break;
-					case WRAP:
-						p = inPixels[(ImageMath.mod(srcY, srcHeight) * srcWidth) + ImageMath.mod(srcX, srcWidth)];
-						break;
-					case CLAMP:
-						p = inPixels[(ImageMath.clamp(srcY, 0, srcHeight-1) * srcWidth) + ImageMath.clamp(srcX, 0, srcWidth-1)];
-						break;
-                    case RGB_CLAMP:
-						p = inPixels[(ImageMath.clamp(srcY, 0, srcHeight-1) * srcWidth) + ImageMath.clamp(srcX, 0, srcWidth-1)] & 0x00ffffff;
+		return filterPixelsNN( dst, width, height, inPixels, transformedSpace, null );
+	}
+
+	private BufferedImage filterPixelsNN( BufferedImage dst, int width, int height, final int[] inPixels, Rectangle transformedSpace, Object mapKey ) {
+		final int srcWidth = width;
+		final int srcHeight = height;
+		final int outWidth = transformedSpace.width;
+		final int outHeight = transformedSpace.height;
+		final int outX = transformedSpace.x;
+		final int outY = transformedSpace.y;
+		final int[] outPixels = BufferPool.borrowInts( outWidth*outHeight );
+		final float[] cached = mapKey == null ? null : InverseMapCache.get( mapKey );
+		final float[] map = newInverseMap( mapKey, cached, outWidth, outHeight );
+		final boolean fillMap = map != cached;
+
+		BandScheduler.run(outWidth, outHeight, canFilterInParallel, new BandScheduler.BandTask() {
+			@Override
+			public void processBand(int startRow, int endRow) {
+				float[] out = new float[2];
+				int index = startRow*outWidth;
+				for (int y = startRow; y < endRow; y++) {
+					for (int x = 0; x < outWidth; x++, index++) {
+						inverse(outX+x, outY+y, out, map, index, fillMap);
+						int srcX = (int)out[0];
+						int srcY = (int)out[1];
+						// int casting rounds towards zero, so we check out[0] < 0, not srcX < 0
+						if (out[0] < 0 || srcX >= srcWidth || out[1] < 0 || srcY >= srcHeight) {
+							int p;
+							switch (edgeAction) {
+							case ZERO:
+							default:
+								p = 0;
+								break;
+							case WRAP:
+								p = inPixels[(ImageMath.mod(srcY, srcHeight) * srcWidth) + ImageMath.mod(srcX, srcWidth)];
+								break;
+							case CLAMP:
+								p = inPixels[(ImageMath.clamp(srcY, 0, srcHeight-1) * srcWidth) + ImageMath.clamp(srcX, 0, srcWidth-1)];
+								break;
+		                    case RGB_CLAMP:
+								p = inPixels[(ImageMath.clamp(srcY, 0, srcHeight-1) * srcWidth) + ImageMath.clamp(srcX, 0, srcWidth-1)] & 0x00ffffff;
+							}
+							outPixels[index] = p;
+						} else {
+							outPixels[index] = inPixels[srcWidth*srcY + srcX];
+						}
 					}
-					outPixels[x] = p;
-				} else {
-					int i = srcWidth*srcY + srcX;
-					rgb[0] = inPixels[i];
-					outPixels[x] = inPixels[i];
 				}
 			}
-			setRGB( dst, 0, y, transformedSpace.width, 1, outPixels );
-		}
+		}, null);
+		if ( fillMap )
+			InverseMapCache.put( mapKey, map );
+
+		setRGB( dst, 0, 0, outWidth, outHeight, outPixels );
+		BufferPool.giveBack( outPixels );
 		return dst;
 	}
 
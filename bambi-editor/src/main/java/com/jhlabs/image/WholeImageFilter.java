@@ -20,6 +20,8 @@ import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 
+import org.zimowski.bambi.editor.filters.BufferPool;
+
 /**
  * A filter which acts as a superclass for filters which need to have the 
  * whole image in memory to do their stuff.
@@ -58,9 +60,14 @@ public abstract class WholeImageFilter extends AbstractBufferedImageOp {
 			dst = new BufferedImage(dstCM, dstCM.createCompatibleWritableRaster(transformedSpace.width, transformedSpace.height), dstCM.isAlphaPremultiplied(), null);
 		}
 
-		int[] inPixels = getRGB( src, 0, 0, width, height, null );
-		inPixels = filterPixels( width, height, inPixels, transformedSpace );
-		setRGB( dst, 0, 0, transformedSpace.width, transformedSpace.height, inPixels );
+		// both pixel arrays go back to the pool once copied to destination;
+		// subclasses may borrow their output array from the pool as well
+		int[] inPixels = getRGB( src, 0, 0, width, height, BufferPool.borrowInts( width*height ) );
+		int[] outPixels = filterPixels( width, height, inPixels, transformedSpace );
+		setRGB( dst, 0, 0, transformedSpace.width, transformedSpace.height, outPixels );
+		if ( outPixels != inPixels )
+			BufferPool.giveBack( outPixels );
+		BufferPool.giveBack( inPixels );
 
         return dst;
     }
@@ -73,7 +80,8 @@ public abstract class WholeImageFilter extends AbstractBufferedImageOp {
 	}
 	
 	/**
-     * Actually filter the pixels.
+     * Actually filter the pixels. The returned array is recycled through
+     * {@link BufferPool} after use, so it must not be kept by the filter.
      * @param width the image width
      * @param height the image height
      * @param inPixels the image pixels
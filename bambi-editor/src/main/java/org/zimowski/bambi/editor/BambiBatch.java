@@ -0,0 +1,145 @@
+package org.zimowski.bambi.editor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zimowski.bambi.editor.batch.BatchProcessor;
+import org.zimowski.bambi.editor.batch.BatchReport;
+import org.zimowski.bambi.editor.batch.FilterChain;
+
+/**
+ * Headless entry point which applies a filter chain to many images at once,
+ * using the same filters as the editor. For example:
+ * <pre>
+ * BambiBatch -f Grayscale,Contrast=+0.3,Scale=50 -o out/ photos/ @more.txt
+ * </pre>
+ * Inputs are image files, directories (every readable image directly
+ * inside) or <code>@file</code> lists with one path per line. Summary of
+ * throughput and latency is printed when done.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class BambiBatch {
+
+	private static final Logger log = LoggerFactory.getLogger(BambiBatch.class);
+
+	private static final String USAGE =
+			"usage: BambiBatch -f <filters> -o <output dir> [-t <threads>] " +
+			"[-format <jpg|png|...>] [-q <jpeg quality 0-1>] <input>...%n" +
+			"  input: image file, directory or @file with one path per line%n" +
+			"  filters: comma separated, e.g. Grayscale,Contrast=+0.3,Scale=50%n";
+
+
+	private BambiBatch() {
+	}
+
+	/**
+	 * @param args see {@link #USAGE}
+	 */
+	public static void main(String[] args) {
+
+		System.setProperty("java.awt.headless", "true");
+
+		String filters = null;
+		String output = null;
+		List<String> inputs = new ArrayList<String>();
+		BatchProcessor processor;
+
+		try {
+			Integer threads = null;
+			String format = null;
+			Float quality = null;
+			for(int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if("-f".equals(arg)) filters = value(args, ++i);
+				else if("-o".equals(arg)) output = value(args, ++i);
+				else if("-t".equals(arg)) threads = Integer.valueOf(value(args, ++i));
+				else if("-format".equals(arg)) format = value(args, ++i);
+				else if("-q".equals(arg)) quality = Float.valueOf(value(args, ++i));
+				else if(arg.startsWith("-")) throw new IllegalArgumentException("unknown option: " + arg);
+				else inputs.add(arg);
+			}
+			if(filters == null || output == null || inputs.isEmpty())
+				throw new IllegalArgumentException("filters, output and input are required");
+
+			processor = new BatchProcessor(FilterChain.parse(filters), new File(output));
+			if(threads != null) processor.setThreads(threads);
+			if(format != null) processor.setFormat(format);
+			if(quality != null) processor.setQuality(quality);
+		}
+		catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.printf(USAGE);
+			System.exit(1);
+			return;
+		}
+
+		try {
+			List<File> files = listImages(inputs);
+			BatchReport report = processor.process(files);
+			System.out.print(report);
+			System.exit(report.getFailures().isEmpty() ? 0 : 2);
+		}
+		catch(IOException e) {
+			log.error(e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static String value(String[] args, int index) {
+		if(index >= args.length)
+			throw new IllegalArgumentException(args[index-1] + " requires a value");
+		return args[index];
+	}
+
+	private static List<File> listImages(List<String> inputs) throws IOException {
+
+		Set<String> suffixes = new HashSet<String>();
+		for(String suffix : ImageIO.getReaderFileSuffixes())
+			suffixes.add(suffix.toLowerCase());
+
+		List<File> files = new ArrayList<File>();
+		for(String input : inputs) {
+			if(input.startsWith("@")) {
+				BufferedReader reader = new BufferedReader(new FileReader(input.substring(1)));
+				try {
+					String line;
+					while((line = reader.readLine()) != null) {
+						line = line.trim();
+						if(!line.isEmpty()) files.add(new File(line));
+					}
+				}
+				finally {
+					reader.close();
+				}
+			}
+			else {
+				File file = new File(input);
+				if(file.isDirectory()) {
+					File[] children = file.listFiles();
+					Arrays.sort(children);
+					for(File child : children) {
+						String extension = FilenameUtils.getExtension(child.getName()).toLowerCase();
+						if(child.isFile() && suffixes.contains(extension)) files.add(child);
+					}
+				}
+				else {
+					files.add(file);
+				}
+			}
+		}
+		return files;
+	}
+}
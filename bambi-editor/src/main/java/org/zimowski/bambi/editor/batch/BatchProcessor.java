@@ -0,0 +1,305 @@
+package org.zimowski.bambi.editor.batch;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zimowski.bambi.editor.filters.TiledImage;
+import org.zimowski.bambi.editor.studio.image.EditorImageUtil;
+
+/**
+ * Applies a {@link FilterChain} to many images in parallel, without the
+ * editor GUI. Each image is decoded, filtered and encoded straight to its
+ * output file by one worker; number of workers bounds how many images are
+ * held in memory at once. Workers run on a fork/join pool, so filters which
+ * split images into bands share the same threads instead of competing with
+ * the batch for processors.
+ * <p>
+ * Outputs are named after their inputs, in output format. Inputs which
+ * would end up with the same name, such as <code>a.png</code> and
+ * <code>a.jpg</code> or same named files from different directories, are
+ * told apart by a suffix, so that no output overwrites another, and an
+ * image whose output would overwrite any of the inputs fails instead.
+ * <p>
+ * Images larger than a worker's share of heap are decoded in strips into
+ * a {@link TiledImage} and filtered tile by tile, if the chain allows, so
+ * that only the filtered image handed to the encoder is held whole.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class BatchProcessor {
+
+	private static final Logger log = LoggerFactory.getLogger(BatchProcessor.class);
+
+	private final FilterChain chain;
+
+	private final File outputDir;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private String format = "jpg";
+
+	private float quality = 0.9f;
+
+	private long maxHeapImageBytes = -1;
+
+
+	/**
+	 * @param chain filters applied to every image
+	 * @param outputDir directory processed images are written to; created
+	 * 	if it does not exist
+	 */
+	public BatchProcessor(FilterChain chain, File outputDir) {
+		this.chain = chain;
+		this.outputDir = outputDir;
+	}
+
+	/**
+	 * @param threads number of images processed concurrently, at least 1
+	 */
+	public void setThreads(int threads) {
+		if(threads < 1) throw new IllegalArgumentException("threads < 1");
+		this.threads = threads;
+	}
+
+	/**
+	 * @param format output image format, for example jpg or png
+	 */
+	public void setFormat(String format) {
+		if(!ImageIO.getImageWritersByFormatName(format).hasNext())
+			throw new IllegalArgumentException("unsupported format: " + format);
+		this.format = format.toLowerCase();
+	}
+
+	/**
+	 * @param quality jpeg compression quality between 0 and 1
+	 */
+	public void setQuality(float quality) {
+		if(quality < 0f || quality > 1f)
+			throw new IllegalArgumentException("quality must be between 0 and 1");
+		this.quality = quality;
+	}
+
+	/**
+	 * @param bytes size of decoded image above which a
+	 * 	{@link FilterChain#isTileable() tileable} chain is applied tile by
+	 * 	tile; defaults to a quarter of maximum heap divided among workers
+	 */
+	public void setMaxHeapImageBytes(long bytes) {
+		if(bytes < 1) throw new IllegalArgumentException("bytes < 1");
+		this.maxHeapImageBytes = bytes;
+	}
+
+	private long getMaxHeapImageBytes() {
+		if(maxHeapImageBytes > 0) return maxHeapImageBytes;
+		// decoded image, filtered copy and filter work buffers of every worker
+		return Runtime.getRuntime().maxMemory() / threads / 4;
+	}
+
+	/**
+	 * Processes all images, blocking until done. Failure of an image is
+	 * logged and recorded in the report and does not stop the batch.
+	 *
+	 * @param inputs image files
+	 * @return timing summary
+	 * @throws IOException if output directory cannot be created
+	 */
+	public BatchReport process(List<File> inputs) throws IOException {
+
+		if(!outputDir.isDirectory() && !outputDir.mkdirs())
+			throw new IOException("cannot create " + outputDir);
+
+		ImageIO.setUseCache(false);
+
+		final List<File> outputs = nameOutputs(inputs);
+		final BatchReport report = new BatchReport();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		List<Future<?>> results = new ArrayList<Future<?>>(inputs.size());
+
+		log.info("processing {} images with {} workers: {}",
+				new Object[] { inputs.size(), threads, chain });
+		report.start();
+		try {
+			for(int x = 0; x < inputs.size(); x++) {
+				final File input = inputs.get(x);
+				final File output = outputs.get(x);
+				results.add(pool.submit(new Runnable() {
+					@Override
+					public void run() {
+						processImage(input, output, report);
+					}
+				}));
+			}
+			for(Future<?> result : results) {
+				try {
+					result.get();
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				catch(ExecutionException e) {
+					// processImage records its own failures
+					log.error(e.getMessage());
+				}
+			}
+		}
+		finally {
+			pool.shutdownNow();
+			report.finish();
+		}
+
+		return report;
+	}
+
+	/**
+	 * Names output file of every input, unique within the batch: base name
+	 * of the input in output format, or if that is taken, with the input
+	 * extension appended to the base name, or else a number.
+	 *
+	 * @return output of each input, in the same order; null for inputs 
+	 * 	whose output would overwrite one of the inputs
+	 */
+	private List<File> nameOutputs(List<File> inputs) throws IOException {
+		Set<File> sources = new HashSet<File>();
+		for(File input : inputs) sources.add(input.getCanonicalFile());
+
+		// lower case, as file systems may not tell case apart
+		Set<String> taken = new HashSet<String>();
+		List<File> outputs = new ArrayList<File>(inputs.size());
+		for(File input : inputs) {
+			String base = FilenameUtils.getBaseName(input.getName());
+			String extension = FilenameUtils.getExtension(input.getName());
+			String name = base + "." + format;
+			if(taken.contains(name.toLowerCase()) && !extension.isEmpty())
+				name = base + "-" + extension + "." + format;
+			for(int n = 2; taken.contains(name.toLowerCase()); n++)
+				name = base + "-" + n + "." + format;
+			taken.add(name.toLowerCase());
+
+			File output = new File(outputDir, name);
+			outputs.add(sources.contains(output.getCanonicalFile()) ? null : output);
+		}
+		return outputs;
+	}
+
+	private void processImage(File input, File output, BatchReport report) {
+		if(output == null) {
+			log.error("{}: output would overwrite an input image", input);
+			report.addFailure(input);
+			return;
+		}
+		try {
+			long start = System.nanoTime();
+			long limit = getMaxHeapImageBytes();
+			BufferedImage image;
+			long pixels, read, filtered;
+			if(chain.isTileable() && getPixelCount(input) * 4 > limit) {
+				TiledImage source = TiledImage.read(input, limit);
+				TiledImage result = null;
+				try {
+					pixels = (long)source.getWidth() * source.getHeight();
+					read = System.nanoTime();
+					result = chain.apply(source);
+					image = result.toBufferedImage(1);
+				}
+				finally {
+					source.close();
+					if(result != null) result.close();
+				}
+				// chain maps pixels on their own, so orientation can come last
+				image = EditorImageUtil.applyExifRotation(image, input);
+				filtered = System.nanoTime();
+				log.debug("{} filtered in tiles", input);
+			}
+			else {
+				image = ImageIO.read(input);
+				if(image == null) throw new IOException("unsupported image format");
+				image = EditorImageUtil.applyExifRotation(image, input);
+				pixels = (long)image.getWidth() * image.getHeight();
+				read = System.nanoTime();
+
+				image = chain.apply(image);
+				filtered = System.nanoTime();
+			}
+
+			write(image, output);
+			long written = System.nanoTime();
+
+			report.addImage(pixels, read - start, filtered - read, written - filtered);
+			log.debug("{} -> {}", input, output);
+		}
+		catch(Exception e) {
+			log.error("{}: {}", input, e.getMessage());
+			report.addFailure(input);
+		}
+	}
+
+	private static long getPixelCount(File input) throws IOException {
+		ImageInputStream in = ImageIO.createImageInputStream(input);
+		if(in == null) throw new IOException("cannot read " + input);
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if(!readers.hasNext()) throw new IOException("unsupported image format");
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true);
+				return (long)reader.getWidth(0) * reader.getHeight(0);
+			}
+			finally {
+				reader.dispose();
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private void write(BufferedImage image, File output) throws IOException {
+
+		boolean jpeg = "jpg".equals(format) || "jpeg".equals(format);
+		if(jpeg && image.getColorModel().hasAlpha()) {
+			image = EditorImageUtil.makeJpg(image, Color.WHITE, false);
+		}
+
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+		ImageWriter writer = writers.next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		if(jpeg) {
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(quality);
+		}
+
+		if(output.exists()) output.delete();
+		ImageOutputStream out = ImageIO.createImageOutputStream(output);
+		if(out == null) throw new IOException("cannot write " + output);
+		try {
+			writer.setOutput(out);
+			writer.write(null, new IIOImage(image, null, null), param);
+		}
+		finally {
+			out.close();
+			writer.dispose();
+		}
+	}
+}
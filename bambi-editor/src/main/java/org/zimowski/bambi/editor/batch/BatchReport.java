@@ -0,0 +1,135 @@
+package org.zimowski.bambi.editor.batch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects timing of images processed by {@link BatchProcessor} and
+ * summarizes throughput and per image latency. Safe to update from many
+ * threads.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class BatchReport {
+
+	private final List<Long> latencies = new ArrayList<Long>();
+
+	private final List<File> failures = new ArrayList<File>();
+
+	private long readNanos, filterNanos, writeNanos;
+
+	private long pixels;
+
+	private long startTime;
+
+	private long elapsedNanos;
+
+
+	void start() {
+		startTime = System.nanoTime();
+	}
+
+	void finish() {
+		elapsedNanos = System.nanoTime() - startTime;
+	}
+
+	/**
+	 * Records a successfully processed image.
+	 *
+	 * @param pixelCount number of pixels in source image
+	 * @param read nanoseconds spent decoding
+	 * @param filter nanoseconds spent filtering
+	 * @param write nanoseconds spent encoding
+	 */
+	synchronized void addImage(long pixelCount, long read, long filter, long write) {
+		latencies.add(read + filter + write);
+		readNanos += read;
+		filterNanos += filter;
+		writeNanos += write;
+		pixels += pixelCount;
+	}
+
+	synchronized void addFailure(File file) {
+		failures.add(file);
+	}
+
+	/**
+	 * @return number of images successfully processed
+	 */
+	public synchronized int getProcessed() {
+		return latencies.size();
+	}
+
+	/**
+	 * @return files which could not be processed
+	 */
+	public synchronized List<File> getFailures() {
+		return Collections.unmodifiableList(new ArrayList<File>(failures));
+	}
+
+	/**
+	 * @return wall clock time of the whole batch in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+	}
+
+	/**
+	 * @return images processed per second of wall clock time
+	 */
+	public synchronized double getImagesPerSecond() {
+		return elapsedNanos == 0 ? 0 : latencies.size() * 1e9 / elapsedNanos;
+	}
+
+	/**
+	 * @return megapixels processed per second of wall clock time
+	 */
+	public synchronized double getMegapixelsPerSecond() {
+		return elapsedNanos == 0 ? 0 : pixels * 1e3 / elapsedNanos;
+	}
+
+	/**
+	 * @param percentile 0 to 100
+	 * @return latency of a single image at given percentile, in
+	 * 	milliseconds; 0 if no image was processed
+	 */
+	public synchronized double getLatencyMillis(double percentile) {
+		if(latencies.isEmpty()) return 0;
+		long[] sorted = sortedLatencies();
+		int index = (int)Math.ceil(percentile / 100d * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+	}
+
+	private long[] sortedLatencies() {
+		long[] sorted = new long[latencies.size()];
+		for(int i = 0; i < sorted.length; i++) sorted[i] = latencies.get(i);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	@Override
+	public synchronized String toString() {
+		int count = latencies.size();
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("processed: %d, failed: %d, elapsed: %.2fs%n",
+				count, failures.size(), elapsedNanos / 1e9));
+		sb.append(String.format("throughput: %.2f images/s, %.2f MP/s%n",
+				getImagesPerSecond(), getMegapixelsPerSecond()));
+		if(count > 0) {
+			sb.append(String.format(
+					"latency ms: min %.1f, p50 %.1f, p95 %.1f, max %.1f%n",
+					getLatencyMillis(0), getLatencyMillis(50),
+					getLatencyMillis(95), getLatencyMillis(100)));
+			sb.append(String.format(
+					"mean ms: read %.1f, filter %.1f, write %.1f%n",
+					readNanos / 1e6 / count, filterNanos / 1e6 / count,
+					writeNanos / 1e6 / count));
+		}
+		for(File file : failures) sb.append("failed: ").append(file).append(String.format("%n"));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,324 @@
+package org.zimowski.bambi.editor.batch;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.zimowski.bambi.editor.filters.ColorAdjustFilter;
+import org.zimowski.bambi.editor.filters.ImageFilterOps;
+import org.zimowski.bambi.editor.filters.ImageFilters;
+import org.zimowski.bambi.editor.filters.TiledImage;
+import org.zimowski.bambi.editor.filters.TiledImageOp;
+import org.zimowski.bambi.editor.studio.image.EditorImageUtil;
+
+/**
+ * Sequence of {@link ImageFilterOps} applied to an image outside of the
+ * editor. Chain is parsed from a comma separated spec, for example:
+ * <pre>
+ * Grayscale,Contrast=+0.3,Scale=50
+ * </pre>
+ * <ul>
+ * <li>one-click filters (Grayscale, Emboss, OldPhoto, ...) take no value</li>
+ * <li>Hue, Saturation, Contrast, Brightness, Red, Green and Blue take an
+ * adjustment between -1 and +1, same as editor slider position divided by
+ * 10; consecutive adjustments are combined into one pass, same as in
+ * editor</li>
+ * <li>Scale takes a percentage of current size</li>
+ * <li>RotateLeft and RotateRight take no value</li>
+ * </ul>
+ * Operation names are case insensitive. Chain is immutable and may be
+ * applied from many threads at once; filters are created per image.
+ * <p>
+ * Chains of color adjustments and filters which map every pixel on its own
+ * can also be applied to a {@link TiledImage}, tile by tile, for images too
+ * large to filter on heap.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class FilterChain {
+
+	/**
+	 * filters whose output pixel depends on nothing but the input pixel
+	 */
+	private static final Set<ImageFilterOps> POINT_OPS = EnumSet.of(
+			ImageFilterOps.Grayscale, ImageFilterOps.Negative,
+			ImageFilterOps.Posterize, ImageFilterOps.Solarize);
+
+	private final List<Step> steps;
+
+	private final String spec;
+
+
+	private FilterChain(String spec, List<Step> steps) {
+		this.spec = spec;
+		this.steps = Collections.unmodifiableList(steps);
+	}
+
+	/**
+	 * @param spec comma separated operations
+	 * @return parsed chain
+	 * @throws IllegalArgumentException if spec contains unknown operation
+	 * 	or an invalid value
+	 */
+	public static FilterChain parse(String spec) {
+
+		List<Step> steps = new ArrayList<Step>();
+		ColorStep colorStep = null;
+
+		for(String token : spec.split(",")) {
+			token = token.trim();
+			if(token.isEmpty()) continue;
+
+			String name = token;
+			String value = null;
+			int eq = token.indexOf('=');
+			if(eq >= 0) {
+				name = token.substring(0, eq).trim();
+				value = token.substring(eq + 1).trim();
+			}
+			ImageFilterOps op = findOp(name);
+
+			if(isColorAdjust(op)) {
+				float adjustment = parseFloat(op, value);
+				if(adjustment < -1f || adjustment > 1f)
+					throw new IllegalArgumentException(op.name() + " must be between -1 and +1");
+				if(colorStep == null) {
+					colorStep = new ColorStep();
+					steps.add(colorStep);
+				}
+				colorStep.set(op, adjustment);
+				continue;
+			}
+
+			colorStep = null;
+			if(op == ImageFilterOps.Scale) {
+				float percent = parseFloat(op, value);
+				if(percent <= 0)
+					throw new IllegalArgumentException("Scale must be positive");
+				steps.add(new ScaleStep(percent / 100d));
+			}
+			else if(op == ImageFilterOps.RotateLeft || op == ImageFilterOps.RotateRight) {
+				requireNoValue(op, value);
+				steps.add(new RotateStep(op == ImageFilterOps.RotateLeft ? -90 : 90));
+			}
+			else if(ImageFilters.isSupported(op)) {
+				requireNoValue(op, value);
+				steps.add(new FilterStep(op));
+			}
+			else {
+				throw new IllegalArgumentException(op.name() + " is not supported in batch");
+			}
+		}
+
+		if(steps.isEmpty()) throw new IllegalArgumentException("no filters specified");
+
+		return new FilterChain(spec, steps);
+	}
+
+	private static ImageFilterOps findOp(String name) {
+		for(ImageFilterOps op : ImageFilterOps.values()) {
+			if(op.name().equalsIgnoreCase(name)) return op;
+		}
+		throw new IllegalArgumentException("unknown filter: " + name);
+	}
+
+	private static boolean isColorAdjust(ImageFilterOps op) {
+		return ColorAdjustFilter.getAdjustType(op) != null ||
+				op == ImageFilterOps.Contrast || op == ImageFilterOps.Brightness;
+	}
+
+	private static float parseFloat(ImageFilterOps op, String value) {
+		if(value == null || value.isEmpty())
+			throw new IllegalArgumentException(op.name() + " requires a value");
+		if(value.startsWith("+")) value = value.substring(1);
+		try {
+			return Float.parseFloat(value);
+		}
+		catch(NumberFormatException e) {
+			throw new IllegalArgumentException(
+					"invalid " + op.name() + " value: " + value);
+		}
+	}
+
+	private static void requireNoValue(ImageFilterOps op, String value) {
+		if(value != null)
+			throw new IllegalArgumentException(op.name() + " takes no value");
+	}
+
+	/**
+	 * Runs all operations of the chain.
+	 *
+	 * @param image source image; not modified
+	 * @return processed image
+	 */
+	public BufferedImage apply(BufferedImage image) {
+		BufferedImage result = image;
+		for(Step step : steps) result = step.apply(result);
+		return result;
+	}
+
+	/**
+	 * @return true if every operation maps each pixel on its own, so that
+	 * 	the chain can be {@link #apply(TiledImage) applied} tile by tile
+	 */
+	public boolean isTileable() {
+		for(Step step : steps) {
+			if(step.getPointOp(1, 1) == null) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Runs all operations of the chain one tile at a time, so that only a
+	 * tile is on heap at once.
+	 *
+	 * @param image source image; not modified
+	 * @return processed image, backed by a temporary file
+	 * @throws IllegalStateException if chain is not {@link #isTileable()
+	 * 	tileable}
+	 * @throws IOException if backing file could not be created
+	 */
+	public TiledImage apply(TiledImage image) throws IOException {
+		if(!isTileable()) throw new IllegalStateException(spec + " cannot be applied in tiles");
+		int width = image.getWidth();
+		int height = image.getHeight();
+		TiledImage result = new TiledImage(width, height);
+		try {
+			TiledImage src = image;
+			for(Step step : steps) {
+				// point filters may filter in place
+				new TiledImageOp(step.getPointOp(width, height), 0).filter(src, result);
+				src = result;
+			}
+		}
+		catch(RuntimeException e) {
+			result.close();
+			throw e;
+		}
+		return result;
+	}
+
+	/**
+	 * @return number of passes over the image this chain makes
+	 */
+	public int size() {
+		return steps.size();
+	}
+
+	@Override
+	public String toString() {
+		return spec;
+	}
+
+
+	private interface Step {
+
+		BufferedImage apply(BufferedImage image);
+
+		/**
+		 * @return filter which maps every pixel on its own, so that the
+		 * 	image can be filtered in tiles; null if step needs whole image
+		 */
+		BufferedImageOp getPointOp(int width, int height);
+	}
+
+	private static class FilterStep implements Step {
+
+		private final ImageFilterOps op;
+
+		FilterStep(ImageFilterOps op) {
+			this.op = op;
+		}
+
+		@Override
+		public BufferedImage apply(BufferedImage image) {
+			return ImageFilters.createFilter(op, image.getWidth(), image.getHeight())
+					.filter(image, null);
+		}
+
+		@Override
+		public BufferedImageOp getPointOp(int width, int height) {
+			return POINT_OPS.contains(op) ? ImageFilters.createFilter(op, width, height) : null;
+		}
+	}
+
+	private static class ColorStep implements Step {
+
+		private float hue, saturation, contrast, brightness, red, green, blue;
+
+		void set(ImageFilterOps op, float adjustment) {
+			switch(op) {
+			case Hue: hue = adjustment; break;
+			case Saturation: saturation = adjustment; break;
+			case Contrast: contrast = adjustment; break;
+			case Brightness: brightness = adjustment; break;
+			case Red: red = adjustment; break;
+			case Green: green = adjustment; break;
+			case Blue: blue = adjustment; break;
+			default:
+			}
+		}
+
+		@Override
+		public BufferedImage apply(BufferedImage image) {
+			return getPointOp(image.getWidth(), image.getHeight()).filter(image, null);
+		}
+
+		@Override
+		public BufferedImageOp getPointOp(int width, int height) {
+			ColorAdjustFilter f = new ColorAdjustFilter();
+			// same workaround as editor: hue of 1.0 doesn't work
+			f.setHue(hue == 1.0f ? 1.1f : hue);
+			f.setSaturation(saturation);
+			f.setContrast(1 + contrast);
+			f.setBrightness(1 + brightness);
+			f.setRed(red);
+			f.setGreen(green);
+			f.setBlue(blue);
+			return f;
+		}
+	}
+
+	private static class ScaleStep implements Step {
+
+		private final double scale;
+
+		ScaleStep(double scale) {
+			this.scale = scale;
+		}
+
+		@Override
+		public BufferedImage apply(BufferedImage image) {
+			return EditorImageUtil.rotate(image, null, null, scale, scale);
+		}
+
+		@Override
+		public BufferedImageOp getPointOp(int width, int height) {
+			return null;
+		}
+	}
+
+	private static class RotateStep implements Step {
+
+		private final int angle;
+
+		RotateStep(int angle) {
+			this.angle = angle;
+		}
+
+		@Override
+		public BufferedImage apply(BufferedImage image) {
+			return EditorImageUtil.rotate(image, angle, null, null, null);
+		}
+
+		@Override
+		public BufferedImageOp getPointOp(int width, int height) {
+			return null;
+		}
+	}
+}
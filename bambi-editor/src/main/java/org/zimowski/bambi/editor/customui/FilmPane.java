@@ -15,6 +15,9 @@ import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.imageio.ImageIO;
 import javax.swing.AbstractAction;
@@ -112,9 +115,24 @@ public class FilmPane extends JComponent implements MouseMotionListener, MouseLi
 	private int selectedThumb = 0;
 	
 	/**
-	 * used for naming temporary files
+	 * used for naming temporary files; down to milliseconds, as pictures 
+	 * may be taken in bursts
 	 */
-	private SimpleDateFormat df = new SimpleDateFormat("yyyyMMddHHmmss");
+	private SimpleDateFormat df = new SimpleDateFormat("yyyyMMddHHmmssSSS");
+	
+	/**
+	 * saves web cam pictures and scales their thumbs, one at a time so that 
+	 * they land on the film in order
+	 */
+	private static final ExecutorService pictureWriter = 
+			Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "campic-writer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 	
 	private Action visualDelete = new AbstractAction() {
 		private static final long serialVersionUID = 1L;
@@ -164,49 +182,71 @@ public class FilmPane extends JComponent implements MouseMotionListener, MouseLi
 	 */
 	private void addThumb(BufferedImage source, String path, boolean selected) {
 		try {
-			FilmThumb filmThumb = new FilmThumb();
-			filmThumb.file = new File(path);
 			BufferedImage image; 
 			if(source != null) {
 				image = source;
 			}
 			else {
-				image = ImageIO.read(filmThumb.file);
-			}
-			int w = image.getWidth();
-			int h = image.getHeight();
-			boolean rotate = image.getHeight() > image.getWidth();
-			double ratio = (double) Math.max(w, h) / (double) Math.min(w, h);
-			log.debug("path: {}, ratio: {}", path, ratio);
-			log.debug("source width: {}, height: {}", image.getWidth(), image.getHeight());
-
-			BufferedImage thumb = null;
-			if (ratio > 1.5) {
-				thumb = Scalr.resize(image, 60);
-			} else {
-				int width = rotate ? 40 : 60;
-				int height = rotate ? 60 : 40;
-				thumb = Scalr.resize(image, Scalr.Mode.FIT_EXACT, width, height);
+				image = ImageIO.read(new File(path));
 			}
-
-			if (rotate) {
-				thumb = Scalr.rotate(thumb, Rotation.CW_90);
-			}
-			filmThumb.thumb = thumb;
-			thumbList.addFirst(filmThumb);
-			if(selected) 
-				selectedThumb = 1;
-			else
-				selectedThumb++;
-			
-			int width = film[IMG_FILM_SELECTED].getWidth() * thumbList.size();
-			int height = film[IMG_FILM_SELECTED].getHeight();
-			setPreferredSize(new Dimension(width, height));
-			repaint();
-
+			insertThumb(createThumb(image, path), selected);
 		} catch (IOException e) {
 			log.error("could not add thumb [{}]; {}", path, e.getMessage());
+			if(manageVisibility) setVisible(thumbList.size() > 0);
+		}
+	}
+	
+	/**
+	 * Scales image down to a thumb. Does not touch the film, so it is safe 
+	 * to call from any thread.
+	 * 
+	 * @param image image the thumb represents
+	 * @param path path of the image
+	 * @return thumb ready to be inserted into the film
+	 */
+	private static FilmThumb createThumb(BufferedImage image, String path) {
+		FilmThumb filmThumb = new FilmThumb();
+		filmThumb.file = new File(path);
+		int w = image.getWidth();
+		int h = image.getHeight();
+		boolean rotate = image.getHeight() > image.getWidth();
+		double ratio = (double) Math.max(w, h) / (double) Math.min(w, h);
+		log.debug("path: {}, ratio: {}", path, ratio);
+		log.debug("source width: {}, height: {}", image.getWidth(), image.getHeight());
+
+		BufferedImage thumb = null;
+		if (ratio > 1.5) {
+			thumb = Scalr.resize(image, 60);
+		} else {
+			int width = rotate ? 40 : 60;
+			int height = rotate ? 60 : 40;
+			thumb = Scalr.resize(image, Scalr.Mode.FIT_EXACT, width, height);
+		}
+
+		if (rotate) {
+			thumb = Scalr.rotate(thumb, Rotation.CW_90);
 		}
+		filmThumb.thumb = thumb;
+		return filmThumb;
+	}
+	
+	/**
+	 * Puts thumb at the front of the film.
+	 * 
+	 * @param filmThumb thumb to insert
+	 * @param selected true if this new thumb should be immediately selected
+	 */
+	private void insertThumb(FilmThumb filmThumb, boolean selected) {
+		thumbList.addFirst(filmThumb);
+		if(selected) 
+			selectedThumb = 1;
+		else
+			selectedThumb++;
+		
+		int width = film[IMG_FILM_SELECTED].getWidth() * thumbList.size();
+		int height = film[IMG_FILM_SELECTED].getHeight();
+		setPreferredSize(new Dimension(width, height));
+		repaint();
 		if(manageVisibility) setVisible(thumbList.size() > 0);
 	}
 	
@@ -218,24 +258,42 @@ public class FilmPane extends JComponent implements MouseMotionListener, MouseLi
 				event.isSelected());
 	}
 	
+	/**
+	 * Saves picture taken by the web cam and adds it to the film. Encoding 
+	 * and scaling run on a background thread so that the live video doesn't 
+	 * stutter, even when many pictures are taken per second; pictures are 
+	 * saved and added to the film in the order they were taken.
+	 */
 	@Subscribe
 	public void onPictureTaken(final CamPictureTakenEvent ev) {
 		String tmpDir = System.getProperty("java.io.tmpdir");
 		String tmpFile = "bambi_campic_" + df.format(ev.getTimeTaken()) + ".jpg";
 		final File file = new File(tmpDir + "/" + tmpFile);
-		SwingUtilities.invokeLater(new Runnable() {
+		pictureWriter.execute(new Runnable() {
 			@Override
 			public void run() {
+				final FilmThumb thumb;
 				try {
-					ImageIO.write(ev.getPicture(), "jpg", file);
+					BufferedImage picture = ev.getPicture();
+					ImageIO.write(picture, "jpg", file);
+					thumb = createThumb(picture, file.getAbsolutePath());
 				} catch (IOException e) {
 					log.debug("could not save picture to {} - {}", 
 							file.getAbsolutePath(), 
 							e.getMessage());
-				}				
+					return;
+				}
+				finally {
+					ev.release();
+				}
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						insertThumb(thumb, false);
+					}
+				});
 			}
 		});
-		addThumb(ev.getPicture(), file.getAbsolutePath(), false);
 	}
 	
 	/**
@@ -250,7 +308,7 @@ public class FilmPane extends JComponent implements MouseMotionListener, MouseLi
 	public void onModelLifecycle(ModelLifecycleEvent ev) {
 		ModelPhase phase = ev.getPhase();
 		if(ModelPhase.AfterChange.equals(phase)) {
-			modelInitialized = (ev.getImage() != null);
+			modelInitialized = (ev.getImageConduit() != null);
 			setCursor(Cursor.getDefaultCursor());
 		}
 	}
@@ -485,7 +543,7 @@ public class FilmPane extends JComponent implements MouseMotionListener, MouseLi
 	 * 
 	 * @author Adam Zimowski (mrazjava)
 	 */
-	class FilmThumb {
+	static class FilmThumb {
 		BufferedImage thumb;
 		File file;
 	}
@@ -0,0 +1,217 @@
+package org.zimowski.bambi.editor.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Splits an image into horizontal bands of rows and processes them on a
+ * shared fork/join pool. Filters which compute each output row purely from
+ * their input (no shared mutable state, no random number generators) can
+ * hand their row loop to this scheduler and get results identical to a
+ * serial pass while keeping all cores busy.
+ * <p>
+ * Progress is always reported from the calling thread, in order, as bands
+ * complete, so {@link FilterListener} implementations never see concurrent
+ * callbacks. Small images, or filters which cannot run concurrently, are
+ * processed serially on the calling thread in bands of
+ * {@link #SERIAL_BAND_ROWS} rows, matching the traditional progress cadence.
+ * <p>
+ * Bands which have not started yet are skipped once listener reports
+ * {@link FilterListener#isFilterCancelled()}; the cancellation then surfaces
+ * to the caller from the listener's next progress update.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class BandScheduler {
+
+	/**
+	 * Images with fewer pixels than this are never split across threads as
+	 * the cost of forking outweighs any gain.
+	 */
+	public static final int MIN_PARALLEL_PIXELS = 256 * 256;
+
+	/**
+	 * Number of rows processed between progress updates when running
+	 * serially.
+	 */
+	public static final int SERIAL_BAND_ROWS = 100;
+
+	/**
+	 * Bands created per worker thread. More bands than threads balances the
+	 * load when some rows are more expensive than others and gives finer
+	 * progress reporting.
+	 */
+	private static final int BANDS_PER_THREAD = 4;
+
+	private static final ForkJoinPool pool = new ForkJoinPool();
+
+	private static volatile int parallelism = pool.getParallelism();
+
+
+	/**
+	 * Unit of work executed by the scheduler.
+	 */
+	public interface BandTask {
+
+		/**
+		 * Process rows of the band. Implementations must only write to rows
+		 * inside the band and must not mutate state shared with other bands.
+		 *
+		 * @param startRow first row of the band (inclusive)
+		 * @param endRow last row of the band (exclusive)
+		 */
+		public void processBand(int startRow, int endRow);
+	}
+
+
+	private BandScheduler() {
+		// static utility
+	}
+
+	/**
+	 * @return maximum number of bands processed concurrently
+	 */
+	public static int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Limits number of bands processed concurrently. Value of 1 effectively
+	 * turns parallel processing off. Values larger than number of available
+	 * processors are capped.
+	 *
+	 * @param threads number of concurrent bands, at least 1
+	 */
+	public static void setParallelism(int threads) {
+		if(threads < 1) throw new IllegalArgumentException("threads < 1");
+		parallelism = Math.min(threads, pool.getParallelism());
+	}
+
+	/**
+	 * @param width image width
+	 * @param height image height
+	 * @return true if an image of given size is worth splitting across threads
+	 */
+	public static boolean isParallel(int width, int height) {
+		return parallelism > 1 && height > 1 &&
+				(long)width * height >= MIN_PARALLEL_PIXELS;
+	}
+
+	/**
+	 * Processes all rows of an image, concurrently if allowed and worthwhile.
+	 * Blocks until all bands completed. If any band fails, the remaining
+	 * bands are cancelled and the exception is rethrown to the caller.
+	 *
+	 * @param width image width
+	 * @param height image height (number of rows to process)
+	 * @param concurrent true if task is safe to run on multiple threads
+	 * @param task band processor
+	 * @param progress optional listener notified with percentage of rows
+	 * 	completed; may be null
+	 */
+	public static void run(int width, int height, boolean concurrent,
+			BandTask task, FilterListener progress) {
+		schedule(height, concurrent && isParallel(width, height), SERIAL_BAND_ROWS,
+				task, progress);
+	}
+
+	/**
+	 * Processes independent units of work other than rows, image tiles for
+	 * instance, concurrently if allowed and worthwhile. Band task receives
+	 * ranges of unit indexes instead of rows. When running serially, every
+	 * unit is its own band.
+	 *
+	 * @param units number of units
+	 * @param pixels number of pixels all units process together, deciding
+	 * 	if splitting is worthwhile
+	 * @param concurrent true if task is safe to run on multiple threads
+	 * @param task unit range processor
+	 * @param progress optional listener notified with percentage of units
+	 * 	completed; may be null
+	 */
+	public static void runUnits(int units, long pixels, boolean concurrent,
+			BandTask task, FilterListener progress) {
+		boolean parallel = concurrent && parallelism > 1 && units > 1 &&
+				pixels >= MIN_PARALLEL_PIXELS;
+		schedule(units, parallel, 1, task, progress);
+	}
+
+	private static void schedule(int height, boolean parallel, int serialBandRows,
+			BandTask task, FilterListener progress) {
+
+		if(!parallel) {
+			runSerial(height, serialBandRows, task, progress);
+			return;
+		}
+
+		int bandCount = Math.min(height, parallelism * BANDS_PER_THREAD);
+		int bandRows = (height + bandCount - 1) / bandCount;
+
+		List<ForkJoinTask<?>> bands = new ArrayList<ForkJoinTask<?>>(bandCount);
+		for(int startRow = 0; startRow < height; startRow += bandRows) {
+			bands.add(ForkJoinTask.adapt(new Band(
+					task, progress, startRow, Math.min(height, startRow + bandRows))));
+		}
+
+		if(ForkJoinTask.inForkJoinPool()) {
+			// nested inside another fork/join computation (batch processing
+			// for instance); let the current pool steal the work
+			ForkJoinTask.invokeAll(bands);
+			if(progress != null) progress.filterProgress(100);
+			return;
+		}
+
+		for(ForkJoinTask<?> band : bands) pool.execute(band);
+
+		int rowsDone = 0;
+		try {
+			for(ForkJoinTask<?> band : bands) {
+				band.join();
+				rowsDone = Math.min(height, rowsDone + bandRows);
+				if(progress != null)
+					progress.filterProgress(Math.round(((float)rowsDone/height)*100));
+			}
+		}
+		catch(RuntimeException e) {
+			for(ForkJoinTask<?> band : bands) band.cancel(false);
+			throw e;
+		}
+	}
+
+	private static void runSerial(int height, int bandRows, BandTask task, FilterListener progress) {
+		for(int startRow = 0; startRow < height; startRow += bandRows) {
+			if(progress != null)
+				progress.filterProgress(Math.round(((float)startRow/height)*100));
+			task.processBand(startRow, Math.min(height, startRow + bandRows));
+		}
+	}
+
+	/**
+	 * Binds band boundaries to a task.
+	 */
+	private static class Band implements Runnable {
+
+		private final BandTask task;
+
+		private final FilterListener listener;
+
+		private final int startRow;
+
+		private final int endRow;
+
+		Band(BandTask task, FilterListener listener, int startRow, int endRow) {
+			this.task = task;
+			this.listener = listener;
+			this.startRow = startRow;
+			this.endRow = endRow;
+		}
+
+		@Override
+		public void run() {
+			if(listener != null && listener.isFilterCancelled()) return;
+			task.processBand(startRow, endRow);
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package org.zimowski.bambi.editor.filters;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recycles large <code>int[]</code> and <code>float[]</code> work arrays of
+ * filters, so that running filter after filter over the same image reuses
+ * pixel buffers instead of leaving hundreds of megabytes of garbage behind
+ * each run and driving the collector into full collections.
+ * <p>
+ * Buffers are kept in buckets by exact length: image sizes repeat from one
+ * filter to the next, and filters rely on array length matching the number
+ * of pixels. Arrays shorter than {@link #MIN_POOLED_LENGTH} are cheap to
+ * allocate and never pooled. Pooled buffers are held softly, so collector
+ * can still reclaim them when heap runs low, and their total size is capped
+ * (a quarter of maximum heap by default). When the cap is reached, buffers
+ * of other sizes are dropped first, since image size changes far less often
+ * than the filter.
+ * <p>
+ * Borrowed buffers hold whatever the previous user left unless cleared on
+ * request. A buffer must not be used after it was given back, and must be
+ * given back at most once. All methods are thread safe.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class BufferPool {
+
+	/**
+	 * Arrays shorter than this are allocated as usual and not pooled
+	 */
+	public static final int MIN_POOLED_LENGTH = 16 * 1024;
+
+	private static final ConcurrentMap<Integer, Queue<SoftReference<int[]>>> ints =
+			new ConcurrentHashMap<Integer, Queue<SoftReference<int[]>>>();
+
+	private static final ConcurrentMap<Integer, Queue<SoftReference<float[]>>> floats =
+			new ConcurrentHashMap<Integer, Queue<SoftReference<float[]>>>();
+
+	private static volatile long capacity = Runtime.getRuntime().maxMemory() / 4;
+
+	private static final AtomicLong retained = new AtomicLong();
+
+	private static final AtomicLong borrowed = new AtomicLong();
+
+	private static final AtomicLong hits = new AtomicLong();
+
+	private static final AtomicLong bytesRecycled = new AtomicLong();
+
+
+	private BufferPool() {
+		// static utility
+	}
+
+	/**
+	 * @param length array length
+	 * @return array of given length, with undefined content
+	 */
+	public static int[] borrowInts(int length) {
+		return borrowInts(length, false);
+	}
+
+	/**
+	 * @param length array length
+	 * @param clear true to fill array with zeros, as if newly allocated
+	 * @return array of given length
+	 */
+	public static int[] borrowInts(int length, boolean clear) {
+		int[] buffer = length < MIN_POOLED_LENGTH ? null : poll(ints.get(length), length * 4L);
+		if(buffer == null) return new int[length];
+		if(clear) Arrays.fill(buffer, 0);
+		return buffer;
+	}
+
+	/**
+	 * @param length array length
+	 * @return array of given length, with undefined content
+	 */
+	public static float[] borrowFloats(int length) {
+		return borrowFloats(length, false);
+	}
+
+	/**
+	 * @param length array length
+	 * @param clear true to fill array with zeros, as if newly allocated
+	 * @return array of given length
+	 */
+	public static float[] borrowFloats(int length, boolean clear) {
+		float[] buffer = length < MIN_POOLED_LENGTH ? null : poll(floats.get(length), length * 4L);
+		if(buffer == null) return new float[length];
+		if(clear) Arrays.fill(buffer, 0);
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer for reuse. Any int array may be given back, not only
+	 * borrowed ones.
+	 *
+	 * @param buffer array no longer used by the caller; null is ignored
+	 */
+	public static void giveBack(int[] buffer) {
+		if(buffer != null && buffer.length >= MIN_POOLED_LENGTH)
+			offer(ints, buffer.length, new SoftReference<int[]>(buffer), buffer.length * 4L);
+	}
+
+	/**
+	 * Returns a buffer for reuse. Any float array may be given back, not
+	 * only borrowed ones.
+	 *
+	 * @param buffer array no longer used by the caller; null is ignored
+	 */
+	public static void giveBack(float[] buffer) {
+		if(buffer != null && buffer.length >= MIN_POOLED_LENGTH)
+			offer(floats, buffer.length, new SoftReference<float[]>(buffer), buffer.length * 4L);
+	}
+
+	private static <T> T poll(Queue<SoftReference<T>> bucket, long bytes) {
+		borrowed.incrementAndGet();
+		if(bucket == null) return null;
+		SoftReference<T> reference;
+		while((reference = bucket.poll()) != null) {
+			retained.addAndGet(-bytes);
+			T buffer = reference.get();
+			if(buffer != null) {
+				hits.incrementAndGet();
+				bytesRecycled.addAndGet(bytes);
+				return buffer;
+			}
+		}
+		return null;
+	}
+
+	private static <T> void offer(ConcurrentMap<Integer, Queue<SoftReference<T>>> buckets,
+			int length, SoftReference<T> reference, long bytes) {
+		if(bytes > capacity) return;
+		if(retained.get() + bytes > capacity) {
+			// make room by dropping buffers of other sizes, then of this one
+			evictOthers(ints, (Object)buckets == ints ? length : -1, bytes);
+			evictOthers(floats, (Object)buckets == floats ? length : -1, bytes);
+			if(retained.get() + bytes > capacity) evict(buckets.get(length), bytes, bytes);
+			if(retained.get() + bytes > capacity) return;
+		}
+		Queue<SoftReference<T>> bucket = buckets.get(length);
+		if(bucket == null) {
+			buckets.putIfAbsent(length, new ConcurrentLinkedQueue<SoftReference<T>>());
+			bucket = buckets.get(length);
+		}
+		retained.addAndGet(bytes);
+		bucket.offer(reference);
+	}
+
+	private static <T> void evictOthers(ConcurrentMap<Integer, Queue<SoftReference<T>>> buckets,
+			int keep, long needed) {
+		for(Integer length : buckets.keySet()) {
+			if(retained.get() + needed <= capacity) return;
+			if(length != keep) evict(buckets.get(length), length * 4L, needed);
+		}
+	}
+
+	private static <T> void evict(Queue<SoftReference<T>> bucket, long bytes, long needed) {
+		if(bucket == null) return;
+		while(retained.get() + needed > capacity && bucket.poll() != null)
+			retained.addAndGet(-bytes);
+	}
+
+	/**
+	 * @return maximum number of bytes kept in the pool
+	 */
+	public static long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @param bytes maximum number of bytes kept in the pool; 0 disables
+	 * 	pooling
+	 */
+	public static void setCapacity(long bytes) {
+		capacity = Math.max(0, bytes);
+		if(retained.get() > capacity) clear();
+	}
+
+	/**
+	 * Drops all pooled buffers. Statistics are kept.
+	 */
+	public static void clear() {
+		for(Integer length : ints.keySet())
+			evict(ints.get(length), length * 4L, Long.MAX_VALUE / 2);
+		for(Integer length : floats.keySet())
+			evict(floats.get(length), length * 4L, Long.MAX_VALUE / 2);
+	}
+
+	/**
+	 * @return number of bytes currently pooled, including buffers collector
+	 * 	may have reclaimed since
+	 */
+	public static long getRetainedBytes() {
+		return retained.get();
+	}
+
+	/**
+	 * @return number of pooled size buffers borrowed so far
+	 */
+	public static long getBorrowCount() {
+		return borrowed.get();
+	}
+
+	/**
+	 * @return fraction (0-1) of borrows served from the pool
+	 */
+	public static double getHitRate() {
+		long total = borrowed.get();
+		return total == 0 ? 0 : (double)hits.get() / total;
+	}
+
+	/**
+	 * @return total size of buffers served from the pool instead of being
+	 * 	allocated
+	 */
+	public static long getBytesRecycled() {
+		return bytesRecycled.get();
+	}
+
+	/**
+	 * Resets hit rate and recycled bytes statistics.
+	 */
+	public static void resetStatistics() {
+		borrowed.set(0);
+		hits.set(0);
+		bytesRecycled.set(0);
+	}
+
+	/**
+	 * @return one line summary of statistics, for logging
+	 */
+	public static String getStatistics() {
+		return String.format("buffer pool: %d borrows, %.1f%% hits, %d MB recycled, %d MB retained",
+				borrowed.get(), getHitRate() * 100, bytesRecycled.get() >> 20, retained.get() >> 20);
+	}
+}
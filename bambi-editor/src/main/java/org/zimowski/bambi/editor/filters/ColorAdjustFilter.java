@@ -1,5 +1,7 @@
 package org.zimowski.bambi.editor.filters;
 
+import java.awt.image.BufferedImage;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zimowski.bambi.jhlabs.image.ContrastFilter;
@@ -14,6 +16,14 @@ import com.jhlabs.image.RGBAdjustFilter;
  * are encapsulated so that pixel adjustment for all operations takes place 
  * in a single loop, resulting in huge performance increase as opposed to 
  * running each filter separately.
+ * <p>
+ * RGB, brightness and contrast adjust each channel on its own, so they are 
+ * baked into one 256 entry table per channel once per parameter change, 
+ * and cost a lookup per channel instead of their math. Tables give exactly 
+ * the same pixels as the math. Hue and saturation mix channels and are 
+ * computed per pixel, between the RGB and the contrast tables. Tables are 
+ * rebuilt lazily by the next {@link #filter(BufferedImage, BufferedImage)} 
+ * after any setter is called.
  * 
  * @author Adam Zimowski
  */
@@ -33,6 +43,13 @@ public class ColorAdjustFilter extends ContrastFilter {
 	
 	private ImageFilterOps lastOp;
 	
+	/**
+	 * Per channel adjustments applied ahead of hue and saturation (RGB, and 
+	 * contrast too if hue and saturation are not adjusted), indexed by 
+	 * channel then level; null if settings changed since they were built
+	 */
+	private volatile int[][] tables;
+	
 	
 	public ColorAdjustFilter() {
 		rgbFilter = new RGBAdjustFilter();
@@ -48,6 +65,7 @@ public class ColorAdjustFilter extends ContrastFilter {
 	 */
 	public void setHue(float hue) {
 		hsbFilter.setHFactor(hue);
+		tables = null;
 	}
 	
 	/**
@@ -55,6 +73,7 @@ public class ColorAdjustFilter extends ContrastFilter {
 	 */
 	public void setSaturation(float saturation) {
 		hsbFilter.setSFactor(saturation);
+		tables = null;
 	}
 
 	/**
@@ -64,6 +83,7 @@ public class ColorAdjustFilter extends ContrastFilter {
 	@Override
 	public void setBrightness(float brightness) {
 		super.setBrightness(brightness);
+		tables = null;
 	}
 
 	/**
@@ -73,6 +93,7 @@ public class ColorAdjustFilter extends ContrastFilter {
 	@Override
 	public void setContrast(float contrast) {
 		super.setContrast(contrast);
+		tables = null;
 	}
 
 	/**
@@ -80,6 +101,7 @@ public class ColorAdjustFilter extends ContrastFilter {
 	 */
 	public void setRed(float red) {
 		rgbFilter.setRFactor(red);
+		tables = null;
 	}
 	
 	/**
@@ -87,6 +109,7 @@ public class ColorAdjustFilter extends ContrastFilter {
 	 */
 	public void setGreen(float green) {
 		rgbFilter.setGFactor(green);
+		tables = null;
 	}
 
 	/**
@@ -94,6 +117,7 @@ public class ColorAdjustFilter extends ContrastFilter {
 	 */
 	public void setBlue(float blue) {
 		rgbFilter.setBFactor(blue);
+		tables = null;
 	}
 
 	private boolean getRunRgbFilter() {
@@ -110,8 +134,55 @@ public class ColorAdjustFilter extends ContrastFilter {
 		return getBrightness() != 1f || getContrast() != 1f;
 	}
 
+	/**
+	 * @return true if current settings leave every pixel unchanged
+	 */
+	public boolean isIdentity() {
+		return !getRunRgbFilter() && !getRunHsbFilter() && !getRunContrastFilter();
+	}
+
+	@Override
+	public BufferedImage filter(BufferedImage src, BufferedImage dst) {
+		// build lookup tables on calling thread before bands fork
+		if(!initialized) initialize();
+		if(tables == null) tables = buildTables();
+		return super.filter(src, dst);
+	}
+
+	/**
+	 * @return table per channel mapping levels through the adjustments 
+	 * 	which precede hue and saturation
+	 */
+	private int[][] buildTables() {
+		boolean contrast = !getRunHsbFilter() && getRunContrastFilter();
+		int[][] result = new int[3][256];
+		for(int v = 0; v < 256; v++) {
+			int rgb = 0xff000000 | (v << 16) | (v << 8) | v;
+			if(getRunRgbFilter()) rgb = rgbFilter.filterRGB(0, 0, rgb);
+			if(contrast) rgb = super.filterRGB(0, 0, rgb);
+			result[0][v] = (rgb >> 16) & 0xff;
+			result[1][v] = (rgb >> 8) & 0xff;
+			result[2][v] = rgb & 0xff;
+		}
+		return result;
+	}
+
 	@Override
 	public int filterRGB(int x, int y, int rgb) {
+		int[][] current = tables;
+		if(current == null) return adjustRGB(x, y, rgb);
+		int result = (rgb & 0xff000000) | 
+				(current[0][(rgb >> 16) & 0xff] << 16) | 
+				(current[1][(rgb >> 8) & 0xff] << 8) | 
+				current[2][rgb & 0xff];
+		if(getRunHsbFilter()) {
+			result = hsbFilter.filterRGB(x, y, result);
+			if(getRunContrastFilter()) result = super.filterRGB(x, y, result);
+		}
+		return result;
+	}
+
+	private int adjustRGB(int x, int y, int rgb) {
 		int result = rgb;
 		if(getRunRgbFilter()) result = rgbFilter.filterRGB(x, y, result);
 		if(getRunHsbFilter()) result = hsbFilter.filterRGB(x, y, result);
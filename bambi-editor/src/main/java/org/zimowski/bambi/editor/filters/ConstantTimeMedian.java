@@ -0,0 +1,312 @@
+package org.zimowski.bambi.editor.filters;
+
+import java.util.Arrays;
+
+/**
+ * Median of a square window of any radius at constant cost per pixel,
+ * after Perreault and Hébert, "Median Filtering in Constant Time" (2007).
+ * Every column keeps a histogram of the window rows, updated by one pixel
+ * in and one out as the window moves down. Window histogram is the sum of
+ * column histograms, updated by one column in and one out as it moves
+ * right. Histograms are two level: 16 coarse bins are kept current while
+ * the 256 fine bins are only brought up to date for the coarse bin the
+ * median falls into.
+ * <p>
+ * Red, green and blue are filtered independently; alpha is preserved.
+ * Image edges are extended by replicating border pixels. Rows are split
+ * into bands processed in parallel, each band holding column histograms of
+ * its own (about 550 bytes per image column).
+ * <p>
+ * Besides the plain median, window ranks support two noise removal
+ * variants, see {@link Mode}.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class ConstantTimeMedian {
+
+	/**
+	 * How pixel is replaced based on the window histogram.
+	 */
+	public enum Mode {
+
+		/**
+		 * Window median
+		 */
+		MEDIAN,
+
+		/**
+		 * Window median, but only if pixel differs from it by more than the
+		 * threshold; removes specks while preserving fine texture
+		 */
+		SWITCHING,
+
+		/**
+		 * Pixel clamped between the second lowest and second highest value
+		 * in the window; only removes isolated extremes
+		 */
+		RANK_CLAMP
+	}
+
+	private static final int LEVELS = 256;
+
+	private static final int COARSE_SHIFT = 4;
+
+	private static final int COARSE_BINS = LEVELS >> COARSE_SHIFT;
+
+	private static final int FINE_BINS = 1 << COARSE_SHIFT;
+
+	private final int radius;
+
+	private Mode mode = Mode.MEDIAN;
+
+	private int threshold = 0;
+
+
+	/**
+	 * @param radius window radius; window is 2*radius+1 pixels square
+	 */
+	public ConstantTimeMedian(int radius) {
+		if(radius < 0 || radius > Character.MAX_VALUE / 2 - 1)
+			throw new IllegalArgumentException("invalid radius " + radius);
+		this.radius = radius;
+	}
+
+	public int getRadius() {
+		return radius;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * @param threshold difference from median (0-255) above which
+	 * 	{@link Mode#SWITCHING} replaces a pixel
+	 */
+	public void setThreshold(int threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Filters ARGB pixels. Input and output must be different arrays.
+	 *
+	 * @param inPixels source pixels, row by row
+	 * @param outPixels destination pixels
+	 * @param width image width
+	 * @param height image height
+	 * @param progress optional listener notified as rows complete; may be
+	 * 	null
+	 */
+	public void filter(final int[] inPixels, final int[] outPixels,
+			final int width, final int height, FilterListener progress) {
+
+		if(radius == 0) {
+			System.arraycopy(inPixels, 0, outPixels, 0, width * height);
+			return;
+		}
+
+		final Mode mode = this.mode;
+		final int threshold = this.threshold;
+		BandScheduler.run(width, height, true, new BandScheduler.BandTask() {
+			@Override
+			public void processBand(int startRow, int endRow) {
+				new Band(inPixels, outPixels, width, height, mode, threshold)
+					.filter(startRow, endRow);
+			}
+		}, progress);
+	}
+
+	/**
+	 * Histograms of one band of rows.
+	 */
+	private class Band {
+
+		private final int[] in;
+
+		private final int[] out;
+
+		private final int width;
+
+		private final int height;
+
+		private final Mode mode;
+
+		private final int threshold;
+
+		private final int diameter = 2 * radius + 1;
+
+		/**
+		 * fine histogram of each column, {@link #LEVELS} bins per column
+		 */
+		private final char[] columnFine;
+
+		/**
+		 * coarse histogram of each column, {@link #COARSE_BINS} per column
+		 */
+		private final char[] columnCoarse;
+
+		private final int[] kernelFine = new int[LEVELS];
+
+		private final int[] kernelCoarse = new int[COARSE_BINS];
+
+		/**
+		 * x position which fine bins of each coarse bin reflect, or -1 if
+		 * they have to be computed from scratch
+		 */
+		private final int[] fineAt = new int[COARSE_BINS];
+
+		Band(int[] in, int[] out, int width, int height, Mode mode, int threshold) {
+			this.in = in;
+			this.out = out;
+			this.width = width;
+			this.height = height;
+			this.mode = mode;
+			this.threshold = threshold;
+			columnFine = new char[width * LEVELS];
+			columnCoarse = new char[width * COARSE_BINS];
+		}
+
+		void filter(int startRow, int endRow) {
+			for(int i = startRow * width, end = endRow * width; i < end; i++)
+				out[i] = in[i] & 0xff000000;
+			for(int shift = 16; shift >= 0; shift -= 8)
+				filterChannel(startRow, endRow, shift);
+		}
+
+		private void filterChannel(int startRow, int endRow, int shift) {
+
+			final int count = diameter * diameter;
+			final int median = count / 2;
+
+			Arrays.fill(columnFine, (char)0);
+			Arrays.fill(columnCoarse, (char)0);
+			for(int dy = -radius; dy <= radius; dy++)
+				updateColumns(clampRow(startRow + dy), shift, 1);
+
+			for(int y = startRow; y < endRow; y++) {
+				if(y > startRow) {
+					int leaving = clampRow(y - radius - 1);
+					int entering = clampRow(y + radius);
+					if(leaving != entering) {
+						updateColumns(leaving, shift, -1);
+						updateColumns(entering, shift, 1);
+					}
+				}
+
+				Arrays.fill(kernelCoarse, 0);
+				Arrays.fill(fineAt, -1);
+				for(int dx = -radius; dx <= radius; dx++)
+					addCoarse(clampColumn(dx), 1);
+
+				int index = y * width;
+				for(int x = 0; x < width; x++, index++) {
+					if(x > 0) slideCoarse(clampColumn(x + radius), clampColumn(x - radius - 1));
+					int value = (in[index] >> shift) & 0xff;
+					switch(mode) {
+					case SWITCHING:
+						int m = rank(median, x);
+						if(Math.abs(value - m) > threshold) value = m;
+						break;
+					case RANK_CLAMP:
+						int low = rank(1, x);
+						int high = rank(count - 2, x);
+						if(value < low) value = low;
+						else if(value > high) value = high;
+						break;
+					default:
+						value = rank(median, x);
+					}
+					out[index] |= value << shift;
+				}
+			}
+		}
+
+		/**
+		 * @param k zero based rank
+		 * @param x current window position
+		 * @return k-th smallest value in the window
+		 */
+		private int rank(int k, int x) {
+			int sum = 0;
+			int coarse = 0;
+			while(sum + kernelCoarse[coarse] <= k) sum += kernelCoarse[coarse++];
+			updateFine(coarse, x);
+			int value = coarse << COARSE_SHIFT;
+			while(sum + kernelFine[value] <= k) sum += kernelFine[value++];
+			return value;
+		}
+
+		/**
+		 * Brings fine bins of a coarse bin to window position x, either by
+		 * sliding them from where they were last used or, if that is further
+		 * than the window is wide, by summing the window columns.
+		 */
+		private void updateFine(int coarse, int x) {
+			int at = fineAt[coarse];
+			int base = coarse << COARSE_SHIFT;
+			if(at < 0 || 2 * (x - at) > diameter) {
+				Arrays.fill(kernelFine, base, base + FINE_BINS, 0);
+				for(int dx = -radius; dx <= radius; dx++)
+					addFine(clampColumn(x + dx), base, 1);
+			}
+			else {
+				for(int p = at + 1; p <= x; p++)
+					slideFine(clampColumn(p + radius), clampColumn(p - radius - 1), base);
+			}
+			fineAt[coarse] = x;
+		}
+
+		private void addFine(int column, int base, int sign) {
+			int offset = column * LEVELS + base;
+			for(int i = 0; i < FINE_BINS; i++)
+				kernelFine[base + i] += sign * columnFine[offset + i];
+		}
+
+		private void slideFine(int entering, int leaving, int base) {
+			if(entering == leaving) return;
+			int in = entering * LEVELS + base;
+			int out = leaving * LEVELS + base;
+			for(int i = 0; i < FINE_BINS; i++)
+				kernelFine[base + i] += columnFine[in + i] - columnFine[out + i];
+		}
+
+		private void addCoarse(int column, int sign) {
+			int offset = column * COARSE_BINS;
+			for(int i = 0; i < COARSE_BINS; i++)
+				kernelCoarse[i] += sign * columnCoarse[offset + i];
+		}
+
+		private void slideCoarse(int entering, int leaving) {
+			if(entering == leaving) return;
+			int in = entering * COARSE_BINS;
+			int out = leaving * COARSE_BINS;
+			for(int i = 0; i < COARSE_BINS; i++)
+				kernelCoarse[i] += columnCoarse[in + i] - columnCoarse[out + i];
+		}
+
+		private void updateColumns(int row, int shift, int sign) {
+			int index = row * width;
+			for(int x = 0; x < width; x++) {
+				int value = (in[index++] >> shift) & 0xff;
+				columnFine[x * LEVELS + value] += sign;
+				columnCoarse[x * COARSE_BINS + (value >> COARSE_SHIFT)] += sign;
+			}
+		}
+
+		private int clampRow(int y) {
+			return y < 0 ? 0 : y >= height ? height - 1 : y;
+		}
+
+		private int clampColumn(int x) {
+			return x < 0 ? 0 : x >= width ? width - 1 : x;
+		}
+	}
+}
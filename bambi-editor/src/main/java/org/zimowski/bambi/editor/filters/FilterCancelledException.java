@@ -0,0 +1,22 @@
+package org.zimowski.bambi.editor.filters;
+
+/**
+ * Thrown from inside a filter loop when {@link FilterListener} reports that 
+ * the filter run is no longer needed, for example because a newer request 
+ * of the same kind superseded it. Output of the interrupted filter is 
+ * incomplete and must be discarded.
+ * 
+ * @author Adam Zimowski (mrazjava)
+ */
+public class FilterCancelledException extends RuntimeException {
+
+	private static final long serialVersionUID = -2305184939405761582L;
+
+	public FilterCancelledException() {
+		super();
+	}
+
+	public FilterCancelledException(String message) {
+		super(message);
+	}
+}
@@ -12,4 +12,13 @@ public interface FilterListener {
 	public void filterProgress(int percentComplete);
 	
 	public void filterDone();
+	
+	/**
+	 * Polled by filter loops (typically along with progress updates) to 
+	 * find out if filtering should stop early. Filters respond by throwing 
+	 * {@link FilterCancelledException}.
+	 * 
+	 * @return true if the filter run is no longer needed
+	 */
+	public boolean isFilterCancelled();
 }
@@ -13,16 +13,16 @@ public enum ImageFilterOps {
 	Emboss, 
 	Mirror, 
 	Grayscale, 
-	Hue,
-	Saturation,
-	Contrast,
-	Brightness,
+	Hue(true),
+	Saturation(true),
+	Contrast(true),
+	Brightness(true),
 	Negative, 
 	Kaleidoscope, 
 	Marble, 
-	Red("Red Channel Adjust"),
-	Green("Green Channel Adjust"),
-	Blue("Blue Channel Adjust"),
+	Red("Red Channel Adjust", true),
+	Green("Green Channel Adjust", true),
+	Blue("Blue Channel Adjust", true),
 	OldPhoto, 
 	Posterize, 
 	Solarize, 
@@ -31,16 +31,39 @@ public enum ImageFilterOps {
 	RotateLeft("Rotate left 90 degrees"), 
 	RotateRight("Rotate right 90 degrees"),
 	Refresh("Reload original image"),
-	Scale;
+	Scale(true);
 	
 	private String description = null;
 	
+	private boolean coalescing = false;
+	
 	private ImageFilterOps() {
 	}
 	
+	private ImageFilterOps(boolean coalescing) {
+		this.coalescing = coalescing;
+	}
+	
 	private ImageFilterOps(String description) {
 		this.description = description;
 	}
+	
+	private ImageFilterOps(String description, boolean coalescing) {
+		this.description = description;
+		this.coalescing = coalescing;
+	}
+	
+	/**
+	 * Coalescing operations carry an absolute parameter (slider position, 
+	 * zoom level), so a newer request makes pending or running request of 
+	 * the same kind obsolete. Non coalescing operations are cumulative and 
+	 * every request must be processed.
+	 * 
+	 * @return true if newer request replaces older of the same kind
+	 */
+	public boolean isCoalescing() {
+		return coalescing;
+	}
 
 	@Override
 	public String toString() {
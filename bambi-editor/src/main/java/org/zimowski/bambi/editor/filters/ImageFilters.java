@@ -0,0 +1,168 @@
+package org.zimowski.bambi.editor.filters;
+
+import org.zimowski.bambi.jhlabs.image.NoiseFilter;
+
+import com.jhlabs.image.AbstractBufferedImageOp;
+import com.jhlabs.image.DitherFilter;
+import com.jhlabs.image.EdgeFilter;
+import com.jhlabs.image.EmbossFilter;
+import com.jhlabs.image.FlipFilter;
+import com.jhlabs.image.GrayscaleFilter;
+import com.jhlabs.image.InvertFilter;
+import com.jhlabs.image.KaleidoscopeFilter;
+import com.jhlabs.image.LightFilter;
+import com.jhlabs.image.MarbleFilter;
+import com.jhlabs.image.PosterizeFilter;
+import com.jhlabs.image.SolarizeFilter;
+import com.jhlabs.image.StampFilter;
+import com.jhlabs.image.TwirlFilter;
+
+/**
+ * Creates filters backing the one-click {@link ImageFilterOps}, configured
+ * the way editor applies them. Shared by the interactive editor and batch
+ * processing so both produce identical results. Each call returns a new,
+ * unshared filter instance.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class ImageFilters {
+
+	private ImageFilters() {
+		// static utility
+	}
+
+	/**
+	 * @param op operation to test
+	 * @return true if operation is a one-click filter which can be created
+	 * 	by {@link #createFilter(ImageFilterOps, int, int)}
+	 */
+	public static boolean isSupported(ImageFilterOps op) {
+		switch(op) {
+		case Cartoonize:
+		case Daemonize:
+		case Chessboard:
+		case Emboss:
+		case Mirror:
+		case Grayscale:
+		case Negative:
+		case Kaleidoscope:
+		case Marble:
+		case OldPhoto:
+		case Posterize:
+		case Solarize:
+		case Stamp:
+		case Twirl:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @param op one-click filter operation
+	 * @param width width of image the filter will be applied to
+	 * @param height height of image the filter will be applied to
+	 * @return configured filter
+	 * @throws IllegalArgumentException if operation is not a one-click
+	 * 	filter (color adjustments, rotation and scaling are not)
+	 */
+	public static AbstractBufferedImageOp createFilter(ImageFilterOps op, int width, int height) {
+		switch(op) {
+		case Cartoonize:
+			return cartoonize();
+		case Daemonize:
+			return new EdgeFilter();
+		case Chessboard:
+			return new DitherFilter();
+		case Emboss:
+			return new EmbossFilter();
+		case Mirror:
+			return mirror();
+		case Grayscale:
+			return new GrayscaleFilter();
+		case Negative:
+			return new InvertFilter();
+		case Kaleidoscope:
+			return kaleidoscope();
+		case Marble:
+			return new MarbleFilter();
+		case OldPhoto:
+			return oldPhoto();
+		case Posterize:
+			return new PosterizeFilter();
+		case Solarize:
+			return new SolarizeFilter();
+		case Stamp:
+			return new StampFilter();
+		case Twirl:
+			return twirl(width, height);
+		default:
+			throw new IllegalArgumentException(op.name() + " is not a filter");
+		}
+	}
+
+	private static AbstractBufferedImageOp oldPhoto() {
+		final SepiaFilter f = new SepiaFilter();
+		f.setAmount(30);
+		f.setDensity(0.1f);
+		f.setDistribution(NoiseFilter.GAUSSIAN);
+		f.setMonochrome(false);
+		return f;
+	}
+
+	private static AbstractBufferedImageOp cartoonize() {
+		final LightFilter f = new LightFilter();
+		f.setBumpShape(LightFilter.BUMPS_FROM_BEVEL);
+		f.setBumpSoftness(1.5F);
+		/*
+		try {
+			//BufferedImage bumpMap = ImageIO.read(new File("/home/zima/bumpo.jpg"));
+			BufferedImage bumpMap = ImageIO.read(new File("/home/zima/bump20x22.jpg"));
+			Function2D bumpFunc = new ImageFunction2D(bumpMap);
+			f.setBumpSource(LightFilter.BUMPS_FROM_MAP);
+			f.setBumpFunction(bumpFunc);
+			f.setBumpHeight(0.2f);
+			//f.getLights().clear();
+			//f.addLight(new LightFilter.PointLight());
+			Light light = new LightFilter.AmbientLight();
+			//light.setAzimuth(0.5f);
+			//light.setDistance(200f);
+			//f.addLight(light);
+			f.setBumpSoftness(0f);
+			//f.setViewDistance(20000f);
+			//f.setBumpShape(5); // 1-5
+			Material m = new Material();
+			m.setDiffuseColor(2);
+			m.setOpacity(0.5f);
+			//f.setMaterial(m);
+			//f.setViewDistance(0.1f);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}*/
+		return f;
+	}
+
+	private static AbstractBufferedImageOp mirror() {
+		final FlipFilter f = new FlipFilter();
+		f.setOperation(FlipFilter.FLIP_H);
+		return f;
+	}
+
+	private static AbstractBufferedImageOp twirl(int width, int height) {
+		final TwirlFilter f = new TwirlFilter();
+		f.setEdgeAction(TwirlFilter.WRAP);
+		f.setInterpolation(TwirlFilter.BILINEAR);
+		f.setRadius(Math.max(width, height)*2);
+		f.setAngle(1.2f);
+		f.setCacheInverseMap(true);
+		return f;
+	}
+
+	private static AbstractBufferedImageOp kaleidoscope() {
+		final KaleidoscopeFilter f = new KaleidoscopeFilter();
+		f.setSides(4);
+		f.setEdgeAction(2);
+		f.setCacheInverseMap(true);
+		return f;
+	}
+}
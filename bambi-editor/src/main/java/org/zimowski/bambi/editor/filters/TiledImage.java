@@ -0,0 +1,317 @@
+package org.zimowski.bambi.editor.filters;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ARGB image stored off heap as square tiles in a memory mapped file. Only
+ * the tiles being worked on need to be paged in, so images far larger than
+ * the Java heap can be loaded, filtered with {@link TiledImageOp} and
+ * previewed at reduced resolution.
+ * <p>
+ * Tiles are {@link #TILE_SIZE} pixels square and laid out row by row; each
+ * row of tiles is mapped separately when first accessed. Pixels are read and
+ * written in rectangular regions which may span any number of tiles.
+ * Distinct regions may be accessed from multiple threads concurrently.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class TiledImage implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(TiledImage.class);
+
+	/**
+	 * Width and height of a tile in pixels
+	 */
+	public static final int TILE_SIZE = 256;
+
+	private static final int TILE_PIXELS = TILE_SIZE * TILE_SIZE;
+
+	private final int width;
+
+	private final int height;
+
+	private final int tilesX;
+
+	private final int tilesY;
+
+	private final File file;
+
+	private final boolean temporary;
+
+	private final RandomAccessFile storage;
+
+	/**
+	 * tile rows mapped so far, indexed by tile row
+	 */
+	private final AtomicReferenceArray<IntBuffer> strips;
+
+
+	/**
+	 * Creates a blank (transparent black) image backed by a temporary file
+	 * which is deleted on {@link #close()}.
+	 *
+	 * @param width image width
+	 * @param height image height
+	 * @throws IOException if backing file could not be created
+	 */
+	public TiledImage(int width, int height) throws IOException {
+		this(File.createTempFile("bambi-", ".tiles"), width, height, true);
+	}
+
+	/**
+	 * Creates an image backed by given file. Existing content of the file,
+	 * if written by an image of the same size, is preserved.
+	 *
+	 * @param file backing file; kept on {@link #close()}
+	 * @param width image width
+	 * @param height image height
+	 * @throws IOException if backing file could not be opened
+	 */
+	public TiledImage(File file, int width, int height) throws IOException {
+		this(file, width, height, false);
+	}
+
+	private TiledImage(File file, int width, int height, boolean temporary) throws IOException {
+		if(width < 1 || height < 1)
+			throw new IllegalArgumentException("invalid size " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+		this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		this.tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+		if((long)tilesX * TILE_PIXELS * 4 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("image too wide: " + width);
+		this.file = file;
+		this.temporary = temporary;
+		if(temporary) file.deleteOnExit();
+		this.storage = new RandomAccessFile(file, "rw");
+		this.strips = new AtomicReferenceArray<IntBuffer>(tilesY);
+	}
+
+	/**
+	 * Decodes an image file into tiles without holding the whole image on
+	 * heap. Image is decoded in horizontal strips as tall as fit into given
+	 * buffer size. Formats which can only be decoded sequentially (JPEG, PNG)
+	 * are partially re-decoded for every strip, so larger buffers load faster.
+	 *
+	 * @param imageFile image to read
+	 * @param bufferBytes maximum heap used for a decoded strip
+	 * @return tiled copy of the image, backed by a temporary file
+	 * @throws IOException if image could not be read
+	 */
+	public static TiledImage read(File imageFile, long bufferBytes) throws IOException {
+		ImageInputStream input = ImageIO.createImageInputStream(imageFile);
+		if(input == null) throw new IOException("cannot read " + imageFile);
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if(!readers.hasNext()) throw new IOException("unsupported image: " + imageFile);
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, false);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				int stripRows = (int)Math.max(1, Math.min(height, bufferBytes / (width * 4L)));
+				log.debug("reading {}x{} in strips of {} rows", new Object[] { width, height, stripRows });
+
+				TiledImage image = new TiledImage(width, height);
+				try {
+					ImageReadParam param = reader.getDefaultReadParam();
+					int[] pixels = null;
+					for(int y = 0; y < height; y += stripRows) {
+						int rows = Math.min(stripRows, height - y);
+						param.setSourceRegion(new Rectangle(0, y, width, rows));
+						BufferedImage strip = reader.read(0, param);
+						pixels = strip.getRGB(0, 0, width, rows, pixels, 0, width);
+						image.setRGB(0, y, width, rows, pixels);
+					}
+				}
+				catch(IOException e) {
+					image.close();
+					throw e;
+				}
+				return image;
+			}
+			finally {
+				reader.dispose();
+			}
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Copies a heap image into tiles.
+	 *
+	 * @param source image to copy
+	 * @return tiled copy, backed by a temporary file
+	 * @throws IOException if backing file could not be created
+	 */
+	public static TiledImage fromImage(BufferedImage source) throws IOException {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		TiledImage image = new TiledImage(width, height);
+		int[] pixels = null;
+		for(int y = 0; y < height; y += TILE_SIZE) {
+			int rows = Math.min(TILE_SIZE, height - y);
+			pixels = source.getRGB(0, y, width, rows, pixels, 0, width);
+			image.setRGB(0, y, width, rows, pixels);
+		}
+		return image;
+	}
+
+	/**
+	 * Creates a heap image, optionally reduced, for display or export.
+	 *
+	 * @param subsampling 1 for full resolution, 2 for every other pixel in
+	 * 	each direction and so on
+	 * @return ARGB image
+	 */
+	public BufferedImage toBufferedImage(int subsampling) {
+		if(subsampling < 1) throw new IllegalArgumentException("subsampling < 1");
+		int w = (width + subsampling - 1) / subsampling;
+		int h = (height + subsampling - 1) / subsampling;
+		BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		int[] row = new int[width];
+		int[] reduced = new int[w];
+		for(int y = 0; y < h; y++) {
+			getRGB(0, y * subsampling, width, 1, row);
+			for(int x = 0; x < w; x++) reduced[x] = row[x * subsampling];
+			result.setRGB(0, y, w, 1, reduced, 0, w);
+		}
+		return result;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return number of tile columns
+	 */
+	public int getTilesX() {
+		return tilesX;
+	}
+
+	/**
+	 * @return number of tile rows
+	 */
+	public int getTilesY() {
+		return tilesY;
+	}
+
+	/**
+	 * Reads a region of pixels.
+	 *
+	 * @param x left edge of the region
+	 * @param y top edge of the region
+	 * @param w region width
+	 * @param h region height
+	 * @param pixels array to fill, row by row; allocated if null or too
+	 * 	small
+	 * @return pixels of the region as ARGB
+	 */
+	public int[] getRGB(int x, int y, int w, int h, int[] pixels) {
+		checkRegion(x, y, w, h);
+		if(pixels == null || pixels.length < w * h) pixels = new int[w * h];
+		copy(x, y, w, h, pixels, false);
+		return pixels;
+	}
+
+	/**
+	 * Writes a region of pixels.
+	 *
+	 * @param x left edge of the region
+	 * @param y top edge of the region
+	 * @param w region width
+	 * @param h region height
+	 * @param pixels ARGB values, row by row
+	 */
+	public void setRGB(int x, int y, int w, int h, int[] pixels) {
+		checkRegion(x, y, w, h);
+		copy(x, y, w, h, pixels, true);
+	}
+
+	private void checkRegion(int x, int y, int w, int h) {
+		if(x < 0 || y < 0 || w < 0 || h < 0 || x + w > width || y + h > height)
+			throw new IndexOutOfBoundsException(
+					String.format("region %d,%d %dx%d outside of %dx%d", x, y, w, h, width, height));
+	}
+
+	private void copy(int x, int y, int w, int h, int[] pixels, boolean write) {
+		for(int row = 0; row < h; row++) {
+			int py = y + row;
+			int tileY = py / TILE_SIZE;
+			IntBuffer strip = getStrip(tileY).duplicate();
+			int tileRowOffset = (py % TILE_SIZE) * TILE_SIZE;
+			int px = x;
+			int offset = row * w;
+			int end = x + w;
+			while(px < end) {
+				int tileX = px / TILE_SIZE;
+				int inTile = px % TILE_SIZE;
+				int count = Math.min(TILE_SIZE - inTile, end - px);
+				strip.position(tileX * TILE_PIXELS + tileRowOffset + inTile);
+				if(write)
+					strip.put(pixels, offset, count);
+				else
+					strip.get(pixels, offset, count);
+				px += count;
+				offset += count;
+			}
+		}
+	}
+
+	private IntBuffer getStrip(int tileY) {
+		IntBuffer strip = strips.get(tileY);
+		if(strip == null) {
+			synchronized(strips) {
+				strip = strips.get(tileY);
+				if(strip == null) {
+					long size = (long)tilesX * TILE_PIXELS * 4;
+					try {
+						strip = storage.getChannel()
+							.map(FileChannel.MapMode.READ_WRITE, tileY * size, size)
+							.order(ByteOrder.nativeOrder())
+							.asIntBuffer();
+					}
+					catch(IOException e) {
+						throw new IllegalStateException("cannot map tiles of " + file, e);
+					}
+					strips.set(tileY, strip);
+				}
+			}
+		}
+		return strip;
+	}
+
+	/**
+	 * Releases backing file; temporary files are deleted.
+	 */
+	@Override
+	public void close() throws IOException {
+		storage.close();
+		if(temporary && !file.delete()) log.debug("{} deleted on exit", file);
+	}
+}
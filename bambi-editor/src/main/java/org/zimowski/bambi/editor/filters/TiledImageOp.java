@@ -0,0 +1,132 @@
+package org.zimowski.bambi.editor.filters;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+
+import com.jhlabs.image.AbstractBufferedImageOp;
+import com.jhlabs.image.PointFilter;
+
+/**
+ * Streams a {@link TiledImage} through an ordinary {@link BufferedImageOp}
+ * one tile at a time, so that only a tile (plus its surroundings) is ever
+ * on heap. Suitable for local filters, whose output pixel depends only on
+ * source pixels within a fixed distance:
+ * <ul>
+ * <li>point filters ({@link PointFilter}), which need no surroundings</li>
+ * <li>neighbourhood filters (blur, median, convolution, despeckle, ...), for
+ * which each tile is extended by a halo at least as wide as the filter
+ * reaches, so that tile seams are invisible and result matches filtering
+ * the whole image at once</li>
+ * </ul>
+ * Filters which depend on absolute position or image dimensions (twirl,
+ * kaleidoscope, gradients) or on global statistics (equalize) are not local
+ * and produce visible tiles.
+ * <p>
+ * Tiles are processed in order on the calling thread; filters still split
+ * each tile into bands through {@link BandScheduler} if they support it.
+ * Progress and cancellation are reported per tile to the listener of the
+ * wrapped filter, if any.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class TiledImageOp {
+
+	private final BufferedImageOp op;
+
+	private final int halo;
+
+
+	/**
+	 * @param filter point filter
+	 */
+	public TiledImageOp(PointFilter filter) {
+		this(filter, 0);
+	}
+
+	/**
+	 * @param op local filter; must not change image size
+	 * @param halo number of pixels around each tile the filter reads from;
+	 * 	for example radius of a blur, times number of iterations if any
+	 */
+	public TiledImageOp(BufferedImageOp op, int halo) {
+		if(halo < 0) throw new IllegalArgumentException("halo < 0");
+		this.op = op;
+		this.halo = halo;
+	}
+
+	/**
+	 * Filters every tile of source into destination. Source and destination
+	 * may be the same image only if halo is 0.
+	 *
+	 * @param src source image
+	 * @param dst destination image of the same size
+	 * @throws FilterCancelledException if filter listener cancelled
+	 */
+	public void filter(TiledImage src, TiledImage dst) {
+		if(src.getWidth() != dst.getWidth() || src.getHeight() != dst.getHeight())
+			throw new IllegalArgumentException("source and destination sizes differ");
+		if(src == dst && halo > 0)
+			throw new IllegalArgumentException("neighbourhood filter cannot filter in place");
+
+		final int size = TiledImage.TILE_SIZE;
+		final int tilesX = src.getTilesX();
+		final int tiles = tilesX * src.getTilesY();
+		final int width = src.getWidth();
+		final int height = src.getHeight();
+
+		// progress of individual tiles is meaningless to the listener, so it
+		// is detached from the filter and notified per tile instead
+		FilterListener listener = detachListener();
+		try {
+			if(listener != null) listener.filterStart(width * height);
+			int[] pixels = null;
+			for(int tile = 0; tile < tiles; tile++) {
+				if(listener != null) {
+					if(listener.isFilterCancelled()) throw new FilterCancelledException(op.toString());
+					listener.filterProgress(Math.round(((float)tile / tiles) * 100));
+				}
+
+				int tileX = (tile % tilesX) * size;
+				int tileY = (tile / tilesX) * size;
+				int tileW = Math.min(size, width - tileX);
+				int tileH = Math.min(size, height - tileY);
+
+				// tile extended by halo, clipped to image
+				int x0 = Math.max(0, tileX - halo);
+				int y0 = Math.max(0, tileY - halo);
+				int x1 = Math.min(width, tileX + tileW + halo);
+				int y1 = Math.min(height, tileY + tileH + halo);
+				int w = x1 - x0;
+				int h = y1 - y0;
+
+				pixels = src.getRGB(x0, y0, w, h, pixels);
+				BufferedImage region = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+				region.setRGB(0, 0, w, h, pixels, 0, w);
+
+				BufferedImage filtered = op.filter(region, null);
+				if(filtered.getWidth() != w || filtered.getHeight() != h)
+					throw new IllegalStateException(op + " changes image size");
+
+				int[] result = filtered.getRGB(tileX - x0, tileY - y0, tileW, tileH, null, 0, tileW);
+				dst.setRGB(tileX, tileY, tileW, tileH, result);
+			}
+			if(listener != null) listener.filterDone();
+		}
+		finally {
+			attachListener(listener);
+		}
+	}
+
+	private FilterListener detachListener() {
+		if(!(op instanceof AbstractBufferedImageOp)) return null;
+		AbstractBufferedImageOp filter = (AbstractBufferedImageOp)op;
+		FilterListener original = filter.getFilterListener();
+		filter.setFilterListener(null);
+		return original;
+	}
+
+	private void attachListener(FilterListener original) {
+		if(op instanceof AbstractBufferedImageOp)
+			((AbstractBufferedImageOp)op).setFilterListener(original);
+	}
+}
@@ -99,6 +99,7 @@ import org.zimowski.bambi.editor.studio.cam.CamFilterOps;
 import org.zimowski.bambi.editor.studio.cam.CamInitializationObserver;
 import org.zimowski.bambi.editor.studio.cam.CamPanel;
 import org.zimowski.bambi.editor.studio.cam.FpsObserver;
+import org.zimowski.bambi.editor.studio.cam.QualityTier;
 import org.zimowski.bambi.editor.studio.cam.VideoDevice;
 import org.zimowski.bambi.editor.studio.eventbus.EventBusManager;
 import org.zimowski.bambi.editor.studio.eventbus.events.AbortFilterQueueEvent;
@@ -119,6 +120,7 @@ import org.zimowski.bambi.editor.studio.eventbus.events.SelectorTypeEvent;
 import org.zimowski.bambi.editor.studio.eventbus.events.SelectorVisibilityEvent;
 import org.zimowski.bambi.editor.studio.eventbus.events.SelectorVisibilityEvent.Command;
 import org.zimowski.bambi.editor.studio.image.EditorImageControllers;
+import org.zimowski.bambi.editor.studio.image.ImageConduit;
 import org.zimowski.bambi.editor.studio.image.ImagePanel;
 import org.zimowski.bambi.editor.studio.image.ImageTransformListener.RotateDirection;
 import org.zimowski.bambi.editor.studio.image.SelectorObserver;
@@ -127,6 +129,7 @@ import org.zimowski.bambi.jhlabs.image.ScaleFilter;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.jhlabs.image.TransformFilter;
 
 /**
  * @author Sun Microsystems (0.1)
@@ -367,7 +370,7 @@ public class Editor extends JPanel implements
 		case Picture:
 			westToolbarPane.remove(camToolbar);
 	        westToolbarPane.add(imageToolbar, BorderLayout.CENTER);
-	        enableImageControls(printImage != null);
+	        enableImageControls(printImageSource != null);
 			filmPaneContainer.setVisible(true);
 			camPanel.stopWebCamSession();
 			homeButton.setSelected(false);
@@ -428,6 +431,21 @@ public class Editor extends JPanel implements
 		return bar;
 	}
 	
+	/**
+	 * frames a burst picks the sharpest picture from
+	 */
+	private static final int BURST_FRAMES = 10;
+	
+	/**
+	 * pictures taken by a time lapse, each the sharpest of 
+	 * {@link #TIME_LAPSE_FRAMES} frames, {@link #TIME_LAPSE_INTERVAL} ms apart
+	 */
+	private static final int TIME_LAPSE_SHOTS = 10;
+	
+	private static final int TIME_LAPSE_FRAMES = 3;
+	
+	private static final long TIME_LAPSE_INTERVAL = 5000;
+	
 	private JToolBar buildCamToolbar() {
 
 		BambiToolbar bar = new BambiToolbar();
@@ -456,7 +474,15 @@ public class Editor extends JPanel implements
 		camTakePictureButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				getBus().post(new CamPictureRequestEvent());
+				CamPictureRequestEvent request;
+				if((e.getModifiers() & ActionEvent.SHIFT_MASK) != 0)
+					request = CamPictureRequestEvent.burst(BURST_FRAMES);
+				else if((e.getModifiers() & ActionEvent.CTRL_MASK) != 0)
+					request = CamPictureRequestEvent.timeLapse(
+							TIME_LAPSE_SHOTS, TIME_LAPSE_INTERVAL, TIME_LAPSE_FRAMES);
+				else
+					request = new CamPictureRequestEvent();
+				getBus().post(request);
 			}
 		});
 		bar.add(camTakePictureButton);
@@ -517,6 +543,17 @@ public class Editor extends JPanel implements
 		filterGroup.add(camGrayscaleButton);
 		bar.add(camGrayscaleButton);
 		
+		JToggleButton camDenoiseButton = new JToggleButton(ToolbarIcons.Denoise.getIcon());
+		camDenoiseButton.setToolTipText(ToolbarIcons.Denoise.getDescription());
+		camDenoiseButton.addItemListener(new ItemListener() {
+			@Override
+			public void itemStateChanged(ItemEvent e) {
+				getBus().post(new CamFilterEvent(CamFilterOps.Denoise));
+			}
+		});
+		filterGroup.add(camDenoiseButton);
+		bar.add(camDenoiseButton);
+		
 		bar.addSeparator(new EmptyBorder(8,5,8,0));
 
 		final JToggleButton camRedMirrorButton = new JToggleButton(ToolbarIcons.MirrorRed.getIcon());
@@ -624,11 +661,13 @@ public class Editor extends JPanel implements
         	
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				SwingUtilities.invokeLater(new Runnable() {
+				final ImageConduit source = printImageSource;
+				if(source == null) return;
+				source.invokeWhenApplied(new Runnable() {
 					@Override
 					public void run() {
 						PrintDialog dialog = new PrintDialog("Print");						
-						dialog.display(Editor.this.getTopLevelAncestor(), printImage);
+						dialog.display(Editor.this.getTopLevelAncestor(), source.getModifiedImage());
 					}
 				});
 			}
@@ -832,7 +871,7 @@ public class Editor extends JPanel implements
         imageToolbarButtons.add(flipButton);
         
         bar.add(Box.createHorizontalGlue());
-        enableImageControls(printImage != null);
+        enableImageControls(printImageSource != null);
 
         return bar;
 	}
@@ -1540,22 +1579,34 @@ public class Editor extends JPanel implements
 				abort = true;
 			}
 			else {
-				BufferedImage clippedImage = getClippedImage();
-				if(clippedImage != null) {
-					String loginId = null;
-					String password = null;
-					if(config.isAuthenticationRequired()) {
-						if(loginDialog == null) {
-							loginDialog = buildLoginDialog();
-						}
-						loginDialog.setLocationByPlatform(true);
-						loginDialog.setVisible(true);
-						loginId = loginDialogAdapter.getLoginId();
-						password = loginDialogAdapter.getPassword();
+				Runnable export = new Runnable() {
+					@Override
+					public void run() {
+						export();
 					}
-					if(!loginDialogAdapter.isCancelled()) {
-						exportImage(loginId, password, clippedImage);
+				};
+				// previewed color adjustment must reach full resolution first
+				if(printImageSource != null) printImageSource.invokeWhenApplied(export);
+				else export.run();
+			}
+		}
+		
+		private void export() {
+			BufferedImage clippedImage = getClippedImage();
+			if(clippedImage != null) {
+				String loginId = null;
+				String password = null;
+				if(config.isAuthenticationRequired()) {
+					if(loginDialog == null) {
+						loginDialog = buildLoginDialog();
 					}
+					loginDialog.setLocationByPlatform(true);
+					loginDialog.setVisible(true);
+					loginId = loginDialogAdapter.getLoginId();
+					password = loginDialogAdapter.getPassword();
+				}
+				if(!loginDialogAdapter.isCancelled()) {
+					exportImage(loginId, password, clippedImage);
 				}
 			}
 		}
@@ -1584,6 +1635,7 @@ public class Editor extends JPanel implements
 				int scaleWidth = getTargetWidth();
 				int scaleHeight = getTargetHeight();
 				ScaleFilter filter = new ScaleFilter(scaleWidth, scaleHeight);
+				filter.setInterpolation(TransformFilter.LANCZOS3);
 				scaledImage = filter.filter(image, null);
 			}
 			else {
@@ -1930,12 +1982,16 @@ public class Editor extends JPanel implements
 		showSelectorCheckbox.doClick();
 	}
 	
-	private BufferedImage printImage;
+	/**
+	 * source of the image to print; also waited on before export, since it 
+	 * may need to apply pending color adjustments at full resolution
+	 */
+	private ImageConduit printImageSource;
 	
 	@Subscribe
 	public void onModelLifecycle(ModelLifecycleEvent ev) {
 		ModelPhase phase = ev.getPhase();
-		printImage = ev.getImage();
+		printImageSource = ev.getImageConduit();
 		// this flag is needed to preventing sliders firing an event on reset
 		resetRgbSliders = ev.isRgbReset();
 		resetHsSliders = ev.isHsReset();
@@ -1953,7 +2009,7 @@ public class Editor extends JPanel implements
 			if(ev.isRgbReset()) resetRgbSliders();
 			if(ev.isHsReset()) resetHsSliders();
 			if(ev.isCbReset()) resetCbSliders();
-			enableImageControls(printImage != null);
+			enableImageControls(printImageSource != null);
 			break;
 		case Reset:
 			handleModelReset();
@@ -2137,9 +2193,13 @@ public class Editor extends JPanel implements
 	private static final DecimalFormat df = new DecimalFormat("#.#####");
 	
 	@Override
-	public void fpsComputed(double fpsLive, double fpsAverage) {
+	public void fpsComputed(double fpsLive, double fpsAverage, 
+			double processingMillis, QualityTier tier) {
 		CheckboxCell cell = statusBar.getFpsCell();
 		cell.setText(df.format(fpsAverage));
+		cell.setToolTipText(String.format(
+				"Frames Per Second (filters take %.1f ms per frame at %s quality)", 
+				processingMillis, tier));
 		cell.repaint();
 	}
 	
@@ -0,0 +1,257 @@
+package org.zimowski.bambi.editor.studio.cam;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openimaj.image.MBFImage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Keeps web cam filters up with the camera. Times every frame the wrapped
+ * processor filters and compares it with the time available per frame at
+ * the target frame rate. When filtering takes longer, steps down a
+ * {@link QualityTier}: first filtering a frame of half the resolution and
+ * scaling the result back up, then also filtering only every other frame
+ * and dropping the rest. Steps back up once the better tier is expected to
+ * fit in the budget with room to spare.
+ * <p>
+ * Decisions are made on a moving average of processing time, and only after
+ * the average settled at the current tier, so that a single slow frame
+ * doesn't change quality and tiers don't flap.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class AdaptiveFrameProcessor implements FrameProcessor {
+
+	private static final Logger log = LoggerFactory.getLogger(AdaptiveFrameProcessor.class);
+
+	/**
+	 * frames timed at a tier before it may change again
+	 */
+	private static final int SETTLE_FRAMES = 15;
+
+	/**
+	 * weight of the latest frame in the moving average
+	 */
+	private static final double SMOOTHING = 0.1;
+
+	/**
+	 * fraction of the budget a better tier must be expected to fit in
+	 */
+	private static final double HEADROOM = 0.7;
+
+	private final FrameProcessor processor;
+
+	/**
+	 * times filtering of frames
+	 */
+	private final Ticker ticker;
+
+	/**
+	 * milliseconds available for filtering per captured frame; 0 if frames
+	 * are not paced and quality is never adapted
+	 */
+	private final double budgetMillis;
+
+	private final AtomicLong frameCount = new AtomicLong();
+
+	private volatile QualityTier tier = QualityTier.Full;
+
+	/**
+	 * moving average of milliseconds spent per filtered frame at current
+	 * tier, including scaling
+	 */
+	private volatile double processingMillis = 0;
+
+	private int framesAtTier = 0;
+
+	/**
+	 * per worker frame of reduced resolution
+	 */
+	private final ThreadLocal<MBFImage> smallFrames = new ThreadLocal<MBFImage>();
+
+	/**
+	 * per worker frame of full width and reduced height, used when scaling
+	 * the small frame back up
+	 */
+	private final ThreadLocal<MBFImage> wideFrames = new ThreadLocal<MBFImage>();
+
+
+	/**
+	 * @param processor filter to keep up with the camera
+	 * @param targetFps frame rate to keep up with; 0 or less to always filter
+	 * 	at full quality
+	 * @param workers number of frames filtered concurrently, which
+	 * 	multiplies the time available for each
+	 */
+	public AdaptiveFrameProcessor(FrameProcessor processor, double targetFps, int workers) {
+		this(processor, targetFps, workers, Ticker.systemTicker());
+	}
+
+	/**
+	 * @param processor filter to keep up with the camera
+	 * @param targetFps frame rate to keep up with; 0 or less to always filter
+	 * 	at full quality
+	 * @param workers number of frames filtered concurrently, which
+	 * 	multiplies the time available for each
+	 * @param ticker source of nanoseconds frames are timed with
+	 */
+	public AdaptiveFrameProcessor(FrameProcessor processor, double targetFps, int workers, Ticker ticker) {
+		this.processor = processor;
+		this.ticker = ticker;
+		budgetMillis = targetFps > 0 ? 1000d / targetFps * workers : 0;
+	}
+
+	/**
+	 * {@inheritDoc} Filters frame at current tier, or skips it if the tier
+	 * filters only some of the frames.
+	 */
+	@Override
+	public boolean process(MBFImage frame) {
+		QualityTier current = tier;
+		if(frameCount.incrementAndGet() % current.getFrameInterval() != 0) return false;
+		long start = ticker.read();
+		boolean keep;
+		if(current.getDownscale() == 1) {
+			keep = processor.process(frame);
+		}
+		else {
+			MBFImage small = scratch(smallFrames,
+					(frame.getWidth() + 1) / 2, (frame.getHeight() + 1) / 2);
+			shrink(frame, small);
+			small.colourSpace = frame.colourSpace;
+			keep = processor.process(small);
+			enlarge(small, scratch(wideFrames, frame.getWidth(), small.getHeight()), frame);
+			frame.colourSpace = small.colourSpace;
+		}
+		frameProcessed(current, (ticker.read() - start) / 1e6);
+		return keep;
+	}
+
+	private synchronized void frameProcessed(QualityTier current, double millis) {
+		// a worker may finish a frame started before the tier changed
+		if(current != tier) return;
+		processingMillis = framesAtTier == 0 ? millis :
+			processingMillis + SMOOTHING * (millis - processingMillis);
+		if(++framesAtTier < SETTLE_FRAMES || budgetMillis == 0) return;
+
+		// time per captured frame, as skipped frames cost nothing
+		double load = processingMillis / current.getFrameInterval();
+		QualityTier[] tiers = QualityTier.values();
+		int index = current.ordinal();
+		if(load > budgetMillis && index < tiers.length - 1) {
+			changeTier(tiers[index + 1]);
+		}
+		else if(index > 0) {
+			QualityTier better = tiers[index - 1];
+			double expected = load * better.getLoad() / current.getLoad();
+			if(expected < budgetMillis * HEADROOM) changeTier(better);
+		}
+	}
+
+	private void changeTier(QualityTier newTier) {
+		log.debug("{} ms per frame, budget {} ms: {} -> {}", new Object[] {
+				String.format("%.1f", processingMillis), String.format("%.1f", budgetMillis),
+				tier.name(), newTier.name() });
+		tier = newTier;
+		framesAtTier = 0;
+	}
+
+	/**
+	 * @return tier frames are currently filtered at
+	 */
+	public QualityTier getTier() {
+		return tier;
+	}
+
+	/**
+	 * @return average milliseconds it takes to filter a frame at current
+	 * 	tier, including scaling
+	 */
+	public double getProcessingMillis() {
+		return processingMillis;
+	}
+
+	/**
+	 * @return milliseconds available for filtering per captured frame; 0 if
+	 * 	quality is not adapted
+	 */
+	public double getBudgetMillis() {
+		return budgetMillis;
+	}
+
+	private static MBFImage scratch(ThreadLocal<MBFImage> frames, int width, int height) {
+		MBFImage frame = frames.get();
+		if(frame == null || frame.getWidth() != width || frame.getHeight() != height) {
+			frame = new MBFImage(width, height, 3);
+			frames.set(frame);
+		}
+		return frame;
+	}
+
+	/**
+	 * Averages every 2x2 pixels of a frame into one, repeating the last row
+	 * and column of frames of odd size.
+	 */
+	private static void shrink(MBFImage from, MBFImage to) {
+		int width = from.getWidth();
+		int height = from.getHeight();
+		int smallWidth = to.getWidth();
+		for(int band = 0; band < 3; band++) {
+			float[][] src = from.getBand(band).pixels;
+			float[][] dst = to.getBand(band).pixels;
+			for(int y = 0; y < to.getHeight(); y++) {
+				float[] top = src[2 * y];
+				float[] bottom = src[Math.min(2 * y + 1, height - 1)];
+				float[] row = dst[y];
+				for(int x = 0; x < smallWidth; x++) {
+					int left = 2 * x;
+					int right = Math.min(left + 1, width - 1);
+					row[x] = (top[left] + top[right] + bottom[left] + bottom[right]) * 0.25f;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Scales filtered half resolution frame back up, bilinear with centers
+	 * of pixels aligned: every output pixel blends its nearest source pixel
+	 * with weight of 3/4 and the next nearest with 1/4, in each direction.
+	 *
+	 * @param from half resolution frame
+	 * @param wide scratch frame of full width and half height
+	 * @param to full resolution frame
+	 */
+	private static void enlarge(MBFImage from, MBFImage wide, MBFImage to) {
+		int smallWidth = from.getWidth();
+		int smallHeight = from.getHeight();
+		int width = to.getWidth();
+		int height = to.getHeight();
+		for(int band = 0; band < 3; band++) {
+			float[][] src = from.getBand(band).pixels;
+			float[][] mid = wide.getBand(band).pixels;
+			float[][] dst = to.getBand(band).pixels;
+			for(int y = 0; y < smallHeight; y++)
+				enlargeRow(src[y], smallWidth, mid[y], width);
+			for(int y = 0; y < height; y++) {
+				int nearest = y >> 1;
+				int next = (y & 1) == 0 ? Math.max(nearest - 1, 0) : Math.min(nearest + 1, smallHeight - 1);
+				float[] near = mid[nearest];
+				float[] far = mid[next];
+				float[] row = dst[y];
+				for(int x = 0; x < width; x++)
+					row[x] = 0.75f * near[x] + 0.25f * far[x];
+			}
+		}
+	}
+
+	private static void enlargeRow(float[] from, int smallWidth, float[] to, int width) {
+		for(int x = 0; x < width; x++) {
+			int nearest = x >> 1;
+			int next = (x & 1) == 0 ? Math.max(nearest - 1, 0) : Math.min(nearest + 1, smallWidth - 1);
+			to[x] = 0.75f * from[nearest] + 0.25f * from[next];
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package org.zimowski.bambi.editor.studio.cam;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openimaj.image.MBFImage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zimowski.bambi.editor.studio.eventbus.EventBusManager;
+import org.zimowski.bambi.editor.studio.eventbus.events.CamPictureRequestEvent;
+import org.zimowski.bambi.editor.studio.eventbus.events.CamPictureTakenEvent;
+
+/**
+ * Takes pictures of live video as {@link CamPictureRequestEvent} asks:
+ * single pictures, bursts at full frame rate and time lapse series. Tapped
+ * into the capture stage of {@link FramePipeline}, so a burst sees every
+ * frame the device delivers, whatever the filters and the display drop.
+ * Frames of a shot are copied into a ring of frames allocated ahead of time
+ * and reused from shot to shot, and scored for sharpness as they arrive;
+ * once the shot has all its frames, the sharpest one is handed over to a
+ * worker thread, which runs it through the filter at full quality and posts
+ * it as {@link CamPictureTakenEvent}, which gets it saved in the background.
+ * So a shaky hand or a blink of autofocus costs a frame rather than the
+ * picture, and a slow filter costs no captured frames. The ring swaps in a
+ * spare frame for the one handed over, which becomes spare once posted.
+ * <p>
+ * Frames are fed from the capture thread; requests may come from any
+ * thread. A request replaces the one in progress, if any, at the next frame.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class BurstCapture implements FrameTap {
+
+	private static final Logger log = LoggerFactory.getLogger(BurstCapture.class);
+
+	/**
+	 * filters pictures, one at a time so they are posted in order
+	 */
+	private static final Executor defaultFilterer =
+			Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "campic-filter");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final FrameProcessor processor;
+
+	private final Executor filterer;
+
+	/**
+	 * frames of pictures already posted, to swap into the ring
+	 */
+	private final Queue<MBFImage> spares = new ConcurrentLinkedQueue<MBFImage>();
+
+	/**
+	 * request to start with the next frame
+	 */
+	private final AtomicReference<CamPictureRequestEvent> pending =
+			new AtomicReference<CamPictureRequestEvent>();
+
+	/**
+	 * request being taken; null if idle
+	 */
+	private CamPictureRequestEvent active;
+
+	/**
+	 * frames of the current shot
+	 */
+	private MBFImage[] ring = new MBFImage[0];
+
+	private final double[] scores;
+
+	/**
+	 * number of frames of the current shot captured so far
+	 */
+	private int captured;
+
+	private int shotsLeft;
+
+	/**
+	 * time the current or next shot starts, in milliseconds
+	 */
+	private long shotTime;
+
+
+	/**
+	 * @param maxFramesPerShot largest number of frames a shot may pick from;
+	 * 	requests for more are capped
+	 * @param processor filter to run on pictures, as captured frames are
+	 * 	not filtered yet; null to take them as they are
+	 */
+	public BurstCapture(int maxFramesPerShot, FrameProcessor processor) {
+		this(maxFramesPerShot, processor, defaultFilterer);
+	}
+
+	/**
+	 * @param maxFramesPerShot largest number of frames a shot may pick from;
+	 * 	requests for more are capped
+	 * @param processor filter to run on pictures, as captured frames are
+	 * 	not filtered yet; null to take them as they are
+	 * @param filterer runs filter on pictures and posts them; should run 
+	 * 	one task at a time for pictures to be posted in order
+	 */
+	public BurstCapture(int maxFramesPerShot, FrameProcessor processor, Executor filterer) {
+		scores = new double[maxFramesPerShot];
+		this.processor = processor;
+		this.filterer = filterer;
+	}
+
+	/**
+	 * @param request pictures to take, starting with the next frame
+	 */
+	public void request(CamPictureRequestEvent request) {
+		pending.set(request);
+	}
+
+	/**
+	 * Feeds next captured frame. Returns right away when no pictures are
+	 * being taken.
+	 */
+	@Override
+	public void frameCaptured(MBFImage frame, long timestamp) {
+		CamPictureRequestEvent request = pending.getAndSet(null);
+		if(request != null) start(request, frame, timestamp);
+		if(active == null || timestamp < shotTime) return;
+
+		MBFImage copy = ring[captured];
+		FramePipeline.copy(frame, copy);
+		copy.colourSpace = frame.colourSpace;
+		scores[captured++] = getFramesPerShot() > 1 ? FrameKernels.sharpness(copy) : 0;
+		if(captured < getFramesPerShot()) return;
+
+		int best = 0;
+		for(int x = 1; x < captured; x++)
+			if(scores[x] > scores[best]) best = x;
+		log.debug("shot {}: frame {} of {} sharpest ({})", new Object[] {
+				active.getShots() - shotsLeft + 1, best + 1, captured, scores[best] });
+		MBFImage picture = ring[best];
+		if(processor == null) {
+			pictureTaken(picture);
+		}
+		else {
+			ring[best] = takeSpare(picture.getWidth(), picture.getHeight());
+			filter(picture);
+		}
+
+		captured = 0;
+		if(--shotsLeft == 0) {
+			active = null;
+		}
+		else {
+			// next shot is due an interval after this one was; one running
+			// late doesn't bring on catch up shots
+			shotTime += active.getIntervalMillis();
+			if(shotTime < timestamp) shotTime = timestamp;
+		}
+	}
+
+	/**
+	 * Filters picture on the worker and posts it, then keeps the frame as 
+	 * a spare.
+	 */
+	private void filter(final MBFImage picture) {
+		filterer.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					processor.process(picture);
+					pictureTaken(picture);
+				}
+				finally {
+					spares.offer(picture);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return spare frame of given size; new one if there is none
+	 */
+	private MBFImage takeSpare(int width, int height) {
+		MBFImage spare;
+		while((spare = spares.poll()) != null) {
+			// spares of another resolution are left to the collector
+			if(spare.getWidth() == width && spare.getHeight() == height) return spare;
+		}
+		return new MBFImage(width, height, 3);
+	}
+
+	/**
+	 * Posts picture to be saved. Called on the filtering worker, or on the 
+	 * capture thread when there is no filter.
+	 *
+	 * @param picture sharpest frame of a shot, filtered; reused once this
+	 * 	method returns
+	 */
+	protected void pictureTaken(MBFImage picture) {
+		EventBusManager.getInstance().getBus().post(new CamPictureTakenEvent(picture));
+	}
+
+	private void start(CamPictureRequestEvent request, MBFImage frame, long timestamp) {
+		if(active != null) log.debug("picture request replaced");
+		active = request;
+		shotsLeft = request.getShots();
+		shotTime = timestamp;
+		captured = 0;
+		int frames = getFramesPerShot();
+		if(ring.length < frames || ring[0].getWidth() != frame.getWidth() ||
+				ring[0].getHeight() != frame.getHeight()) {
+			ring = new MBFImage[frames];
+			for(int x = 0; x < frames; x++)
+				ring[x] = new MBFImage(frame.getWidth(), frame.getHeight(), 3);
+		}
+	}
+
+	private int getFramesPerShot() {
+		return Math.min(active.getFramesPerShot(), scores.length);
+	}
+}
@@ -11,6 +11,7 @@ public enum CamFilterOps {
 	Negative,
 	Solarize,
 	Grayscale,
+	Denoise("Reduce Noise"),
 	Mirror;
 	
 	private String description = null;
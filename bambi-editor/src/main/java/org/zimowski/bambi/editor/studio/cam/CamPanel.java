@@ -45,10 +45,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zimowski.bambi.editor.ViewportMouseListener;
 import org.zimowski.bambi.editor.config.Configuration;
-import org.zimowski.bambi.editor.studio.eventbus.EventBusManager;
-import org.zimowski.bambi.editor.studio.eventbus.events.CamFilterEvent;
-
-import com.google.common.eventbus.Subscribe;
 
 /**
  * Container optimized for displaying web cam video. Managed internally by 
@@ -67,6 +63,16 @@ public class CamPanel extends JPanel implements ComponentListener {
 
 	private VideoCapture vc;
 	
+	/**
+	 * captures and filters frames for the display
+	 */
+	private FramePipeline pipeline;
+	
+	/**
+	 * stands in for the capture device if set
+	 */
+	private FrameSource frameSource;
+	
 	private VideoDisplay<MBFImage> display;
 	
 	/**
@@ -177,8 +183,6 @@ public class CamPanel extends JPanel implements ComponentListener {
 		fc.setTransparencyGrid(false);
 		add(fc, BorderLayout.CENTER);
 		addComponentListener(this);
-		
-		EventBusManager.getInstance().registerWithBus(this);
 	}
 
 	/**
@@ -506,39 +510,50 @@ public class CamPanel extends JPanel implements ComponentListener {
 			@Override
 			public void run() {
 				try {
-					List<Device> devices = VideoCapture.getVideoDevices();
-					if(devices.size() == 0) {
-						throw new VideoCaptureException("No video devices found");
-					}
-					else if(camInitObserver != null) {
-						List<VideoDevice> videoDevices = 
-								new LinkedList<VideoDevice>();
-						int x = 0;
-						for(Device d : devices) {
-							VideoDevice vidDev = new VideoDevice(x++, d);
-							videoDevices.add(vidDev);
+					FrameSource source = frameSource;
+					if(source == null) {
+						List<Device> devices = VideoCapture.getVideoDevices();
+						if(devices.size() == 0) {
+							throw new VideoCaptureException("No video devices found");
 						}
-						camInitObserver.camScanComplete(videoDevices, null);
-					}
-					if(device != null) deviceIndexToUse = device.getIndex();
-					try {
-						// FIXME: once OpenIMAJ supports cam discovery pick 
-						// best (native) resolution. Right now we're guessing
-						vc = new VideoCapture(captureWidth, captureHeight, devices.get(deviceIndexToUse));
-					}
-					catch(ArrayIndexOutOfBoundsException ex) {
-						// should not happen ..
-						log.error(ex.getMessage());
-						throw new VideoCaptureException("Problem selecting device");
-					}
-					catch(IndexOutOfBoundsException ex) {
-						// will happen if usb device is unplugged
-						log.error(ex.getMessage());
-						throw new VideoCaptureException("Cannot access " + device.getName());
+						else if(camInitObserver != null) {
+							List<VideoDevice> videoDevices = 
+									new LinkedList<VideoDevice>();
+							int x = 0;
+							for(Device d : devices) {
+								VideoDevice vidDev = new VideoDevice(x++, d);
+								videoDevices.add(vidDev);
+							}
+							camInitObserver.camScanComplete(videoDevices, null);
+						}
+						if(device != null) deviceIndexToUse = device.getIndex();
+						try {
+							// FIXME: once OpenIMAJ supports cam discovery pick 
+							// best (native) resolution. Right now we're guessing
+							vc = new VideoCapture(captureWidth, captureHeight, devices.get(deviceIndexToUse));
+						}
+						catch(ArrayIndexOutOfBoundsException ex) {
+							// should not happen ..
+							log.error(ex.getMessage());
+							throw new VideoCaptureException("Problem selecting device");
+						}
+						catch(IndexOutOfBoundsException ex) {
+							// will happen if usb device is unplugged
+							log.error(ex.getMessage());
+							throw new VideoCaptureException("Cannot access " + device.getName());
+						}
+						source = new CaptureFrameSource(vc);
 					}
 					Dimension dim = new Dimension(getWidth(), getHeight());
 					fc.setPreferredSize(dim);
-					display = new VideoDisplay<MBFImage>(vc, null, fc);
+					int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+					AdaptiveFrameProcessor processor = 
+							new AdaptiveFrameProcessor(fc, source.getFPS(), workers);
+					fc.setAdaptiveProcessor(processor);
+					pipeline = new FramePipeline(source, processor, workers);
+					pipeline.setFrameTap(fc.getPictureTap());
+					pipeline.start();
+					display = new VideoDisplay<MBFImage>(pipeline, null, fc);
 					display.addVideoListener(fc);
 					display.addVideoListener(new VideoDisplayListener<MBFImage>() {
 
@@ -581,13 +596,27 @@ public class CamPanel extends JPanel implements ComponentListener {
 			display.close(); // kills the video carrying thread
 			display = null;
 		}
-		if(vc != null) {
-			log.debug("cleaning up video capture ..");
-			vc.stopCapture(); // closes the web cam device
+		if(pipeline != null) {
+			log.debug("cleaning up pipeline ..");
+			pipeline.close(); // closes the web cam device
+			pipeline = null;
 			vc = null;
 		}
 	}
 
+	/**
+	 * Replaces capture device with another source of frames, such as 
+	 * {@link SyntheticFrameSource} or {@link FileFrameSource}, for sessions 
+	 * started afterwards. Handy for testing filters without a web cam. The 
+	 * source is closed along with the session, so a new one must be set 
+	 * before the next session.
+	 * 
+	 * @param source frames to display; null to capture from device again
+	 */
+	public void setFrameSource(FrameSource source) {
+		frameSource = source;
+	}
+
 	/**
 	 * {@inheritDoc} This implementation will only set layout manager if none 
 	 * has been set yet, otherwise it ignores the request and logs a warning.
@@ -623,23 +652,4 @@ public class CamPanel extends JPanel implements ComponentListener {
 	public void setFpsObserver(FpsObserver observer) {
 		fc.setFpsObserver(observer);
 	}
-	
-	@Subscribe
-	public void onFilter(CamFilterEvent ev) {
-		CamFilterOps operation = ev.getOperation();
-		int oldWidth = captureWidth;
-		switch(operation) {
-		case Canny:
-			captureWidth = 320;
-			captureHeight = 240;
-			break;
-		default:
-			captureWidth = 1024;
-			captureHeight = 768;
-		}
-		if(oldWidth != captureWidth) {
-			stopWebCamSession();
-			startWebCamSession(null);
-		}
-	}
-}
\ No newline at end of file
+}
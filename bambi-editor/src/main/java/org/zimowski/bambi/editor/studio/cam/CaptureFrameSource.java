@@ -0,0 +1,57 @@
+package org.zimowski.bambi.editor.studio.cam;
+
+import org.openimaj.image.MBFImage;
+import org.openimaj.video.capture.VideoCapture;
+
+/**
+ * Reads frames from a web cam device. {@link VideoCapture} hands out the
+ * same image for every frame, overwriting it as the next frame arrives, so
+ * frames are copied out before it is read again.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class CaptureFrameSource implements FrameSource {
+
+	private final VideoCapture capture;
+
+	private volatile boolean closed = false;
+
+
+	/**
+	 * @param capture open capture session; stopped when the source is closed
+	 */
+	public CaptureFrameSource(VideoCapture capture) {
+		this.capture = capture;
+	}
+
+	@Override
+	public int getWidth() {
+		return capture.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+		return capture.getHeight();
+	}
+
+	@Override
+	public double getFPS() {
+		return capture.getFPS();
+	}
+
+	@Override
+	public boolean read(MBFImage frame) {
+		if(closed) return false;
+		MBFImage next = capture.getNextFrame();
+		if(closed || next == null) return false;
+		FramePipeline.copy(next, frame);
+		return true;
+	}
+
+	@Override
+	public void close() {
+		if(closed) return;
+		closed = true;
+		capture.stopCapture();
+	}
+}
@@ -0,0 +1,77 @@
+package org.zimowski.bambi.editor.studio.cam;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.openimaj.image.ImageUtilities;
+import org.openimaj.image.MBFImage;
+
+/**
+ * Stands in for a camera by playing back still images, such as frames
+ * recorded from a real device, in a loop. All images are loaded and scaled
+ * to the size of the first one up front, so playback costs no more than a
+ * copy per frame.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class FileFrameSource extends PacedFrameSource {
+
+	private final List<MBFImage> frames;
+
+	private final boolean loop;
+
+
+	/**
+	 * @param files image files to play, in order
+	 * @param fps frames per second to deliver; 0 delivers frames as fast as
+	 * 	they are read
+	 * @param loop true to start over after the last file; false to end
+	 * @throws IOException if any of the files cannot be read as an image
+	 */
+	public FileFrameSource(List<File> files, double fps, boolean loop) throws IOException {
+		this(load(files), fps, loop);
+	}
+
+	private FileFrameSource(BufferedImage[] images, double fps, boolean loop) {
+		super(images[0].getWidth(), images[0].getHeight(), fps);
+		this.loop = loop;
+		frames = new ArrayList<MBFImage>(images.length);
+		for(BufferedImage image : images)
+			frames.add(ImageUtilities.createMBFImage(scale(image, getWidth(), getHeight()), false));
+	}
+
+	private static BufferedImage[] load(List<File> files) throws IOException {
+		if(files.isEmpty()) throw new IllegalArgumentException("no frames");
+		BufferedImage[] images = new BufferedImage[files.size()];
+		int x = 0;
+		for(File file : files) {
+			BufferedImage image = ImageIO.read(file);
+			if(image == null) throw new IOException("not an image: " + file);
+			images[x++] = image;
+		}
+		return images;
+	}
+
+	private static BufferedImage scale(BufferedImage image, int width, int height) {
+		BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = rgb.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(image, 0, 0, width, height, null);
+		g.dispose();
+		return rgb;
+	}
+
+	@Override
+	protected boolean render(MBFImage frame, long index) {
+		if(!loop && index >= frames.size()) return false;
+		FramePipeline.copy(frames.get((int)(index % frames.size())), frame);
+		return true;
+	}
+}
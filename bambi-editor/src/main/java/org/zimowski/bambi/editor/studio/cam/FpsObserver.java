@@ -14,7 +14,11 @@ public interface FpsObserver {
 	 * @param fpsLive most recently calculated live value
 	 * @param fpsAverage most recently calculated average fps over a 
 	 * 	historical sample 
-	 * 
+	 * @param processingMillis average time in milliseconds filters take per 
+	 * 	frame
+	 * @param tier quality filters currently run at to keep up with the 
+	 * 	camera
 	 */
-	public void fpsComputed(double fpsLive, double fpsAverage);
+	public void fpsComputed(double fpsLive, double fpsAverage, 
+			double processingMillis, QualityTier tier);
 }
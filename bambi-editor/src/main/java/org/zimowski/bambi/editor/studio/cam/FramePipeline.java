@@ -0,0 +1,410 @@
+package org.zimowski.bambi.editor.studio.cam;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openimaj.image.MBFImage;
+import org.openimaj.image.colour.ColourSpace;
+import org.openimaj.video.Video;
+import org.openimaj.video.VideoDisplay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Web cam video split into capture, process and render stages, each on its
+ * own threads, so that a slow filter no longer holds up reading the device
+ * and painting the screen. A capture thread reads the {@link FrameSource}
+ * into a ring of captured frames; a pool of workers takes frames from there,
+ * runs the {@link FrameProcessor} on them and puts them into a ring of
+ * processed frames; rendering is left to {@link VideoDisplay}, which reads
+ * the pipeline as any other {@link Video}. A {@link FrameTap} may look at
+ * every captured frame before it goes on to be processed.
+ * <p>
+ * Rings drop their oldest frame when full, so a stage which falls behind
+ * sees the most recent frames rather than a growing backlog. Workers may
+ * finish frames out of order; a frame older than the last one rendered is
+ * dropped too. All frames are allocated up front and recycled, so a running
+ * pipeline doesn't allocate per frame.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class FramePipeline extends Video<MBFImage> {
+
+	private static final Logger log = LoggerFactory.getLogger(FramePipeline.class);
+
+	/**
+	 * frames the capture ring holds; short so that workers get fresh frames
+	 */
+	private static final int CAPTURE_RING_SIZE = 2;
+
+	/**
+	 * frames the processed ring holds; short to keep display latency low
+	 */
+	private static final int PROCESSED_RING_SIZE = 2;
+
+	/**
+	 * {@link VideoDisplay} renders a frame after it fetched the next one, so
+	 * the last two frames handed out are still in use
+	 */
+	private static final int FRAMES_HELD_BY_DISPLAY = 2;
+
+	/**
+	 * Frame of the pipeline along with the order in which it was captured.
+	 */
+	private static class Frame {
+
+		final MBFImage image;
+
+		long sequence;
+
+		/**
+		 * capture time in milliseconds since pipeline start
+		 */
+		long timestamp;
+
+		Frame(int width, int height) {
+			image = new MBFImage(width, height, ColourSpace.RGB);
+		}
+	}
+
+	private final FrameSource source;
+
+	private final FrameProcessor processor;
+
+	private volatile FrameTap tap;
+
+	private final int workerCount;
+
+	private final FrameRing<Frame> free;
+
+	private final FrameRing<Frame> captured;
+
+	private final FrameRing<Frame> processed;
+
+	/**
+	 * frames most recently handed out by {@link #getNextFrame()}, newest
+	 * first
+	 */
+	private final Frame[] held = new Frame[FRAMES_HELD_BY_DISPLAY];
+
+	private Thread captureThread;
+
+	private Thread[] workerThreads;
+
+	/**
+	 * workers yet to finish; the last one closes the processed ring
+	 */
+	private int workersRunning;
+
+	private volatile boolean closed = false;
+
+	private long startTime;
+
+	private final AtomicLong capturedCount = new AtomicLong();
+
+	private final AtomicLong processedCount = new AtomicLong();
+
+	/**
+	 * frames the processor chose not to display
+	 */
+	private final AtomicLong skippedCount = new AtomicLong();
+
+	/**
+	 * frames dropped by the display stage for being older than the frame
+	 * already rendered
+	 */
+	private final AtomicLong staleCount = new AtomicLong();
+
+
+	/**
+	 * Creates pipeline with a worker per core, leaving one core for capture
+	 * and display.
+	 *
+	 * @param source where frames come from
+	 * @param processor filter to run on every frame
+	 */
+	public FramePipeline(FrameSource source, FrameProcessor processor) {
+		this(source, processor, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	}
+
+	/**
+	 * @param source where frames come from
+	 * @param processor filter to run on every frame
+	 * @param workers number of threads processing frames
+	 */
+	public FramePipeline(FrameSource source, FrameProcessor processor, int workers) {
+		if(workers < 1) throw new IllegalArgumentException("workers " + workers);
+		this.source = source;
+		this.processor = processor;
+		workerCount = workersRunning = workers;
+		captured = new FrameRing<Frame>(CAPTURE_RING_SIZE);
+		processed = new FrameRing<Frame>(PROCESSED_RING_SIZE);
+		// one more frame being read by the capture thread
+		int poolSize = CAPTURE_RING_SIZE + workers + PROCESSED_RING_SIZE +
+				FRAMES_HELD_BY_DISPLAY + 1;
+		free = new FrameRing<Frame>(poolSize);
+		for(int x = 0; x < poolSize; x++)
+			free.offer(new Frame(source.getWidth(), source.getHeight()));
+	}
+
+	/**
+	 * @param tap observer of every captured frame, before it is processed 
+	 * 	or dropped; null for none
+	 */
+	public void setFrameTap(FrameTap tap) {
+		this.tap = tap;
+	}
+
+	/**
+	 * Starts capture and worker threads. Frames become available from
+	 * {@link #getNextFrame()} shortly after.
+	 */
+	public void start() {
+		startTime = System.currentTimeMillis();
+		captureThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				capture();
+			}
+		}, "cam-capture");
+		captureThread.setDaemon(true);
+		workerThreads = new Thread[workerCount];
+		for(int x = 0; x < workerCount; x++) {
+			workerThreads[x] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					process();
+				}
+			}, "cam-worker-" + x);
+			workerThreads[x].setDaemon(true);
+			workerThreads[x].start();
+		}
+		captureThread.start();
+		log.debug("started with {} workers", workerCount);
+	}
+
+	private void capture() {
+		long sequence = 0;
+		try {
+			while(!closed) {
+				Frame frame = free.take();
+				if(frame == null) break;
+				if(!source.read(frame.image)) {
+					free.offer(frame);
+					break;
+				}
+				frame.sequence = sequence++;
+				frame.timestamp = System.currentTimeMillis() - startTime;
+				capturedCount.incrementAndGet();
+				tap(frame);
+				recycle(captured.offer(frame));
+			}
+		}
+		catch(InterruptedException e) { /* closed */ }
+		catch(RuntimeException e) {
+			// capture devices signal a lost stream by throwing
+			if(!closed) log.error("capture failed", e);
+		}
+		// no more input: let workers drain what was captured, then end
+		captured.close();
+	}
+
+	private void tap(Frame frame) {
+		FrameTap tap = this.tap;
+		if(tap == null) return;
+		try {
+			tap.frameCaptured(frame.image, frame.timestamp);
+		}
+		catch(RuntimeException e) {
+			log.error("frame {} not tapped: {}", frame.sequence, e.getMessage());
+		}
+	}
+
+	private void process() {
+		try {
+			Frame frame;
+			while((frame = captured.take()) != null) {
+				boolean keep = true;
+				try {
+					keep = processor.process(frame.image);
+				}
+				catch(RuntimeException e) {
+					log.error("frame {} not processed: {}", frame.sequence, e.getMessage());
+				}
+				processedCount.incrementAndGet();
+				if(keep) {
+					recycle(processed.offer(frame));
+				}
+				else {
+					skippedCount.incrementAndGet();
+					recycle(frame);
+				}
+			}
+		}
+		catch(InterruptedException e) { /* closed */ }
+		if(workersFinished()) processed.close();
+	}
+
+	/**
+	 * @return true if calling worker is the last one to finish
+	 */
+	private synchronized boolean workersFinished() {
+		return --workersRunning == 0;
+	}
+
+	private void recycle(Frame frame) {
+		if(frame != null) free.offer(frame);
+	}
+
+	/**
+	 * Waits for the next processed frame. The frame stays valid until
+	 * {@value #FRAMES_HELD_BY_DISPLAY} more frames were read; listeners
+	 * wishing to keep it longer must copy it. Meant to be called by a single
+	 * display thread.
+	 *
+	 * @return next frame, or null once the source ended or the pipeline
+	 * 	was closed
+	 */
+	@Override
+	public MBFImage getNextFrame() {
+		if(closed) return null;
+		Frame next;
+		try {
+			while((next = processed.take()) != null) {
+				Frame last = held[0];
+				if(last == null || next.sequence > last.sequence) break;
+				staleCount.incrementAndGet();
+				recycle(next);
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		if(next == null) return null;
+		synchronized(held) {
+			recycle(held[held.length - 1]);
+			System.arraycopy(held, 0, held, 1, held.length - 1);
+			held[0] = next;
+			currentFrame++;
+		}
+		return next.image;
+	}
+
+	@Override
+	public MBFImage getCurrentFrame() {
+		synchronized(held) {
+			return held[0] == null ? null : held[0].image;
+		}
+	}
+
+	@Override
+	public int getWidth() {
+		return source.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+		return source.getHeight();
+	}
+
+	@Override
+	public long getTimeStamp() {
+		synchronized(held) {
+			return held[0] == null ? 0 : held[0].timestamp;
+		}
+	}
+
+	@Override
+	public double getFPS() {
+		return source.getFPS();
+	}
+
+	@Override
+	public boolean hasNextFrame() {
+		return !closed;
+	}
+
+	/**
+	 * @return -1 as live video has no length
+	 */
+	@Override
+	public long countFrames() {
+		return -1;
+	}
+
+	/**
+	 * Live video cannot be rewound; does nothing.
+	 */
+	@Override
+	public void reset() {
+	}
+
+	/**
+	 * Stops all threads and closes the frame source. Blocked
+	 * {@link #getNextFrame()} returns null.
+	 */
+	@Override
+	public void close() {
+		if(closed) return;
+		closed = true;
+		source.close();
+		free.close();
+		captured.close();
+		processed.close();
+		if(captureThread != null) captureThread.interrupt();
+		if(workerThreads != null)
+			for(Thread worker : workerThreads) worker.interrupt();
+		log.debug("closed: {}", this);
+	}
+
+	/**
+	 * @return number of frames read from the source so far
+	 */
+	public long getCapturedCount() {
+		return capturedCount.get();
+	}
+
+	/**
+	 * @return number of frames which went through the processor so far
+	 */
+	public long getProcessedCount() {
+		return processedCount.get();
+	}
+
+	/**
+	 * @return number of frames dropped so far by any of the stages for
+	 * 	not keeping up, including frames skipped by the processor
+	 */
+	public long getDroppedCount() {
+		return captured.getDroppedCount() + processed.getDroppedCount() + 
+				staleCount.get() + skippedCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("captured %d, processed %d, dropped %d",
+				getCapturedCount(), getProcessedCount(), getDroppedCount());
+	}
+
+	/**
+	 * Copies pixels between frames of the same size without allocating.
+	 *
+	 * @param from frame to copy
+	 * @param to frame to overwrite
+	 */
+	public static void copy(MBFImage from, MBFImage to) {
+		int width = from.getWidth();
+		int height = from.getHeight();
+		if(to.getWidth() != width || to.getHeight() != height)
+			throw new IllegalArgumentException(String.format(
+					"%dx%d frame cannot be copied to %dx%d",
+					width, height, to.getWidth(), to.getHeight()));
+		int bands = Math.min(from.numBands(), to.numBands());
+		for(int band = 0; band < bands; band++) {
+			float[][] src = from.getBand(band).pixels;
+			float[][] dst = to.getBand(band).pixels;
+			for(int y = 0; y < height; y++)
+				System.arraycopy(src[y], 0, dst[y], 0, width);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package org.zimowski.bambi.editor.studio.cam;
+
+import org.openimaj.image.MBFImage;
+
+/**
+ * Processing stage of a {@link FramePipeline}, such as the web cam filters
+ * of {@link VideoFrameComponent}. Workers of the pipeline call the
+ * processor concurrently, each with a different frame, so implementations
+ * must keep any per frame scratch state per thread.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public interface FrameProcessor {
+
+	/**
+	 * @param frame RGB frame to process in place
+	 * @return true if frame should be displayed; false to drop it, for 
+	 * 	processors which cannot keep up with every frame
+	 */
+	public boolean process(MBFImage frame);
+}
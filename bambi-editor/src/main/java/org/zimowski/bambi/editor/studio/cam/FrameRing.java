@@ -0,0 +1,124 @@
+package org.zimowski.bambi.editor.studio.cam;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded FIFO handing frames from one {@link FramePipeline} stage to the
+ * next. A full ring never blocks the producer: the oldest frame is dropped
+ * to make room, since for live video a fresh frame is always worth more
+ * than a stale one. Dropped frames are returned to the producer so that
+ * their buffers can be reused.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class FrameRing<T> {
+
+	private final Object[] items;
+
+	private int head = 0;
+
+	private int count = 0;
+
+	private long dropped = 0;
+
+	private boolean closed = false;
+
+
+	/**
+	 * @param capacity maximum number of frames held
+	 */
+	public FrameRing(int capacity) {
+		if(capacity < 1) throw new IllegalArgumentException("capacity " + capacity);
+		items = new Object[capacity];
+	}
+
+	/**
+	 * Adds a frame, dropping the oldest if the ring is full. Never blocks.
+	 *
+	 * @param item frame to add
+	 * @return frame dropped to make room, the given frame if the ring was
+	 * 	closed, or null if nothing was dropped
+	 */
+	public synchronized T offer(T item) {
+		if(closed) return item;
+		T oldest = null;
+		if(count == items.length) {
+			oldest = remove();
+			dropped++;
+		}
+		items[(head + count) % items.length] = item;
+		count++;
+		notify();
+		return oldest;
+	}
+
+	/**
+	 * Removes the oldest frame, waiting for one if the ring is empty.
+	 *
+	 * @return oldest frame, or null once the ring was closed and drained
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized T take() throws InterruptedException {
+		while(count == 0 && !closed) wait();
+		return count == 0 ? null : remove();
+	}
+
+	/**
+	 * @return oldest frame, or null if the ring is empty
+	 */
+	public synchronized T poll() {
+		return count == 0 ? null : remove();
+	}
+
+	private T remove() {
+		@SuppressWarnings("unchecked")
+		T item = (T)items[head];
+		items[head] = null;
+		head = (head + 1) % items.length;
+		count--;
+		return item;
+	}
+
+	/**
+	 * Stops accepting frames and wakes up waiting consumers. Frames already
+	 * in the ring can still be taken.
+	 */
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Closes the ring and empties it.
+	 *
+	 * @return frames that were in the ring, oldest first
+	 */
+	public synchronized List<T> drain() {
+		close();
+		List<T> remaining = new ArrayList<T>(count);
+		while(count > 0) remaining.add(remove());
+		return remaining;
+	}
+
+	/**
+	 * @return number of frames currently held
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * @return maximum number of frames held
+	 */
+	public int getCapacity() {
+		return items.length;
+	}
+
+	/**
+	 * @return number of frames dropped to make room so far
+	 */
+	public synchronized long getDroppedCount() {
+		return dropped;
+	}
+}
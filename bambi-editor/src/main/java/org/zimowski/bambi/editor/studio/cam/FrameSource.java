@@ -0,0 +1,47 @@
+package org.zimowski.bambi.editor.studio.cam;
+
+import org.openimaj.image.MBFImage;
+
+/**
+ * Supplies RGB video frames to a {@link FramePipeline}. Implemented over a
+ * capture device by {@link CaptureFrameSource}; {@link SyntheticFrameSource}
+ * and {@link FileFrameSource} stand in for a camera when testing and
+ * benchmarking. A source is read by a single capture thread, and paces
+ * itself the way a camera does: {@link #read(MBFImage)} blocks until the
+ * next frame is due.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public interface FrameSource {
+
+	/**
+	 * @return width of frames in pixels
+	 */
+	public int getWidth();
+
+	/**
+	 * @return height of frames in pixels
+	 */
+	public int getHeight();
+
+	/**
+	 * @return nominal number of frames per second the source delivers
+	 */
+	public double getFPS();
+
+	/**
+	 * Copies the next frame into the given image, blocking until the frame
+	 * is available.
+	 *
+	 * @param frame RGB image of source dimensions to copy the frame into
+	 * @return true if frame was read; false if the source has no more
+	 * 	frames or was closed
+	 */
+	public boolean read(MBFImage frame);
+
+	/**
+	 * Releases the source. Blocked and subsequent reads return false. Safe
+	 * to call from any thread and more than once.
+	 */
+	public void close();
+}
@@ -0,0 +1,20 @@
+package org.zimowski.bambi.editor.studio.cam;
+
+import org.openimaj.image.MBFImage;
+
+/**
+ * Observer of frames as a {@link FramePipeline} captures them, before they
+ * are processed or any of them dropped, such as {@link BurstCapture}. Called
+ * on the capture thread, so it holds up capture for as long as it takes.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public interface FrameTap {
+
+	/**
+	 * @param frame RGB frame as read from the source; valid for the duration
+	 * 	of the call only and must not be modified
+	 * @param timestamp capture time in milliseconds since pipeline start
+	 */
+	public void frameCaptured(MBFImage frame, long timestamp);
+}
@@ -0,0 +1,92 @@
+package org.zimowski.bambi.editor.studio.cam;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openimaj.image.MBFImage;
+
+/**
+ * Frame source which generates frames itself and delivers them at a fixed
+ * rate, like a camera would. Subclasses only render frames.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public abstract class PacedFrameSource implements FrameSource {
+
+	private final int width;
+
+	private final int height;
+
+	private final double fps;
+
+	/**
+	 * when next frame is due, in {@link System#nanoTime()} units
+	 */
+	private long nextFrameTime;
+
+	private long frameIndex = 0;
+
+	private volatile boolean closed = false;
+
+
+	/**
+	 * @param width frame width
+	 * @param height frame height
+	 * @param fps frames per second to deliver; 0 delivers frames as fast as
+	 * 	they are read, for benchmarks
+	 */
+	protected PacedFrameSource(int width, int height, double fps) {
+		if(width <= 0 || height <= 0)
+			throw new IllegalArgumentException("invalid frame size " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+		this.fps = Math.max(0, fps);
+		nextFrameTime = System.nanoTime();
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public double getFPS() {
+		return fps;
+	}
+
+	@Override
+	public boolean read(MBFImage frame) {
+		if(closed) return false;
+		if(fps > 0) {
+			long now = System.nanoTime();
+			// a slow reader doesn't get a burst of frames to catch up with
+			if(nextFrameTime < now) nextFrameTime = now;
+			try {
+				TimeUnit.NANOSECONDS.sleep(nextFrameTime - now);
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			nextFrameTime += (long)(TimeUnit.SECONDS.toNanos(1) / fps);
+		}
+		if(closed) return false;
+		return render(frame, frameIndex++);
+	}
+
+	/**
+	 * @param frame RGB image of source dimensions to render into
+	 * @param index number of the frame, counting from 0
+	 * @return false if there are no more frames
+	 */
+	protected abstract boolean render(MBFImage frame, long index);
+
+	@Override
+	public void close() {
+		closed = true;
+	}
+}
@@ -0,0 +1,54 @@
+package org.zimowski.bambi.editor.studio.cam;
+
+/**
+ * Levels of quality web cam filters can run at, best first. Lower tiers
+ * trade resolution, then frame rate, for keeping up with the camera.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public enum QualityTier {
+
+	Full("Full", 1, 1),
+	Half("Half Resolution", 2, 1),
+	HalfSkipping("Half Resolution, Every Other Frame", 2, 2);
+
+	private final String description;
+
+	private final int downscale;
+
+	private final int frameInterval;
+
+	private QualityTier(String description, int downscale, int frameInterval) {
+		this.description = description;
+		this.downscale = downscale;
+		this.frameInterval = frameInterval;
+	}
+
+	/**
+	 * @return factor by which frame width and height are divided before
+	 * 	filtering
+	 */
+	public int getDownscale() {
+		return downscale;
+	}
+
+	/**
+	 * @return 1 if every frame is filtered, 2 if every other frame is
+	 */
+	public int getFrameInterval() {
+		return frameInterval;
+	}
+
+	/**
+	 * @return relative cost of filtering at this tier per captured frame,
+	 * 	1 being {@link #Full}
+	 */
+	double getLoad() {
+		return 1d / (downscale * downscale * frameInterval);
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+}
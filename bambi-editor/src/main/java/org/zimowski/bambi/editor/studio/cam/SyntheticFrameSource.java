@@ -0,0 +1,59 @@
+package org.zimowski.bambi.editor.studio.cam;
+
+import org.openimaj.image.MBFImage;
+
+/**
+ * Stands in for a camera with generated frames: horizontal color gradients
+ * scrolling one pixel per frame over a vertical ramp, so consecutive frames
+ * differ everywhere and filters see real color variety.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class SyntheticFrameSource extends PacedFrameSource {
+
+	/**
+	 * channel values of one scroll period, for each band
+	 */
+	private final float[][] waves;
+
+	/**
+	 * vertical ramp, one value per row
+	 */
+	private final float[] ramp;
+
+
+	/**
+	 * @param width frame width
+	 * @param height frame height
+	 * @param fps frames per second to deliver; 0 delivers frames as fast as
+	 * 	they are read
+	 */
+	public SyntheticFrameSource(int width, int height, double fps) {
+		super(width, height, fps);
+		waves = new float[3][width];
+		for(int band = 0; band < 3; band++)
+			for(int x = 0; x < width; x++)
+				waves[band][x] = 0.5f + 0.5f * (float)Math.sin(2 * Math.PI * (x / (double)width + band / 3d));
+		ramp = new float[height];
+		for(int y = 0; y < height; y++)
+			ramp[y] = 0.25f + 0.75f * y / height;
+	}
+
+	@Override
+	protected boolean render(MBFImage frame, long index) {
+		int width = getWidth();
+		int height = getHeight();
+		int shift = (int)(index % width);
+		for(int band = 0; band < 3; band++) {
+			float[][] pixels = frame.getBand(band).pixels;
+			float[] wave = waves[band];
+			for(int y = 0; y < height; y++) {
+				float[] row = pixels[y];
+				float scale = ramp[y];
+				for(int x = 0, i = shift; x < width; x++, i = i + 1 == width ? 0 : i + 1)
+					row[x] = wave[i] * scale;
+			}
+		}
+		return true;
+	}
+}
@@ -10,23 +10,20 @@ import java.awt.event.MouseEvent;
 import java.text.DecimalFormat;
 
 import org.openimaj.image.DisplayUtilities.ImageComponent;
-import org.openimaj.image.FImage;
 import org.openimaj.image.MBFImage;
-import org.openimaj.image.colour.ColourSpace;
 import org.openimaj.image.processing.edges.CannyEdgeDetector;
 import org.openimaj.video.VideoDisplay;
 import org.openimaj.video.VideoDisplayListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zimowski.bambi.editor.ViewportMouseListener;
+import org.zimowski.bambi.editor.filters.ConstantTimeMedian;
 import org.zimowski.bambi.editor.studio.eventbus.EventBusManager;
 import org.zimowski.bambi.editor.studio.eventbus.events.CamFilterEvent;
 import org.zimowski.bambi.editor.studio.eventbus.events.CamMirrorFilterEvent;
 import org.zimowski.bambi.editor.studio.eventbus.events.CamPictureRequestEvent;
-import org.zimowski.bambi.editor.studio.eventbus.events.CamPictureTakenEvent;
 import org.zimowski.bambi.editor.studio.eventbus.events.CamRgbFilterEvent;
 
-import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 
 /**
@@ -37,7 +34,8 @@ import com.google.common.eventbus.Subscribe;
  * 
  * @author Adam Zimowski (mrazjava)
  */
-public class VideoFrameComponent extends ImageComponent implements VideoDisplayListener<MBFImage> {
+public class VideoFrameComponent extends ImageComponent 
+	implements VideoDisplayListener<MBFImage>, FrameProcessor {
 	
 	private static final long serialVersionUID = -3761572457039762654L;
 	
@@ -63,18 +61,41 @@ public class VideoFrameComponent extends ImageComponent implements VideoDisplayL
 	
 	private static final DecimalFormat df = new DecimalFormat("#.#######");
 	
+	private static final DecimalFormat msf = new DecimalFormat("#.#");
+	
 	private boolean showFpsStats = false;
 	
 	private FpsObserver fpsObserver;
 	
-	private CamFilterOps filterOp = CamFilterOps.None;
+	/**
+	 * reports time filters take and quality they run at; null if frames are 
+	 * filtered without adapting quality
+	 */
+	private AdaptiveFrameProcessor quality;
+	
+	/*
+	 * filter settings are changed on the event bus while pipeline workers 
+	 * read them
+	 */
+	
+	private volatile CamFilterOps filterOp = CamFilterOps.None;
 	
-	private float redBand = 1f;
+	private volatile float redBand = 1f;
 	
-	private float greenBand = 1f;
+	private volatile float greenBand = 1f;
 	
-	private float blueBand = 1f;
+	private volatile float blueBand = 1f;
 
+	/**
+	 * median of 5x5 window
+	 */
+	private final ConstantTimeMedian denoiser = new ConstantTimeMedian(2);
+
+	/**
+	 * packed frame pixels for denoising, input and output, reused across 
+	 * frames by each pipeline worker
+	 */
+	private final ThreadLocal<int[][]> denoiseBuffers = new ThreadLocal<int[][]>();
 	
 	public VideoFrameComponent() {
 		super();
@@ -148,20 +169,35 @@ public class VideoFrameComponent extends ImageComponent implements VideoDisplayL
 		);
 	}
 	
-	private boolean takePicture = false;
+	/**
+	 * most frames a burst may pick the sharpest picture from
+	 */
+	private static final int MAX_BURST_FRAMES = 30;
+	
+	private final BurstCapture pictures = new BurstCapture(MAX_BURST_FRAMES, this);
 	
 	@Subscribe
 	public void onPictureRequest(CamPictureRequestEvent ev) {
-		takePicture = true;
+		pictures.request(ev);
+	}
+	
+	/**
+	 * @return tap which takes pictures of captured frames, filtered as 
+	 * 	this component filters them, when requested
+	 */
+	public FrameTap getPictureTap() {
+		return pictures;
 	}
 	
-	private boolean redMirror = false;
-	private boolean greenMirror = false;
-	private boolean blueMirror = false;
+	private volatile boolean redMirror = false;
+	private volatile boolean greenMirror = false;
+	private volatile boolean blueMirror = false;
 
+	/**
+	 * {@inheritDoc} Applies currently selected filter.
+	 */
 	@Override
-	public void beforeUpdate(MBFImage frame) {
-		if(frame == null) return;
+	public boolean process(MBFImage frame) {
 		switch(filterOp) {
 		case None: break;
 		case Rgb:
@@ -181,6 +217,9 @@ public class VideoFrameComponent extends ImageComponent implements VideoDisplayL
 		case Grayscale:
 			transformGrayScale(frame);
 			break;
+		case Denoise:
+			denoise(frame);
+			break;
 		case Mirror:
 			if(redMirror) frame.getBand(0).flipX();
 			if(greenMirror) frame.getBand(1).flipX();
@@ -188,13 +227,6 @@ public class VideoFrameComponent extends ImageComponent implements VideoDisplayL
 			break;
 		default:
 		}
-		
-		if(takePicture) {
-			EventBus bus = EventBusManager.getInstance().getBus();
-			CamPictureTakenEvent ev = new CamPictureTakenEvent(frame);
-			bus.post(ev);
-			takePicture = false;
-		}
 
 		//rgbAdjust(frame.getBand(0), 2.25f);
 		//transformGrayScale(frame);
@@ -206,262 +238,82 @@ public class VideoFrameComponent extends ImageComponent implements VideoDisplayL
 		//calculateHue(frame); 320x240 crappy
 		//mainColors(frame); // GREAT!
 		//hsFilter(frame);
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc} Frame has already been filtered by the pipeline, and 
+	 * pictures are taken as it was captured, see {@link #getPictureTap()}.
+	 */
+	@Override
+	public void beforeUpdate(MBFImage frame) {
+		// not used
 	}
 	
 	public void solarize(MBFImage in) {
-		final float threshold = 0.5f;
-		float[][] red = in.getBand(0).pixels;
-		float[][] green = in.getBand(1).pixels;
-		float[][] blue = in.getBand(2).pixels;
-		for(int y = 0; y < in.getHeight(); y++)
-			for(int x = 0; x < in.getWidth(); x++) {
-				float r = red[y][x];
-				float g = green[y][x];
-				float b = blue[y][x];
-				red[y][x] = r > threshold ? 2*(r-threshold) : 2*(threshold-r);
-				green[y][x] = g > threshold ? 2*(g-threshold) : 2*(threshold-g);
-				blue[y][x] = b > threshold ? 2*(b-threshold) : 2*(threshold-b);
-				
-				if(red[y][x] > 1f) red[y][x] = 1f;
-				if(green[y][x] > 1f) green[y][x] = 1f;
-				if(blue[y][x] > 1f) blue[y][x] = 1f;
-			}
+		FrameKernels.solarize(in);
 	}
 
 	public void calculateHue(MBFImage in) {
-		
-		if (in.colourSpace != ColourSpace.RGB && in.colourSpace != ColourSpace.RGBA)
-			throw new IllegalArgumentException("RGB or RGBA colourspace is required");
-
-		float [][] ra = in.getBand(0).pixels;
-		float [][] ga = in.getBand(1).pixels;
-		float [][] ba = in.getBand(2).pixels;
-
-		for (int rr = 0; rr < in.getHeight(); rr++) {
-			for (int c = 0; c < in.getWidth(); c++) {
-				double r = ra[rr][c];
-				double g = ga[rr][c];
-				double b = ba[rr][c];
-				double i = (r + g + b) / 3.0; 
-
-				//from Sonka, Hlavac & Boyle; p.26
-				double num = 0.5 * ((r - g) + (r - b));
-				double den = Math.sqrt( ((r-g)*(r-g)) + ((r-b)*(g-b)));
-
-				float pixel = 0f;
-				if (den != 0)
-					pixel = (float) Math.acos(num / den);
-				
-				double dpi = 2*Math.PI;
-
-				if ((b/i) > (g/i)) pixel = (float)(dpi - pixel);
-
-				//normalise to 0..1
-				pixel /= dpi;
-				
-				ra[rr][c] = ga[rr][c] = ba[rr][c] = pixel;
-			}
-		}
+		FrameKernels.hue(in);
 	}
 	
 	public void calculateSaturation(MBFImage in) {
-		if (in.colourSpace != ColourSpace.RGB && in.colourSpace != ColourSpace.RGBA)
-			throw new IllegalArgumentException("RGB or RGBA colourspace is required");
-		
-		float [][] ra = in.getBand(0).pixels;
-		float [][] ga = in.getBand(1).pixels;
-		float [][] ba = in.getBand(2).pixels;
-
-		for (int rr = 0; rr < in.getHeight(); rr++) {
-			for (int c = 0; c < in.getWidth(); c++) {
-				double r = ra[rr][c];
-				double g = ga[rr][c];
-				double b = ba[rr][c];
-
-				float pixel = (float) (1.0 - ((3.0 / (r + g + b)) * Math.min(r, Math.min(g, b))));
-				if (Float.isNaN(pixel)) pixel = 0;
-				
-				ra[rr][c] = ga[rr][c] = ba[rr][c] = pixel;
-			}
-		}
+		FrameKernels.saturation(in);
 	}
 
 	public void RGB_TO_HSV(MBFImage in) {
-		if (in.colourSpace != ColourSpace.RGB && in.colourSpace != ColourSpace.RGBA)
-			throw new IllegalArgumentException("RGB or RGBA colourspace is required");
-		
-		int width = in.getWidth();
-		int height = in.getHeight();
-		
-		MBFImage out = new MBFImage(width, height, 3);
-
-		float [][] R = in.getBand(0).pixels;
-		float [][] G = in.getBand(1).pixels;
-		float [][] B = in.getBand(2).pixels;
-
-		float [][] H = out.getBand(0).pixels;
-		float [][] S = out.getBand(1).pixels;
-		float [][] V = out.getBand(2).pixels;
-
-		for (int y = 0; y < height; y++) {
-			for (int x = 0; x < width; x++) {
-				
-				//Blue Is the dominant color
-				if((B[y][x] > G[y][x]) && (B[y][x] > R[y][x]))
-				{
-					//Value is set as the dominant color
-					V[y][x] = B[y][x];
-					if(V[y][x] != 0)
-					{
-						float min;
-						if(R[y][x] > G[y][x]) 
-							min = G[y][x];
-						else
-							min = R[y][x];
-						
-						//Delta is the difference between the most dominant color 
-						//and the least dominant color. This will be used to compute saturation.
-						float delta = V[y][x] - min;
-						if(delta != 0) { 
-							S[y][x] = (delta/V[y][x]); 
-							H[y][x] = 4 + (R[y][x] - G[y][x]) / delta; 
-						} else {
-							S[y][x] = 0;
-							H[y][x] = 4 + (R[y][x] - G[y][x]);
-						}
-						
-						//Hue is just the difference between the two least dominant 
-						//colors offset by the dominant color. That is, here 4 puts 
-						//hue in the blue range. Then red and green just tug it one 
-						//way or the other. Notice if red and green are equal, hue 
-						//will stick squarely on blue
-						H[y][x] *= 60; 
-						if(H[y][x] < 0) 
-							H[y][x] += 360;
-						
-						H[y][x] /= 360;
-					}
-					else
-					{ 
-						S[y][x] = 0; 
-						H[y][x] = 0;
-					}
-				}
-				//Green is the dominant color
-				else if(G[y][x] > R[y][x])
-				{
-					V[y][x] = G[y][x];
-					if(V[y][x] != 0)
-					{
-						float min;
-						if(R[y][x] > B[y][x]) 
-							min = B[y][x];
-						else
-							min = R[y][x];
-						
-						float delta = V[y][x] - min;
-						
-						if(delta != 0) {
-							S[y][x] = (delta/V[y][x]); 
-							H[y][x] = 2 + (B[y][x] - R[y][x]) / delta; 
-						} else { 
-							S[y][x] = 0;
-							H[y][x] = 2 + (B[y][x] - R[y][x]); 
-						}
-						H[y][x] *= 60; 
-						if(H[y][x] < 0) 
-							H[y][x] += 360;
-						
-						H[y][x] /= 360;
-					} else {
-						S[y][x] = 0;
-						H[y][x] = 0;
-					}
-				}
-				//Red is the dominant color
-				else
-				{
-					V[y][x] = R[y][x];
-					if(V[y][x] != 0)
-					{
-						float min;
-						if(G[y][x] > B[y][x]) 
-							min = B[y][x];
-						else
-							min = G[y][x];
-						
-						float delta = V[y][x] - min;
-						if(delta != 0) { 
-							S[y][x] = (delta/V[y][x]); 
-							H[y][x] = (G[y][x] - B[y][x]) / delta; 
-						} else { 
-							S[y][x] = 0;         
-							H[y][x] = (G[y][x] - B[y][x]); 
-						}
-						H[y][x] *= 60;
-
-						if(H[y][x] < 0) 
-							H[y][x] += 360;
-						H[y][x] /= 360;
-					}
-					else
-					{ 
-						S[y][x] = 0;
-						H[y][x] = 0;
-					}
-				}
-			}
-		}
-		in.getBand(0).pixels = out.getBand(0).pixels;
-		in.getBand(1).pixels = out.getBand(1).pixels;
-		in.getBand(2).pixels = out.getBand(2).pixels;
+		FrameKernels.rgbToHsv(in);
 	}
 	
 	public void RGB_TO_CIEXYZ(MBFImage in) {	
-		int height = in.getHeight();
-		int width = in.getWidth();
-		in.colourSpace = ColourSpace.CIE_XYZ;
-		
-		FImage Rb = in.getBand(0);
-		FImage Gb = in.getBand(1);
-		FImage Bb = in.getBand(2);
-		
-		for (int y=0; y<height; y++) {
-			for (int x=0; x<width; x++) {
-				float R = Rb.pixels[y][x];
-				float G = Gb.pixels[y][x];
-				float B = Bb.pixels[y][x];
-				
-				//inverse sRGB companding 
-				double r = (R <= 0.04045) ? (R / 12.92) : ( Math.pow((R + 0.055) / 1.055, 2.4));
-				double g = (G <= 0.04045) ? (G / 12.92) : ( Math.pow((G + 0.055) / 1.055, 2.4));
-				double b = (B <= 0.04045) ? (B / 12.92) : ( Math.pow((B + 0.055) / 1.055, 2.4));
-				
-				//XYZ linear transform
-				Rb.pixels[y][x] = (float) (r*0.4124564 + g*0.3575761 + b*0.1804375);
-				Gb.pixels[y][x] = (float) (r*0.2126729 + g*0.7151522 + b*0.0721750);
-				Bb.pixels[y][x] = (float) (r*0.0193339 + g*0.1191920 + b*0.9503041);
-			}
-		}
+		FrameKernels.rgbToCieXyz(in);
 	}
 	
-	private void transformGrayScale(MBFImage frame) {
-		FImage redBand = frame.getBand(0);
-		FImage greenBand = frame.getBand(1);
-		FImage blueBand = frame.getBand(2);
-		
+	/**
+	 * Removes sensor noise with a median filter. Bands are packed into 8 bit
+	 * RGB for the filter and unpacked back.
+	 * 
+	 * @param frame frame to denoise in place
+	 */
+	private void denoise(MBFImage frame) {
 		int width = frame.getWidth();
 		int height = frame.getHeight();
-		for (int y = 0; y < height; y++)
-			for (int x = 0; x < width; x++) {
-				float redPixel = redBand.getPixel(x, y);
-				float greenPixel = greenBand.getPixel(x, y);
-				float bluePixel = blueBand.getPixel(x, y);
-				float avg = (redPixel + greenPixel + bluePixel) / 3;
-				redBand.setPixel(x, y, avg);
-				greenBand.setPixel(x, y, avg);
-				blueBand.setPixel(x, y, avg);
-			}		
+		int[][] buffers = denoiseBuffers.get();
+		if(buffers == null || buffers[0].length != width * height) {
+			buffers = new int[][] { new int[width * height], new int[width * height] };
+			denoiseBuffers.set(buffers);
+		}
+		int[] denoiseIn = buffers[0];
+		int[] denoiseOut = buffers[1];
+		float[][] red = frame.getBand(0).pixels;
+		float[][] green = frame.getBand(1).pixels;
+		float[][] blue = frame.getBand(2).pixels;
+		int index = 0;
+		for(int y = 0; y < height; y++)
+			for(int x = 0; x < width; x++) {
+				denoiseIn[index++] = (toByte(red[y][x]) << 16) | 
+						(toByte(green[y][x]) << 8) | toByte(blue[y][x]);
+			}
+		denoiser.filter(denoiseIn, denoiseOut, width, height, null);
+		final float scale = 1f / 255;
+		index = 0;
+		for(int y = 0; y < height; y++)
+			for(int x = 0; x < width; x++) {
+				int rgb = denoiseOut[index++];
+				red[y][x] = ((rgb >> 16) & 0xff) * scale;
+				green[y][x] = ((rgb >> 8) & 0xff) * scale;
+				blue[y][x] = (rgb & 0xff) * scale;
+			}
+	}
+
+	private static int toByte(float value) {
+		int level = (int)(value * 255 + 0.5f);
+		return level < 0 ? 0 : level > 255 ? 255 : level;
+	}
+
+	private void transformGrayScale(MBFImage frame) {
+		FrameKernels.grayscale(frame);
 	}
 	
 	@Override
@@ -495,7 +347,8 @@ public class VideoFrameComponent extends ImageComponent implements VideoDisplayL
 		int currentSampleIndex = (int)(framesRendered % AVG_FPS_SAMPLE);
 		return new String[] {
 				"Live FSP: " + df.format(sampleFps[currentSampleIndex]), 
-				"Avg FPS: " + df.format(lastAvgFps)
+				"Avg FPS: " + df.format(lastAvgFps), 
+				"Filter: " + msf.format(getProcessingMillis()) + " ms, " + getQualityTier()
 		};
 	}
 	
@@ -534,7 +387,8 @@ public class VideoFrameComponent extends ImageComponent implements VideoDisplayL
 			framesRendered++;
 			updateAvgFps();
 			if(fpsObserver != null) {
-				fpsObserver.fpsComputed(lastFps, lastAvgFps);
+				fpsObserver.fpsComputed(lastFps, lastAvgFps, 
+						getProcessingMillis(), getQualityTier());
 			}
 		}
 		if(showFpsStats) paintFpsStats(g);
@@ -560,4 +414,22 @@ public class VideoFrameComponent extends ImageComponent implements VideoDisplayL
 	public void setFpsObserver(FpsObserver observer) {
 		fpsObserver = observer;
 	}
+	
+	/**
+	 * @param processor adaptive processor wrapping this component, whose 
+	 * 	stats should be reported along with FPS; null if there is none
+	 */
+	public void setAdaptiveProcessor(AdaptiveFrameProcessor processor) {
+		quality = processor;
+	}
+	
+	private double getProcessingMillis() {
+		AdaptiveFrameProcessor processor = quality;
+		return processor == null ? 0 : processor.getProcessingMillis();
+	}
+	
+	private QualityTier getQualityTier() {
+		AdaptiveFrameProcessor processor = quality;
+		return processor == null ? QualityTier.Full : processor.getTier();
+	}
 }
\ No newline at end of file
@@ -1,9 +1,5 @@
 package org.zimowski.bambi.editor.studio.eventbus;
 
-import static org.zimowski.bambi.editor.filters.ImageFilterOps.Blue;
-import static org.zimowski.bambi.editor.filters.ImageFilterOps.Green;
-import static org.zimowski.bambi.editor.filters.ImageFilterOps.Red;
-
 import java.util.LinkedList;
 import java.util.List;
 
@@ -27,6 +23,12 @@ import com.google.common.eventbus.Subscribe;
  * {@link SwingWorker}. This queue automatically fires event on add if it is 
  * empty and no event is executing, in all other cases event is queued and 
  * scheduled for execution based on FIFO principle.
+ * <p>
+ * Workers of {@link ImageFilterOps#isCoalescing() coalescing} operations 
+ * (sliders, zoom) carry absolute values, so a newly added worker replaces 
+ * a pending worker of the same kind, and asks a running one to stop via 
+ * {@link AbstractFilterWorker#supersede()}. Dragging a slider therefore 
+ * never piles up more than one pending worker per operation.
  * 
  * @author Adam Zimowski (mrazjava)
  */
@@ -43,6 +45,11 @@ public class ImageFilterQueue extends LinkedList<AbstractFilterWorker> {
 	 * event is no longer in the queue.
 	 */
 	private ToolbarIcons eventIcon;
+	
+	/**
+	 * worker currently executing; null if none
+	 */
+	private AbstractFilterWorker running;
 
 	
 	public ImageFilterQueue() {
@@ -86,14 +93,19 @@ public class ImageFilterQueue extends LinkedList<AbstractFilterWorker> {
 				eventIcon.setMetaInfo(e.getDisplayValue());
 				getBus().post(new ImageFilterQueueEvent(buildIconList()));
 			}
+			running = e;
 			e.execute();
 			
 			return false;
 		}
-		ImageFilterOps meta = e.getMetaData();
-		if(Red.equals(meta) || Green.equals(meta) || Blue.equals(meta)) {
+		if(e.getMetaData().isCoalescing()) {
+			if(running != null && isSameKind(running, e)) {
+				log.debug("superseding running {}", running.getMetaData());
+				running.supersede();
+			}
 			for(AbstractFilterWorker w : this) {
-				if(e.getMetaData().equals(w.getMetaData())) {
+				if(isSameKind(w, e)) {
+					log.debug("replacing pending {}", w.getMetaData());
 					remove(w);
 					break;
 				}
@@ -101,6 +113,15 @@ public class ImageFilterQueue extends LinkedList<AbstractFilterWorker> {
 		}
 		return true;
 	}
+	
+	/**
+	 * @return true if both workers perform the same operation, so that the 
+	 * 	newer one makes the older obsolete
+	 */
+	private boolean isSameKind(AbstractFilterWorker w1, AbstractFilterWorker w2) {
+		return w1.getClass().equals(w2.getClass()) && 
+				w1.getMetaData().equals(w2.getMetaData());
+	}
 
 	@Subscribe
 	public void onModelChanged(ModelLifecycleEvent ev) {
@@ -109,11 +130,13 @@ public class ImageFilterQueue extends LinkedList<AbstractFilterWorker> {
 				AbstractFilterWorker worker = removeFirst();
 				eventIcon = worker.getToolbarIcon();
 				getBus().post(new ImageFilterQueueEvent(buildIconList()));
+				running = worker;
 				worker.execute();
 			}
 			else {
 				getBus().post(new ImageFilterQueueEvent(new LinkedList<ToolbarIcons>()));
 				eventIcon = null;
+				running = null;
 			}
 		}
 	}
@@ -0,0 +1,159 @@
+package org.zimowski.bambi.editor.studio.eventbus;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import org.zimowski.bambi.editor.studio.eventbus.events.ImageFilterMonitorEvent;
+
+import com.google.common.base.Ticker;
+import com.google.common.eventbus.EventBus;
+
+/**
+ * Delivers {@link ImageFilterMonitorEvent}s from worker threads to 
+ * subscribers on the EDT without stalling the worker. Posting only records 
+ * a snapshot of the event and, if no delivery is scheduled yet, schedules 
+ * a single {@link SwingUtilities#invokeLater(Runnable)} which drains 
+ * everything recorded by the time it runs.
+ * <p>
+ * Start and finalize phases are always delivered, in order. Progress 
+ * updates are coalesced: only the most recent one is kept, and at most 
+ * {@link #MAX_PROGRESS_RATE} of them are delivered per second, so filter 
+ * loops may report progress as often as they like. Pending progress is 
+ * dropped once a newer start or finalize phase is posted, as it would be 
+ * stale by then.
+ * 
+ * @author Adam Zimowski (mrazjava)
+ */
+public class ProgressEventChannel {
+
+	/**
+	 * Maximum number of progress updates delivered per second
+	 */
+	public static final int MAX_PROGRESS_RATE = 30;
+	
+	private static final long PROGRESS_INTERVAL = 
+			TimeUnit.SECONDS.toNanos(1) / MAX_PROGRESS_RATE;
+	
+	private final Queue<ImageFilterMonitorEvent> phases = 
+			new ConcurrentLinkedQueue<ImageFilterMonitorEvent>();
+	
+	private final AtomicReference<ImageFilterMonitorEvent> progress = 
+			new AtomicReference<ImageFilterMonitorEvent>();
+	
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	
+	/**
+	 * time last progress update was delivered; accessed on EDT only
+	 */
+	private long lastProgressTime = 0;
+	
+	private final Timer throttleTimer;
+	
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+	
+	private EventBus eventBus = null;
+
+	/**
+	 * times delivery of progress updates
+	 */
+	private final Ticker ticker;
+
+	
+	public ProgressEventChannel() {
+		this(null, Ticker.systemTicker());
+	}
+
+	/**
+	 * @param eventBus bus to deliver events to; null for the application bus
+	 * @param ticker source of nanoseconds progress updates are throttled by
+	 */
+	public ProgressEventChannel(EventBus eventBus, Ticker ticker) {
+		this.eventBus = eventBus;
+		this.ticker = ticker;
+		throttleTimer = new Timer(0, null);
+		throttleTimer.setRepeats(false);
+		throttleTimer.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				flush();
+			}
+		});
+	}
+	
+	/**
+	 * Records event for delivery on the EDT. Safe to call from any thread; 
+	 * event may be modified and posted again right after this call returns.
+	 * 
+	 * @param event event to deliver
+	 */
+	public void post(ImageFilterMonitorEvent event) {
+		ImageFilterMonitorEvent snapshot = new ImageFilterMonitorEvent(event);
+		if(snapshot.getPhase() == ImageFilterMonitorEvent.PHASE_PROGRESS) {
+			progress.set(snapshot);
+		}
+		else {
+			progress.set(null);
+			phases.add(snapshot);
+		}
+		if(scheduled.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(flushTask);
+		}
+	}
+	
+	/**
+	 * Delivers pending start and finalize phases immediately and discards 
+	 * pending progress. Must be called on the EDT; meant to be called right 
+	 * before announcing that a task completed, so that no stale update 
+	 * arrives after the announcement.
+	 */
+	public void drain() {
+		progress.set(null);
+		deliverPhases();
+	}
+
+	private void flush() {
+		scheduled.set(false);
+		deliverPhases();
+		if(progress.get() == null) return;
+		
+		long now = ticker.read();
+		long wait = PROGRESS_INTERVAL - (now - lastProgressTime);
+		if(wait > 0) {
+			// too soon; deliver whatever is most recent once interval passes
+			if(scheduled.compareAndSet(false, true)) {
+				throttleTimer.setInitialDelay(
+						(int)Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+				throttleTimer.restart();
+			}
+			return;
+		}
+		ImageFilterMonitorEvent event = progress.getAndSet(null);
+		if(event != null) {
+			lastProgressTime = now;
+			getBus().post(event);
+		}
+	}
+	
+	private void deliverPhases() {
+		ImageFilterMonitorEvent event;
+		while((event = phases.poll()) != null) getBus().post(event);
+	}
+	
+	private EventBus getBus() {
+		if(eventBus == null) eventBus = EventBusManager.getInstance().getBus();
+		return eventBus;
+	}
+}
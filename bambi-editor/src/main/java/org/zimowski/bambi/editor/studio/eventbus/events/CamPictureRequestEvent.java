@@ -1,11 +1,74 @@
 package org.zimowski.bambi.editor.studio.eventbus.events;
 
 /**
+ * Requests pictures from live video feed. A request takes one or more
+ * shots, each a given time after the previous one started; every shot
+ * looks at one or more consecutive frames and keeps the sharpest as the
+ * picture. A plain request takes a single shot of a single frame.
+ *
  * @author Adam Zimowski (mrazjava)
  */
 public class CamPictureRequestEvent extends BambiEvent {
 
+	private final int shots;
+
+	private final int framesPerShot;
+
+	private final long intervalMillis;
+
+	/**
+	 * Takes a picture of the next frame.
+	 */
 	public CamPictureRequestEvent() {
+		this(1, 1, 0);
+	}
+
+	/**
+	 * @param shots number of pictures to take
+	 * @param framesPerShot number of consecutive frames to pick the
+	 * 	sharpest picture from
+	 * @param intervalMillis time between starts of shots; 0 to take them
+	 * 	back to back at full frame rate
+	 */
+	public CamPictureRequestEvent(int shots, int framesPerShot, long intervalMillis) {
 		super(BambiEvent.EV_CAM);
+		if(shots < 1 || framesPerShot < 1 || intervalMillis < 0)
+			throw new IllegalArgumentException(String.format(
+					"%d shots of %d frames every %d ms", shots, framesPerShot, intervalMillis));
+		this.shots = shots;
+		this.framesPerShot = framesPerShot;
+		this.intervalMillis = intervalMillis;
+	}
+
+	/**
+	 * @param frames number of consecutive frames to capture
+	 * @return request for a single picture, the sharpest of a burst of
+	 * 	frames
+	 */
+	public static CamPictureRequestEvent burst(int frames) {
+		return new CamPictureRequestEvent(1, frames, 0);
+	}
+
+	/**
+	 * @param shots number of pictures to take
+	 * @param intervalMillis time between pictures
+	 * @param framesPerShot number of consecutive frames to pick the
+	 * 	sharpest picture from, at every interval
+	 * @return request for a time lapse series of pictures
+	 */
+	public static CamPictureRequestEvent timeLapse(int shots, long intervalMillis, int framesPerShot) {
+		return new CamPictureRequestEvent(shots, framesPerShot, intervalMillis);
+	}
+
+	public int getShots() {
+		return shots;
+	}
+
+	public int getFramesPerShot() {
+		return framesPerShot;
+	}
+
+	public long getIntervalMillis() {
+		return intervalMillis;
 	}
-}
\ No newline at end of file
+}
@@ -1,41 +1,99 @@
 package org.zimowski.bambi.editor.studio.eventbus.events;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.util.Date;
 
-import org.openimaj.image.ImageUtilities;
 import org.openimaj.image.MBFImage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.zimowski.bambi.editor.filters.BufferPool;
 
 /**
- * Indicates that picture was taken from live video feed.
- * 
+ * Indicates that picture was taken from live video feed. The frame is
+ * copied once, on the video thread, into a pooled RGB buffer which backs
+ * the picture directly, so posting the event costs no more than the copy
+ * and the live frame can be reused right away. Subscriber which consumes
+ * the picture last (the film pane, which saves it) must {@link #release()}
+ * it, returning the buffer to the pool.
+ *
  * @author Adam Zimowski (mrazjava)
  */
 public class CamPictureTakenEvent extends BambiEvent {
 
 	private final static Logger log = LoggerFactory.getLogger(CamPictureTakenEvent.class);
-	
-	private MBFImage picture;
-	
+
+	private static final DirectColorModel RGB =
+			new DirectColorModel(24, 0xff0000, 0x00ff00, 0x0000ff);
+
+	private int[] pixels;
+
+	private final BufferedImage picture;
+
 	private Date timeTaken;
-	
-	public CamPictureTakenEvent(MBFImage picture) {
+
+	/**
+	 * @param frame RGB frame of the video to take picture of; may be reused
+	 * 	as soon as the constructor returns
+	 */
+	public CamPictureTakenEvent(MBFImage frame) {
 		super(BambiEvent.EV_CAM);
-		this.picture = picture;
+		int width = frame.getWidth();
+		int height = frame.getHeight();
+		pixels = BufferPool.borrowInts(width * height);
+		pack(frame, pixels);
+		WritableRaster raster = Raster.createWritableRaster(
+				new SinglePixelPackedSampleModel(DataBufferInt.TYPE_INT, width, height, RGB.getMasks()),
+				new DataBufferInt(pixels, width * height), null);
+		picture = new BufferedImage(RGB, raster, false, null);
 		timeTaken = new Date();
-		log.info("{}x{} picture taken on {}", picture.getWidth(), picture.getHeight(), timeTaken);
+		log.info("{}x{} picture taken on {}", width, height, timeTaken);
+	}
+
+	private static void pack(MBFImage frame, int[] pixels) {
+		int width = frame.getWidth();
+		float[][] red = frame.getBand(0).pixels;
+		float[][] green = frame.getBand(1).pixels;
+		float[][] blue = frame.getBand(2).pixels;
+		int index = 0;
+		for(int y = 0; y < frame.getHeight(); y++) {
+			float[] r = red[y];
+			float[] g = green[y];
+			float[] b = blue[y];
+			for(int x = 0; x < width; x++)
+				pixels[index++] = (toByte(r[x]) << 16) | (toByte(g[x]) << 8) | toByte(b[x]);
+		}
 	}
-	
+
+	private static int toByte(float value) {
+		int level = (int)(value * 255 + 0.5f);
+		return level < 0 ? 0 : level > 255 ? 255 : level;
+	}
+
 	/**
-	 * @return frame of the video taken as picture
+	 * @return frame of the video taken as picture, backed by the pooled
+	 * 	buffer; valid until released
 	 */
 	public BufferedImage getPicture() {
-		return ImageUtilities.createBufferedImageForDisplay(picture);
+		if(pixels == null) throw new IllegalStateException("picture was released");
+		return picture;
 	}
-	
+
 	public Date getTimeTaken() {
 		return timeTaken;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns buffer of the picture to the pool. Picture must not be used
+	 * afterwards; subsequent calls do nothing.
+	 */
+	public synchronized void release() {
+		if(pixels == null) return;
+		BufferPool.giveBack(pixels);
+		pixels = null;
+	}
+}
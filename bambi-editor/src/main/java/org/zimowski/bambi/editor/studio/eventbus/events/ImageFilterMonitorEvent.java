@@ -29,6 +29,20 @@ public class ImageFilterMonitorEvent extends ImageFilterEvent {
 		this.phase = phase;
 	}
 	
+	/**
+	 * Copies state of another event, so that a snapshot can be delivered 
+	 * later while the original keeps being updated.
+	 * 
+	 * @param other event to copy
+	 */
+	public ImageFilterMonitorEvent(ImageFilterMonitorEvent other) {
+		super(other.getFilter(), other.getValue());
+		this.phase = other.phase;
+		this.pctComplete = other.pctComplete;
+		this.status = other.status;
+		this.showFilterNameOnOutput = other.showFilterNameOnOutput;
+	}
+	
 	public int getPctComplete() {
 		return pctComplete;
 	}
@@ -72,6 +72,13 @@ public class ModelLifecycleEvent extends ImageEvent {
 		this.imageConduit = imageConduit;
 	}
 	
+	/**
+	 * @return provider of the modified image; null if event carries no image
+	 */
+	public ImageConduit getImageConduit() {
+		return imageConduit;
+	}
+	
 	public BufferedImage getImage() {
 		BufferedImage image = null;
 		if(imageConduit != null) image = imageConduit.getModifiedImage();
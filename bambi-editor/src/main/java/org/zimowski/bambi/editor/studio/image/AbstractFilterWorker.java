@@ -2,6 +2,7 @@ package org.zimowski.bambi.editor.studio.image;
 
 import javax.swing.SwingWorker;
 
+import org.zimowski.bambi.editor.filters.FilterListener;
 import org.zimowski.bambi.editor.filters.ImageFilterOpSupport;
 import org.zimowski.bambi.editor.studio.resources.toolbar.ToolbarIcons;
 
@@ -17,6 +18,8 @@ public abstract class AbstractFilterWorker extends SwingWorker<Void, Integer>
 	 */
 	protected String displayValue = null;
 	
+	private volatile boolean superseded = false;
+	
 	public ToolbarIcons getToolbarIcon() {
 		return ToolbarIcons.fromFilter(getMetaData());
 	}
@@ -24,4 +27,21 @@ public abstract class AbstractFilterWorker extends SwingWorker<Void, Integer>
 	public String getDisplayValue() {
 		return displayValue;
 	}
+
+	/**
+	 * Requests cooperative cancellation because a newer worker of the same 
+	 * kind makes this one obsolete. Filter loops of a running worker pick 
+	 * it up via {@link FilterListener#isFilterCancelled()} and stop early; 
+	 * worker still completes normally so that the queue moves on.
+	 */
+	public void supersede() {
+		superseded = true;
+	}
+
+	/**
+	 * @return true if newer worker of the same kind replaced this one
+	 */
+	public boolean isSuperseded() {
+		return superseded;
+	}
 }
\ No newline at end of file
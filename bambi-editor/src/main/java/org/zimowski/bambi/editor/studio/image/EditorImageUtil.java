@@ -21,6 +21,7 @@ import java.awt.image.BufferedImageOp;
 import java.awt.image.ColorConvertOp;
 import java.awt.image.PixelGrabber;
 import java.awt.image.RescaleOp;
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 
@@ -29,8 +30,14 @@ import javax.swing.ImageIcon;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.zimowski.bambi.commons.ImageUtil;
 import org.zimowski.bambi.editor.config.Configuration;
 
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Directory;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+
 /**
  * Utility routines for handling image tasks.
  * 
@@ -316,6 +323,42 @@ public final class EditorImageUtil {
     	return dest;
     }
     
+    /**
+     * Orients image according to EXIF orientation tag of the file it was 
+     * read from, so that photos taken with a rotated camera display upright.
+     * 
+     * @param image - image read from the file
+     * @param file - file carrying EXIF metadata
+     * @return oriented image, or the same image if file has no orientation 
+     * 	info or it could not be read
+     */
+    public static BufferedImage applyExifRotation(BufferedImage image, File file) {
+		int orientation = 0;
+		try {
+			Metadata meta = ImageMetadataReader.readMetadata(file);
+			Directory directory = meta
+					.getDirectory(ExifIFD0Directory.class);
+			if (directory != null) {
+				if(directory.containsTag(ExifIFD0Directory.TAG_ORIENTATION)) {
+					orientation = directory
+							.getInt(ExifIFD0Directory.TAG_ORIENTATION);
+				}
+			}
+		} catch (Exception e) {
+			log.error(e.getMessage());
+		}
+		if(orientation > 0) {
+			// we have exif info on orientation
+			try {
+				AffineTransform tfm = ImageUtil.getExifTransformation(orientation, image.getWidth(), image.getHeight());
+				image = ImageUtil.transformImage(image, tfm);
+			} catch (Exception e) {
+				log.error(e.getMessage());
+			}
+		}
+		return image;
+    }
+    
 	/**
 	 * 
 	 * @param img - Image to modify
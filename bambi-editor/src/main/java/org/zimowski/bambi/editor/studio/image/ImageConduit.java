@@ -13,4 +13,13 @@ public interface ImageConduit {
 	 * @return image on display, unscaled but with all filters applied
 	 */
 	public BufferedImage getModifiedImage();
+	
+	/**
+	 * Runs a task on the EDT once every transformation made so far is 
+	 * applied to the {@link #getModifiedImage() modified image}; right away 
+	 * if it already is. Color adjustments may be only previewed until then.
+	 * 
+	 * @param task task reading the modified image
+	 */
+	public void invokeWhenApplied(Runnable task);
 }
@@ -14,6 +14,7 @@ import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Point;
 import java.awt.Polygon;
+import java.awt.Rectangle;
 import java.awt.event.AdjustmentEvent;
 import java.awt.event.AdjustmentListener;
 import java.awt.event.MouseEvent;
@@ -29,6 +30,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import javax.imageio.ImageIO;
+import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JDialog;
 import javax.swing.JOptionPane;
@@ -72,7 +74,7 @@ import com.google.common.eventbus.Subscribe;
  * 	efficiently with the {@link ImageModel}
  */
 public class ImageContainer extends ScrollableJLabel 
-		implements AdjustmentListener, MouseListener, MouseMotionListener {
+		implements AdjustmentListener, MouseListener, MouseMotionListener, ImageViewport {
 
 	private static final long serialVersionUID = 1967907657775221061L;
 	
@@ -203,6 +205,7 @@ public class ImageContainer extends ScrollableJLabel
 
     	super();
     	imageModel = new ImageModel();    	
+    	imageModel.setViewport(this);
     	ios = iConfig;
     	
     	startingSelectorWidth = Math.round(
@@ -860,7 +863,9 @@ public class ImageContainer extends ScrollableJLabel
     
     /**
      * Clips main image to bounds defined by the selector and returns sub 
-     * image.
+     * image. Call from a task passed to 
+     * {@link ImageModel#invokeWhenApplied(Runnable)} so that color 
+     * adjustment which is only previewed is not clipped as previewed.
      * 
      * @return image within the bounds of a selector
      * @throws RasterFormatException if part of a selector is out of picture 
@@ -900,33 +905,55 @@ public class ImageContainer extends ScrollableJLabel
 		return result;
     }
 
+    @Override
+    public Rectangle getVisibleImageRegion() {
+    	Icon icon = getIcon();
+    	if(icon == null) return null;
+    	// icon is placed within the label as label UI places it
+    	Rectangle view = SwingUtilities.calculateInnerArea(this, null);
+    	Rectangle iconArea = new Rectangle();
+    	SwingUtilities.layoutCompoundLabel(this, getFontMetrics(getFont()), getText(), icon, 
+    			getVerticalAlignment(), getHorizontalAlignment(), 
+    			getVerticalTextPosition(), getHorizontalTextPosition(), 
+    			view, iconArea, new Rectangle(), getIconTextGap());
+    	Rectangle visible = getVisibleRect().intersection(iconArea);
+    	if(visible.isEmpty()) return null;
+    	visible.translate(-iconArea.x, -iconArea.y);
+    	return visible;
+    }
+
     public BufferedImage getImage() {
 		return imageModel.getImage();    	
     }
     
-	private void previewClip(boolean hideSelector) {
+	private void previewClip(final boolean hideSelector) {
 		
-		Frame parent = (Frame)SwingUtilities.getWindowAncestor(this);
+		final Frame parent = (Frame)SwingUtilities.getWindowAncestor(this);
 		
-		try {
-			BufferedImage previewImage = getClippedImage();
-			if(hideSelector) {
-				selectorObserver.selectorClosed();
-			}
+		imageModel.invokeWhenApplied(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					BufferedImage previewImage = getClippedImage();
+					if(hideSelector) {
+						selectorObserver.selectorClosed();
+					}
 
-	        JDialog preview = 
-	        		new ImagePreviewDialog(parent, "Preview", previewImage);
+			        JDialog preview = 
+			        		new ImagePreviewDialog(parent, "Preview", previewImage);
 
-	        preview.setModal(true);
-	        preview.setVisible(true);
-		}
-		catch(RasterFormatException rfe) {
-			JOptionPane.showMessageDialog(
-					parent,
-				    "Clipping area is out of bounds.",
-				    "Clipping Error",
-				    JOptionPane.ERROR_MESSAGE);
-		}
+			        preview.setModal(true);
+			        preview.setVisible(true);
+				}
+				catch(RasterFormatException rfe) {
+					JOptionPane.showMessageDialog(
+							parent,
+						    "Clipping area is out of bounds.",
+						    "Clipping Error",
+						    JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		});
 	}
 
 	@Override
@@ -1,33 +1,43 @@
 package org.zimowski.bambi.editor.studio.image;
 
-import java.awt.geom.AffineTransform;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
 import javax.imageio.event.IIOReadProgressListener;
 import javax.imageio.stream.ImageInputStream;
+import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.zimowski.bambi.commons.ImageUtil;
 import org.zimowski.bambi.editor.config.Configuration;
+import org.zimowski.bambi.editor.filters.BufferPool;
 import org.zimowski.bambi.editor.filters.ColorAdjustFilter;
 import org.zimowski.bambi.editor.filters.ColorAdjustFilter.AdjustType;
 import org.zimowski.bambi.editor.filters.FilterListener;
 import org.zimowski.bambi.editor.filters.ImageFilterOps;
-import org.zimowski.bambi.editor.filters.SepiaFilter;
+import org.zimowski.bambi.editor.filters.ImageFilters;
 import org.zimowski.bambi.editor.studio.ScaleViewException;
 import org.zimowski.bambi.editor.studio.eventbus.EventBusManager;
 import org.zimowski.bambi.editor.studio.eventbus.ImageFilterQueue;
+import org.zimowski.bambi.editor.studio.eventbus.ProgressEventChannel;
+import org.zimowski.bambi.editor.studio.eventbus.events.AbortFilterQueueEvent;
 import org.zimowski.bambi.editor.studio.eventbus.events.ImageFilterEvent;
 import org.zimowski.bambi.editor.studio.eventbus.events.ImageFilterMonitorEvent;
 import org.zimowski.bambi.editor.studio.eventbus.events.ImageLoadEvent;
@@ -39,28 +49,10 @@ import org.zimowski.bambi.editor.studio.eventbus.events.RotateEvent;
 import org.zimowski.bambi.editor.studio.eventbus.events.ScaleEvent;
 import org.zimowski.bambi.editor.studio.eventbus.events.ThumbAddEvent;
 import org.zimowski.bambi.editor.studio.image.ImageTransformListener.RotateDirection;
-import org.zimowski.bambi.jhlabs.image.NoiseFilter;
 
-import com.drew.imaging.ImageMetadataReader;
-import com.drew.metadata.Directory;
-import com.drew.metadata.Metadata;
-import com.drew.metadata.exif.ExifIFD0Directory;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.jhlabs.image.AbstractBufferedImageOp;
-import com.jhlabs.image.DitherFilter;
-import com.jhlabs.image.EdgeFilter;
-import com.jhlabs.image.EmbossFilter;
-import com.jhlabs.image.FlipFilter;
-import com.jhlabs.image.GrayscaleFilter;
-import com.jhlabs.image.InvertFilter;
-import com.jhlabs.image.KaleidoscopeFilter;
-import com.jhlabs.image.LightFilter;
-import com.jhlabs.image.MarbleFilter;
-import com.jhlabs.image.PosterizeFilter;
-import com.jhlabs.image.SolarizeFilter;
-import com.jhlabs.image.StampFilter;
-import com.jhlabs.image.TwirlFilter;
 
 /**
  * Represents the underlying image and manages all changes to it. Rotation 
@@ -69,7 +61,28 @@ import com.jhlabs.image.TwirlFilter;
  * struct ({@link ImageModel#displayImage}), and two helper buffers 
  * ({@link ImageModel#unscaledDisplayImage}, {@link ImageModel#unscaledReferenceImage}). 
  * While not ideally memory efficient design, it is an optimized model given 
- * the tradeoff of memory usage vs. runtime performance.
+ * the tradeoff of memory usage vs. runtime performance. Buffers are never 
+ * modified in place (every transformation produces a new image), so when 
+ * two of them hold the same pixels they simply share one instance.
+ * <p>
+ * Heap held by the buffers is kept within a {@link #setMemoryBudget(long) 
+ * memory budget}. Over budget, the reference image (needed only to 
+ * recompute color adjustments) is spilled to a memory mapped temporary file 
+ * and paged back in on demand, so images are loaded at full resolution as 
+ * long as the image on display and a filtered copy of it fit. Images larger 
+ * than that are loaded at reduced resolution only if the user chooses so, 
+ * rather than exhausting the heap.
+ * <p>
+ * Color adjustments (RGB, hue, saturation, brightness, contrast) are by 
+ * default previewed: while a slider moves, only a proxy of the reference 
+ * image scaled to the current zoom is filtered straight into the display 
+ * image, or at 100% zoom only the part of it visible in the 
+ * {@link #setViewport(ImageViewport) viewport}, so interactive cost depends 
+ * on the size of the view rather than on the size of the image. Full resolution buffers are brought up to date 
+ * once, on the filter queue, when slider settles for 
+ * {@link #PREVIEW_SETTLE_DELAY} ms or as soon as something needs them: 
+ * other filters, rotation and zoom commit first, while export and print 
+ * {@link #invokeWhenApplied(Runnable) wait} for the commit to complete.
  * 
  * @author Adam Zimowski (mrazjava)
  */
@@ -77,19 +90,108 @@ public class ImageModel implements ImageConduit {
     
 	private static final Logger log = LoggerFactory.getLogger(ImageModel.class);
 	
+	/**
+	 * Time in ms without color adjustment after which previewed adjustment 
+	 * is applied to full resolution buffers.
+	 */
+	public static final int PREVIEW_SETTLE_DELAY = 400;
+	
     /**
      * contains the system path of the image
      */
     private String filePath;
     
+    /**
+     * reference image; null if it is {@link #spilledReference spilled}, 
+     * use {@link #getReference()} to read it
+     */
     private BufferedImage unscaledReferenceImage;
     
+    /**
+     * reference image moved off heap; null unless over memory budget
+     */
+    private SpilledImage spilledReference;
+    
+    /**
+     * incremented whenever reference image is replaced
+     */
+    private int referenceGeneration = 0;
+    
+    /**
+     * maximum number of heap bytes image buffers should occupy
+     */
+    private volatile long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+    
     private BufferedImage unscaledDisplayImage;
         
     private BufferedImage displayImage;
     
     private ColorAdjustFilter colorFilter = new ColorAdjustFilter();
     
+    /**
+     * true if color adjustments should be previewed at display resolution 
+     * and applied to full resolution buffers later
+     */
+    private boolean livePreview = true;
+    
+    /**
+     * {@link #unscaledReferenceImage} scaled to current zoom; the proxy 
+     * color adjustments are previewed on. Rebuilt whenever reference image 
+     * or zoom changes.
+     */
+    private BufferedImage previewReferenceImage;
+    
+    /**
+     * {@link #referenceGeneration} {@link #previewReferenceImage} was built 
+     * from
+     */
+    private int previewGeneration;
+    
+    private double previewScale;
+    
+    /**
+     * copy of {@link #previewDisplayBase} visible regions are previewed 
+     * into at 100% zoom, serving as display image meanwhile; the only 
+     * buffer ever modified in place, as it is shown and nowhere else used
+     */
+    private BufferedImage previewDisplayImage;
+    
+    /**
+     * {@link #unscaledDisplayImage} {@link #previewDisplayImage} was copied 
+     * from
+     */
+    private BufferedImage previewDisplayBase;
+    
+    /**
+     * view showing the image; null if all of it is shown
+     */
+    private ImageViewport viewport;
+    
+    /**
+     * true if {@link #displayImage} shows color adjustment which was not yet 
+     * applied to {@link #unscaledDisplayImage}
+     */
+    private volatile boolean commitPending = false;
+    
+    private Timer commitTimer;
+    
+    /**
+     * tasks waiting for full resolution buffers to catch up with preview; 
+     * accessed on the EDT only
+     */
+    private List<Runnable> commitTasks = new ArrayList<Runnable>();
+    
+    /**
+     * true while {@link PreviewCommitWorker} is queued or running; accessed 
+     * on the EDT only
+     */
+    private boolean commitQueued = false;
+    
+    /**
+     * delivers filter progress from workers to the EDT
+     */
+    private ProgressEventChannel progressChannel = new ProgressEventChannel();
+    
     private Double scale = 1.0;
     
     /**
@@ -108,6 +210,13 @@ public class ImageModel implements ImageConduit {
     
     public ImageModel() {
     	filterQueue = new ImageFilterQueue();
+    	commitTimer = new Timer(PREVIEW_SETTLE_DELAY, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if(commitPending) queueCommit();
+			}
+		});
+    	commitTimer.setRepeats(false);
     	EventBusManager.getInstance().registerWithBus(this);
     }
     
@@ -158,8 +267,7 @@ public class ImageModel implements ImageConduit {
             this.scale = scalePct;
         }
 
-        displayImage = EditorImageUtil.rotate(
-        		unscaledDisplayImage, null, null, this.scale, this.scale);
+        displayImage = deriveDisplayImage();
     }
     
     /**
@@ -174,118 +282,253 @@ public class ImageModel implements ImageConduit {
     }
 
     /**
-     * Returns a BufferedImage with an applied affinetransform on it.
-     * @return resultImg A BufferedImage with applied affinetransform
+     * @return true if color adjustments are previewed at display resolution
      */
-    public BufferedImage getImage() {
-        return displayImage;
-    }
-
-    private void oldPhoto() {
-    	final SepiaFilter f = new SepiaFilter();
-    	f.setAmount(30);
-    	f.setDensity(0.1f);
-    	f.setDistribution(NoiseFilter.GAUSSIAN);
-    	f.setMonochrome(false);    	
-    	filterQueue.add(new FilterWorker(f));
-    }
-
-	private void negative() {
-		filterQueue.add(new FilterWorker(new InvertFilter()));
+    public boolean isLivePreview() {
+		return livePreview;
 	}
 
-	private void emboss() {
-		filterQueue.add(new FilterWorker(new EmbossFilter()));
+    /**
+     * @param livePreview true to preview color adjustments at display 
+     * 	resolution and defer full resolution processing until slider settles; 
+     * 	false to process full resolution on every adjustment
+     */
+	public void setLivePreview(boolean livePreview) {
+		this.livePreview = livePreview;
 	}
-
-	private void deamonize() {
-		filterQueue.add(new FilterWorker(new EdgeFilter()));
+	
+	/**
+	 * @param viewport view showing the image, whose visible part is what 
+	 * 	color adjustments are previewed on at 100% zoom; null to preview on 
+	 * 	the whole image
+	 */
+	void setViewport(ImageViewport viewport) {
+		this.viewport = viewport;
 	}
 
-	private void solarize() {
-		filterQueue.add(new FilterWorker(new SolarizeFilter()));
+	/**
+	 * Applies previewed color adjustment to full resolution buffers if it 
+	 * has not been applied yet. Does nothing otherwise. Runs on the filter 
+	 * queue only.
+	 * 
+	 * @param listener progress listener; may be null
+	 */
+	private void commitPreview(FilterListener listener) {
+		if(!commitPending) return;
+		log.debug("committing color preview");
+		// flag cleared only after success; commit may be cancelled half way
+		unscaledDisplayImage = adjustColors(getReference(), listener);
+		displayImage = deriveDisplayImage();
+		commitPending = false;
+		releasePreviewDisplay();
 	}
-
-	private void grayscale() {
-		filterQueue.add(new FilterWorker(new GrayscaleFilter()));
+	
+	/**
+	 * Applies current color adjustments through a copy of the color filter, 
+	 * so that progress goes to given listener while the shared filter is 
+	 * left as it is.
+	 * 
+	 * @param src image to adjust
+	 * @param listener progress listener; may be null
+	 * @return adjusted image
+	 */
+	private BufferedImage adjustColors(BufferedImage src, FilterListener listener) {
+		ColorAdjustFilter filter = (ColorAdjustFilter)colorFilter.clone();
+		filter.setFilterListener(listener);
+		return filter.filter(src, null);
 	}
-
-	private void chessboard() {
-		filterQueue.add(new FilterWorker(new DitherFilter()));
+	
+	/**
+	 * @return reference image scaled to current zoom, or the reference 
+	 * 	image itself if not zoomed
+	 */
+	private BufferedImage getPreviewReference() {
+		if(scale == 1.0) return getReference();
+		if(previewReferenceImage == null || 
+				previewGeneration != referenceGeneration || previewScale != scale) {
+			previewReferenceImage = EditorImageUtil.rotate(
+					getReference(), null, null, scale, scale);
+			previewGeneration = referenceGeneration;
+			previewScale = scale;
+		}
+		return previewReferenceImage;
 	}
-
-	private void marble() {
-		filterQueue.add(new FilterWorker(new MarbleFilter()));
+	
+	/**
+	 * Previews color adjustment on a region of the image at 100% zoom, 
+	 * leaving the rest of the display as it was.
+	 * 
+	 * @param region visible part of the image
+	 * @return display image with the region adjusted
+	 */
+	private BufferedImage previewRegion(Rectangle region) {
+		if(previewDisplayImage == null || previewDisplayBase != unscaledDisplayImage) {
+			BufferedImage base = unscaledDisplayImage;
+			previewDisplayImage = new BufferedImage(base.getColorModel(), base.copyData(null), 
+					base.isAlphaPremultiplied(), null);
+			previewDisplayBase = base;
+		}
+		int w = region.width;
+		int h = region.height;
+		BufferedImage adjusted = colorFilter.filter(
+				getReference().getSubimage(region.x, region.y, w, h), null);
+		int[] pixels = adjusted.getRGB(0, 0, w, h, null, 0, w);
+		previewDisplayImage.setRGB(region.x, region.y, w, h, pixels, 0, w);
+		return previewDisplayImage;
 	}
-
-	private void cartoonize() {
-		final LightFilter f = new LightFilter();
-		f.setBumpShape(LightFilter.BUMPS_FROM_BEVEL);
-		f.setBumpSoftness(1.5F);
-		/*
-		try {
-			//BufferedImage bumpMap = ImageIO.read(new File("/home/zima/bumpo.jpg"));
-			BufferedImage bumpMap = ImageIO.read(new File("/home/zima/bump20x22.jpg"));
-			Function2D bumpFunc = new ImageFunction2D(bumpMap);
-			f.setBumpSource(LightFilter.BUMPS_FROM_MAP);
-			f.setBumpFunction(bumpFunc);
-			f.setBumpHeight(0.2f);
-			//f.getLights().clear();
-			//f.addLight(new LightFilter.PointLight());
-			Light light = new LightFilter.AmbientLight();
-			//light.setAzimuth(0.5f);
-			//light.setDistance(200f);
-			//f.addLight(light);
-			f.setBumpSoftness(0f);
-			//f.setViewDistance(20000f);
-			//f.setBumpShape(5); // 1-5
-			Material m = new Material();
-			m.setDiffuseColor(2);
-			m.setOpacity(0.5f);
-			//f.setMaterial(m);
-			//f.setViewDistance(0.1f);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}*/
-		filterQueue.add(new FilterWorker(f));
+	
+	private void releasePreviewDisplay() {
+		previewDisplayImage = null;
+		previewDisplayBase = null;
 	}
-
-	private void mirror() {
-		final FlipFilter f = new FlipFilter();
-		f.setOperation(FlipFilter.FLIP_H);
-		filterQueue.add(new FilterWorker(f));
+	
+	/**
+	 * @return display image for current zoom; unscaled display image 
+	 * 	itself if not zoomed
+	 */
+	private BufferedImage deriveDisplayImage() {
+		if(scale == 1.0) return unscaledDisplayImage;
+		return EditorImageUtil.rotate(unscaledDisplayImage, null, null, scale, scale);
 	}
-
-	public void twirl() {
-		final TwirlFilter f = new TwirlFilter();
-		f.setEdgeAction(TwirlFilter.WRAP);
-		f.setInterpolation(TwirlFilter.BILINEAR);
-		f.setRadius(Math.max(displayImage.getWidth(), displayImage.getHeight())*2);
-		f.setAngle(1.2f);		
-		filterQueue.add(new FilterWorker(f));
+	
+	/**
+	 * @return reference image, paged back in if it was spilled
+	 */
+	private synchronized BufferedImage getReference() {
+		if(unscaledReferenceImage == null && spilledReference != null) {
+			log.debug("loading spilled reference");
+			unscaledReferenceImage = spilledReference.load();
+		}
+		return unscaledReferenceImage;
 	}
-
-	private void stamp() {
-		filterQueue.add(new FilterWorker(new StampFilter()));
+	
+	/**
+	 * @param image new reference image
+	 */
+	private synchronized void setReference(BufferedImage image) {
+		if(spilledReference != null) {
+			spilledReference.dispose();
+			spilledReference = null;
+		}
+		unscaledReferenceImage = image;
+		referenceGeneration++;
 	}
-
-	private void posterize() {
-		filterQueue.add(new FilterWorker(new PosterizeFilter()));
+	
+	/**
+	 * @return maximum number of bytes image buffers should occupy on heap
+	 */
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+	
+	/**
+	 * Sets heap limit for image buffers. Defaults to half of maximum heap. 
+	 * Budget is enforced after every operation and when loading images.
+	 * 
+	 * @param memoryBudget maximum number of bytes image buffers should 
+	 * 	occupy on heap
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		if(memoryBudget <= 0) throw new IllegalArgumentException("budget <= 0");
+		this.memoryBudget = memoryBudget;
+	}
+	
+	/**
+	 * @return number of heap bytes held by distinct image buffers
+	 */
+	private long getHeapUsage() {
+		BufferedImage[] buffers = { 
+				unscaledReferenceImage, unscaledDisplayImage, displayImage, previewReferenceImage, 
+				previewDisplayImage 
+		};
+		long bytes = 0;
+		for(int i = 0; i < buffers.length; i++) {
+			boolean counted = false;
+			for(int j = 0; j < i; j++) counted |= (buffers[j] == buffers[i]);
+			if(!counted) bytes += sizeOf(buffers[i]);
+		}
+		return bytes;
+	}
+	
+	private static long sizeOf(BufferedImage image) {
+		if(image == null) return 0;
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+		return (long)buffer.getSize() * buffer.getNumBanks() * 
+				DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+	}
+	
+	/**
+	 * Moves buffers which are not needed for display off heap until usage 
+	 * fits the budget: reference image first, unless display shares it, 
+	 * then the preview proxy which is cheap to rebuild.
+	 */
+	private synchronized void enforceMemoryBudget() {
+		// preview copy is of no use once something else is on display
+		if(previewDisplayImage != displayImage) releasePreviewDisplay();
+		long used = getHeapUsage();
+		if(used <= memoryBudget) return;
+		
+		BufferedImage reference = unscaledReferenceImage;
+		if(reference != null && reference != unscaledDisplayImage && 
+				reference != displayImage && SpilledImage.canSpill(reference)) {
+			try {
+				if(spilledReference == null) {
+					spilledReference = SpilledImage.spill(reference);
+					log.debug("reference spilled, {} bytes", spilledReference.getSize());
+				}
+				unscaledReferenceImage = null;
+				used -= sizeOf(reference);
+			}
+			catch(IOException e) {
+				log.warn("could not spill reference: {}", e.getMessage());
+			}
+		}
+		if(used > memoryBudget && previewReferenceImage != null && 
+				previewReferenceImage != displayImage) {
+			used -= sizeOf(previewReferenceImage);
+			previewReferenceImage = null;
+		}
+		if(used > memoryBudget) {
+			log.warn("image buffers exceed memory budget: {} > {}", used, memoryBudget);
+		}
+	}
+	
+	/**
+	 * @param width image width
+	 * @param height image height
+	 * @return subsampling factor which lets an image of given size be 
+	 * 	edited within memory budget, with room for the image and a filtered 
+	 * 	copy of it while the reference is spilled; 1 if it fits at full 
+	 * 	resolution
+	 */
+	private int getLoadSubsampling(int width, int height) {
+		long bytes = (long)width * height * 4;
+		long limit = memoryBudget / 2;
+		int subsampling = 1;
+		while(bytes / ((long)subsampling * subsampling) > limit) subsampling++;
+		return subsampling;
 	}
 
-	private void kaleidoscope() {
-		final KaleidoscopeFilter f = new KaleidoscopeFilter();
-    	f.setSides(4);
-    	f.setEdgeAction(2);
-		filterQueue.add(new FilterWorker(f));
+    /**
+     * Returns a BufferedImage with an applied affinetransform on it.
+     * @return resultImg A BufferedImage with applied affinetransform
+     */
+    public BufferedImage getImage() {
+        return displayImage;
+    }
+
+	private void filter(ImageFilterOps op) {
+		filterQueue.add(new FilterWorker(ImageFilters.createFilter(
+				op, displayImage.getWidth(), displayImage.getHeight())));
 	}
 	
 	void adjustColors() {
-    	unscaledDisplayImage = colorFilter.filter(unscaledReferenceImage, null);
-    	displayImage = EditorImageUtil.rotate(unscaledDisplayImage, null, null, scale, scale);
+    	unscaledDisplayImage = adjustColors(getReference(), null);
+    	displayImage = deriveDisplayImage();
 	}
 
 	private void notifyModelInitialized() {
+		progressChannel.drain();
 		getBus().post(new ModelLifecycleEvent(ModelPhase.Initialized));
 	}
 	
@@ -294,6 +537,12 @@ public class ImageModel implements ImageConduit {
 	}
 	
 	private void notifyModelChanged(boolean rgbReset, boolean hsReset, boolean cbReset) {
+		progressChannel.drain();
+		if(!commitPending && !commitTasks.isEmpty()) {
+			List<Runnable> tasks = new ArrayList<Runnable>(commitTasks);
+			commitTasks.clear();
+			for(Runnable task : tasks) task.run();
+		}
 		ModelLifecycleEvent event = new ModelLifecycleEvent(ModelPhase.AfterChange);
 		event.setRgbReset(rgbReset);
 		event.setHsReset(hsReset);
@@ -303,6 +552,7 @@ public class ImageModel implements ImageConduit {
 	}
 	
 	private void notifyModelReset() {
+		progressChannel.drain();
 		ModelLifecycleEvent event = new ModelLifecycleEvent(ModelPhase.Reset);
 		event.setImageConduit(this);
 		getBus().post(event);
@@ -358,54 +608,23 @@ public class ImageModel implements ImageConduit {
 		case Contrast:
 			hscb(filter, ev.getValue());
 			break;
-		case Cartoonize:
-			cartoonize();
-			break;
-		case Daemonize:
-			deamonize();
-			break;
-		case Chessboard:
-			chessboard();
-			break;
-		case Emboss:
-			emboss();
-			break;
-		case Mirror:
-			mirror();
-			break;
-		case Grayscale:
-			grayscale();
-			break;
-		case Negative:
-			negative();
-			break;
-		case Kaleidoscope:
-			kaleidoscope();
-			break;
-		case Marble:
-			marble();
-			break;
-		case OldPhoto:
-			oldPhoto();
-			break;
-		case Posterize:
-			posterize();
-			break;
-		case Solarize:
-			solarize();
-			break;
-		case Stamp:
-			stamp();
-			break;
-		case Twirl:
-			twirl();
-			break;
 		default:
-			// either not handled or on separate subscription
+			if(ImageFilters.isSupported(filter)) filter(filter);
+			// otherwise either not handled or on separate subscription
 			break;
 		}
 	}
 
+	/**
+	 * Drops tasks waiting for a commit, which may no longer come as queue 
+	 * is cleared.
+	 */
+	@Subscribe
+	public void onAbort(AbortFilterQueueEvent ev) {
+		commitTasks.clear();
+		commitQueued = false;
+	}
+
 	@Subscribe
 	public void onReset(ModelResetRequestEvent ev) {
 		filterQueue.addFirst(new RefreshWorker(ev == null, false));
@@ -450,22 +669,19 @@ public class ImageModel implements ImageConduit {
 		protected Void doInBackground() throws Exception {
 			log.trace("on EDT ? {}", SwingUtilities.isEventDispatchThread());
 			notifyModelAboutToChange();
-			boolean callGc = (unscaledReferenceImage != null);
-	    	unscaledReferenceImage = null;
+			commitPending = false;
+			previewReferenceImage = null;
+			releasePreviewDisplay();
+	    	setReference(null);
 	    	unscaledDisplayImage = null;
 	    	displayImage = null;
 	    	ImageFilterMonitorEvent event = new ImageFilterMonitorEvent(ImageFilterOps.Refresh, ImageFilterMonitorEvent.PHASE_START);
 	    	event.showFilterNameOnOutput = !initialize;
 	    	//event.setPctComplete(0);
-	    	if(callGc) {
-		    	event.setStatus("releasing resources to optimize image load ...");
-		    	getBus().post(event);
-	    		// seems to help prevent crashing jvm (6) with out of mem on rare occasions
-	    		System.gc();
-	    	}
 	    	event.setStatus("loading: " + filePath);
-	    	getBus().post(event);
+	    	progressChannel.post(event);
 	    	final File file = new File(filePath);
+	    	BufferedImage image;
 	        try {
 	        	event.setPhase(ImageFilterMonitorEvent.PHASE_PROGRESS);
 	        	log.info("image path: [{}]", filePath);
@@ -476,62 +692,88 @@ public class ImageModel implements ImageConduit {
 	        	ImageInputStream imageInputStream = ImageIO.createImageInputStream(fileInputStream);
 	        	imageReader.setInput(imageInputStream, false);
 	        	imageReader.addIIOReadProgressListener(new ReadProgressListener(event));
-	        	unscaledReferenceImage = imageReader.read(0);
+	        	ImageReadParam param = imageReader.getDefaultReadParam();
+	        	int width = imageReader.getWidth(0);
+	        	int height = imageReader.getHeight(0);
+	        	int subsampling = getLoadSubsampling(width, height);
+	        	if(subsampling > 1) {
+	        		if(!confirmSubsampling(file, width, height, subsampling)) {
+	        			imageReader.dispose();
+	        			fileInputStream.close();
+	        			throw new IOException(filePath + " exceeds memory budget; loading cancelled");
+	        		}
+	        		log.warn("{} exceeds memory budget; loading at 1/{} resolution", filePath, subsampling);
+	        		param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+	        	}
+	        	image = imageReader.read(0, param);
+	        	imageReader.dispose();
 	        	fileInputStream.close();
-	        	applyExifRotation(file);
+	        	image = EditorImageUtil.applyExifRotation(image, file);
 	        }
 	        catch (IOException e) {
 	        	// create dummy image to avoid npe and other error nastiness
 	        	log.error(e.getMessage());
-	        	unscaledReferenceImage = buildDummyImage();
+	        	image = buildDummyImage();
 	        }
 	        event.setPhase(ImageFilterMonitorEvent.PHASE_FINALIZE);
 	        if(loadThumb) {
-	        	getBus().post(new ThumbAddEvent(unscaledReferenceImage, file));
+	        	getBus().post(new ThumbAddEvent(image, file));
 	        }
-	        //event.setPctComplete(33);
-	        event.setStatus("finalizing, step 1");
-	        getBus().post(event);
-			unscaledDisplayImage = ImageUtil.deepCopy(unscaledReferenceImage);
-	        //event.setPctComplete(66);
-	        event.setStatus("finalizing, step 2");
-	        getBus().post(event);
-			displayImage = ImageUtil.deepCopy(unscaledReferenceImage);
+	        event.setStatus("finalizing");
+	        progressChannel.post(event);
+	        // buffers are never modified in place, so all three start out 
+	        // sharing the loaded image
+	        setReference(image);
+			unscaledDisplayImage = image;
+			displayImage = image;
 			setupImageParams();
 			colorFilter.resetRgb();
 			colorFilter.resetHscb(true, true);
 			return null;
 		}
 		
-		private void applyExifRotation(File file) {
-			int orientation = 0;
+		/**
+		 * Asks user whether image too large to be edited at full resolution 
+		 * should be loaded at reduced resolution instead.
+		 * 
+		 * @param file image file
+		 * @param width full image width
+		 * @param height full image height
+		 * @param subsampling subsampling factor which fits memory budget
+		 * @return true to load at given subsampling; false to cancel loading
+		 */
+		private boolean confirmSubsampling(final File file, final int width, final int height, 
+				final int subsampling) {
+			final int[] choice = { JOptionPane.CLOSED_OPTION };
 			try {
-				Metadata meta = ImageMetadataReader.readMetadata(file);
-				Directory directory = meta
-						.getDirectory(ExifIFD0Directory.class);
-				if (directory != null) {
-					if(directory.containsTag(ExifIFD0Directory.TAG_ORIENTATION)) {
-						orientation = directory
-								.getInt(ExifIFD0Directory.TAG_ORIENTATION);
+				SwingUtilities.invokeAndWait(new Runnable() {
+					@Override
+					public void run() {
+						String message = String.format(
+								"%s is %d x %d pixels, too large to edit at full resolution\n" + 
+								"within %d MB of memory. Editing it at reduced resolution\n" + 
+								"(%d x %d) loses detail in anything saved or exported.", 
+								file.getName(), width, height, memoryBudget / (1024 * 1024), 
+								(width + subsampling - 1) / subsampling, 
+								(height + subsampling - 1) / subsampling);
+						Object[] options = { "Load at 1/" + subsampling + " resolution", "Cancel" };
+						choice[0] = JOptionPane.showOptionDialog(null, message, "Image Too Large", 
+								JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE, 
+								null, options, options[1]);
 					}
-				}
-			} catch (Exception e) {
-				log.error(e.getMessage());
-			}
-			if(orientation > 0) {
-				// we have exif info on orientation
-				try {
-					AffineTransform tfm = ImageUtil.getExifTransformation(orientation, unscaledReferenceImage.getWidth(), unscaledReferenceImage.getHeight());
-					unscaledReferenceImage = ImageUtil.transformImage(unscaledReferenceImage, tfm);
-				} catch (Exception e) {
-					log.error(e.getMessage());
-				}
+				});
+			}
+			catch(Exception e) {
+				log.error("", e);
 			}
+			return choice[0] == JOptionPane.OK_OPTION;
 		}
-
+		
 		@Override
 		protected void done() {
 			super.done();
+			// tasks waiting on the previous image do not apply to this one
+			commitTasks.clear();
 			if(initialize) {
 				notifyModelInitialized();
 			}
@@ -572,7 +814,7 @@ public class ImageModel implements ImageConduit {
 			public void imageProgress(ImageReader source, float percentageDone) {
 				log.debug("read: {}", percentageDone);
 				event.setPctComplete(Math.round(percentageDone));
-				getBus().post(event);
+				progressChannel.post(event);
 			}
 
 			@Override
@@ -629,15 +871,20 @@ public class ImageModel implements ImageConduit {
 		protected Void doInBackground() throws Exception {
 			notifyModelAboutToChange();
 			ImageFilterMonitorEvent event = new ImageFilterMonitorEvent(metaInfo, ImageFilterMonitorEvent.PHASE_START);
-			getBus().post(event);
+			progressChannel.post(event);
+			commitPreview(null);
+			BufferedImage reference = getReference();
+			boolean shared = (reference == unscaledDisplayImage);
 	    	displayImage = EditorImageUtil.rotate(unscaledDisplayImage, direction.getAngle(), null, scale, scale);
 			event.setPhase(ImageFilterMonitorEvent.PHASE_PROGRESS);
 			event.setPctComplete(33);
-			getBus().post(event);
+			progressChannel.post(event);
 			unscaledDisplayImage = EditorImageUtil.rotate(unscaledDisplayImage, direction.getAngle(), null, null, null);
 			event.setPctComplete(66);
-			getBus().post(event);
-			unscaledReferenceImage = EditorImageUtil.rotate(unscaledReferenceImage, direction.getAngle(), null, null, null);
+			progressChannel.post(event);
+			setReference(shared ? unscaledDisplayImage : 
+				EditorImageUtil.rotate(reference, direction.getAngle(), null, null, null));
+			enforceMemoryBudget();
 			return null;
 		}
 
@@ -675,8 +922,10 @@ public class ImageModel implements ImageConduit {
 		protected Void doInBackground() throws Exception {
 			// very fast operation so don't bother with events and feedback
 			notifyModelAboutToChange();
+			commitPreview(null);
 			log.debug("scale {}", percent);
 			scale(percent/100d);
+			enforceMemoryBudget();
 			return null;
 		}
 
@@ -696,18 +945,31 @@ public class ImageModel implements ImageConduit {
 		private float value;
 		private AdjustType adjustType;
 		
+		/**
+		 * part of the image visible when adjustment was made; null if 
+		 * unknown
+		 */
+		private Rectangle visibleRegion;
+		
 		public ColorFilterWorker(ImageFilterOps filterOp, float value) {
 			super(colorFilter);
 			this.filterOp = filterOp;
 			this.value = value;
 			displayValue = (value >= 0f ? "+" : "") + Float.toString(value);
 			this.adjustType = ColorAdjustFilter.getAdjustType(filterOp);
+			if(viewport != null) visibleRegion = viewport.getVisibleImageRegion();
 		}
 
 		@Override
 		protected Void doInBackground() throws Exception {
 			//notifyModelAboutToChange(); // uncomment if want busy cursor
 			startTime = System.currentTimeMillis();
+			AdjustType previousAdjust = ColorAdjustFilter.getAdjustType(colorFilter.getMetaData());
+			if(adjustType != null && previousAdjust != null && !adjustType.equals(previousAdjust)) {
+				// previous adjustment gets baked into reference below, so it 
+				// must be applied at full resolution first
+				commitPreview(this);
+			}
 			filter.setFilterListener(this);
 			colorFilter.setCurrentOp(filterOp);
 			switch(filterOp) {
@@ -747,19 +1009,46 @@ public class ImageModel implements ImageConduit {
 					colorFilter.resetHscb(true, false);
 				}
 				if(!adjustType.equals(lastAdjust)) {
-					unscaledReferenceImage = ImageUtil.deepCopy(unscaledDisplayImage);
+					setReference(unscaledDisplayImage);
 				}
 			}
-			unscaledDisplayImage = colorFilter.filter(unscaledReferenceImage, null);
-	    	displayImage = EditorImageUtil.rotate(unscaledDisplayImage, null, null, scale, scale);
+			Rectangle region = getPartialRegion();
+			if(livePreview && scale != 1.0) {
+				displayImage = colorFilter.filter(getPreviewReference(), null);
+				commitPending = true;
+			}
+			else if(livePreview && region != null) {
+				displayImage = previewRegion(region);
+				commitPending = true;
+			}
+			else {
+				unscaledDisplayImage = adjustColors(getReference(), this);
+				displayImage = deriveDisplayImage();
+				commitPending = false;
+			}
+			enforceMemoryBudget();
 	    	colorFilter.printValues();
 	    	return null;
 		}
 
+		/**
+		 * @return visible region of the image, or null if all of it is 
+		 * 	visible or the region is not known
+		 */
+		private Rectangle getPartialRegion() {
+			if(visibleRegion == null) return null;
+			Rectangle image = new Rectangle(unscaledDisplayImage.getWidth(), unscaledDisplayImage.getHeight());
+			Rectangle region = visibleRegion.intersection(image);
+			if(region.isEmpty() || region.equals(image)) return null;
+			return region;
+		}
+
 		@Override
 		protected void done() {
+			if(isSuperseded()) log.debug("{} {} superseded", filterOp, displayValue);
 			boolean resetRgb = AdjustType.Hs.equals(adjustType);
 			boolean resetHs = AdjustType.Rgb.equals(adjustType);
+			if(commitPending) commitTimer.restart();
 			notifyModelChanged(resetRgb, resetHs, false);
 			logTime();
 		}
@@ -770,13 +1059,43 @@ public class ImageModel implements ImageConduit {
 		}
 	}
 	
+	/**
+	 * Applies color adjustment previewed by {@link ColorFilterWorker} to 
+	 * full resolution buffers once sliders settle, or once something 
+	 * {@link ImageModel#invokeWhenApplied(Runnable) waits} for it.
+	 * 
+	 * @author Adam Zimowski (mrazjava)
+	 */
+	class PreviewCommitWorker extends FilterWorker {
+		
+		public PreviewCommitWorker() {
+			super(colorFilter);
+		}
+
+		@Override
+		protected Void doInBackground() throws Exception {
+			startTime = System.currentTimeMillis();
+			commitPreview(this);
+			enforceMemoryBudget();
+			return null;
+		}
+
+		@Override
+		protected void done() {
+			commitQueued = false;
+			notifyModelChanged(false, false, false);
+			logTime();
+		}
+	}
+	
 	/**
 	 * @author Adam Zimowski (mrazjava)
 	 */
 	class FilterWorker extends AbstractFilterWorker implements FilterListener {
 
 		/**
-		 * pass number in the sequence of transformation tasks
+		 * pass number in the sequence of transformation tasks; 0 if filter 
+		 * is computed in a single pass
 		 */
 		protected int passNo;
 		
@@ -794,12 +1113,43 @@ public class ImageModel implements ImageConduit {
 			log.trace("on EDT ? {}", SwingUtilities.isEventDispatchThread());
 			startTime = System.currentTimeMillis();
 			filter.setFilterListener(this);
-			passNo = 1;
-	    	unscaledDisplayImage = filter.filter(unscaledDisplayImage, null);
-	    	passNo = 2;
-	    	unscaledReferenceImage = filter.filter(unscaledReferenceImage, null);
+			if(getResetColorFilters()) {
+				// reference is replaced by the display result once color 
+				// adjustments are reset, so filtering it would be wasted work
+				passNo = 0;
+				commitPreview(this);
+				unscaledDisplayImage = filter.filter(unscaledDisplayImage, null);
+				setReference(unscaledDisplayImage);
+			}
+			else if(colorFilter.isIdentity()) {
+				commitPending = false;
+				// no color adjustments, both buffers hold the same pixels
+				passNo = 0;
+				setReference(filter.filter(getReference(), null));
+				unscaledDisplayImage = getReference();
+			}
+			else if(isPixelMove()) {
+				// filter gives the same pixels before and after color 
+				// adjustments, so filter reference once, then derive display 
+				// from it by re-applying color adjustments, a cheap point op
+				passNo = 1;
+				setReference(filter.filter(getReference(), null));
+				passNo = 2;
+				unscaledDisplayImage = adjustColors(getReference(), this);
+				commitPending = false;
+			}
+			else {
+				// filter sees colors as adjusted, as the user sees them, so 
+				// display and reference are filtered separately
+				commitPreview(this);
+				passNo = 1;
+				unscaledDisplayImage = filter.filter(unscaledDisplayImage, null);
+				passNo = 2;
+				setReference(filter.filter(getReference(), null));
+			}
 	    	passNo = 3;
-	    	displayImage = EditorImageUtil.rotate(unscaledDisplayImage, null, null, scale, scale);
+	    	displayImage = deriveDisplayImage();
+	    	enforceMemoryBudget();
 			return null;
 		}
 
@@ -808,7 +1158,6 @@ public class ImageModel implements ImageConduit {
 			super.done();
 			boolean resetColors = getResetColorFilters();
 			if(resetColors) {
-				unscaledReferenceImage = ImageUtil.deepCopy(unscaledDisplayImage);
 				colorFilter.resetRgb();
 				colorFilter.resetHscb(true, true);
 			}
@@ -840,17 +1189,31 @@ public class ImageModel implements ImageConduit {
 			}
 		}
 		
+		/**
+		 * @return true if filter only moves pixels around, without blending 
+		 * 	or recomputing them, so that it commutes with color adjustments
+		 */
+		private boolean isPixelMove() {
+			switch(filter.getMetaData()) {
+			case Mirror:
+				return true;
+			default:
+				return false;
+			}
+		}
+		
 		protected void logTime() {
 			long endTime = System.currentTimeMillis();
 			log.info("{} TIME [ms]: {}", filter.toString(), (endTime-startTime));
+			log.debug(BufferPool.getStatistics());
 		}
 
 		@Override
 		public void filterInitialize() {
 			ImageFilterMonitorEvent event = new ImageFilterMonitorEvent(filter.getMetaData(), ImageFilterMonitorEvent.PHASE_START);
 			event.setPctComplete(0);
-			event.setStatus("initializing pass " + passNo);
-			getBus().post(event);			
+			if(passNo > 0) event.setStatus("initializing pass " + passNo);
+			progressChannel.post(event);
 		}
 
 		@Override
@@ -860,7 +1223,7 @@ public class ImageModel implements ImageConduit {
 				event.setPctComplete(passNo == 1 ? 0 : 50);
 				event.setStatus("pass " + passNo);
 			}
-			getBus().post(event);
+			progressChannel.post(event);
 		}
 
 		@Override
@@ -872,7 +1235,7 @@ public class ImageModel implements ImageConduit {
 			}
 			ImageFilterMonitorEvent event = new ImageFilterMonitorEvent(filter.getMetaData(), ImageFilterMonitorEvent.PHASE_PROGRESS);
 			event.setPctComplete(percent);
-			getBus().post(event);
+			progressChannel.post(event);
 		}
 
 		@Override
@@ -880,7 +1243,12 @@ public class ImageModel implements ImageConduit {
 			ImageFilterMonitorEvent event = new ImageFilterMonitorEvent(filter.getMetaData(), ImageFilterMonitorEvent.PHASE_FINALIZE);
 			event.setPctComplete(passNo == 1 ? 50 : 100);
 			if(passNo > 0) event.setStatus("finalizing pass " + passNo);
-			getBus().post(event);
+			progressChannel.post(event);
+		}
+
+		@Override
+		public boolean isFilterCancelled() {
+			return isSuperseded() || isCancelled();
 		}
 
 		@Override
@@ -895,8 +1263,41 @@ public class ImageModel implements ImageConduit {
 		return eventBus;
 	}
 
+	/**
+	 * Returns full resolution image as of last completed operation. While 
+	 * color adjustment is previewed it may not show that adjustment yet; 
+	 * read it from a task passed to {@link #invokeWhenApplied(Runnable)} 
+	 * to be sure it does.
+	 */
 	@Override
 	public BufferedImage getModifiedImage() {
 		return unscaledDisplayImage;
 	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Must be called on the EDT. If a previewed adjustment is pending, it is 
+	 * committed on the filter queue right away, without waiting for the 
+	 * slider to settle.
+	 */
+	@Override
+	public void invokeWhenApplied(Runnable task) {
+		if(!commitPending) {
+			task.run();
+			return;
+		}
+		commitTasks.add(task);
+		queueCommit();
+	}
+	
+	/**
+	 * Queues commit of previewed adjustment unless one is queued already.
+	 */
+	private void queueCommit() {
+		commitTimer.stop();
+		if(commitQueued) return;
+		commitQueued = true;
+		filterQueue.add(new PreviewCommitWorker());
+	}
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package org.zimowski.bambi.editor.studio.image;
+
+import java.awt.Rectangle;
+
+/**
+ * View which shows only part of the image at a time, such as a scrolled 
+ * panel.
+ * 
+ * @author Adam Zimowski (mrazjava)
+ */
+public interface ImageViewport {
+
+	/**
+	 * Called on the EDT.
+	 * 
+	 * @return part of the image currently visible on screen, in display 
+	 * 	image pixels; null if nothing is shown
+	 */
+	public Rectangle getVisibleImageRegion();
+}
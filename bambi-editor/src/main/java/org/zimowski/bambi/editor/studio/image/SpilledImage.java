@@ -0,0 +1,149 @@
+package org.zimowski.bambi.editor.studio.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pixels of an image moved off the Java heap into a memory mapped temporary
+ * file. Operating system pages the data in and out as needed, so a spilled
+ * image costs no heap until it is {@link #load() loaded} back. Since model
+ * images are never modified in place, a spilled copy stays valid for as
+ * long as its source image is in use, and can be loaded any number of times.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+final class SpilledImage {
+
+	private static final Logger log = LoggerFactory.getLogger(SpilledImage.class);
+
+	private final ColorModel colorModel;
+
+	private final SampleModel sampleModel;
+
+	private final int dataType;
+
+	private final File file;
+
+	private RandomAccessFile storage;
+
+	private MappedByteBuffer pixels;
+
+
+	private SpilledImage(BufferedImage image, File file) {
+		this.colorModel = image.getColorModel();
+		this.sampleModel = image.getRaster().getSampleModel();
+		this.dataType = image.getRaster().getDataBuffer().getDataType();
+		this.file = file;
+	}
+
+	/**
+	 * @param image image to test
+	 * @return true if image pixels are laid out in a way which can be
+	 * 	spilled and restored as is; images which are sub images of another,
+	 * 	have multiple banks or are larger than 2GB cannot be spilled
+	 */
+	static boolean canSpill(BufferedImage image) {
+		WritableRaster raster = image.getRaster();
+		DataBuffer buffer = raster.getDataBuffer();
+		if(raster.getParent() != null || buffer.getNumBanks() != 1 || buffer.getOffset() != 0)
+			return false;
+		if(!(buffer instanceof DataBufferInt) && !(buffer instanceof DataBufferByte))
+			return false;
+		if(raster.getMinX() != 0 || raster.getMinY() != 0) return false;
+		long bytes = (long)buffer.getSize() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+		return bytes <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Copies pixels of an image into a new memory mapped temporary file.
+	 *
+	 * @param image image to spill; must pass {@link #canSpill(BufferedImage)}
+	 * @return spilled copy
+	 * @throws IOException if temporary file could not be written
+	 */
+	static SpilledImage spill(BufferedImage image) throws IOException {
+		File file = File.createTempFile("bambi-", ".raw");
+		file.deleteOnExit();
+		SpilledImage spilled = new SpilledImage(image, file);
+		try {
+			spilled.write(image.getRaster().getDataBuffer());
+		}
+		catch(IOException e) {
+			spilled.dispose();
+			throw e;
+		}
+		return spilled;
+	}
+
+	private void write(DataBuffer buffer) throws IOException {
+		storage = new RandomAccessFile(file, "rw");
+		FileChannel channel = storage.getChannel();
+		if(buffer instanceof DataBufferInt) {
+			int[] data = ((DataBufferInt)buffer).getData();
+			pixels = channel.map(FileChannel.MapMode.READ_WRITE, 0, data.length * 4L);
+			pixels.order(ByteOrder.nativeOrder()).asIntBuffer().put(data);
+		}
+		else {
+			byte[] data = ((DataBufferByte)buffer).getData();
+			pixels = channel.map(FileChannel.MapMode.READ_WRITE, 0, data.length);
+			pixels.put(data);
+		}
+	}
+
+	/**
+	 * Creates a heap copy of the spilled image.
+	 *
+	 * @return image identical to the one spilled
+	 */
+	synchronized BufferedImage load() {
+		WritableRaster raster = Raster.createWritableRaster(sampleModel, null);
+		DataBuffer buffer = raster.getDataBuffer();
+		pixels.rewind();
+		if(dataType == DataBuffer.TYPE_INT) {
+			pixels.order(ByteOrder.nativeOrder()).asIntBuffer()
+				.get(((DataBufferInt)buffer).getData());
+		}
+		else {
+			pixels.get(((DataBufferByte)buffer).getData());
+		}
+		return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+	}
+
+	/**
+	 * @return number of bytes spilled
+	 */
+	long getSize() {
+		return pixels == null ? 0 : pixels.capacity();
+	}
+
+	/**
+	 * Releases the temporary file. Spilled image cannot be loaded anymore.
+	 */
+	void dispose() {
+		pixels = null;
+		try {
+			if(storage != null) storage.close();
+		}
+		catch(IOException e) {
+			log.warn(e.getMessage());
+		}
+		// mapping is released when garbage collected, until then some
+		// platforms refuse to delete the file; deleteOnExit covers that
+		if(!file.delete()) log.debug("{} deleted on exit", file);
+	}
+}
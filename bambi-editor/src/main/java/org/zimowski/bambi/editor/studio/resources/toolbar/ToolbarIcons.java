@@ -48,9 +48,10 @@ public enum ToolbarIcons {
 	Contrast("contrast24x24.png", ImageFilterOps.Contrast.toString()),
 	Rgb("rgb24x24.png", CamFilterOps.Rgb.toString()),
 	Stream("stream24x24.png", CamFilterOps.None.toString()),
+	Denoise("denoise24x24.png", CamFilterOps.Denoise.toString()),
 	Home("home24x24.png", "Welcome Screen"),
 	Webcam("webcam24x24.png", "Webcam"),
-	Camera("camera32x32.png", "Take Picture"),
+	Camera("camera32x32.png", "Take Picture (Shift: Sharpest of Burst, Ctrl: Time Lapse)"),
 	Export("upload24x24.png", "Export Image"),
 	Cancel("cancel24x24.png", "Abort"),
 	Open("open24x24.png", "Open Image"),
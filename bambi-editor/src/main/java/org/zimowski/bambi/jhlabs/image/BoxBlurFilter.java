@@ -18,6 +18,10 @@ package org.zimowski.bambi.jhlabs.image;
 
 import java.awt.image.BufferedImage;
 
+import org.zimowski.bambi.editor.filters.BandScheduler;
+import org.zimowski.bambi.editor.filters.BufferPool;
+import org.zimowski.bambi.editor.filters.FilterListener;
+
 import com.jhlabs.image.AbstractBufferedImageOp;
 
 /**
@@ -30,6 +34,11 @@ public class BoxBlurFilter extends AbstractBufferedImageOp {
 	private float vRadius;
 	private int iterations = 1;
 	private boolean premultiplyAlpha = true;
+
+	/**
+	 * Number of rows blurred before being transposed into the output together.
+	 */
+	private static final int TRANSPOSE_BLOCK = 32;
 	
     /**
      * Construct a default BoxBlurFilter.
@@ -74,25 +83,56 @@ public class BoxBlurFilter extends AbstractBufferedImageOp {
         if ( dst == null )
             dst = createCompatibleDestImage( src, null );
 
-        int[] inPixels = new int[width*height];
-        int[] outPixels = new int[width*height];
+        int[] inPixels = BufferPool.borrowInts( width*height );
+        int[] outPixels = BufferPool.borrowInts( width*height );
         getRGB( src, 0, 0, width, height, inPixels );
 
         if ( premultiplyAlpha )
 			ImageMath.premultiply( inPixels, 0, inPixels.length );
-		for (int i = 0; i < iterations; i++ ) {
-            blur( inPixels, outPixels, width, height, hRadius );
-            blur( outPixels, inPixels, height, width, vRadius );
-        }
-        blurFractional( inPixels, outPixels, width, height, hRadius );
-        blurFractional( outPixels, inPixels, height, width, vRadius );
+        blurInPlace( inPixels, outPixels, width, height, hRadius, vRadius, iterations, this );
         if ( premultiplyAlpha )
 			ImageMath.unpremultiply( inPixels, 0, inPixels.length );
 
         setRGB( dst, 0, 0, width, height, inPixels );
+        BufferPool.giveBack( inPixels );
+        BufferPool.giveBack( outPixels );
         return dst;
     }
 
+    /**
+     * Box blur a block of ARGB pixels in place: the given number of
+     * horizontal and vertical passes, followed by a fractional pass if the
+     * radii are not whole numbers. The pixels and one work array are all
+     * the memory used, however many iterations, so effects which blur
+     * repeatedly can keep reusing the same two buffers.
+     * @param pixels the pixels to blur; also receives the result
+     * @param work the work array, at least as long as pixels
+     * @param width the width of the pixel array
+     * @param height the height of the pixel array
+     * @param hRadius the horizontal radius of blur
+     * @param vRadius the vertical radius of blur
+     * @param iterations the number of times to iterate the blur
+     * @param progress the listener notified of overall progress, or null
+     */
+    public static void blurInPlace( int[] pixels, int[] work, int width, int height, float hRadius, float vRadius, int iterations, FilterListener progress ) {
+        boolean fractional = hRadius != (int)hRadius || vRadius != (int)vRadius;
+        PassProgress passes = progress == null ? null : new PassProgress( progress, 2*iterations + (fractional ? 2 : 0) );
+		for (int i = 0; i < iterations; i++ ) {
+            blur( pixels, work, width, height, hRadius, next( passes ) );
+            blur( work, pixels, height, width, vRadius, next( passes ) );
+        }
+        if ( fractional ) {
+            blurFractional( pixels, work, width, height, hRadius, next( passes ) );
+            blurFractional( work, pixels, height, width, vRadius, next( passes ) );
+        }
+    }
+
+    private static FilterListener next( PassProgress passes ) {
+        if ( passes != null )
+            passes.pass++;
+        return passes;
+    }
+
     /**
      * Blur and transpose a block of ARGB pixels.
      * @param in the input pixels
@@ -102,91 +142,176 @@ public class BoxBlurFilter extends AbstractBufferedImageOp {
      * @param radius the radius of blur
      */
     public static void blur( int[] in, int[] out, int width, int height, float radius ) {
-        int widthMinus1 = width-1;
-        int r = (int)radius;
-        int tableSize = 2*r+1;
-        int divide[] = new int[256*tableSize];
+        blur( in, out, width, height, radius, null );
+    }
+
+    /**
+     * Blur and transpose a block of ARGB pixels, splitting rows into bands
+     * processed in parallel. Each band blurs a few rows at a time into a
+     * small block and then transposes the block, so that output is written
+     * in runs of consecutive pixels rather than a whole column apart.
+     */
+    private static void blur( final int[] in, final int[] out, final int width, final int height, float radius, FilterListener progress ) {
+        final int r = (int)radius;
+        final int tableSize = 2*r+1;
+        final int divide[] = new int[256*tableSize];
 
         for ( int i = 0; i < 256*tableSize; i++ )
             divide[i] = i/tableSize;
 
-        int inIndex = 0;
-        
-        for ( int y = 0; y < height; y++ ) {
-            int outIndex = y;
-            int ta = 0, tr = 0, tg = 0, tb = 0;
-
-            for ( int i = -r; i <= r; i++ ) {
-                int rgb = in[inIndex + ImageMath.clamp(i, 0, width-1)];
-                ta += (rgb >> 24) & 0xff;
-                tr += (rgb >> 16) & 0xff;
-                tg += (rgb >> 8) & 0xff;
-                tb += rgb & 0xff;
-            }
-
-            for ( int x = 0; x < width; x++ ) {
-                out[ outIndex ] = (divide[ta] << 24) | (divide[tr] << 16) | (divide[tg] << 8) | divide[tb];
-
-                int i1 = x+r+1;
-                if ( i1 > widthMinus1 )
-                    i1 = widthMinus1;
-                int i2 = x-r;
-                if ( i2 < 0 )
-                    i2 = 0;
-                int rgb1 = in[inIndex+i1];
-                int rgb2 = in[inIndex+i2];
-
-                ta += ((rgb1 >> 24) & 0xff)-((rgb2 >> 24) & 0xff);
-                tr += ((rgb1 & 0xff0000)-(rgb2 & 0xff0000)) >> 16;
-                tg += ((rgb1 & 0xff00)-(rgb2 & 0xff00)) >> 8;
-                tb += (rgb1 & 0xff)-(rgb2 & 0xff);
-                outIndex += height;
-            }
-            inIndex += width;
+        BandScheduler.run( width, height, true, new BandScheduler.BandTask() {
+			@Override
+			public void processBand( int startRow, int endRow ) {
+				int[] block = new int[Math.min( TRANSPOSE_BLOCK, endRow-startRow )*width];
+				for ( int y = startRow; y < endRow; y += TRANSPOSE_BLOCK ) {
+					int rows = Math.min( TRANSPOSE_BLOCK, endRow-y );
+					for ( int j = 0; j < rows; j++ )
+						blurRow( in, (y+j)*width, block, j*width, width, r, divide );
+					transpose( block, rows, width, out, y, height );
+				}
+			}
+		}, progress );
+    }
+
+    private static void blurRow( int[] in, int inIndex, int[] out, int outIndex, int width, int r, int[] divide ) {
+        int widthMinus1 = width-1;
+        int ta = 0, tr = 0, tg = 0, tb = 0;
+
+        for ( int i = -r; i <= r; i++ ) {
+            int rgb = in[inIndex + ImageMath.clamp(i, 0, widthMinus1)];
+            ta += (rgb >> 24) & 0xff;
+            tr += (rgb >> 16) & 0xff;
+            tg += (rgb >> 8) & 0xff;
+            tb += rgb & 0xff;
+        }
+
+        for ( int x = 0; x < width; x++ ) {
+            out[ outIndex++ ] = (divide[ta] << 24) | (divide[tr] << 16) | (divide[tg] << 8) | divide[tb];
+
+            int i1 = x+r+1;
+            if ( i1 > widthMinus1 )
+                i1 = widthMinus1;
+            int i2 = x-r;
+            if ( i2 < 0 )
+                i2 = 0;
+            int rgb1 = in[inIndex+i1];
+            int rgb2 = in[inIndex+i2];
+
+            ta += ((rgb1 >> 24) & 0xff)-((rgb2 >> 24) & 0xff);
+            tr += ((rgb1 & 0xff0000)-(rgb2 & 0xff0000)) >> 16;
+            tg += ((rgb1 & 0xff00)-(rgb2 & 0xff00)) >> 8;
+            tb += (rgb1 & 0xff)-(rgb2 & 0xff);
         }
     }
-        
+
+    /**
+     * Copy a block of rows, stored one after another, into the transposed
+     * output, where they become columns starting at the given row.
+     */
+    private static void transpose( int[] block, int rows, int width, int[] out, int row, int height ) {
+        for ( int x = 0; x < width; x++ ) {
+            int outIndex = x*height + row;
+            for ( int j = 0, i = x; j < rows; j++, i += width )
+                out[outIndex+j] = block[i];
+        }
+    }
+
+    /**
+     * Blur and transpose a block of ARGB pixels by the fractional part of the
+     * radius: each pixel is mixed with its two neighbours.
+     * @param in the input pixels
+     * @param out the output pixels
+     * @param width the width of the pixel array
+     * @param height the height of the pixel array
+     * @param radius the radius of blur
+     */
     public static void blurFractional( int[] in, int[] out, int width, int height, float radius ) {
-        radius -= (int)radius;
+        blurFractional( in, out, width, height, radius, null );
+    }
+
+    private static void blurFractional( final int[] in, final int[] out, final int width, final int height, float radius, FilterListener progress ) {
+        final float fraction = radius - (int)radius;
+
+        BandScheduler.run( width, height, true, new BandScheduler.BandTask() {
+			@Override
+			public void processBand( int startRow, int endRow ) {
+				int[] block = new int[Math.min( TRANSPOSE_BLOCK, endRow-startRow )*width];
+				for ( int y = startRow; y < endRow; y += TRANSPOSE_BLOCK ) {
+					int rows = Math.min( TRANSPOSE_BLOCK, endRow-y );
+					for ( int j = 0; j < rows; j++ )
+						blurFractionalRow( in, (y+j)*width, block, j*width, width, fraction );
+					transpose( block, rows, width, out, y, height );
+				}
+			}
+		}, progress );
+    }
+
+    private static void blurFractionalRow( int[] in, int inIndex, int[] out, int outIndex, int width, float radius ) {
         float f = 1.0f/(1+2*radius);
-        int inIndex = 0;
-        
-        for ( int y = 0; y < height; y++ ) {
-            int outIndex = y;
-
-            out[ outIndex ] = in[0];
-            outIndex += height;
-            for ( int x = 1; x < width-1; x++ ) {
-                int i = inIndex+x;
-                int rgb1 = in[i-1];
-                int rgb2 = in[i];
-                int rgb3 = in[i+1];
-
-                int a1 = (rgb1 >> 24) & 0xff;
-                int r1 = (rgb1 >> 16) & 0xff;
-                int g1 = (rgb1 >> 8) & 0xff;
-                int b1 = rgb1 & 0xff;
-                int a2 = (rgb2 >> 24) & 0xff;
-                int r2 = (rgb2 >> 16) & 0xff;
-                int g2 = (rgb2 >> 8) & 0xff;
-                int b2 = rgb2 & 0xff;
-                int a3 = (rgb3 >> 24) & 0xff;
-                int r3 = (rgb3 >> 16) & 0xff;
-                int g3 = (rgb3 >> 8) & 0xff;
-                int b3 = rgb3 & 0xff;
-                a1 = a2 + (int)((a1 + a3) * radius);
-                r1 = r2 + (int)((r1 + r3) * radius);
-                g1 = g2 + (int)((g1 + g3) * radius);
-                b1 = b2 + (int)((b1 + b3) * radius);
-                a1 *= f;
-                r1 *= f;
-                g1 *= f;
-                b1 *= f;
-                out[ outIndex ] = (a1 << 24) | (r1 << 16) | (g1 << 8) | b1;
-                outIndex += height;
-            }
-            out[ outIndex ] = in[width-1];
-            inIndex += width;
+
+        out[ outIndex++ ] = in[inIndex];
+        if ( width == 1 )
+            return;
+        for ( int x = 1; x < width-1; x++ ) {
+            int i = inIndex+x;
+            int rgb1 = in[i-1];
+            int rgb2 = in[i];
+            int rgb3 = in[i+1];
+
+            int a1 = (rgb1 >> 24) & 0xff;
+            int r1 = (rgb1 >> 16) & 0xff;
+            int g1 = (rgb1 >> 8) & 0xff;
+            int b1 = rgb1 & 0xff;
+            int a2 = (rgb2 >> 24) & 0xff;
+            int r2 = (rgb2 >> 16) & 0xff;
+            int g2 = (rgb2 >> 8) & 0xff;
+            int b2 = rgb2 & 0xff;
+            int a3 = (rgb3 >> 24) & 0xff;
+            int r3 = (rgb3 >> 16) & 0xff;
+            int g3 = (rgb3 >> 8) & 0xff;
+            int b3 = rgb3 & 0xff;
+            a1 = a2 + (int)((a1 + a3) * radius);
+            r1 = r2 + (int)((r1 + r3) * radius);
+            g1 = g2 + (int)((g1 + g3) * radius);
+            b1 = b2 + (int)((b1 + b3) * radius);
+            a1 *= f;
+            r1 *= f;
+            g1 *= f;
+            b1 *= f;
+            out[ outIndex++ ] = (a1 << 24) | (r1 << 16) | (g1 << 8) | b1;
+        }
+        out[ outIndex ] = in[inIndex+width-1];
+    }
+
+    /**
+     * Maps progress of each pass into overall progress of all passes.
+     */
+    private static class PassProgress implements FilterListener {
+
+        private final FilterListener listener;
+        private final int passes;
+        private int pass = -1;
+
+        PassProgress( FilterListener listener, int passes ) {
+            this.listener = listener;
+            this.passes = passes;
+        }
+
+        public void filterInitialize() {
+        }
+
+        public void filterStart( int totalPixels ) {
+        }
+
+        public void filterProgress( int percentComplete ) {
+            listener.filterProgress( (pass*100 + percentComplete) / passes );
+        }
+
+        public void filterDone() {
+        }
+
+        public boolean isFilterCancelled() {
+            return listener.isFilterCancelled();
         }
     }
 
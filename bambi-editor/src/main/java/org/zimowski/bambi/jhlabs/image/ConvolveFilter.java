@@ -24,13 +24,15 @@ import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.Kernel;
 
+import org.zimowski.bambi.editor.filters.BufferPool;
+
 import com.jhlabs.image.AbstractBufferedImageOp;
 
 /**
  * A filter which applies a convolution kernel to an image.
  * @author Jerry Huxtable
  */
-public class ConvolveFilter extends AbstractBufferedImageOp {
+public class ConvolveFilter extends AbstractBufferedImageOp implements PlanarFilter {
 	
     /**
      * Treat pixels off the edge as zero.
@@ -47,6 +49,12 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      */
 	public static int WRAP_EDGES = 2;
 
+    /**
+     * Number of taps from which 2D kernels are convolved through the frequency
+     * domain with {@link FFTConvolution} rather than directly.
+     */
+	public static final int FFT_MIN_TAPS = 15*15;
+
     /**
      * The convolution kernel.
      */
@@ -67,6 +75,14 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      */
 	private int edgeAction = CLAMP_EDGES;
 
+    /**
+     * Whether to convolve small kernels in fixed point.
+     */
+	private boolean fixedPoint = false;
+
+	private FFTConvolution convolution;
+	private Kernel convolutionKernel;
+
 	/**
 	 * Construct a filter with a null kernel. This is only useful if you're going to change the kernel later on.
 	 */
@@ -172,6 +188,28 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
 		return premultiplyAlpha;
 	}
 
+    /**
+     * Set whether to convolve kernels below {@link #FFT_MIN_TAPS} taps with
+     * the integer {@link PlanarConvolution}. It is several times faster, but
+     * may be a level off the floating point result, more once alpha is
+     * unpremultiplied, and clamps pixels off the edge to the nearest edge
+     * pixel rather than to the pixel being convolved.
+     * @param fixedPoint true to convolve in fixed point
+     * @see #getFixedPoint
+     */
+	public void setFixedPoint( boolean fixedPoint ) {
+		this.fixedPoint = fixedPoint;
+	}
+
+    /**
+     * Get whether to convolve small kernels in fixed point.
+     * @return true to convolve in fixed point
+     * @see #setFixedPoint
+     */
+	public boolean getFixedPoint() {
+		return fixedPoint;
+	}
+
     public BufferedImage filter( BufferedImage src, BufferedImage dst ) {
         int width = src.getWidth();
         int height = src.getHeight();
@@ -179,17 +217,60 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
         if ( dst == null )
             dst = createCompatibleDestImage( src, null );
 
-        int[] inPixels = new int[width*height];
-        int[] outPixels = new int[width*height];
+        int[] inPixels = BufferPool.borrowInts( width*height );
+        int[] outPixels = BufferPool.borrowInts( width*height );
         getRGB( src, 0, 0, width, height, inPixels );
 
         if ( premultiplyAlpha )
 			ImageMath.premultiply( inPixels, 0, inPixels.length );
-		convolve(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
+		int taps = kernel.getWidth()*kernel.getHeight();
+		if ( taps >= FFT_MIN_TAPS && kernel.getWidth() > 1 && kernel.getHeight() > 1 )
+			getConvolution().filter(inPixels, outPixels, width, height, alpha, edgeAction, this);
+		else if ( fixedPoint && taps < FFT_MIN_TAPS )
+			new PlanarConvolution(kernel).filter(inPixels, outPixels, width, height, alpha, edgeAction, this);
+		else
+			convolve(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
         if ( premultiplyAlpha )
 			ImageMath.unpremultiply( outPixels, 0, outPixels.length );
 
         setRGB( dst, 0, 0, width, height, outPixels );
+        BufferPool.giveBack( inPixels );
+        BufferPool.giveBack( outPixels );
+        return dst;
+    }
+
+    /**
+     * Get the frequency domain convolution with the kernel, creating it if
+     * the kernel changed since last time. Kernel spectra are cached by the
+     * convolution, so repeated runs with the same kernel skip them.
+     */
+    private synchronized FFTConvolution getConvolution() {
+        if ( convolution == null || convolutionKernel != kernel ) {
+            convolution = FFTConvolution.fromKernel( kernel );
+            convolutionKernel = kernel;
+        }
+        return convolution;
+    }
+
+    /**
+     * Convolve a planar image, staying planar. Alpha is convolved if the image
+     * has it, regardless of {@link #getUseAlpha}.
+     * @param src the source image
+     * @param dst the destination image, or null to create one
+     * @return the destination image
+     */
+    public PlanarImage filter( PlanarImage src, PlanarImage dst ) {
+        if ( dst == null )
+            dst = src.createCompatible();
+
+        boolean premultiply = premultiplyAlpha && src.hasAlpha();
+        if ( premultiply ) {
+            src = src.copy();
+            src.premultiply();
+        }
+        new PlanarConvolution(kernel).filter(src, dst, edgeAction, this);
+        if ( premultiply )
+            dst.unpremultiply();
         return dst;
     }
 
@@ -228,7 +309,8 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
 	}
 	
     /**
-     * Convolve a block of pixels.
+     * Convolve a block of pixels. 2D kernels of at least {@link #FFT_MIN_TAPS}
+     * taps are convolved with {@link FFTConvolution}.
      * @param kernel the kernel
      * @param inPixels the input pixels
      * @param outPixels the output pixels
@@ -242,9 +324,28 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
 			convolveH(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
 		else if (kernel.getWidth() == 1)
 			convolveV(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
+		else if (kernel.getWidth()*kernel.getHeight() >= FFT_MIN_TAPS)
+			FFTConvolution.fromKernel(kernel).filter(inPixels, outPixels, width, height, alpha, edgeAction, null);
 		else
 			convolveHV(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
 	}
+
+    /**
+     * Map a coordinate which may be off the image edge to a source coordinate.
+     * @param i the coordinate
+     * @param length the image width or height
+     * @param edgeAction what to do at the edges
+     * @return the source coordinate, or -1 if the pixel is zero
+     */
+	static int edgeIndex(int i, int length, int edgeAction) {
+		if (i >= 0 && i < length)
+			return i;
+		if (edgeAction == CLAMP_EDGES)
+			return i < 0 ? 0 : length-1;
+		if (edgeAction == WRAP_EDGES)
+			return ImageMath.mod(i, length);
+		return -1;
+	}
 	
 	/**
 	 * Convolve with a 2D kernel.
@@ -18,16 +18,65 @@ package org.zimowski.bambi.jhlabs.image;
 
 import java.awt.Rectangle;
 
+import org.zimowski.bambi.editor.filters.ConstantTimeMedian;
+
 import com.jhlabs.image.WholeImageFilter;
 
 /**
- * A filter which removes noise from an image using a "pepper and salt" algorithm.
+ * A filter which removes noise from an image using a "pepper and salt" algorithm. Radius above 1
+ * replaces specks which differ from the median of their window by more than a threshold, at constant
+ * cost per pixel, see {@link ConstantTimeMedian}.
  */
 public class DespeckleFilter extends WholeImageFilter {
 
+	private int radius = 1;
+
+	private int threshold = 32;
+
 	public DespeckleFilter() {
 	}
 
+	/**
+	 * Set the radius of the window, 1 for the classic 3x3 pepper and salt.
+	 * @param radius the radius
+     * @min-value 1
+     * @max-value 100+
+     * @see #getRadius
+	 */
+	public void setRadius(int radius) {
+		this.radius = radius;
+	}
+
+	/**
+	 * Get the radius of the window.
+	 * @return the radius
+     * @see #setRadius
+	 */
+	public int getRadius() {
+		return radius;
+	}
+
+	/**
+	 * Set how much a pixel must differ from the window median to be treated as a speck. Only used
+	 * for radius above 1.
+	 * @param threshold the threshold
+     * @min-value 0
+     * @max-value 255
+     * @see #getThreshold
+	 */
+	public void setThreshold(int threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Get the speck threshold.
+	 * @return the threshold
+     * @see #setThreshold
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
 	private short pepperAndSalt( short c, short v1, short v2 ) {
 		if ( c < v1 )
 			c++;
@@ -41,6 +90,15 @@ public class DespeckleFilter extends WholeImageFilter {
 	}
 	
 	protected int[] filterPixels( int width, int height, int[] inPixels, Rectangle transformedSpace ) {
+		if ( radius > 1 ) {
+			int[] outPixels = new int[width * height];
+			ConstantTimeMedian median = new ConstantTimeMedian(radius);
+			median.setMode(ConstantTimeMedian.Mode.SWITCHING);
+			median.setThreshold(threshold);
+			median.filter(inPixels, outPixels, width, height, this);
+			return outPixels;
+		}
+
 		int index = 0;
 		short[][] r = new short[3][width];
 		short[][] g = new short[3][width];
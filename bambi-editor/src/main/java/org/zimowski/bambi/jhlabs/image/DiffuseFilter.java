@@ -59,6 +59,14 @@ public class DiffuseFilter extends TransformFilter {
 		out[1] = y + distance * cosTable[angle];
 	}
 
+	/**
+	 * Random displacement differs on every run, so it is never cached.
+	 */
+	@Override
+	protected Object getTransformKey() {
+		return null;
+	}
+
     public BufferedImage filter( BufferedImage src, BufferedImage dst ) {
 		sinTable = new float[256];
 		cosTable = new float[256];
@@ -0,0 +1,356 @@
+package org.zimowski.bambi.jhlabs.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Kernel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import org.zimowski.bambi.editor.filters.BandScheduler;
+import org.zimowski.bambi.editor.filters.FilterListener;
+import org.zimowski.bambi.jhlabs.math.FFTPlan;
+
+/**
+ * Convolution of ARGB pixels with an arbitrary kernel through the frequency
+ * domain, at a cost per pixel which grows with the logarithm of the kernel
+ * size rather than with its area. Worthwhile for kernels of a few hundred
+ * taps and more; small kernels are faster convolved directly.
+ * <p>
+ * Image is split into square tiles whose size is chosen per image and kernel
+ * to minimize the total transform work. Every tile is read together with
+ * the margin the kernel reaches, transformed, multiplied by the kernel
+ * spectrum and transformed back (overlap-save). Two channels are packed
+ * into each complex transform, alpha with red and green with blue. Tiles
+ * are independent and processed in parallel.
+ * <p>
+ * Kernel spectrum is computed once per tile size and kept for the life of
+ * the convolution, and FFT tables are shared through {@link FFTPlan}, so a
+ * convolution should be reused for as long as its kernel does not change.
+ * Tile work buffers are pooled across all convolutions.
+ * <p>
+ * Semantics match {@link ConvolveFilter}: kernel origin is its center
+ * (width/2, height/2) and output pixel is the sum of kernel values times the
+ * source pixels they cover. Pixels off the image edge follow one of the
+ * {@link ConvolveFilter} edge actions.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class FFTConvolution {
+
+	/**
+	 * Smallest tile transform size
+	 */
+	private static final int MIN_TILE = 32;
+
+	/**
+	 * Largest tile transform size, unless kernel needs more; work buffers of
+	 * a tile take 16 bytes per pixel (4MB at 512)
+	 */
+	private static final int MAX_TILE = 512;
+
+	/**
+	 * Most work buffers kept for reuse per tile size
+	 */
+	private static final int MAX_POOLED = Runtime.getRuntime().availableProcessors() + 1;
+
+	private static final ConcurrentMap<Integer, ConcurrentLinkedQueue<Workspace>> workspaces =
+			new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<Workspace>>();
+
+	private final float[] kernel;
+
+	private final int kernelWidth;
+
+	private final int kernelHeight;
+
+	/**
+	 * conjugated kernel spectrum per tile size, real and imaginary parts
+	 */
+	private final ConcurrentMap<Integer, float[][]> spectra =
+			new ConcurrentHashMap<Integer, float[][]>();
+
+	private float highlightThreshold = 255;
+
+	private float highlightFactor = 1;
+
+
+	/**
+	 * @param kernel kernel values, row by row
+	 * @param width kernel width
+	 * @param height kernel height
+	 */
+	public FFTConvolution(float[] kernel, int width, int height) {
+		if(width < 1 || height < 1 || width > MAX_TILE || height > MAX_TILE)
+			throw new IllegalArgumentException("unsupported kernel size " + width + "x" + height);
+		if(kernel.length < width * height)
+			throw new IllegalArgumentException("kernel data too short");
+		this.kernel = kernel.clone();
+		this.kernelWidth = width;
+		this.kernelHeight = height;
+	}
+
+	/**
+	 * @param kernel AWT kernel
+	 * @return convolution with the same kernel
+	 */
+	public static FFTConvolution fromKernel(Kernel kernel) {
+		return new FFTConvolution(kernel.getKernelData(null), kernel.getWidth(), kernel.getHeight());
+	}
+
+	/**
+	 * Creates a convolution whose kernel is an image, for example a photo of
+	 * a real lens aperture for bokeh. Kernel values are pixel brightness,
+	 * normalized to add up to 1 so that overall image brightness is kept.
+	 *
+	 * @param image kernel image; brightness weighted by alpha
+	 * @return convolution with the kernel image
+	 * @throws IllegalArgumentException if image is blank
+	 */
+	public static FFTConvolution fromImage(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+		float[] kernel = new float[width * height];
+		float total = 0;
+		for(int i = 0; i < kernel.length; i++) {
+			int rgb = pixels[i];
+			float a = ((rgb >>> 24) & 0xff) / 255f;
+			kernel[i] = a * PixelUtils.brightness(rgb);
+			total += kernel[i];
+		}
+		if(total <= 0) throw new IllegalArgumentException("blank kernel image");
+		for(int i = 0; i < kernel.length; i++)
+			kernel[i] /= total;
+		return new FFTConvolution(kernel, width, height);
+	}
+
+	public int getKernelWidth() {
+		return kernelWidth;
+	}
+
+	public int getKernelHeight() {
+		return kernelHeight;
+	}
+
+	/**
+	 * Sets highlight boost: color channel values (not alpha) above the
+	 * threshold are multiplied by the factor before convolving, so that
+	 * blurred highlights spread out bright instead of fading, as they do
+	 * on film. Results are clamped to 255.
+	 *
+	 * @param threshold channel value (0-255) above which values are
+	 * 	boosted; 255 disables the boost
+	 * @param factor boost factor
+	 */
+	public void setHighlightBoost(float threshold, float factor) {
+		this.highlightThreshold = threshold;
+		this.highlightFactor = factor;
+	}
+
+	/**
+	 * Convolves ARGB pixels. Input and output must be different arrays.
+	 * Pixels are convolved as they are; premultiply alpha beforehand if
+	 * needed.
+	 *
+	 * @param inPixels source pixels, row by row
+	 * @param outPixels destination pixels
+	 * @param width image width
+	 * @param height image height
+	 * @param alpha true to convolve alpha, false to make output opaque
+	 * @param edgeAction {@link ConvolveFilter#ZERO_EDGES},
+	 * 	{@link ConvolveFilter#CLAMP_EDGES} or {@link ConvolveFilter#WRAP_EDGES}
+	 * @param progress optional listener notified as tiles complete; may be
+	 * 	null
+	 */
+	public void filter(final int[] inPixels, final int[] outPixels, final int width,
+			final int height, final boolean alpha, final int edgeAction, FilterListener progress) {
+
+		final int size = chooseTileSize(width, height);
+		final int innerWidth = size - kernelWidth + 1;
+		final int innerHeight = size - kernelHeight + 1;
+		final int tilesX = (width + innerWidth - 1) / innerWidth;
+		final int tilesY = (height + innerHeight - 1) / innerHeight;
+		final float[][] spectrum = getSpectrum(size);
+
+		BandScheduler.runUnits(tilesX * tilesY, (long)width * height, true, new BandScheduler.BandTask() {
+			@Override
+			public void processBand(int startTile, int endTile) {
+				Workspace work = borrow(size);
+				try {
+					for(int tile = startTile; tile < endTile; tile++) {
+						int x = (tile % tilesX) * innerWidth;
+						int y = (tile / tilesX) * innerHeight;
+						filterTile(work, spectrum, inPixels, outPixels, width, height,
+								x, y, Math.min(innerWidth, width - x), Math.min(innerHeight, height - y),
+								alpha, edgeAction);
+					}
+				}
+				finally {
+					giveBack(work);
+				}
+			}
+		}, progress);
+	}
+
+	/**
+	 * Picks the tile size needing the least transform work for the whole
+	 * image. Larger tiles waste less on overlapping margins but each costs
+	 * more per pixel; tiles much larger than the image are all padding.
+	 */
+	private int chooseTileSize(int width, int height) {
+		int smallest = Math.max(MIN_TILE, FFTPlan.ceilPowerOf2(Math.max(kernelWidth, kernelHeight) + 1));
+		int best = smallest;
+		double bestCost = Double.MAX_VALUE;
+		for(int size = smallest, largest = Math.max(MAX_TILE, 2 * smallest); size <= largest; size <<= 1) {
+			int tilesX = (width + size - kernelWidth) / (size - kernelWidth + 1);
+			int tilesY = (height + size - kernelHeight) / (size - kernelHeight + 1);
+			double cost = (double)tilesX * tilesY * size * size * FFTPlan.log2(size);
+			if(cost < bestCost) {
+				bestCost = cost;
+				best = size;
+			}
+		}
+		return best;
+	}
+
+	private float[][] getSpectrum(int size) {
+		float[][] spectrum = spectra.get(size);
+		if(spectrum == null) {
+			float[] re = new float[size * size];
+			float[] im = new float[size * size];
+			for(int y = 0; y < kernelHeight; y++)
+				System.arraycopy(kernel, y * kernelWidth, re, y * size, kernelWidth);
+			FFTPlan.transform2D(re, im, size, size, true, null);
+			// correlating rather than convolving takes the conjugate spectrum
+			for(int i = 0; i < im.length; i++)
+				im[i] = -im[i];
+			spectrum = new float[][] { re, im };
+			spectra.putIfAbsent(size, spectrum);
+		}
+		return spectrum;
+	}
+
+	/**
+	 * Convolves one tile; output tile at (x, y) is computed from a source
+	 * area extended by the kernel reach, transformed at once.
+	 */
+	private void filterTile(Workspace work, float[][] spectrum, int[] inPixels, int[] outPixels,
+			int width, int height, int x, int y, int w, int h, boolean alpha, int edgeAction) {
+
+		final int size = work.size;
+		final float[] ar = work.ar, ai = work.ai, gr = work.gr, gi = work.gi;
+		final int[] columns = work.columns;
+		final float threshold = highlightThreshold;
+		final float factor = highlightFactor;
+		final boolean boost = threshold < 255 && factor != 1;
+
+		int left = x - kernelWidth / 2;
+		int top = y - kernelHeight / 2;
+		for(int u = 0; u < size; u++)
+			columns[u] = ConvolveFilter.edgeIndex(left + u, width, edgeAction);
+
+		for(int v = 0, index = 0; v < size; v++) {
+			int row = ConvolveFilter.edgeIndex(top + v, height, edgeAction);
+			if(row < 0) {
+				for(int u = 0; u < size; u++, index++)
+					ar[index] = ai[index] = gr[index] = gi[index] = 0;
+				continue;
+			}
+			int offset = row * width;
+			for(int u = 0; u < size; u++, index++) {
+				int column = columns[u];
+				if(column < 0) {
+					ar[index] = ai[index] = gr[index] = gi[index] = 0;
+					continue;
+				}
+				int rgb = inPixels[offset + column];
+				float r = (rgb >> 16) & 0xff;
+				float g = (rgb >> 8) & 0xff;
+				float b = rgb & 0xff;
+				if(boost) {
+					if(r > threshold) r *= factor;
+					if(g > threshold) g *= factor;
+					if(b > threshold) b *= factor;
+				}
+				ar[index] = (rgb >>> 24) & 0xff;
+				ai[index] = r;
+				gr[index] = g;
+				gi[index] = b;
+			}
+		}
+
+		FFTPlan.transform2D(ar, ai, size, size, true, work.column);
+		FFTPlan.transform2D(gr, gi, size, size, true, work.column);
+
+		final float[] kr = spectrum[0], ki = spectrum[1];
+		for(int i = 0, n = size * size; i < n; i++) {
+			float re = kr[i], im = ki[i];
+			float sr = ar[i], si = ai[i];
+			ar[i] = sr * re - si * im;
+			ai[i] = sr * im + si * re;
+			sr = gr[i];
+			si = gi[i];
+			gr[i] = sr * re - si * im;
+			gi[i] = sr * im + si * re;
+		}
+
+		FFTPlan.transform2D(ar, ai, size, size, false, work.column);
+		FFTPlan.transform2D(gr, gi, size, size, false, work.column);
+
+		for(int v = 0; v < h; v++) {
+			int index = v * size;
+			int out = (y + v) * width + x;
+			for(int u = 0; u < w; u++, index++) {
+				int a = alpha ? clamp(ar[index]) : 0xff;
+				int r = clamp(ai[index]);
+				int g = clamp(gr[index]);
+				int b = clamp(gi[index]);
+				outPixels[out++] = (a << 24) | (r << 16) | (g << 8) | b;
+			}
+		}
+	}
+
+	private static int clamp(float value) {
+		int i = (int)(value + 0.5f);
+		return i < 0 ? 0 : i > 255 ? 255 : i;
+	}
+
+	private static Workspace borrow(int size) {
+		ConcurrentLinkedQueue<Workspace> pool = workspaces.get(size);
+		Workspace work = pool == null ? null : pool.poll();
+		return work != null ? work : new Workspace(size);
+	}
+
+	private static void giveBack(Workspace work) {
+		ConcurrentLinkedQueue<Workspace> pool = workspaces.get(work.size);
+		if(pool == null) {
+			workspaces.putIfAbsent(work.size, new ConcurrentLinkedQueue<Workspace>());
+			pool = workspaces.get(work.size);
+		}
+		if(pool.size() < MAX_POOLED) pool.offer(work);
+	}
+
+	/**
+	 * Work buffers of one tile size.
+	 */
+	private static class Workspace {
+
+		final int size;
+
+		final float[] ar, ai, gr, gi;
+
+		final float[][] column;
+
+		final int[] columns;
+
+		Workspace(int size) {
+			this.size = size;
+			int n = size * size;
+			ar = new float[n];
+			ai = new float[n];
+			gr = new float[n];
+			gi = new float[n];
+			column = new float[2][size];
+			columns = new int[size];
+		}
+	}
+}
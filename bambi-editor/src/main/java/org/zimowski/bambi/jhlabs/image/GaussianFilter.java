@@ -19,6 +19,9 @@ package org.zimowski.bambi.jhlabs.image;
 import java.awt.image.BufferedImage;
 import java.awt.image.Kernel;
 
+import org.zimowski.bambi.editor.filters.BandScheduler;
+import org.zimowski.bambi.editor.filters.BufferPool;
+
 /**
  * A filter which applies Gaussian blur to an image. This is a subclass of ConvolveFilter
  * which simply creates a kernel with a Gaussian distribution for blurring.
@@ -26,6 +29,19 @@ import java.awt.image.Kernel;
  */
 public class GaussianFilter extends ConvolveFilter {
 
+	/**
+	 * Radius from which blur switches from convolution to the recursive
+	 * approximation. Convolution costs grow with radius, recursive filter
+	 * costs about as much as a convolution with a kernel of this radius.
+	 */
+	public static final float RECURSIVE_MIN_RADIUS = 16;
+
+	private static final int FIXED_SHIFT = 16;
+
+	private static final int FIXED_ONE = 1 << FIXED_SHIFT;
+
+	private static final int FIXED_HALF = FIXED_ONE >> 1;
+
 	/**
      * The blur radius.
      */
@@ -72,6 +88,44 @@ public class GaussianFilter extends ConvolveFilter {
 		return radius;
 	}
 
+    /**
+     * Blur a planar image, staying planar: a row kernel pass followed by a
+     * column kernel pass. Large radii, which are blurred recursively, go
+     * through packed pixels.
+     * @param src the source image
+     * @param dst the destination image, or null to create one
+     * @return the destination image
+     */
+    public PlanarImage filter( PlanarImage src, PlanarImage dst ) {
+        if ( radius >= RECURSIVE_MIN_RADIUS )
+            return src.filter( this, dst );
+        return blur( src, dst );
+    }
+
+    /**
+     * Blur a planar image with the kernel, whatever the radius.
+     * @param src the source image
+     * @param dst the destination image, or null to create one
+     * @return the destination image
+     */
+    protected PlanarImage blur( PlanarImage src, PlanarImage dst ) {
+        if ( dst == null )
+            dst = src.createCompatible();
+
+        boolean premultiply = alpha && premultiplyAlpha && src.hasAlpha();
+        if ( premultiply ) {
+            src = src.copy();
+            src.premultiply();
+        }
+        float[] matrix = kernel.getKernelData( null );
+        PlanarImage tmp = src.createCompatible();
+        new PlanarConvolution( matrix, matrix.length, 1 ).filter( src, tmp, CLAMP_EDGES, this );
+        new PlanarConvolution( matrix, 1, matrix.length ).filter( tmp, dst, CLAMP_EDGES, this );
+        if ( premultiply )
+            dst.unpremultiply();
+        return dst;
+    }
+
     public BufferedImage filter( BufferedImage src, BufferedImage dst ) {
         int width = src.getWidth();
         int height = src.getHeight();
@@ -79,21 +133,45 @@ public class GaussianFilter extends ConvolveFilter {
         if ( dst == null )
             dst = createCompatibleDestImage( src, null );
 
-        int[] inPixels = new int[width*height];
-        int[] outPixels = new int[width*height];
+        int[] inPixels = BufferPool.borrowInts( width*height );
+        int[] outPixels = BufferPool.borrowInts( width*height );
         src.getRGB( 0, 0, width, height, inPixels, 0, width );
 
 		if ( radius > 0 ) {
-			convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES);
-			convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES);
+			blurAndTranspose(radius, kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES);
+			blurAndTranspose(radius, kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES);
 		}
 
         dst.setRGB( 0, 0, width, height, inPixels, 0, width );
+        BufferPool.giveBack( inPixels );
+        BufferPool.giveBack( outPixels );
         return dst;
     }
 
+	/**
+	 * Blur and transpose a block of ARGB pixels with a Gaussian of given
+	 * radius. Uses the convolution kernel for small radii, and a recursive
+	 * approximation, whose cost does not depend on radius, from
+	 * {@link #RECURSIVE_MIN_RADIUS} up.
+	 * @param radius the blur radius
+	 * @param kernel the blur kernel made for radius
+	 * @param inPixels the input pixels
+	 * @param outPixels the output pixels
+	 * @param width the width of the pixel array
+	 * @param height the height of the pixel array
+	 * @param alpha whether to blur the alpha channel
+	 * @param edgeAction what to do at the edges
+	 */
+	public static void blurAndTranspose(float radius, Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, boolean premultiply, boolean unpremultiply, int edgeAction) {
+		if ( radius >= RECURSIVE_MIN_RADIUS && edgeAction != WRAP_EDGES )
+			recursiveBlurAndTranspose(radius/3, inPixels, outPixels, width, height, alpha, premultiply, unpremultiply, edgeAction);
+		else
+			convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, premultiply, unpremultiply, edgeAction);
+	}
+
     /**
-     * Blur and transpose a block of ARGB pixels.
+     * Blur and transpose a block of ARGB pixels. Kernel is converted to
+     * 16 bit fixed point and rows are processed in parallel bands.
      * @param kernel the blur kernel
      * @param inPixels the input pixels
      * @param outPixels the output pixels
@@ -102,63 +180,217 @@ public class GaussianFilter extends ConvolveFilter {
      * @param alpha whether to blur the alpha channel
      * @param edgeAction what to do at the edges
      */
-	public static void convolveAndTranspose(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, boolean premultiply, boolean unpremultiply, int edgeAction) {
+	public static void convolveAndTranspose(Kernel kernel, final int[] inPixels, final int[] outPixels, final int width, final int height, final boolean alpha, final boolean premultiply, final boolean unpremultiply, final int edgeAction) {
 		float[] matrix = kernel.getKernelData( null );
-		int cols = kernel.getWidth();
-		int cols2 = cols/2;
-
-		for (int y = 0; y < height; y++) {
-			int index = y;
-			int ioffset = y*width;
-			for (int x = 0; x < width; x++) {
-				float r = 0, g = 0, b = 0, a = 0;
-				int moffset = cols2;
-				for (int col = -cols2; col <= cols2; col++) {
-					float f = matrix[moffset+col];
-
-					if (f != 0) {
-						int ix = x+col;
-						if ( ix < 0 ) {
-							if ( edgeAction == CLAMP_EDGES )
-								ix = 0;
-							else if ( edgeAction == WRAP_EDGES )
-								ix = (x+width) % width;
-						} else if ( ix >= width) {
-							if ( edgeAction == CLAMP_EDGES )
-								ix = width-1;
-							else if ( edgeAction == WRAP_EDGES )
-								ix = (x+width) % width;
+		final int cols2 = kernel.getWidth()/2;
+
+		// fixed point weights of non zero taps, offsets relative to padded row
+		int taps = 0;
+		for ( int i = 0; i < matrix.length; i++ )
+			if ( matrix[i] != 0 ) taps++;
+		final int[] weights = new int[taps];
+		final int[] offsets = new int[taps];
+		float total = 0;
+		int fixedTotal = 0, center = 0;
+		for ( int i = 0, tap = 0; i < matrix.length; i++ ) {
+			if ( matrix[i] == 0 ) continue;
+			weights[tap] = Math.round( matrix[i] * FIXED_ONE );
+			offsets[tap] = i;
+			if ( Math.abs( i-cols2 ) < Math.abs( offsets[center]-cols2 ) ) center = tap;
+			total += matrix[i];
+			fixedTotal += weights[tap];
+			tap++;
+		}
+		// rounding error goes to the center tap so flat areas stay flat
+		if ( taps > 0 ) weights[center] += Math.round( total * FIXED_ONE ) - fixedTotal;
+
+		final boolean needAlpha = alpha || unpremultiply;
+		final boolean wrap = edgeAction == WRAP_EDGES;
+		BandScheduler.run(width, height, true, new BandScheduler.BandTask() {
+			@Override
+			public void processBand(int startRow, int endRow) {
+				int length = width + 2*cols2;
+				int[] a = new int[length];
+				int[] r = new int[length];
+				int[] g = new int[length];
+				int[] b = new int[length];
+				for ( int y = startRow; y < endRow; y++ ) {
+					unpackRow( inPixels, y*width, width, cols2, edgeAction, premultiply, a, r, g, b );
+					int index = y;
+					for ( int x = 0; x < width; x++ ) {
+						int sa = 0, sr = 0, sg = 0, sb = 0;
+						for ( int tap = 0; tap < weights.length; tap++ ) {
+							int f = weights[tap];
+							int i = x + offsets[tap];
+							sr += f * r[i];
+							sg += f * g[i];
+							sb += f * b[i];
+						}
+						if ( needAlpha ) {
+							for ( int tap = 0; tap < weights.length; tap++ )
+								sa += weights[tap] * a[x + offsets[tap]];
 						}
-						int rgb = inPixels[ioffset+ix];
-						int pa = (rgb >> 24) & 0xff;
-						int pr = (rgb >> 16) & 0xff;
-						int pg = (rgb >> 8) & 0xff;
-						int pb = rgb & 0xff;
-						if ( premultiply ) {
-							float a255 = pa * (1.0f / 255.0f);
-							pr *= a255;
-							pg *= a255;
-							pb *= a255;
+						if ( wrap && ( x < cols2 || x >= width-cols2 ) ) {
+							// taps past the edge wrap onto the pixel itself
+							int outside = 0;
+							for ( int tap = 0; tap < weights.length; tap++ ) {
+								int i = x + offsets[tap];
+								if ( i < cols2 || i >= width+cols2 ) outside += weights[tap];
+							}
+							int i = x + cols2;
+							sa += outside * a[i];
+							sr += outside * r[i];
+							sg += outside * g[i];
+							sb += outside * b[i];
 						}
-						a += f * pa;
-						r += f * pr;
-						g += f * pg;
-						b += f * pb;
+						int ia, ir, ig, ib;
+						if ( unpremultiply && sa != 0 && sa != 255*FIXED_ONE ) {
+							ir = (int)(((long)sr * 255 + (sa >> 1)) / sa);
+							ig = (int)(((long)sg * 255 + (sa >> 1)) / sa);
+							ib = (int)(((long)sb * 255 + (sa >> 1)) / sa);
+						} else {
+							ir = (sr + FIXED_HALF) >> FIXED_SHIFT;
+							ig = (sg + FIXED_HALF) >> FIXED_SHIFT;
+							ib = (sb + FIXED_HALF) >> FIXED_SHIFT;
+						}
+						ia = alpha ? PixelUtils.clamp( (sa + FIXED_HALF) >> FIXED_SHIFT ) : 0xff;
+						outPixels[index] = (ia << 24) | (PixelUtils.clamp(ir) << 16) | (PixelUtils.clamp(ig) << 8) | PixelUtils.clamp(ib);
+						index += height;
 					}
 				}
-				if ( unpremultiply && a != 0 && a != 255 ) {
-					float f = 255.0f / a;
-					r *= f;
-					g *= f;
-					b *= f;
+			}
+		}, null);
+	}
+
+	/**
+	 * Blur and transpose a block of ARGB pixels with recursive Gaussian
+	 * filter of Young and van Vliet: a third order causal pass followed by
+	 * an anti-causal one, 8 multiply-adds per channel and pixel whatever the
+	 * sigma. Approximation is accurate for sigma above about 2.
+	 * @param sigma standard deviation of the Gaussian
+	 * @param inPixels the input pixels
+	 * @param outPixels the output pixels
+	 * @param width the width of the pixel array
+	 * @param height the height of the pixel array
+	 * @param alpha whether to blur the alpha channel
+	 * @param edgeAction what to do at the edges; clamp or zero
+	 */
+	public static void recursiveBlurAndTranspose(float sigma, final int[] inPixels, final int[] outPixels, final int width, final int height, final boolean alpha, final boolean premultiply, final boolean unpremultiply, final int edgeAction) {
+		double q = sigma >= 2.5 ?
+				0.98711*sigma - 0.96330 :
+				3.97156 - 4.14554*Math.sqrt(1 - 0.26891*Math.max(0.5f, sigma));
+		double q2 = q*q, q3 = q2*q;
+		double b0 = 1.57825 + 2.44413*q + 1.4281*q2 + 0.422205*q3;
+		final float c1 = (float)((2.44413*q + 2.85619*q2 + 1.26661*q3) / b0);
+		final float c2 = (float)(-(1.4281*q2 + 1.26661*q3) / b0);
+		final float c3 = (float)(0.422205*q3 / b0);
+		final float c0 = 1 - (c1 + c2 + c3);
+		final boolean zero = edgeAction == ZERO_EDGES;
+
+		// Triggs and Sdika: anti-causal pass at the right edge, as if the
+		// signal continued beyond it, so that edges blur without transient
+		double scale = c0 / ((1.0 + c1 - c2 + c3) * (1.0 - c1 - c2 - c3) * (1.0 + c2 + (c1 - c3) * c3));
+		final float[] m = {
+			(float)(scale * (-c3 * c1 + 1.0 - c3 * c3 - c2)),
+			(float)(scale * (c3 + c1) * (c2 + c3 * c1)),
+			(float)(scale * c3 * (c1 + c3 * c2)),
+			(float)(scale * (c1 + c3 * c2)),
+			(float)(-scale * (c2 - 1.0) * (c2 + c3 * c1)),
+			(float)(-scale * c3 * (c3 * c1 + c3 * c3 + c2 - 1.0)),
+			(float)(scale * (c3 * c1 + c2 + c1 * c1 - c2 * c2)),
+			(float)(scale * (c1 * c2 + c3 * c2 * c2 - c1 * c3 * c3 - c3 * c3 * c3 - c3 * c2 + c3)),
+			(float)(scale * c3 * (c1 + c3 * c2))
+		};
+
+		BandScheduler.run(width, height, true, new BandScheduler.BandTask() {
+			@Override
+			public void processBand(int startRow, int endRow) {
+				float[][] channels = new float[4][width];
+				int[] a = new int[width];
+				int[] r = new int[width];
+				int[] g = new int[width];
+				int[] b = new int[width];
+				for ( int y = startRow; y < endRow; y++ ) {
+					unpackRow( inPixels, y*width, width, 0, edgeAction, premultiply, a, r, g, b );
+					int[][] packed = { a, r, g, b };
+					for ( int c = alpha || unpremultiply ? 0 : 1; c < 4; c++ ) {
+						float[] w = channels[c];
+						int[] v = packed[c];
+						// causal pass
+						float w1, w2, w3;
+						w1 = w2 = w3 = zero ? 0 : v[0];
+						for ( int x = 0; x < width; x++ ) {
+							float w0 = c0*v[x] + c1*w1 + c2*w2 + c3*w3;
+							w[x] = w0;
+							w3 = w2; w2 = w1; w1 = w0;
+						}
+						// anti-causal pass
+						float edge = zero ? 0 : v[width-1];
+						float u0 = w[width-1] - edge;
+						float u1 = w[Math.max(0, width-2)] - edge;
+						float u2 = w[Math.max(0, width-3)] - edge;
+						w1 = m[0]*u0 + m[1]*u1 + m[2]*u2 + edge;
+						w2 = m[3]*u0 + m[4]*u1 + m[5]*u2 + edge;
+						w3 = m[6]*u0 + m[7]*u1 + m[8]*u2 + edge;
+						w[width-1] = w1;
+						for ( int x = width-2; x >= 0; x-- ) {
+							float w0 = c0*w[x] + c1*w1 + c2*w2 + c3*w3;
+							w[x] = w0;
+							w3 = w2; w2 = w1; w1 = w0;
+						}
+					}
+					float[] fa = channels[0], fr = channels[1], fg = channels[2], fb = channels[3];
+					int index = y;
+					for ( int x = 0; x < width; x++ ) {
+						float pr = fr[x], pg = fg[x], pb = fb[x], pa = fa[x];
+						if ( unpremultiply && pa > 0 && pa != 255 ) {
+							float f = 255.0f / pa;
+							pr *= f;
+							pg *= f;
+							pb *= f;
+						}
+						int ia = alpha ? PixelUtils.clamp((int)(pa+0.5f)) : 0xff;
+						int ir = PixelUtils.clamp((int)(pr+0.5f));
+						int ig = PixelUtils.clamp((int)(pg+0.5f));
+						int ib = PixelUtils.clamp((int)(pb+0.5f));
+						outPixels[index] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
+						index += height;
+					}
 				}
-				int ia = alpha ? PixelUtils.clamp((int)(a+0.5)) : 0xff;
-				int ir = PixelUtils.clamp((int)(r+0.5));
-				int ig = PixelUtils.clamp((int)(g+0.5));
-				int ib = PixelUtils.clamp((int)(b+0.5));
-				outPixels[index] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
-                index += height;
 			}
+		}, null);
+	}
+
+	/**
+	 * Splits a row of ARGB pixels into channels, padded on both sides
+	 * according to edge action.
+	 */
+	private static void unpackRow(int[] pixels, int offset, int width, int pad, int edgeAction, boolean premultiply, int[] a, int[] r, int[] g, int[] b) {
+		for ( int i = 0, length = width + 2*pad; i < length; i++ ) {
+			int x = i - pad;
+			if ( x < 0 || x >= width ) {
+				if ( edgeAction == CLAMP_EDGES )
+					x = x < 0 ? 0 : width-1;
+				else {
+					// zero, and wrap which the convolution resolves per pixel
+					a[i] = r[i] = g[i] = b[i] = 0;
+					continue;
+				}
+			}
+			int rgb = pixels[offset+x];
+			int pa = (rgb >> 24) & 0xff;
+			int pr = (rgb >> 16) & 0xff;
+			int pg = (rgb >> 8) & 0xff;
+			int pb = rgb & 0xff;
+			if ( premultiply ) {
+				pr = pr * pa / 255;
+				pg = pg * pa / 255;
+				pb = pb * pa / 255;
+			}
+			a[i] = pa;
+			r[i] = pr;
+			g[i] = pg;
+			b[i] = pb;
 		}
 	}
 
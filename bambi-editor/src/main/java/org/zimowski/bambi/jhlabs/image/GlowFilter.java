@@ -18,6 +18,8 @@ package org.zimowski.bambi.jhlabs.image;
 
 import java.awt.image.BufferedImage;
 
+import org.zimowski.bambi.editor.filters.BufferPool;
+
 /**
  * A filter which adds Gaussian blur to an image, producing a glowing effect.
  * @author Jerry Huxtable
@@ -50,6 +52,34 @@ public class GlowFilter extends GaussianFilter {
 		return amount;
 	}
 	
+    /**
+     * Filter a planar image, staying planar: the blur is added to each
+     * channel, alpha is kept.
+     */
+    public PlanarImage filter( PlanarImage src, PlanarImage dst ) {
+        PlanarImage blurred = radius > 0 ? blur( src, null ) : src;
+        if ( dst == null )
+            dst = src.createCompatible();
+
+        float a = 4*amount;
+        int width = src.getWidth();
+        int height = src.getHeight();
+        float[] row1 = new float[width];
+        float[] row2 = new float[width];
+        for ( int c = 0; c < src.getChannels(); c++ ) {
+            for ( int y = 0; y < height; y++ ) {
+                src.getRow( c, y, row1 );
+                if ( c != PlanarImage.ALPHA ) {
+                    blurred.getRow( c, y, row2 );
+                    for ( int x = 0; x < width; x++ )
+                        row1[x] += a * row2[x];
+                }
+                dst.setRow( c, y, row1 );
+            }
+        }
+        return dst;
+    }
+
     public BufferedImage filter( BufferedImage src, BufferedImage dst ) {
         int width = src.getWidth();
         int height = src.getHeight();
@@ -57,13 +87,13 @@ public class GlowFilter extends GaussianFilter {
         if ( dst == null )
             dst = createCompatibleDestImage( src, null );
 
-        int[] inPixels = new int[width*height];
-        int[] outPixels = new int[width*height];
+        int[] inPixels = BufferPool.borrowInts( width*height );
+        int[] outPixels = BufferPool.borrowInts( width*height );
         src.getRGB( 0, 0, width, height, inPixels, 0, width );
 
 		if ( radius > 0 ) {
-			convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES);
-			convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES);
+			blurAndTranspose(radius, kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES);
+			blurAndTranspose(radius, kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES);
 		}
 
         src.getRGB( 0, 0, width, height, outPixels, 0, width );
@@ -93,6 +123,8 @@ public class GlowFilter extends GaussianFilter {
 		}
 
         dst.setRGB( 0, 0, width, height, inPixels, 0, width );
+        BufferPool.giveBack( inPixels );
+        BufferPool.giveBack( outPixels );
         return dst;
     }
 
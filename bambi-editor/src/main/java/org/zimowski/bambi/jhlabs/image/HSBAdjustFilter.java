@@ -22,8 +22,18 @@ import com.jhlabs.image.PointFilter;
 
 public class HSBAdjustFilter extends PointFilter {
 	
+	/**
+	 * scratch hue, saturation and brightness of every thread filtering 
+	 * bands, reused from pixel to pixel
+	 */
+	private static final ThreadLocal<float[]> hsbBuffers = new ThreadLocal<float[]>() {
+		@Override
+		protected float[] initialValue() {
+			return new float[3];
+		}
+	};
+
 	public float hFactor, sFactor, bFactor;
-	private float[] hsb = new float[3];
 	
 	public HSBAdjustFilter() {
 		this(0, 0, 0);
@@ -34,6 +44,7 @@ public class HSBAdjustFilter extends PointFilter {
 		sFactor = g;
 		bFactor = b;
 		canFilterIndexColorModel = true;
+		canFilterInParallel = true;
 	}
 
 	public void setHFactor( float hFactor ) {
@@ -65,7 +76,8 @@ public class HSBAdjustFilter extends PointFilter {
 		int r = (rgb >> 16) & 0xff;
 		int g = (rgb >> 8) & 0xff;
 		int b = rgb & 0xff;
-		Color.RGBtoHSB(r, g, b, hsb);
+		// per thread rather than shared array so that bands can run concurrently
+		float[] hsb = Color.RGBtoHSB(r, g, b, hsbBuffers.get());
 		hsb[0] += hFactor;
 		while (hsb[0] < 0) hsb[0] += Math.PI*2;
 		//if(hsb[0] > 0) hsb[0] = 0;
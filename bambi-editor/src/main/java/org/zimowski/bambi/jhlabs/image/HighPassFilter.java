@@ -28,6 +28,33 @@ public class HighPassFilter extends GaussianFilter {
 		radius = 10;
 	}
 	
+    /**
+     * Filter a planar image, staying planar: the blur is subtracted from
+     * each channel, alpha is kept.
+     */
+    public PlanarImage filter( PlanarImage src, PlanarImage dst ) {
+        PlanarImage blurred = radius > 0 ? blur( src, null ) : src;
+        if ( dst == null )
+            dst = src.createCompatible();
+
+        int width = src.getWidth();
+        int height = src.getHeight();
+        float[] row1 = new float[width];
+        float[] row2 = new float[width];
+        for ( int c = 0; c < src.getChannels(); c++ ) {
+            for ( int y = 0; y < height; y++ ) {
+                src.getRow( c, y, row1 );
+                if ( c != PlanarImage.ALPHA ) {
+                    blurred.getRow( c, y, row2 );
+                    for ( int x = 0; x < width; x++ )
+                        row1[x] = (row1[x] + 255-row2[x]) / 2;
+                }
+                dst.setRow( c, y, row1 );
+            }
+        }
+        return dst;
+    }
+
     public BufferedImage filter( BufferedImage src, BufferedImage dst ) {
         int width = src.getWidth();
         int height = src.getHeight();
@@ -40,8 +67,8 @@ public class HighPassFilter extends GaussianFilter {
         src.getRGB( 0, 0, width, height, inPixels, 0, width );
 
 		if ( radius > 0 ) {
-			convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES);
-			convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES);
+			blurAndTranspose(radius, kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES);
+			blurAndTranspose(radius, kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES);
 		}
 
         src.getRGB( 0, 0, width, height, outPixels, 0, width );
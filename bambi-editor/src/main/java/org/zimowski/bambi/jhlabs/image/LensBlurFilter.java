@@ -18,12 +18,12 @@ package org.zimowski.bambi.jhlabs.image;
 
 import java.awt.image.BufferedImage;
 
-import org.zimowski.bambi.jhlabs.math.FFT;
-
 import com.jhlabs.image.AbstractBufferedImageOp;
 
 /**
- * A filter which use FFTs to simulate lens blur on an image.
+ * A filter which use FFTs to simulate lens blur on an image. The aperture
+ * kernel is built once per radius, number of sides and angle and convolved
+ * in parallel tiles through {@link FFTConvolution}.
  */
 public class LensBlurFilter extends AbstractBufferedImageOp {
     
@@ -33,6 +33,11 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
     private float angle = 0;
 	private int sides = 5;
 
+	private FFTConvolution convolution;
+	private float convolutionRadius;
+	private int convolutionSides;
+	private float convolutionAngle;
+
 	/**
 	 * Set the radius of the kernel, and hence the amount of blur.
 	 * @param radius the radius of the blur in pixels.
@@ -109,50 +114,57 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
     public BufferedImage filter( BufferedImage src, BufferedImage dst ) {
         int width = src.getWidth();
         int height = src.getHeight();
-        int rows = 1, cols = 1;
-        int log2rows = 0, log2cols = 0;
-        int iradius = (int)Math.ceil(radius);
-        int tileWidth = 128;
-        int tileHeight = tileWidth;
-
-		tileWidth = iradius < 32 ? Math.min(128, width+2*iradius) : Math.min(256, width+2*iradius);
-		tileHeight = iradius < 32 ? Math.min(128, height+2*iradius) : Math.min(256, height+2*iradius);
 
         if ( dst == null )
-            dst = new BufferedImage( width, height, BufferedImage.TYPE_INT_ARGB );
+            dst = createCompatibleDestImage( src, null );
 
-        while (rows < tileHeight) {
-            rows *= 2;
-            log2rows++;
+        int[] inPixels = getRGB( src, 0, 0, width, height, null );
+        if ( !src.getColorModel().hasAlpha() ) {
+            // raster of an opaque image holds no alpha, blur it as opaque
+            for ( int i = 0; i < inPixels.length; i++ )
+                inPixels[i] |= 0xff000000;
         }
-        while (cols < tileWidth) {
-            cols *= 2;
-            log2cols++;
-        }
-        int w = cols;
-        int h = rows;
+        int[] outPixels = new int[width*height];
+
+        FFTConvolution blur = getConvolution();
+        blur.setHighlightBoost( bloomThreshold, bloom );
+        blur.filter( inPixels, outPixels, width, height, true, ConvolveFilter.CLAMP_EDGES, this );
 
-		tileWidth = w;
-		tileHeight = h;//FIXME-tileWidth, w, and cols are always all the same
+        setRGB( dst, 0, 0, width, height, outPixels );
+        return dst;
+    }
 
-        FFT fft = new FFT( Math.max(log2rows, log2cols) );
+    /**
+     * Get the convolution with the aperture kernel, creating it if the
+     * aperture changed since last time. Kernel spectra are cached by the
+     * convolution, so repeated runs with the same aperture skip them.
+     */
+    private synchronized FFTConvolution getConvolution() {
+        if ( convolution == null || convolutionRadius != radius || convolutionSides != sides || convolutionAngle != angle ) {
+            convolution = createConvolution();
+            convolutionRadius = radius;
+            convolutionSides = sides;
+            convolutionAngle = angle;
+        }
+        return convolution;
+    }
 
-        int[] rgb = new int[w*h];
-        float[][] mask = new float[2][w*h];
-        float[][] gb = new float[2][w*h];
-        float[][] ar = new float[2][w*h];
+    private FFTConvolution createConvolution() {
+        int iradius = (int)Math.ceil(radius);
+        int size = 2*iradius+1;
+        float[] kernel = new float[size*size];
 
-        // Create the kernel
+        // Create the kernel, mirrored since the convolution correlates
 		double polyAngle = Math.PI/sides;
 		double polyScale = 1.0f / Math.cos(polyAngle);
 		double r2 = radius*radius;
 		double rangle = Math.toRadians(angle);
 		float total = 0;
         int i = 0;
-        for ( int y = 0; y < h; y++ ) {
-            for ( int x = 0; x < w; x++ ) {
-                double dx = x-w/2f;
-                double dy = y-h/2f;
+        for ( int y = 0; y < size; y++ ) {
+            for ( int x = 0; x < size; x++ ) {
+                double dx = iradius-x;
+                double dy = iradius-y;
 				double r = dx*dx+dy*dy;
 				double f = r < r2 ? 1 : 0;
 				if (f != 0) {
@@ -166,163 +178,18 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
 					f = f*r < radius ? 1 : 0;
 				}
 				total += (float)f;
-
-				mask[0][i] = (float)f;
-                mask[1][i] = 0;
-                i++;
+				kernel[i++] = (float)f;
             }
         }
-		
-        // Normalize the kernel
-        i = 0;
-        for ( int y = 0; y < h; y++ ) {
-            for ( int x = 0; x < w; x++ ) {
-                mask[0][i] /= total;
-                i++;
-            }
-        }
-
-        fft.transform2D( mask[0], mask[1], w, h, true );
 
-        for ( int tileY = -iradius; tileY < height; tileY += tileHeight-2*iradius ) {
-            for ( int tileX = -iradius; tileX < width; tileX += tileWidth-2*iradius ) {
-//                System.out.println("Tile: "+tileX+" "+tileY+" "+tileWidth+" "+tileHeight);
-
-                // Clip the tile to the image bounds
-                int tx = tileX, ty = tileY, tw = tileWidth, th = tileHeight;
-                int fx = 0, fy = 0;
-                if ( tx < 0 ) {
-                    tw += tx;
-                    fx -= tx;
-                    tx = 0;
-                }
-                if ( ty < 0 ) {
-                    th += ty;
-                    fy -= ty;
-                    ty = 0;
-                }
-                if ( tx+tw > width )
-                    tw = width-tx;
-                if ( ty+th > height )
-                    th = height-ty;
-                src.getRGB( tx, ty, tw, th, rgb, fy*w+fx, w );
-
-                // Create a float array from the pixels. Any pixels off the edge of the source image get duplicated from the edge.
-                i = 0;
-                for ( int y = 0; y < h; y++ ) {
-                    int imageY = y+tileY;
-                    int j;
-                    if ( imageY < 0 )
-                        j = fy;
-                    else if ( imageY > height )
-                        j = fy+th-1;
-                    else
-                        j = y;
-                    j *= w;
-                    for ( int x = 0; x < w; x++ ) {
-                        int imageX = x+tileX;
-                        int k;
-                        if ( imageX < 0 )
-                            k = fx;
-                        else if ( imageX > width )
-                            k = fx+tw-1;
-                        else
-                            k = x;
-                        k += j;
-
-                        ar[0][i] = ((rgb[k] >> 24) & 0xff);
-                        float r = ((rgb[k] >> 16) & 0xff);
-                        float g = ((rgb[k] >> 8) & 0xff);
-                        float b = (rgb[k] & 0xff);
-
-						// Bloom...
-                        if ( r > bloomThreshold )
-							r *= bloom;
-//							r = bloomThreshold + (r-bloomThreshold) * bloom;
-                        if ( g > bloomThreshold )
-							g *= bloom;
-//							g = bloomThreshold + (g-bloomThreshold) * bloom;
-                        if ( b > bloomThreshold )
-							b *= bloom;
-//							b = bloomThreshold + (b-bloomThreshold) * bloom;
-
-						ar[1][i] = r;
-						gb[0][i] = g;
-						gb[1][i] = b;
-
-                        i++;
-                        k++;
-                    }
-                }
-
-                // Transform into frequency space
-                fft.transform2D( ar[0], ar[1], cols, rows, true );
-                fft.transform2D( gb[0], gb[1], cols, rows, true );
-
-                // Multiply the transformed pixels by the transformed kernel
-                i = 0;
-                for ( int y = 0; y < h; y++ ) {
-                    for ( int x = 0; x < w; x++ ) {
-                        float re = ar[0][i];
-                        float im = ar[1][i];
-                        float rem = mask[0][i];
-                        float imm = mask[1][i];
-                        ar[0][i] = re*rem-im*imm;
-                        ar[1][i] = re*imm+im*rem;
-                        
-                        re = gb[0][i];
-                        im = gb[1][i];
-                        gb[0][i] = re*rem-im*imm;
-                        gb[1][i] = re*imm+im*rem;
-                        i++;
-                    }
-                }
-
-                // Transform back
-                fft.transform2D( ar[0], ar[1], cols, rows, false );
-                fft.transform2D( gb[0], gb[1], cols, rows, false );
-
-                // Convert back to RGB pixels, with quadrant remapping
-                int row_flip = w >> 1;
-                int col_flip = h >> 1;
-                int index = 0;
-
-                //FIXME-don't bother converting pixels off image edges
-                for ( int y = 0; y < w; y++ ) {
-                    int ym = y ^ row_flip;
-                    int yi = ym*cols;
-                    for ( int x = 0; x < w; x++ ) {
-                        int xm = yi + (x ^ col_flip);
-                        int a = (int)ar[0][xm];
-                        int r = (int)ar[1][xm];
-                        int g = (int)gb[0][xm];
-                        int b = (int)gb[1][xm];
-
-						// Clamp high pixels due to blooming
-						if ( r > 255 )
-							r = 255;
-						if ( g > 255 )
-							g = 255;
-						if ( b > 255 )
-							b = 255;
-                        int argb = (a << 24) | (r << 16) | (g << 8) | b;
-                        rgb[index++] = argb;
-                    }
-                }
+        // Normalize the kernel
+        if ( total > 0 ) {
+            for ( i = 0; i < kernel.length; i++ )
+                kernel[i] /= total;
+        } else
+            kernel[iradius*size+iradius] = 1;
 
-                // Clip to the output image
-                tx = tileX+iradius;
-                ty = tileY+iradius;
-                tw = tileWidth-2*iradius;
-                th = tileHeight-2*iradius;
-                if ( tx+tw > width )
-                    tw = width-tx;
-                if ( ty+th > height )
-                    th = height-ty;
-                dst.setRGB( tx, ty, tw, th, rgb, iradius*w+iradius, w );
-            }
-        }
-        return dst;
+        return new FFTConvolution( kernel, size, size );
     }
 
 	public String toString() {
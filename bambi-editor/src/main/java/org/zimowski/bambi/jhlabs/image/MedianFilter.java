@@ -18,16 +18,43 @@ package org.zimowski.bambi.jhlabs.image;
 
 import java.awt.Rectangle;
 
+import org.zimowski.bambi.editor.filters.BufferPool;
+import org.zimowski.bambi.editor.filters.ConstantTimeMedian;
+
 import com.jhlabs.image.WholeImageFilter;
 
 /**
- * A filter which performs a 3x3 median operation. Useful for removing dust and noise.
+ * A filter which performs a median operation over a square window. Useful for removing dust and noise.
+ * The 3x3 window takes the vector median of the colors; larger windows take the median of each channel
+ * at a cost per pixel which does not depend on the radius, see {@link ConstantTimeMedian}.
  */
 public class MedianFilter extends WholeImageFilter {
 
+	private int radius = 1;
+
 	public MedianFilter() {
 	}
 
+	/**
+	 * Set the radius of the window, 1 for the classic 3x3 vector median.
+	 * @param radius the radius
+     * @min-value 0
+     * @max-value 100+
+     * @see #getRadius
+	 */
+	public void setRadius(int radius) {
+		this.radius = radius;
+	}
+
+	/**
+	 * Get the radius of the window.
+	 * @return the radius
+     * @see #setRadius
+	 */
+	public int getRadius() {
+		return radius;
+	}
+
 	private int rgbMedian(int[] r, int[] g, int[] b) {
 		int sum, index = 0, min = Integer.MAX_VALUE;
 		
@@ -47,12 +74,17 @@ public class MedianFilter extends WholeImageFilter {
 	}
 
 	protected int[] filterPixels( int width, int height, int[] inPixels, Rectangle transformedSpace ) {
+		int[] outPixels = BufferPool.borrowInts(width * height);
+		if ( radius > 1 ) {
+			new ConstantTimeMedian(radius).filter(inPixels, outPixels, width, height, this);
+			return outPixels;
+		}
+
 		int index = 0;
 		int[] argb = new int[9];
 		int[] r = new int[9];
 		int[] g = new int[9];
 		int[] b = new int[9];
-		int[] outPixels = new int[width * height];
 
 		for (int y = 0; y < height; y++) {
 			for (int x = 0; x < width; x++) {
@@ -17,11 +17,16 @@ limitations under the License.
 package org.zimowski.bambi.jhlabs.image;
 
 import java.awt.Rectangle;
+import java.util.Arrays;
+
+import org.zimowski.bambi.editor.filters.BandScheduler;
 
 import com.jhlabs.image.WholeImageFilter;
 
 /**
- * A filter which produces a "oil-painting" effect.
+ * A filter which produces a "oil-painting" effect. Each pixel becomes the average of the most frequent
+ * level in the surrounding window, computed from histograms updated incrementally as the window slides,
+ * in parallel row bands.
  */
 public class OilFilter extends WholeImageFilter {
 	
@@ -67,64 +72,151 @@ public class OilFilter extends WholeImageFilter {
 		return levels;
 	}
 	
-	protected int[] filterPixels( int width, int height, int[] inPixels, Rectangle transformedSpace ) {
-		int index = 0;
-		int[] rHistogram = new int[levels];
-		int[] gHistogram = new int[levels];
-		int[] bHistogram = new int[levels];
-		int[] rTotal = new int[levels];
-		int[] gTotal = new int[levels];
-		int[] bTotal = new int[levels];
-		int[] outPixels = new int[width * height];
-
-		for (int y = 0; y < height; y++) {
+	protected int[] filterPixels( final int width, final int height, final int[] inPixels, Rectangle transformedSpace ) {
+		final int[] outPixels = new int[width * height];
+		BandScheduler.run(width, height, true, new BandScheduler.BandTask() {
+			@Override
+			public void processBand(int startRow, int endRow) {
+				filterRows(width, height, inPixels, outPixels, startRow, endRow);
+			}
+		}, this);
+		return outPixels;
+	}
+
+	/**
+	 * Slides the window along each row: as it moves one pixel right, the
+	 * column leaving it is removed from the histograms and the column entering
+	 * it is added, so the cost per pixel grows with range rather than its square.
+	 */
+	private void filterRows( int width, int height, int[] inPixels, int[] outPixels, int startRow, int endRow ) {
+		Histogram red = new Histogram(levels);
+		Histogram green = new Histogram(levels);
+		Histogram blue = new Histogram(levels);
+
+		for (int y = startRow; y < endRow; y++) {
+			int top = Math.max(0, y-range);
+			int bottom = Math.min(height-1, y+range);
+			red.clear();
+			green.clear();
+			blue.clear();
+			for (int col = 0; col <= range && col < width; col++)
+				addColumn( inPixels, width, col, top, bottom, red, green, blue );
+			red.findMode();
+			green.findMode();
+			blue.findMode();
+
+			int index = y*width;
 			for (int x = 0; x < width; x++) {
-				for (int i = 0; i < levels; i++)
-				    rHistogram[i] = gHistogram[i] = bHistogram[i] = rTotal[i] = gTotal[i] = bTotal[i] = 0;
-
-				for (int row = -range; row <= range; row++) {
-					int iy = y+row;
-					int ioffset;
-					if (0 <= iy && iy < height) {
-						ioffset = iy*width;
-						for (int col = -range; col <= range; col++) {
-							int ix = x+col;
-							if (0 <= ix && ix < width) {
-								int rgb = inPixels[ioffset+ix];
-								int r = (rgb >> 16) & 0xff;
-								int g = (rgb >> 8) & 0xff;
-								int b = rgb & 0xff;
-								int ri = r*levels/256;
-								int gi = g*levels/256;
-								int bi = b*levels/256;
-								rTotal[ri] += r;
-								gTotal[gi] += g;
-								bTotal[bi] += b;
-								rHistogram[ri]++;
-								gHistogram[gi]++;
-								bHistogram[bi]++;
-							}
-						}
-					}
-				}
-				
-				int r = 0, g = 0, b = 0;
-				for (int i = 1; i < levels; i++) {
-					if (rHistogram[i] > rHistogram[r])
-						r = i;
-					if (gHistogram[i] > gHistogram[g])
-						g = i;
-					if (bHistogram[i] > bHistogram[b])
-						b = i;
+				if (x > 0) {
+					red.mark();
+					green.mark();
+					blue.mark();
+					int leaving = x-range-1;
+					if (leaving >= 0)
+						removeColumn( inPixels, width, leaving, top, bottom, red, green, blue );
+					int entering = x+range;
+					if (entering < width)
+						addColumn( inPixels, width, entering, top, bottom, red, green, blue );
+					red.updateMode();
+					green.updateMode();
+					blue.updateMode();
 				}
-				r = rTotal[r] / rHistogram[r];
-				g = gTotal[g] / gHistogram[g];
-				b = bTotal[b] / bHistogram[b];
-				outPixels[index] = (inPixels[index] & 0xff000000) | ( r << 16 ) | ( g << 8 ) | b;
+				outPixels[index] = (inPixels[index] & 0xff000000) | ( red.average() << 16 ) | ( green.average() << 8 ) | blue.average();
 				index++;
 			}
 		}
-		return outPixels;
+	}
+
+	private void addColumn( int[] inPixels, int width, int x, int top, int bottom, Histogram red, Histogram green, Histogram blue ) {
+		for (int iy = top, ioffset = top*width+x; iy <= bottom; iy++, ioffset += width) {
+			int rgb = inPixels[ioffset];
+			red.add( (rgb >> 16) & 0xff );
+			green.add( (rgb >> 8) & 0xff );
+			blue.add( rgb & 0xff );
+		}
+	}
+
+	private void removeColumn( int[] inPixels, int width, int x, int top, int bottom, Histogram red, Histogram green, Histogram blue ) {
+		for (int iy = top, ioffset = top*width+x; iy <= bottom; iy++, ioffset += width) {
+			int rgb = inPixels[ioffset];
+			red.remove( (rgb >> 16) & 0xff );
+			green.remove( (rgb >> 8) & 0xff );
+			blue.remove( rgb & 0xff );
+		}
+	}
+
+	/**
+	 * Histogram of one channel which keeps track of its most frequent level
+	 * (lowest one if several are equally frequent) as values come and go.
+	 * Levels only need to be searched when the most frequent level lost
+	 * values and none of the levels which gained any overtook its former count.
+	 */
+	private static class Histogram {
+
+		private final int levels;
+
+		private final int[] count;
+
+		private final int[] total;
+
+		private int mode;
+
+		private int markedMode;
+
+		private int markedCount;
+
+		Histogram(int levels) {
+			this.levels = levels;
+			count = new int[levels];
+			total = new int[levels];
+		}
+
+		void clear() {
+			Arrays.fill(count, 0);
+			Arrays.fill(total, 0);
+		}
+
+		/**
+		 * Remembers current mode before values are removed and added.
+		 */
+		void mark() {
+			markedMode = mode;
+			markedCount = count[mode];
+		}
+
+		void remove(int value) {
+			int i = value*levels/256;
+			count[i]--;
+			total[i] -= value;
+		}
+
+		void add(int value) {
+			int i = value*levels/256;
+			count[i]++;
+			total[i] += value;
+			if (count[i] > count[mode] || (count[i] == count[mode] && i < mode))
+				mode = i;
+		}
+
+		/**
+		 * Completes a window move; values must have been removed before any
+		 * were added.
+		 */
+		void updateMode() {
+			if (count[markedMode] < markedCount && count[mode] <= markedCount)
+				findMode();
+		}
+
+		void findMode() {
+			mode = 0;
+			for (int i = 1; i < levels; i++)
+				if (count[i] > count[mode])
+					mode = i;
+		}
+
+		int average() {
+			return total[mode] / count[mode];
+		}
 	}
 
 	public String toString() {
@@ -17,6 +17,7 @@ limitations under the License.
 package org.zimowski.bambi.jhlabs.image;
 
 import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
@@ -263,6 +264,13 @@ public class PerspectiveFilter extends TransformFilter {
 		out[1] = originalSpace.height * (D*x+E*y+F)/(G*x+H*y+I);
 	}
 
+	protected AffineTransform getInverseTransform() {
+		if ( G != 0 || H != 0 || I == 0 )
+			return null;
+		float w = originalSpace.width / I, h = originalSpace.height / I;
+		return new AffineTransform( w*A, h*D, w*B, h*E, w*C, h*F );
+	}
+
 	public String toString() {
 		return "Distort/Perspective...";
 	}
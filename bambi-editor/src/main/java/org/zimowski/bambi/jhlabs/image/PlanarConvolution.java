@@ -0,0 +1,299 @@
+package org.zimowski.bambi.jhlabs.image;
+
+import java.awt.image.Kernel;
+import java.util.Arrays;
+
+import org.zimowski.bambi.editor.filters.BandScheduler;
+import org.zimowski.bambi.editor.filters.FilterListener;
+
+/**
+ * Direct convolution of ARGB pixels in integer arithmetic, laid out so that
+ * the inner loop has no branches and is compiled by HotSpot into SIMD
+ * instructions. Each band of rows is unpacked one channel at a time into a
+ * plane padded by the kernel reach, with edge action applied while padding.
+ * Every kernel tap then adds its weight times a shifted row of the plane to
+ * a row of accumulators: a plain multiply-add over consecutive array
+ * elements, which the JIT vectorizes. Kernel weights are converted to fixed
+ * point, as many fraction bits as accumulators can hold without overflow
+ * (up to 16), and zero taps are skipped. A fixed point sum may round to the
+ * other side of a half than a floating point one, so results can be a level
+ * off the {@link ConvolveFilter#convolveHV} reference; on premultiplied
+ * pixels that level is scaled by 255 / alpha once unpremultiplied.
+ * <p>
+ * Semantics match {@link ConvolveFilter}: kernel origin is its center
+ * (width/2, height/2) and output pixel is the sum of kernel values times the
+ * source pixels they cover. Pixels off the image edge follow one of the
+ * {@link ConvolveFilter} edge actions. Rows are split into bands processed
+ * in parallel. Both packed ARGB pixels and {@link PlanarImage}s can be
+ * convolved.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class PlanarConvolution {
+
+	private static final int MAX_SHIFT = 16;
+
+	private final int kernelWidth;
+
+	private final int kernelHeight;
+
+	/**
+	 * fixed point weights of non zero taps
+	 */
+	private final int[] weights;
+
+	/**
+	 * column of each non zero tap
+	 */
+	private final int[] tapX;
+
+	/**
+	 * row of each non zero tap
+	 */
+	private final int[] tapY;
+
+	private final int shift;
+
+
+	/**
+	 * @param kernel convolution kernel
+	 */
+	public PlanarConvolution(Kernel kernel) {
+		this(kernel.getKernelData(null), kernel.getWidth(), kernel.getHeight());
+	}
+
+	/**
+	 * @param kernel kernel values, row by row
+	 * @param width kernel width
+	 * @param height kernel height
+	 */
+	public PlanarConvolution(float[] kernel, int width, int height) {
+		if(width < 1 || height < 1 || kernel.length < width * height)
+			throw new IllegalArgumentException("invalid kernel " + width + "x" + height);
+		this.kernelWidth = width;
+		this.kernelHeight = height;
+
+		int taps = 0;
+		double sum = 0, sumAbs = 0;
+		for(int i = 0; i < width * height; i++) {
+			if(kernel[i] != 0) taps++;
+			sum += kernel[i];
+			sumAbs += Math.abs(kernel[i]);
+		}
+
+		// largest scale at which worst case sum still fits into an int
+		int shift = MAX_SHIFT;
+		while(shift > 0 && (255 * sumAbs + 1) * (1 << shift) >= Integer.MAX_VALUE)
+			shift--;
+		this.shift = shift;
+
+		weights = new int[taps];
+		tapX = new int[taps];
+		tapY = new int[taps];
+		int largest = 0, fixedSum = 0;
+		for(int i = 0, tap = 0; i < width * height; i++) {
+			if(kernel[i] == 0) continue;
+			weights[tap] = (int)Math.round(kernel[i] * (double)(1 << shift));
+			tapX[tap] = i % width;
+			tapY[tap] = i / width;
+			fixedSum += weights[tap];
+			if(Math.abs(kernel[i]) > Math.abs(kernel[tapY[largest] * width + tapX[largest]]))
+				largest = tap;
+			tap++;
+		}
+		// rounding error of the weights goes to the largest tap, so that
+		// weights still add up to what they did
+		if(taps > 0) weights[largest] += (int)Math.round(sum * (1 << shift)) - fixedSum;
+	}
+
+	public int getKernelWidth() {
+		return kernelWidth;
+	}
+
+	public int getKernelHeight() {
+		return kernelHeight;
+	}
+
+	/**
+	 * Convolves ARGB pixels. Input and output must be different arrays.
+	 * Pixels are convolved as they are; premultiply alpha beforehand if
+	 * needed.
+	 *
+	 * @param inPixels source pixels, row by row
+	 * @param outPixels destination pixels
+	 * @param width image width
+	 * @param height image height
+	 * @param alpha true to convolve alpha, false to make output opaque
+	 * @param edgeAction {@link ConvolveFilter#ZERO_EDGES},
+	 * 	{@link ConvolveFilter#CLAMP_EDGES} or {@link ConvolveFilter#WRAP_EDGES}
+	 * @param progress optional listener notified as rows complete; may be
+	 * 	null
+	 */
+	public void filter(int[] inPixels, int[] outPixels, int width, int height,
+			boolean alpha, int edgeAction, FilterListener progress) {
+		Rows in = new PackedRows(inPixels, width, alpha);
+		Rows out = new PackedRows(outPixels, width, alpha);
+		filter(in, out, alpha ? 4 : 3, width, height, edgeAction, progress);
+	}
+
+	/**
+	 * Convolves every channel of a planar image, alpha included if the image
+	 * has it. Results are clamped to what destination samples can hold, so
+	 * short and float images keep values outside of 0-255.
+	 *
+	 * @param src source image
+	 * @param dst destination image of the same size and channels; must not
+	 * 	be the source
+	 * @param edgeAction {@link ConvolveFilter#ZERO_EDGES},
+	 * 	{@link ConvolveFilter#CLAMP_EDGES} or {@link ConvolveFilter#WRAP_EDGES}
+	 * @param progress optional listener notified as rows complete; may be
+	 * 	null
+	 */
+	public void filter(PlanarImage src, PlanarImage dst, int edgeAction, FilterListener progress) {
+		if(src == dst) throw new IllegalArgumentException("cannot convolve in place");
+		if(src.getWidth() != dst.getWidth() || src.getHeight() != dst.getHeight() ||
+				src.getChannels() != dst.getChannels())
+			throw new IllegalArgumentException("source and destination differ");
+		filter(new PlanarRows(src), new PlanarRows(dst), src.getChannels(),
+				src.getWidth(), src.getHeight(), edgeAction, progress);
+	}
+
+	private void filter(final Rows in, final Rows out, final int channels, final int width,
+			final int height, final int edgeAction, FilterListener progress) {
+
+		BandScheduler.run(width, height, true, new BandScheduler.BandTask() {
+			@Override
+			public void processBand(int startRow, int endRow) {
+				filterRows(in, out, channels, width, height, startRow, endRow, edgeAction);
+			}
+		}, progress);
+	}
+
+	private void filterRows(Rows in, Rows out, int channels, int width, int height,
+			int startRow, int endRow, int edgeAction) {
+
+		final int left = kernelWidth / 2;
+		final int top = kernelHeight / 2;
+		final int paddedWidth = width + kernelWidth - 1;
+		final int paddedHeight = endRow - startRow + kernelHeight - 1;
+		final int[] plane = new int[paddedWidth * paddedHeight];
+		final int[] sums = new int[width];
+		final int half = shift > 0 ? 1 << (shift - 1) : 0;
+
+		int[] columns = new int[paddedWidth];
+		for(int u = 0; u < paddedWidth; u++)
+			columns[u] = ConvolveFilter.edgeIndex(u - left, width, edgeAction);
+		int[] rows = new int[paddedHeight];
+		for(int v = 0; v < paddedHeight; v++)
+			rows[v] = ConvolveFilter.edgeIndex(startRow - top + v, height, edgeAction);
+
+		for(int channel = 0; channel < channels; channel++) {
+			unpack(in, channel, columns, rows, left, width, plane, paddedWidth, sums);
+
+			for(int y = startRow; y < endRow; y++) {
+				for(int x = 0; x < width; x++)
+					sums[x] = half;
+				int rowOffset = (y - startRow) * paddedWidth;
+				for(int tap = 0; tap < weights.length; tap++)
+					multiplyAdd(plane, rowOffset + tapY[tap] * paddedWidth + tapX[tap], weights[tap], sums, width);
+				for(int x = 0; x < width; x++)
+					sums[x] >>= shift;
+				out.write(channel, y, sums);
+			}
+		}
+	}
+
+	/**
+	 * Innermost loop, kept minimal so that it is vectorized.
+	 */
+	private static void multiplyAdd(int[] plane, int offset, int weight, int[] sums, int length) {
+		for(int x = 0; x < length; x++)
+			sums[x] += weight * plane[offset + x];
+	}
+
+	/**
+	 * Copies one channel of the band rows with their margins into the padded
+	 * plane. Rows and columns map padded coordinates to source ones, -1 for
+	 * zero pixels.
+	 */
+	private static void unpack(Rows in, int channel, int[] columns, int[] rows, int left,
+			int width, int[] plane, int paddedWidth, int[] row) {
+
+		for(int v = 0, index = 0; v < rows.length; v++, index += paddedWidth) {
+			if(rows[v] < 0) {
+				Arrays.fill(plane, index, index + paddedWidth, 0);
+				continue;
+			}
+			in.read(channel, rows[v], row);
+			System.arraycopy(row, 0, plane, index + left, width);
+			for(int u = 0; u < left; u++)
+				plane[index + u] = columns[u] < 0 ? 0 : row[columns[u]];
+			for(int u = left + width; u < paddedWidth; u++)
+				plane[index + u] = columns[u] < 0 ? 0 : row[columns[u]];
+		}
+	}
+
+	/**
+	 * Access to rows of one channel, by {@link PlanarImage} channel index.
+	 */
+	private interface Rows {
+
+		void read(int channel, int y, int[] values);
+
+		void write(int channel, int y, int[] values);
+	}
+
+	private static class PackedRows implements Rows {
+
+		private static final int[] SHIFTS = { 16, 8, 0, 24 };
+
+		private final int[] pixels;
+
+		private final int width;
+
+		private final int opaque;
+
+		PackedRows(int[] pixels, int width, boolean alpha) {
+			this.pixels = pixels;
+			this.width = width;
+			this.opaque = alpha ? 0 : 0xff000000;
+		}
+
+		@Override
+		public void read(int channel, int y, int[] values) {
+			int shift = SHIFTS[channel];
+			for(int x = 0, index = y * width; x < width; x++, index++)
+				values[x] = (pixels[index] >> shift) & 0xff;
+		}
+
+		@Override
+		public void write(int channel, int y, int[] values) {
+			int shift = SHIFTS[channel];
+			boolean first = channel == PlanarImage.RED;
+			for(int x = 0, index = y * width; x < width; x++, index++) {
+				int value = values[x];
+				value = (value < 0 ? 0 : value > 255 ? 255 : value) << shift;
+				pixels[index] = first ? opaque | value : pixels[index] | value;
+			}
+		}
+	}
+
+	private static class PlanarRows implements Rows {
+
+		private final PlanarImage image;
+
+		PlanarRows(PlanarImage image) {
+			this.image = image;
+		}
+
+		@Override
+		public void read(int channel, int y, int[] values) {
+			image.getRow(channel, y, values);
+		}
+
+		@Override
+		public void write(int channel, int y, int[] values) {
+			image.setRow(channel, y, values);
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package org.zimowski.bambi.jhlabs.image;
+
+/**
+ * Filter which can work on {@link PlanarImage}s directly, so that a chain of
+ * such filters converts from and to packed pixels only once.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public interface PlanarFilter {
+
+	/**
+	 * @param src source image
+	 * @param dst destination image of the same size, channels and storage
+	 * 	type; created if null
+	 * @return destination image
+	 */
+	PlanarImage filter(PlanarImage src, PlanarImage dst);
+}
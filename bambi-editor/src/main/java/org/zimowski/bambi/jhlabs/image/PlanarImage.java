@@ -0,0 +1,458 @@
+package org.zimowski.bambi.jhlabs.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.util.Arrays;
+
+/**
+ * Image stored as one array per channel (planar) rather than packed ARGB
+ * ints. Neighbourhood filters working on planes read consecutive samples of
+ * a single channel, with no shifting and masking in their inner loops, which
+ * keeps those loops short enough for HotSpot to vectorize. A sequence of
+ * {@link PlanarFilter}s can pass planar images from one to the next and
+ * convert from and to a {@link BufferedImage} only at the ends of the chain,
+ * see {@link #filter(BufferedImage, BufferedImage, Type, PlanarFilter...)}.
+ * <p>
+ * Samples are on the usual 0-255 scale whatever the storage type. Bytes are
+ * the most compact; shorts and floats can also hold values outside of that
+ * range, such as negative edge responses or boosted highlights, between
+ * stages of a chain. Values are clamped to 0-255 when converted back to
+ * pixels.
+ * <p>
+ * Channels are red, green, blue and, if the image has one, alpha.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class PlanarImage {
+
+	/**
+	 * Storage type of samples.
+	 */
+	public enum Type {
+
+		/**
+		 * unsigned 8 bit samples, 0-255
+		 */
+		BYTE,
+
+		/**
+		 * signed 16 bit samples
+		 */
+		SHORT,
+
+		/**
+		 * floating point samples
+		 */
+		FLOAT
+	}
+
+	public static final int RED = 0;
+
+	public static final int GREEN = 1;
+
+	public static final int BLUE = 2;
+
+	public static final int ALPHA = 3;
+
+	/**
+	 * bit position of each channel in packed ARGB
+	 */
+	private static final int[] SHIFTS = { 16, 8, 0, 24 };
+
+	private final int width;
+
+	private final int height;
+
+	private final int channels;
+
+	private final Type type;
+
+	private final byte[][] bytes;
+
+	private final short[][] shorts;
+
+	private final float[][] floats;
+
+
+	/**
+	 * Creates a blank image.
+	 *
+	 * @param width image width
+	 * @param height image height
+	 * @param alpha true if image has alpha channel
+	 * @param type sample storage type
+	 */
+	public PlanarImage(int width, int height, boolean alpha, Type type) {
+		if(width < 1 || height < 1)
+			throw new IllegalArgumentException("invalid size " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+		this.channels = alpha ? 4 : 3;
+		this.type = type;
+		int size = width * height;
+		bytes = type == Type.BYTE ? new byte[channels][size] : null;
+		shorts = type == Type.SHORT ? new short[channels][size] : null;
+		floats = type == Type.FLOAT ? new float[channels][size] : null;
+	}
+
+	/**
+	 * Splits an image into planes. Alpha channel is kept if image has one.
+	 *
+	 * @param image image to convert
+	 * @param type sample storage type
+	 * @return planar copy of the image
+	 */
+	public static PlanarImage fromImage(BufferedImage image, Type type) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		PlanarImage planar = new PlanarImage(width, height, image.getColorModel().hasAlpha(), type);
+		int[] pixels = ImageUtils.getRGB(image, 0, 0, width, height, null);
+		planar.setARGB(pixels);
+		return planar;
+	}
+
+	/**
+	 * Splits packed pixels into planes.
+	 *
+	 * @param pixels ARGB pixels, row by row
+	 * @param width image width
+	 * @param height image height
+	 * @param alpha true to keep alpha channel
+	 * @param type sample storage type
+	 * @return planar copy of the pixels
+	 */
+	public static PlanarImage fromARGB(int[] pixels, int width, int height, boolean alpha, Type type) {
+		PlanarImage planar = new PlanarImage(width, height, alpha, type);
+		planar.setARGB(pixels);
+		return planar;
+	}
+
+	/**
+	 * Converts an image to planes, runs filters one after the other and
+	 * converts the result back.
+	 *
+	 * @param src source image
+	 * @param dst destination image; created if null
+	 * @param type sample storage type between filters
+	 * @param filters filters to run, in order
+	 * @return destination image
+	 */
+	public static BufferedImage filter(BufferedImage src, BufferedImage dst, Type type,
+			PlanarFilter... filters) {
+		PlanarImage image = fromImage(src, type);
+		for(PlanarFilter filter : filters)
+			image = filter.filter(image, null);
+		return image.toImage(dst);
+	}
+
+	/**
+	 * @param dst destination image of the same size; created if null, with
+	 * 	alpha if this image has alpha
+	 * @return destination image holding this image
+	 */
+	public BufferedImage toImage(BufferedImage dst) {
+		if(dst == null) {
+			int imageType = hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+			dst = new BufferedImage(width, height, imageType);
+		}
+		else if(dst.getWidth() != width || dst.getHeight() != height) {
+			throw new IllegalArgumentException("destination size differs");
+		}
+		ImageUtils.setRGB(dst, 0, 0, width, height, toARGB(null));
+		return dst;
+	}
+
+	/**
+	 * @param pixels array to fill; allocated if null or too small
+	 * @return ARGB pixels, row by row; opaque if image has no alpha
+	 */
+	public int[] toARGB(int[] pixels) {
+		int size = width * height;
+		if(pixels == null || pixels.length < size) pixels = new int[size];
+		Arrays.fill(pixels, 0, size, hasAlpha() ? 0 : 0xff000000);
+		int[] row = new int[width];
+		for(int c = 0; c < channels; c++) {
+			int shift = SHIFTS[c];
+			for(int y = 0, index = 0; y < height; y++) {
+				getRow(c, y, row);
+				for(int x = 0; x < width; x++, index++) {
+					int value = row[x];
+					value = value < 0 ? 0 : value > 255 ? 255 : value;
+					pixels[index] |= value << shift;
+				}
+			}
+		}
+		return pixels;
+	}
+
+	/**
+	 * Replaces all samples with packed pixels.
+	 *
+	 * @param pixels ARGB pixels, row by row
+	 */
+	public void setARGB(int[] pixels) {
+		int[] row = new int[width];
+		for(int c = 0; c < channels; c++) {
+			int shift = SHIFTS[c];
+			for(int y = 0, index = 0; y < height; y++) {
+				for(int x = 0; x < width; x++, index++)
+					row[x] = (pixels[index] >> shift) & 0xff;
+				setRow(c, y, row);
+			}
+		}
+	}
+
+	/**
+	 * Runs a filter which only works on packed pixels, converting to them and
+	 * back, so that such filters can still take part in a planar chain.
+	 *
+	 * @param op filter which keeps image size
+	 * @param dst destination image of the same size and channels; created
+	 * 	if null
+	 * @return destination image
+	 */
+	public PlanarImage filter(BufferedImageOp op, PlanarImage dst) {
+		BufferedImage result = op.filter(toImage(null), null);
+		if(result.getWidth() != width || result.getHeight() != height)
+			throw new IllegalArgumentException(op + " changes image size");
+		if(dst == null) dst = createCompatible();
+		dst.setARGB(ImageUtils.getRGB(result, 0, 0, width, height, null));
+		return dst;
+	}
+
+	/**
+	 * @return blank image of the same size, channels and storage type
+	 */
+	public PlanarImage createCompatible() {
+		return new PlanarImage(width, height, hasAlpha(), type);
+	}
+
+	/**
+	 * @return deep copy of this image
+	 */
+	public PlanarImage copy() {
+		PlanarImage copy = createCompatible();
+		for(int c = 0; c < channels; c++) {
+			switch(type) {
+			case BYTE:
+				System.arraycopy(bytes[c], 0, copy.bytes[c], 0, bytes[c].length);
+				break;
+			case SHORT:
+				System.arraycopy(shorts[c], 0, copy.shorts[c], 0, shorts[c].length);
+				break;
+			default:
+				System.arraycopy(floats[c], 0, copy.floats[c], 0, floats[c].length);
+			}
+		}
+		return copy;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return 4 if image has alpha, 3 otherwise
+	 */
+	public int getChannels() {
+		return channels;
+	}
+
+	public boolean hasAlpha() {
+		return channels == 4;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @param channel {@link #RED}, {@link #GREEN}, {@link #BLUE} or
+	 * 	{@link #ALPHA}
+	 * @return samples of the channel, row by row
+	 * @throws IllegalStateException if samples are not bytes
+	 */
+	public byte[] getBytes(int channel) {
+		if(bytes == null) throw new IllegalStateException(type + " samples");
+		return bytes[channel];
+	}
+
+	/**
+	 * @param channel {@link #RED}, {@link #GREEN}, {@link #BLUE} or
+	 * 	{@link #ALPHA}
+	 * @return samples of the channel, row by row
+	 * @throws IllegalStateException if samples are not shorts
+	 */
+	public short[] getShorts(int channel) {
+		if(shorts == null) throw new IllegalStateException(type + " samples");
+		return shorts[channel];
+	}
+
+	/**
+	 * @param channel {@link #RED}, {@link #GREEN}, {@link #BLUE} or
+	 * 	{@link #ALPHA}
+	 * @return samples of the channel, row by row
+	 * @throws IllegalStateException if samples are not floats
+	 */
+	public float[] getFloats(int channel) {
+		if(floats == null) throw new IllegalStateException(type + " samples");
+		return floats[channel];
+	}
+
+	/**
+	 * Reads a row of samples of any storage type as ints; floats are
+	 * rounded.
+	 *
+	 * @param channel channel to read
+	 * @param y row
+	 * @param values array of at least image width samples to fill
+	 */
+	public void getRow(int channel, int y, int[] values) {
+		int offset = y * width;
+		switch(type) {
+		case BYTE:
+			byte[] b = bytes[channel];
+			for(int x = 0; x < width; x++)
+				values[x] = b[offset + x] & 0xff;
+			break;
+		case SHORT:
+			short[] s = shorts[channel];
+			for(int x = 0; x < width; x++)
+				values[x] = s[offset + x];
+			break;
+		default:
+			float[] f = floats[channel];
+			for(int x = 0; x < width; x++)
+				values[x] = Math.round(f[offset + x]);
+		}
+	}
+
+	/**
+	 * Writes a row of samples from ints, clamped to what the storage type
+	 * can hold.
+	 *
+	 * @param channel channel to write
+	 * @param y row
+	 * @param values at least image width samples
+	 */
+	public void setRow(int channel, int y, int[] values) {
+		int offset = y * width;
+		switch(type) {
+		case BYTE:
+			byte[] b = bytes[channel];
+			for(int x = 0; x < width; x++) {
+				int v = values[x];
+				b[offset + x] = (byte)(v < 0 ? 0 : v > 255 ? 255 : v);
+			}
+			break;
+		case SHORT:
+			short[] s = shorts[channel];
+			for(int x = 0; x < width; x++) {
+				int v = values[x];
+				s[offset + x] = (short)(v < Short.MIN_VALUE ? Short.MIN_VALUE : v > Short.MAX_VALUE ? Short.MAX_VALUE : v);
+			}
+			break;
+		default:
+			float[] f = floats[channel];
+			for(int x = 0; x < width; x++)
+				f[offset + x] = values[x];
+		}
+	}
+
+	/**
+	 * Reads a row of samples of any storage type as floats.
+	 *
+	 * @param channel channel to read
+	 * @param y row
+	 * @param values array of at least image width samples to fill
+	 */
+	public void getRow(int channel, int y, float[] values) {
+		int offset = y * width;
+		switch(type) {
+		case BYTE:
+			byte[] b = bytes[channel];
+			for(int x = 0; x < width; x++)
+				values[x] = b[offset + x] & 0xff;
+			break;
+		case SHORT:
+			short[] s = shorts[channel];
+			for(int x = 0; x < width; x++)
+				values[x] = s[offset + x];
+			break;
+		default:
+			System.arraycopy(floats[channel], offset, values, 0, width);
+		}
+	}
+
+	/**
+	 * Writes a row of samples from floats, rounded and clamped to what the
+	 * storage type can hold.
+	 *
+	 * @param channel channel to write
+	 * @param y row
+	 * @param values at least image width samples
+	 */
+	public void setRow(int channel, int y, float[] values) {
+		int offset = y * width;
+		switch(type) {
+		case BYTE:
+			byte[] b = bytes[channel];
+			for(int x = 0; x < width; x++) {
+				int v = Math.round(values[x]);
+				b[offset + x] = (byte)(v < 0 ? 0 : v > 255 ? 255 : v);
+			}
+			break;
+		case SHORT:
+			short[] s = shorts[channel];
+			for(int x = 0; x < width; x++) {
+				int v = Math.round(values[x]);
+				s[offset + x] = (short)(v < Short.MIN_VALUE ? Short.MIN_VALUE : v > Short.MAX_VALUE ? Short.MAX_VALUE : v);
+			}
+			break;
+		default:
+			System.arraycopy(values, 0, floats[channel], offset, width);
+		}
+	}
+
+	/**
+	 * Multiplies color channels by alpha, as {@link ImageMath#premultiply}
+	 * does for packed pixels. Does nothing if image has no alpha.
+	 */
+	public void premultiply() {
+		multiplyAlpha(true);
+	}
+
+	/**
+	 * Divides color channels by alpha, as {@link ImageMath#unpremultiply}
+	 * does for packed pixels. Does nothing if image has no alpha.
+	 */
+	public void unpremultiply() {
+		multiplyAlpha(false);
+	}
+
+	private void multiplyAlpha(boolean premultiply) {
+		if(!hasAlpha()) return;
+		float[] alpha = new float[width];
+		float[] values = new float[width];
+		for(int y = 0; y < height; y++) {
+			getRow(ALPHA, y, alpha);
+			for(int x = 0; x < width; x++) {
+				float a = alpha[x];
+				if(premultiply)
+					alpha[x] = a * (1f / 255f);
+				else
+					alpha[x] = a > 0 && a != 255 ? 255f / a : 1;
+			}
+			for(int c = RED; c <= BLUE; c++) {
+				getRow(c, y, values);
+				for(int x = 0; x < width; x++)
+					values[x] *= alpha[x];
+				setRow(c, y, values);
+			}
+		}
+	}
+}
@@ -18,6 +18,8 @@ package org.zimowski.bambi.jhlabs.image;
 
 import java.awt.Rectangle;
 
+import org.zimowski.bambi.editor.filters.BufferPool;
+
 import com.jhlabs.image.WholeImageFilter;
 
 /**
@@ -166,7 +168,7 @@ public class QuantizeFilter extends WholeImageFilter {
 	}
 
 	protected int[] filterPixels( int width, int height, int[] inPixels, Rectangle transformedSpace ) {
-		int[] outPixels = new int[width*height];
+		int[] outPixels = BufferPool.borrowInts(width*height);
 		
 		quantize(inPixels, outPixels, width, height, numColors, dither, serpentine);
 
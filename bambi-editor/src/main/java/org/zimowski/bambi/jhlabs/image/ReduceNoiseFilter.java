@@ -18,17 +18,42 @@ package org.zimowski.bambi.jhlabs.image;
 
 import java.awt.Rectangle;
 
+import org.zimowski.bambi.editor.filters.ConstantTimeMedian;
+
 import com.jhlabs.image.WholeImageFilter;
 
 /**
  * A filter which performs reduces noise by looking at each pixel's 8 neighbours, and if it's a minimum or maximum,
- * replacing it by the next minimum or maximum of the neighbours.
+ * replacing it by the next minimum or maximum of the neighbours. Larger radii look at the whole
+ * window around each pixel, at constant cost per pixel, see {@link ConstantTimeMedian}.
  */
 public class ReduceNoiseFilter extends WholeImageFilter {
 
+	private int radius = 1;
+
 	public ReduceNoiseFilter() {
 	}
 
+	/**
+	 * Set the radius of the neighbourhood, 1 for the 8 neighbours.
+	 * @param radius the radius
+     * @min-value 1
+     * @max-value 100+
+     * @see #getRadius
+	 */
+	public void setRadius(int radius) {
+		this.radius = radius;
+	}
+
+	/**
+	 * Get the radius of the neighbourhood.
+	 * @return the radius
+     * @see #setRadius
+	 */
+	public int getRadius() {
+		return radius;
+	}
+
 	private int smooth(int[] v) {
 		int minindex = 0, maxindex = 0, min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
 		
@@ -52,6 +77,14 @@ public class ReduceNoiseFilter extends WholeImageFilter {
 	}
 
 	protected int[] filterPixels( int width, int height, int[] inPixels, Rectangle transformedSpace ) {
+		if ( radius > 1 ) {
+			int[] outPixels = new int[width * height];
+			ConstantTimeMedian median = new ConstantTimeMedian(radius);
+			median.setMode(ConstantTimeMedian.Mode.RANK_CLAMP);
+			median.filter(inPixels, outPixels, width, height, this);
+			return outPixels;
+		}
+
 		int index = 0;
 		int[] r = new int[9];
 		int[] g = new int[9];
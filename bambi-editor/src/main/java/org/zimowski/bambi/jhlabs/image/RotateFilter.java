@@ -18,6 +18,7 @@ package org.zimowski.bambi.jhlabs.image;
 
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
 
 import com.jhlabs.image.TransformFilter;
 
@@ -122,6 +123,10 @@ public class RotateFilter extends TransformFilter {
 		out[1] = (y * cos) + (x * sin);
 	}
 
+	protected AffineTransform getInverseTransform() {
+		return new AffineTransform(cos, sin, -sin, cos, 0, 0);
+	}
+
 	public String toString() {
 		return "Rotate "+(int)(angle * 180 / Math.PI);
 	}
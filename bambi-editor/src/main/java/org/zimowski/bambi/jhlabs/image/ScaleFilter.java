@@ -18,13 +18,17 @@ package org.zimowski.bambi.jhlabs.image;
 
 import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.zimowski.bambi.editor.filters.BufferPool;
 
 import com.jhlabs.image.AbstractBufferedImageOp;
+import com.jhlabs.image.Resampler;
+import com.jhlabs.image.TransformFilter;
 
 /**
  * Scales an image using the area-averaging algorithm, which can't be done with AffineTransformOp.
@@ -41,6 +45,12 @@ public class ScaleFilter extends AbstractBufferedImageOp {
 	 */
 	private double zoom;
 
+	/**
+	 * Interpolation of {@link TransformFilter}; nearest neighbour uses AWT
+	 * image scaling
+	 */
+	private int interpolation = TransformFilter.NEAREST_NEIGHBOUR;
+
     /**
      * Construct a ScaleFilter.
      */
@@ -69,6 +79,28 @@ public class ScaleFilter extends AbstractBufferedImageOp {
 		}
 		this.zoom = zoom;
 	}
+
+	/**
+	 * Set the type of interpolation to perform. BILINEAR, BICUBIC and
+	 * LANCZOS3 resample in two separable passes, widening the kernel when
+	 * scaling down so that fine detail doesn't alias. Pixels are weighted by
+	 * alpha, so that transparent pixels don't darken edges they border.
+	 * @param interpolation one of NEAREST_NEIGHBOUR, BILINEAR, BICUBIC or
+	 * 	LANCZOS3 of {@link TransformFilter}
+	 * @see #getInterpolation
+	 */
+	public void setInterpolation(int interpolation) {
+		this.interpolation = interpolation;
+	}
+
+	/**
+	 * Get the type of interpolation to perform.
+	 * @return one of NEAREST_NEIGHBOUR, BILINEAR, BICUBIC or LANCZOS3
+	 * @see #setInterpolation
+	 */
+	public int getInterpolation() {
+		return interpolation;
+	}
     public BufferedImage filter( BufferedImage src, BufferedImage dst ) {
 
     	if(zoom > 0D) { // use zoom if defined
@@ -82,6 +114,26 @@ public class ScaleFilter extends AbstractBufferedImageOp {
     		dst = createCompatibleDestImage(src, dstCM, width, height);
 		}
 
+		if(interpolation != TransformFilter.NEAREST_NEIGHBOUR) {
+			int srcWidth = src.getWidth();
+			int srcHeight = src.getHeight();
+			double sx = (double)srcWidth / width;
+			double sy = (double)srcHeight / height;
+			// map pixel centres onto pixel centres
+			AffineTransform inverse = new AffineTransform(sx, 0, 0, sy, (sx - 1) / 2, (sy - 1) / 2);
+			int[] inPixels = getRGB(src, 0, 0, srcWidth, srcHeight, BufferPool.borrowInts(srcWidth * srcHeight));
+			int[] outPixels = BufferPool.borrowInts(width * height);
+			boolean alpha = src.getColorModel().hasAlpha();
+			if(alpha) ImageMath.premultiply(inPixels, 0, srcWidth * srcHeight);
+			Resampler.affine(inPixels, srcWidth, srcHeight, outPixels, 0, 0, width, height,
+					inverse, interpolation, TransformFilter.CLAMP, null);
+			if(alpha) ImageMath.unpremultiply(outPixels, 0, width * height);
+			setRGB(dst, 0, 0, width, height, outPixels);
+			BufferPool.giveBack(inPixels);
+			BufferPool.giveBack(outPixels);
+			return dst;
+		}
+
 		// SCALE_AREA_AVERAGING produces undesired effect of distorted circumference if image is oval
     	Image scaleImage = src.getScaledInstance( width, height, Image.SCALE_REPLICATE);
 		Graphics2D g = dst.createGraphics();
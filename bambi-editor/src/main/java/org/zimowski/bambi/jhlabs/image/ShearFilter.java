@@ -17,6 +17,7 @@ limitations under the License.
 package org.zimowski.bambi.jhlabs.image;
 
 import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
 
 import com.jhlabs.image.TransformFilter;
 
@@ -132,6 +133,10 @@ catch (Exception e) {
 		out[1] = y + yoffset + (x * shy);
 	}
 
+	protected AffineTransform getInverseTransform() {
+		return new AffineTransform(1, shy, shx, 1, xoffset, yoffset);
+	}
+
 	public String toString() {
 		return "Distort/Shear...";
 	}
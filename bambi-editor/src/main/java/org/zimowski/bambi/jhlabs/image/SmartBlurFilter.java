@@ -19,6 +19,8 @@ package org.zimowski.bambi.jhlabs.image;
 import java.awt.image.BufferedImage;
 import java.awt.image.Kernel;
 
+import org.zimowski.bambi.editor.filters.BufferPool;
+
 import com.jhlabs.image.AbstractBufferedImageOp;
 
 /**
@@ -37,8 +39,8 @@ public class SmartBlurFilter extends AbstractBufferedImageOp {
         if ( dst == null )
             dst = createCompatibleDestImage( src, null );
 
-        int[] inPixels = new int[width*height];
-        int[] outPixels = new int[width*height];
+        int[] inPixels = BufferPool.borrowInts( width*height );
+        int[] outPixels = BufferPool.borrowInts( width*height );
         getRGB( src, 0, 0, width, height, inPixels );
 
 		Kernel kernel = GaussianFilter.makeKernel(hRadius);
@@ -46,6 +48,8 @@ public class SmartBlurFilter extends AbstractBufferedImageOp {
 		thresholdBlur( kernel, outPixels, inPixels, height, width, true );
 
         setRGB( dst, 0, 0, width, height, inPixels );
+        BufferPool.giveBack( inPixels );
+        BufferPool.giveBack( outPixels );
         return dst;
     }
 
@@ -27,6 +27,7 @@ public abstract class TransferFilter extends PointFilter {
 	
 	public TransferFilter() {
 		canFilterIndexColorModel = true;
+		canFilterInParallel = true;
 	}
 
 	public int filterRGB(int x, int y, int rgb) {
@@ -69,6 +69,35 @@ public class UnsharpFilter extends GaussianFilter {
 		return amount;
 	}
 	
+    /**
+     * Filter a planar image, staying planar: differences from the blur
+     * above threshold are amplified in each channel, alpha is kept.
+     */
+    public PlanarImage filter( PlanarImage src, PlanarImage dst ) {
+        PlanarImage blurred = radius > 0 ? blur( src, null ) : src;
+        if ( dst == null )
+            dst = src.createCompatible();
+
+        float a = 4*amount;
+        int width = src.getWidth();
+        int height = src.getHeight();
+        float[] row1 = new float[width];
+        float[] row2 = new float[width];
+        for ( int c = 0; c < src.getChannels(); c++ ) {
+            for ( int y = 0; y < height; y++ ) {
+                src.getRow( c, y, row1 );
+                if ( c != PlanarImage.ALPHA ) {
+                    blurred.getRow( c, y, row2 );
+                    for ( int x = 0; x < width; x++ )
+                        if ( Math.abs( row1[x] - row2[x] ) >= threshold )
+                            row1[x] = (a+1) * (row1[x]-row2[x]) + row2[x];
+                }
+                dst.setRow( c, y, row1 );
+            }
+        }
+        return dst;
+    }
+
     public BufferedImage filter( BufferedImage src, BufferedImage dst ) {
         int width = src.getWidth();
         int height = src.getHeight();
@@ -81,8 +110,8 @@ public class UnsharpFilter extends GaussianFilter {
         src.getRGB( 0, 0, width, height, inPixels, 0, width );
 
 		if ( radius > 0 ) {
-			convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES);
-			convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES);
+			blurAndTranspose(radius, kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES);
+			blurAndTranspose(radius, kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES);
 		}
 
         src.getRGB( 0, 0, width, height, outPixels, 0, width );
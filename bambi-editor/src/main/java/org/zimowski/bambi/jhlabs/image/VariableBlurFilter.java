@@ -23,6 +23,8 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 
+import org.zimowski.bambi.editor.filters.BufferPool;
+
 import com.jhlabs.image.AbstractBufferedImageOp;
 
 /**
@@ -62,8 +64,8 @@ public class VariableBlurFilter extends AbstractBufferedImageOp {
         if ( dst == null )
             dst = new BufferedImage( width, height, BufferedImage.TYPE_INT_ARGB );
 
-        int[] inPixels = new int[width*height];
-        int[] outPixels = new int[width*height];
+        int[] inPixels = BufferPool.borrowInts( width*height );
+        int[] outPixels = BufferPool.borrowInts( width*height );
         getRGB( src, 0, 0, width, height, inPixels );
 
         if ( premultiplyAlpha )
@@ -76,6 +78,8 @@ public class VariableBlurFilter extends AbstractBufferedImageOp {
 			ImageMath.unpremultiply( inPixels, 0, inPixels.length );
 
         setRGB( dst, 0, 0, width, height, inPixels );
+        BufferPool.giveBack( inPixels );
+        BufferPool.giveBack( outPixels );
         return dst;
     }
 
@@ -0,0 +1,182 @@
+package org.zimowski.bambi.jhlabs.math;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Precomputed tables for in place radix-2 complex FFTs of one power of two
+ * size: bit reversal permutation and twiddle factors. Plans are immutable,
+ * cached per size and shared between threads, so the trigonometry is done
+ * once per size for the life of the application rather than on every
+ * transform.
+ * <p>
+ * Forward transforms use the <code>exp(-2&pi;i/n)</code> kernel and are not
+ * scaled; inverse transforms are scaled by <code>1/n</code>, as in
+ * {@link FFT}.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public final class FFTPlan {
+
+	private static final int MAX_LOG2 = 24;
+
+	private static final AtomicReferenceArray<FFTPlan> plans =
+			new AtomicReferenceArray<FFTPlan>(MAX_LOG2 + 1);
+
+	private final int size;
+
+	/**
+	 * bit reversed index of every index
+	 */
+	private final int[] reverse;
+
+	/**
+	 * cos(2&pi;k/size) for k &lt; size/2
+	 */
+	private final float[] cos;
+
+	/**
+	 * -sin(2&pi;k/size) for k &lt; size/2
+	 */
+	private final float[] sin;
+
+
+	private FFTPlan(int log2) {
+		size = 1 << log2;
+		reverse = new int[size];
+		for(int i = 0; i < size; i++)
+			reverse[i] = log2 == 0 ? 0 : Integer.reverse(i) >>> (32 - log2);
+		int half = Math.max(1, size / 2);
+		cos = new float[half];
+		sin = new float[half];
+		for(int k = 0; k < half; k++) {
+			double angle = 2 * Math.PI * k / size;
+			cos[k] = (float)Math.cos(angle);
+			sin[k] = (float)-Math.sin(angle);
+		}
+	}
+
+	/**
+	 * @param size transform size; power of two
+	 * @return shared plan for the size
+	 */
+	public static FFTPlan forSize(int size) {
+		int log2 = log2(size);
+		FFTPlan plan = plans.get(log2);
+		if(plan == null) {
+			plans.compareAndSet(log2, null, new FFTPlan(log2));
+			plan = plans.get(log2);
+		}
+		return plan;
+	}
+
+	/**
+	 * @param size size to test
+	 * @return log2 of size
+	 * @throws IllegalArgumentException if size is not a supported power of two
+	 */
+	public static int log2(int size) {
+		if(size < 1 || Integer.bitCount(size) != 1 || size > 1 << MAX_LOG2)
+			throw new IllegalArgumentException("unsupported FFT size " + size);
+		return Integer.numberOfTrailingZeros(size);
+	}
+
+	/**
+	 * @param n minimum size
+	 * @return smallest power of two not smaller than n
+	 */
+	public static int ceilPowerOf2(int n) {
+		return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Transforms {@link #getSize()} consecutive complex values in place.
+	 *
+	 * @param real real parts
+	 * @param imag imaginary parts
+	 * @param offset index of the first value
+	 * @param forward true for forward, false for inverse transform
+	 */
+	public void transform(float[] real, float[] imag, int offset, boolean forward) {
+		final int n = size;
+		final int end = offset + n;
+
+		for(int i = 0; i < n; i++) {
+			int j = reverse[i];
+			if(j > i) {
+				int a = offset + i, b = offset + j;
+				float t = real[a]; real[a] = real[b]; real[b] = t;
+				t = imag[a]; imag[a] = imag[b]; imag[b] = t;
+			}
+		}
+
+		final float sign = forward ? 1 : -1;
+		for(int half = 1, step = n >> 1; half < n; half <<= 1, step >>= 1) {
+			int span = half << 1;
+			for(int start = offset; start < end; start += span) {
+				for(int k = 0, t = 0; k < half; k++, t += step) {
+					float wr = cos[t];
+					float wi = sign * sin[t];
+					int i = start + k;
+					int j = i + half;
+					float re = real[j];
+					float im = imag[j];
+					float tr = wr * re - wi * im;
+					float ti = wr * im + wi * re;
+					real[j] = real[i] - tr;
+					imag[j] = imag[i] - ti;
+					real[i] += tr;
+					imag[i] += ti;
+				}
+			}
+		}
+
+		if(!forward) {
+			float scale = 1f / n;
+			for(int i = offset; i < end; i++) {
+				real[i] *= scale;
+				imag[i] *= scale;
+			}
+		}
+	}
+
+	/**
+	 * Transforms a two dimensional array of complex values, stored row by
+	 * row, in place: rows first, then columns.
+	 *
+	 * @param real real parts
+	 * @param imag imaginary parts
+	 * @param cols number of columns; power of two
+	 * @param rows number of rows; power of two
+	 * @param forward true for forward, false for inverse transform
+	 * @param work scratch arrays of at least rows values each, real and
+	 * 	imaginary; allocated if null
+	 */
+	public static void transform2D(float[] real, float[] imag, int cols, int rows,
+			boolean forward, float[][] work) {
+		FFTPlan rowPlan = forSize(cols);
+		FFTPlan colPlan = forSize(rows);
+		if(work == null || work[0].length < rows)
+			work = new float[][] { new float[rows], new float[rows] };
+		float[] re = work[0];
+		float[] im = work[1];
+
+		for(int y = 0; y < rows; y++)
+			rowPlan.transform(real, imag, y * cols, forward);
+
+		for(int x = 0; x < cols; x++) {
+			for(int y = 0, index = x; y < rows; y++, index += cols) {
+				re[y] = real[index];
+				im[y] = imag[index];
+			}
+			colPlan.transform(re, im, 0, forward);
+			for(int y = 0, index = x; y < rows; y++, index += cols) {
+				real[index] = re[y];
+				imag[index] = im[y];
+			}
+		}
+	}
+}
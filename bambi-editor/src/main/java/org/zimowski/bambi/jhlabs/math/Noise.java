@@ -75,7 +75,7 @@ public class Noise implements Function1D, Function2D, Function3D {
 	static float[][] g3 = new float[B + B + 2][3];
 	static float[][] g2 = new float[B + B + 2][2];
 	static float[] g1 = new float[B + B + 2];
-	static boolean start = true;
+	static volatile boolean start = true;
 
 	private static float sCurve(float t) {
 		return t * t * (3.0f - 2.0f * t);
@@ -90,10 +90,8 @@ public class Noise implements Function1D, Function2D, Function3D {
 		int bx0, bx1;
 		float rx0, rx1, sx, t, u, v;
 
-		if (start) {
-			start = false;
+		if (start)
 			init();
-		}
 
 		t = x + N;
 		bx0 = ((int)t) & BM;
@@ -119,10 +117,8 @@ public class Noise implements Function1D, Function2D, Function3D {
 		float rx0, rx1, ry0, ry1, q[], sx, sy, a, b, t, u, v;
 		int i, j;
 
-		if (start) {
-			start = false;
+		if (start)
 			init();
-		}
 
 		t = x + N;
 		bx0 = ((int)t) & BM;
@@ -170,10 +166,8 @@ public class Noise implements Function1D, Function2D, Function3D {
 		float rx0, rx1, ry0, ry1, rz0, rz1, q[], sy, sz, a, b, c, d, t, u, v;
 		int i, j;
 
-		if (start) {
-			start = false;
+		if (start)
 			init();
-		}
 
 		t = x + N;
 		bx0 = ((int)t) & BM;
@@ -249,9 +243,14 @@ public class Noise implements Function1D, Function2D, Function3D {
 		return randomGenerator.nextInt() & 0x7fffffff;
 	}
 	
-	private static void init() {
+	private static synchronized void init() {
 		int i, j, k;
 
+		// filters evaluate noise from several threads at once; only the
+		// first one in initializes the tables, the rest wait for it
+		if (!start)
+			return;
+
 		for (i = 0; i < B; i++) {
 			p[i] = i;
 
@@ -280,6 +279,7 @@ public class Noise implements Function1D, Function2D, Function3D {
 			for (j = 0; j < 3; j++)
 				g3[B + i][j] = g3[i][j];
 		}
+		start = false;
 	}
 
 	/**
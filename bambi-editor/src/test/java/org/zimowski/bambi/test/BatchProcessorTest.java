@@ -0,0 +1,112 @@
+package org.zimowski.bambi.test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.zimowski.bambi.editor.batch.BatchProcessor;
+import org.zimowski.bambi.editor.batch.BatchReport;
+import org.zimowski.bambi.editor.batch.FilterChain;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies batch processing of image files.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class BatchProcessorTest extends TestCase {
+
+	private File dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("bambi-batch", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	/**
+	 * Images over heap limit are filtered in tiles, with the same result.
+	 */
+	public void testTiledMatchesWhole() throws Exception {
+		BufferedImage image = new BufferedImage(600, 300, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(3);
+		for(int y = 0; y < image.getHeight(); y++)
+			for(int x = 0; x < image.getWidth(); x++)
+				image.setRGB(x, y, random.nextInt());
+		File input = new File(dir, "in.png");
+		ImageIO.write(image, "png", input);
+		FilterChain chain = FilterChain.parse("Saturation=-0.4,Brightness=+0.2,Negative");
+
+		int[] whole = process(chain, input, "whole", 0);
+		int[] tiled = process(chain, input, "tiled", 600 * 50 * 4);
+		assertTrue(Arrays.equals(whole, tiled));
+	}
+
+	/**
+	 * Inputs which would make the same output are told apart by their 
+	 * extension, then by number; an output which would overwrite an input 
+	 * fails that input only.
+	 */
+	public void testOutputNames() throws Exception {
+		File first = new File(dir, "first");
+		File second = new File(dir, "second");
+		File third = new File(dir, "third");
+		List<File> inputs = Arrays.asList(
+				write(first, "a.png"), write(first, "a.jpg"), write(first, "b.png"),
+				write(second, "B.png"), write(third, "b.png"), write(first, "c"));
+		File outputDir = new File(dir, "out");
+		BatchProcessor processor = new BatchProcessor(FilterChain.parse("Grayscale"), outputDir);
+		processor.setFormat("jpg");
+		BatchReport report = processor.process(inputs);
+		assertEquals(inputs.size(), report.getProcessed());
+		assertEquals(0, report.getFailures().size());
+		Set<String> expected = new HashSet<String>(Arrays.asList(
+				"a.jpg", "a-jpg.jpg", "b.jpg", "B-png.jpg", "b-2.jpg", "c.jpg"));
+		assertEquals(expected, new HashSet<String>(Arrays.asList(outputDir.list())));
+
+		// writing next to inputs, a.png would be written over itself
+		processor = new BatchProcessor(FilterChain.parse("Grayscale"), first);
+		processor.setFormat("png");
+		long modified = new File(first, "a.png").lastModified();
+		report = processor.process(Arrays.asList(new File(first, "a.png"), new File(first, "c")));
+		assertEquals(Collections.singletonList(new File(first, "a.png")), report.getFailures());
+		assertEquals(1, report.getProcessed());
+		assertEquals(modified, new File(first, "a.png").lastModified());
+		assertTrue(new File(first, "c.png").isFile());
+	}
+
+	private static File write(File dir, String name) throws Exception {
+		dir.mkdirs();
+		File file = new File(dir, name);
+		BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+		ImageIO.write(image, "png", file);
+		return file;
+	}
+
+	private int[] process(FilterChain chain, File input, String name, long maxHeapImageBytes) 
+			throws Exception {
+		File outputDir = new File(dir, name);
+		BatchProcessor processor = new BatchProcessor(chain, outputDir);
+		processor.setFormat("png");
+		if(maxHeapImageBytes > 0) processor.setMaxHeapImageBytes(maxHeapImageBytes);
+		BatchReport report = processor.process(Collections.singletonList(input));
+		assertEquals(1, report.getProcessed());
+		BufferedImage output = ImageIO.read(new File(outputDir, "in.png"));
+		return output.getRGB(0, 0, output.getWidth(), output.getHeight(), null, 0, output.getWidth());
+	}
+}
@@ -0,0 +1,53 @@
+package org.zimowski.bambi.test;
+
+import org.zimowski.bambi.editor.filters.BufferPool;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that buffers are recycled by exact size and statistics follow.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class BufferPoolTest extends TestCase {
+
+	private static final int LENGTH = BufferPool.MIN_POOLED_LENGTH * 3;
+
+	@Override
+	protected void setUp() throws Exception {
+		BufferPool.clear();
+		BufferPool.resetStatistics();
+	}
+
+	public void testRecycle() {
+		int[] buffer = BufferPool.borrowInts(LENGTH);
+		buffer[7] = 42;
+		BufferPool.giveBack(buffer);
+
+		assertNotSame(buffer, BufferPool.borrowInts(LENGTH + 1));
+		int[] again = BufferPool.borrowInts(LENGTH);
+		assertSame(buffer, again);
+		assertEquals(42, again[7]);
+		BufferPool.giveBack(again);
+		assertEquals(0, BufferPool.borrowInts(LENGTH, true)[7]);
+
+		assertEquals(4, BufferPool.getBorrowCount());
+		assertEquals(0.5, BufferPool.getHitRate(), 1e-9);
+		assertEquals(2L * LENGTH * 4, BufferPool.getBytesRecycled());
+	}
+
+	public void testCapacity() {
+		long capacity = BufferPool.getCapacity();
+		try {
+			BufferPool.setCapacity(LENGTH * 4L);
+			BufferPool.giveBack(new float[LENGTH]);
+			BufferPool.giveBack(new int[LENGTH]);
+			assertEquals(LENGTH * 4L, BufferPool.getRetainedBytes());
+			assertNotNull(BufferPool.borrowInts(LENGTH));
+			assertEquals(0, BufferPool.getRetainedBytes());
+		}
+		finally {
+			BufferPool.setCapacity(capacity);
+		}
+	}
+}
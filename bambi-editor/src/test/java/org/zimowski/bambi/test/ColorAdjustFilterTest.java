@@ -0,0 +1,109 @@
+package org.zimowski.bambi.test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.zimowski.bambi.editor.filters.ColorAdjustFilter;
+import org.zimowski.bambi.jhlabs.image.ContrastFilter;
+import org.zimowski.bambi.jhlabs.image.HSBAdjustFilter;
+
+import com.jhlabs.image.RGBAdjustFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that color adjustment through per channel lookup tables gives
+ * exactly the pixels of the underlying filters run one after another, near
+ * gray included.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class ColorAdjustFilterTest extends TestCase {
+
+	private static final int WIDTH = 256;
+
+	/**
+	 * @return every gray with red and green up to 4 levels off, then random
+	 * 	colors
+	 */
+	private static BufferedImage createImage() {
+		int[] colors = new int[WIDTH * 9 * 9 + WIDTH * 200];
+		int n = 0;
+		for(int v = 0; v < 256; v++)
+			for(int dr = -4; dr <= 4; dr++)
+				for(int dg = -4; dg <= 4; dg++)
+					colors[n++] = 0xff000000 | (clamp(v + dr) << 16) | (clamp(v + dg) << 8) | v;
+		Random random = new Random(5);
+		while(n < colors.length) colors[n++] = random.nextInt() | 0xff000000;
+		BufferedImage image = new BufferedImage(WIDTH, colors.length / WIDTH, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, WIDTH, image.getHeight(), colors, 0, WIDTH);
+		return image;
+	}
+
+	private static int clamp(int v) {
+		return v < 0 ? 0 : v > 255 ? 255 : v;
+	}
+
+	/**
+	 * @param settings red, green, blue, hue, saturation, contrast, brightness
+	 */
+	private static void assertMatchesChain(float... settings) {
+		ColorAdjustFilter f = new ColorAdjustFilter();
+		f.setRed(settings[0]);
+		f.setGreen(settings[1]);
+		f.setBlue(settings[2]);
+		f.setHue(settings[3]);
+		f.setSaturation(settings[4]);
+		f.setContrast(settings[5]);
+		f.setBrightness(settings[6]);
+
+		// composite skips adjustments left at their neutral setting
+		BufferedImage src = createImage();
+		BufferedImage expected = src;
+		if(settings[0] != 0 || settings[1] != 0 || settings[2] != 0)
+			expected = new RGBAdjustFilter(settings[0], settings[1], settings[2]).filter(expected, null);
+		if(settings[3] != 0 || settings[4] != 0)
+			expected = new HSBAdjustFilter(settings[3], settings[4], 0).filter(expected, null);
+		if(settings[5] != 1 || settings[6] != 1) {
+			ContrastFilter contrast = new ContrastFilter();
+			contrast.setContrast(settings[5]);
+			contrast.setBrightness(settings[6]);
+			expected = contrast.filter(expected, null);
+		}
+
+		int w = src.getWidth(), h = src.getHeight();
+		int[] expectedPixels = expected.getRGB(0, 0, w, h, null, 0, w);
+		int[] actualPixels = f.filter(src, null).getRGB(0, 0, w, h, null, 0, w);
+		for(int i = 0; i < expectedPixels.length; i++)
+			assertEquals("pixel " + i, expectedPixels[i], actualPixels[i]);
+	}
+
+	public void testRgbContrast() {
+		assertMatchesChain(0.3f, 0, 0, 0, 0, 1, 1);
+		assertMatchesChain(-1, -1, 0.5f, 0, 0, 2, 2);
+		assertMatchesChain(0, 0, 0, 0, 0, 0.5f, 1.4f);
+	}
+
+	public void testHueSaturation() {
+		assertMatchesChain(0, 0, 0, 0, 0.5f, 1, 1);
+		assertMatchesChain(0, 0, 0, -0.5f, 0.5f, 1, 1);
+		assertMatchesChain(0.2f, 0, -0.2f, 0.7f, 0.9f, 1.8f, 1.5f);
+	}
+
+	/**
+	 * Tables are rebuilt when a setting changes between passes.
+	 */
+	public void testSettingChange() {
+		ColorAdjustFilter f = new ColorAdjustFilter();
+		f.setRed(0.5f);
+		BufferedImage src = createImage();
+		f.filter(src, null);
+		f.setRed(0);
+		f.setSaturation(0.3f);
+		int w = src.getWidth(), h = src.getHeight();
+		int[] expected = new HSBAdjustFilter(0, 0.3f, 0).filter(src, null).getRGB(0, 0, w, h, null, 0, w);
+		int[] actual = f.filter(src, null).getRGB(0, 0, w, h, null, 0, w);
+		for(int i = 0; i < expected.length; i++)
+			assertEquals("pixel " + i, expected[i], actual[i]);
+	}
+}
@@ -0,0 +1,112 @@
+package org.zimowski.bambi.test;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.zimowski.bambi.editor.filters.ConstantTimeMedian;
+import org.zimowski.bambi.jhlabs.image.MedianFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies histogram based median against sorting every window, and that
+ * median filter keeps the classic vector median for the 3x3 window.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class ConstantTimeMedianTest extends TestCase {
+
+	private static final int WIDTH = 61;
+
+	private static final int HEIGHT = 47;
+
+	public void testMedian() {
+		for(int radius : new int[] { 1, 2, 7 })
+			assertMatchesSort(ConstantTimeMedian.Mode.MEDIAN, radius);
+	}
+
+	public void testSwitching() {
+		assertMatchesSort(ConstantTimeMedian.Mode.SWITCHING, 3);
+	}
+
+	public void testRankClamp() {
+		assertMatchesSort(ConstantTimeMedian.Mode.RANK_CLAMP, 2);
+	}
+
+	/**
+	 * Vector median picks one of the colors of the window, with black 
+	 * standing in for pixels past the edge, rather than mixing channels.
+	 */
+	public void testMedianFilterRadiusOne() {
+		Random random = new Random(11);
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		for(int y = 0; y < HEIGHT; y++)
+			for(int x = 0; x < WIDTH; x++)
+				image.setRGB(x, y, random.nextInt());
+		BufferedImage filtered = new MedianFilter().filter(image, null);
+		int mixed = 0;
+		for(int y = 0; y < HEIGHT; y++) {
+			for(int x = 0; x < WIDTH; x++) {
+				boolean inWindow = false;
+				for(int dy = -1; dy <= 1; dy++) {
+					for(int dx = -1; dx <= 1; dx++) {
+						int ix = x + dx, iy = y + dy;
+						int rgb = ix < 0 || iy < 0 || ix >= WIDTH || iy >= HEIGHT ? 
+								0xff000000 : image.getRGB(ix, iy);
+						inWindow |= rgb == filtered.getRGB(x, y);
+					}
+				}
+				if(!inWindow) mixed++;
+			}
+		}
+		assertEquals(0, mixed);
+	}
+
+	private void assertMatchesSort(ConstantTimeMedian.Mode mode, int radius) {
+		int threshold = 40;
+		Random random = new Random(11);
+		int[] in = new int[WIDTH * HEIGHT];
+		for(int i = 0; i < in.length; i++) in[i] = random.nextInt();
+
+		ConstantTimeMedian median = new ConstantTimeMedian(radius);
+		median.setMode(mode);
+		median.setThreshold(threshold);
+		int[] out = new int[in.length];
+		median.filter(in, out, WIDTH, HEIGHT, null);
+
+		int size = 2 * radius + 1;
+		int[] window = new int[size * size];
+		for(int y = 0; y < HEIGHT; y++) {
+			for(int x = 0; x < WIDTH; x++) {
+				int index = y * WIDTH + x;
+				int expected = in[index] & 0xff000000;
+				for(int shift = 16; shift >= 0; shift -= 8) {
+					int k = 0;
+					for(int dy = -radius; dy <= radius; dy++) {
+						int iy = Math.min(HEIGHT - 1, Math.max(0, y + dy));
+						for(int dx = -radius; dx <= radius; dx++) {
+							int ix = Math.min(WIDTH - 1, Math.max(0, x + dx));
+							window[k++] = (in[iy * WIDTH + ix] >> shift) & 0xff;
+						}
+					}
+					Arrays.sort(window);
+					int value = (in[index] >> shift) & 0xff;
+					int m = window[window.length / 2];
+					switch(mode) {
+					case SWITCHING:
+						if(Math.abs(value - m) > threshold) value = m;
+						break;
+					case RANK_CLAMP:
+						value = Math.max(window[1], Math.min(window[window.length - 2], value));
+						break;
+					default:
+						value = m;
+					}
+					expected |= value << shift;
+				}
+				assertEquals(mode + " at " + x + "," + y, expected, out[index]);
+			}
+		}
+	}
+}
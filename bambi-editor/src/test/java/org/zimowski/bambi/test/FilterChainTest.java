@@ -0,0 +1,73 @@
+package org.zimowski.bambi.test;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.zimowski.bambi.editor.batch.FilterChain;
+import org.zimowski.bambi.editor.filters.ColorAdjustFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies parsing of batch filter chains, rejection of invalid specs and 
+ * that color adjustments are applied the way the editor applies them.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class FilterChainTest extends TestCase {
+
+	public void testParse() {
+		assertEquals(1, FilterChain.parse("grayscale").size());
+		// consecutive color adjustments make a single pass
+		assertEquals(4, FilterChain.parse(" Hue=0.2, saturation = -0.5 ,Emboss,Contrast=+1,Scale=50").size());
+		assertEquals(2, FilterChain.parse("Red=-1,,Green=1,RotateLeft").size());
+		assertEquals("Negative,Scale=25", FilterChain.parse("Negative,Scale=25").toString());
+	}
+
+	public void testParseErrors() {
+		assertInvalid("", "no filters specified");
+		assertInvalid(" , ", "no filters specified");
+		assertInvalid("Grayscale,Sharpen", "unknown filter: Sharpen");
+		assertInvalid("Hue", "Hue requires a value");
+		assertInvalid("Scale=", "Scale requires a value");
+		assertInvalid("Contrast=high", "invalid Contrast value: high");
+		assertInvalid("Brightness=1.5", "Brightness must be between -1 and +1");
+		assertInvalid("Red=-1.01", "Red must be between -1 and +1");
+		assertInvalid("Scale=0", "Scale must be positive");
+		assertInvalid("Scale=-50", "Scale must be positive");
+		assertInvalid("Emboss=1", "Emboss takes no value");
+		assertInvalid("RotateRight=90", "RotateRight takes no value");
+		assertInvalid("Refresh", "Refresh is not supported in batch");
+	}
+
+	/**
+	 * Hue at the end of the range shifts colors, same as in editor.
+	 */
+	public void testFullHue() {
+		BufferedImage image = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(11);
+		for(int y = 0; y < image.getHeight(); y++)
+			for(int x = 0; x < image.getWidth(); x++)
+				image.setRGB(x, y, random.nextInt());
+		ColorAdjustFilter editor = new ColorAdjustFilter();
+		editor.setHue(1.1f);
+		int[] expected = pixels(editor.filter(image, null));
+		assertTrue(Arrays.equals(expected, pixels(FilterChain.parse("Hue=+1").apply(image))));
+		assertFalse(Arrays.equals(pixels(image), expected));
+	}
+
+	private static void assertInvalid(String spec, String message) {
+		try {
+			FilterChain.parse(spec);
+			fail(spec + " parsed");
+		}
+		catch(IllegalArgumentException e) {
+			assertEquals(message, e.getMessage());
+		}
+	}
+
+	private static int[] pixels(BufferedImage image) {
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+}
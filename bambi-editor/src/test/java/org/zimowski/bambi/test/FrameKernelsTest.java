@@ -0,0 +1,91 @@
+package org.zimowski.bambi.test;
+
+import org.openimaj.image.MBFImage;
+import org.zimowski.bambi.editor.studio.cam.FrameKernels;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies web cam color kernels against known colors.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class FrameKernelsTest extends TestCase {
+
+	private static final float[][] COLORS = {
+		{ 1, 0, 0 }, { 0, 1, 0 }, { 0, 0, 1 }, { 1, 1, 1 }, { 0, 0, 0 }, { 0.5f, 0.25f, 0 }
+	};
+
+	/**
+	 * @return frame 640 pixels wide, large enough to run in parallel bands,
+	 * 	with {@link #COLORS} repeated along each row
+	 */
+	private static MBFImage createFrame() {
+		MBFImage frame = new MBFImage(640, 480, 3);
+		for(int band = 0; band < 3; band++)
+			for(int y = 0; y < frame.getHeight(); y++)
+				for(int x = 0; x < frame.getWidth(); x++)
+					frame.getBand(band).pixels[y][x] = COLORS[x % COLORS.length][band];
+		return frame;
+	}
+
+	private static void assertColors(float[][] expected, MBFImage frame, float delta) {
+		for(int band = 0; band < 3; band++)
+			for(int y = 0; y < frame.getHeight(); y += 97)
+				for(int x = 0; x < frame.getWidth(); x++)
+					assertEquals("band " + band + " at " + x + "," + y,
+							expected[x % expected.length][band],
+							frame.getBand(band).pixels[y][x], delta);
+	}
+
+	public void testHsv() {
+		MBFImage frame = createFrame();
+		FrameKernels.rgbToHsv(frame);
+		assertColors(new float[][] {
+			{ 0, 1, 1 }, { 1/3f, 1, 1 }, { 2/3f, 1, 1 }, { 0, 0, 1 }, { 0, 0, 0 }, { 1/12f, 1, 0.5f }
+		}, frame, 1e-6f);
+	}
+
+	public void testHue() {
+		MBFImage frame = createFrame();
+		FrameKernels.hue(frame);
+		float[][] expected = new float[COLORS.length][];
+		float[] hues = { 0, 1/3f, 2/3f, 0, 0, 1/12f };
+		for(int x = 0; x < hues.length; x++)
+			expected[x] = new float[] { hues[x], hues[x], hues[x] };
+		assertColors(expected, frame, 1e-4f);
+	}
+
+	public void testCieXyz() {
+		MBFImage frame = createFrame();
+		FrameKernels.rgbToCieXyz(frame);
+		assertColors(new float[][] {
+			{ 0.4124564f, 0.2126729f, 0.0193339f },
+			{ 0.3575761f, 0.7151522f, 0.1191920f },
+			{ 0.1804375f, 0.0721750f, 0.9503041f },
+			{ 0.9504700f, 1.0000001f, 1.0888300f },
+			{ 0, 0, 0 },
+			{ 0.1064747f, 0.0819049f, 0.0102023f }
+		}, frame, 1e-4f);
+	}
+
+	/**
+	 * Sharp color stripes score higher than the same stripes blurred 
+	 * horizontally, which score higher than a flat frame.
+	 */
+	public void testSharpness() {
+		MBFImage sharp = createFrame();
+		MBFImage blurred = sharp.clone();
+		for(int band = 0; band < 3; band++) {
+			float[][] source = sharp.getBand(band).pixels;
+			float[][] target = blurred.getBand(band).pixels;
+			for(int y = 0; y < source.length; y++)
+				for(int x = 1; x < source[y].length - 1; x++)
+					target[y][x] = (source[y][x - 1] + source[y][x] + source[y][x + 1]) / 3;
+		}
+		MBFImage flat = new MBFImage(640, 480, 3);
+		assertTrue(FrameKernels.sharpness(sharp) > FrameKernels.sharpness(blurred));
+		assertTrue(FrameKernels.sharpness(blurred) > FrameKernels.sharpness(flat));
+		assertEquals(0d, FrameKernels.sharpness(flat));
+	}
+}
@@ -0,0 +1,277 @@
+package org.zimowski.bambi.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openimaj.image.MBFImage;
+import org.zimowski.bambi.editor.studio.cam.AdaptiveFrameProcessor;
+import org.zimowski.bambi.editor.studio.cam.BurstCapture;
+import org.zimowski.bambi.editor.studio.cam.FrameKernels;
+import org.zimowski.bambi.editor.studio.cam.FramePipeline;
+import org.zimowski.bambi.editor.studio.cam.FrameProcessor;
+import org.zimowski.bambi.editor.studio.cam.FrameRing;
+import org.zimowski.bambi.editor.studio.cam.FrameTap;
+import org.zimowski.bambi.editor.studio.cam.QualityTier;
+import org.zimowski.bambi.editor.studio.cam.SyntheticFrameSource;
+import org.zimowski.bambi.editor.studio.eventbus.events.CamPictureRequestEvent;
+
+import com.google.common.base.Ticker;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that web cam frames flow through the pipeline in order, get
+ * processed, and are recycled rather than allocated, that filtering
+ * quality adapts to the time available, and that pictures are taken of
+ * captured frames as requested.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class FramePipelineTest extends TestCase {
+
+	public void testRingDropsOldest() throws InterruptedException {
+		FrameRing<Integer> ring = new FrameRing<Integer>(2);
+		assertNull(ring.offer(1));
+		assertNull(ring.offer(2));
+		assertEquals(Integer.valueOf(1), ring.offer(3));
+		assertEquals(1, ring.getDroppedCount());
+		assertEquals(Integer.valueOf(2), ring.take());
+		ring.close();
+		assertEquals(Integer.valueOf(4), ring.offer(4));
+		assertEquals(Integer.valueOf(3), ring.take());
+		assertNull(ring.take());
+	}
+
+	public void testFramesFlowInOrder() {
+		final int frames = 60;
+		FrameProcessor negative = new FrameProcessor() {
+			@Override
+			public boolean process(MBFImage frame) {
+				frame.inverse();
+				return true;
+			}
+		};
+		SyntheticFrameSource source = new SyntheticFrameSource(64, 48, 0);
+		FramePipeline pipeline = new FramePipeline(source, negative, 3);
+		final AtomicLong tapped = new AtomicLong();
+		pipeline.setFrameTap(new FrameTap() {
+			@Override
+			public void frameCaptured(MBFImage frame, long timestamp) {
+				tapped.incrementAndGet();
+			}
+		});
+		pipeline.start();
+		SyntheticFrameSource reference = new SyntheticFrameSource(64, 48, 0);
+		MBFImage expected = new MBFImage(64, 48, 3);
+		Set<MBFImage> buffers = new HashSet<MBFImage>();
+		long lastTimeStamp = -1;
+		try {
+			for(int x = 0; x < frames; x++) {
+				MBFImage frame = pipeline.getNextFrame();
+				assertNotNull(frame);
+				assertTrue(pipeline.getTimeStamp() >= lastTimeStamp);
+				lastTimeStamp = pipeline.getTimeStamp();
+				buffers.add(frame);
+				// a processed frame matches one of the source frames
+				boolean matched = false;
+				for(int y = 0; y < 64 && !matched; y++) {
+					reference.read(expected);
+					expected.inverse();
+					matched = pixelsEqual(expected, frame);
+				}
+				assertTrue("frame " + x + " not processed", matched);
+			}
+		}
+		finally {
+			pipeline.close();
+		}
+		assertTrue(pipeline.getProcessedCount() >= frames);
+		// capture thread may still be between counting a frame and tapping it
+		long deadline = System.currentTimeMillis() + 1000;
+		while(tapped.get() != pipeline.getCapturedCount() && System.currentTimeMillis() < deadline)
+			Thread.yield();
+		assertEquals(pipeline.getCapturedCount(), tapped.get());
+		// pool of 2 + 3 + 2 + 2 + 1 frames is reused
+		assertTrue(buffers.size() <= 10);
+		assertNull(pipeline.getNextFrame());
+	}
+
+	/**
+	 * Filter taking a millisecond per 500 pixels against a budget of 20 ms
+	 * per frame settles on the best tier which fits, once a tier is timed
+	 * for 15 frames. Time is read off a ticker the filter advances.
+	 */
+	public void testAdaptiveQualityStepsDown() {
+		final AtomicLong nanos = new AtomicLong();
+		Ticker ticker = new Ticker() {
+			@Override
+			public long read() {
+				return nanos.get();
+			}
+		};
+		FrameProcessor slow = new FrameProcessor() {
+			@Override
+			public boolean process(MBFImage frame) {
+				nanos.addAndGet(frame.getWidth() * frame.getHeight() / 500 * 1000000L);
+				return true;
+			}
+		};
+		AdaptiveFrameProcessor adaptive = new AdaptiveFrameProcessor(slow, 50, 1, ticker);
+		assertEquals(QualityTier.Full, adaptive.getTier());
+		// 40 ms at full, 10 ms at half resolution
+		MBFImage frame = new MBFImage(200, 100, 3);
+		for(int x = 0; x < 14; x++) adaptive.process(frame);
+		assertEquals(QualityTier.Full, adaptive.getTier());
+		adaptive.process(frame);
+		assertEquals(QualityTier.Half, adaptive.getTier());
+		for(int x = 0; x < 40; x++) adaptive.process(frame);
+		assertEquals(QualityTier.Half, adaptive.getTier());
+		assertEquals(10, adaptive.getProcessingMillis(), 1e-9);
+
+		// 84 ms at full, 21 ms at half resolution, 10.5 ms per captured 
+		// frame when skipping, which is not expected to fit at half
+		adaptive = new AdaptiveFrameProcessor(slow, 50, 1, ticker);
+		frame = new MBFImage(200, 210, 3);
+		int displayed = 0;
+		for(int x = 0; x < 80; x++)
+			if(adaptive.process(frame)) displayed++;
+		assertEquals(QualityTier.HalfSkipping, adaptive.getTier());
+		assertEquals(30 + 25, displayed);
+		assertEquals(21, adaptive.getProcessingMillis(), 1e-9);
+	}
+
+	/**
+	 * Time lapse of 3 shots 300 ms apart, 2 frames each, fed a frame every 
+	 * 40 ms: a picture at the second frame of each shot, the first frame of 
+	 * a shot being the first at or after its time.
+	 */
+	public void testTimeLapsePacing() {
+		PictureRecorder pictures = new PictureRecorder(10);
+		pictures.request(CamPictureRequestEvent.timeLapse(3, 300, 2));
+		MBFImage frame = new MBFImage(32, 24, 3);
+		for(long time = 0; time < 2000; time += 40)
+			pictures.feed(frame, time);
+		assertEquals(3, pictures.times.size());
+		assertEquals(Long.valueOf(40), pictures.times.get(0));
+		assertEquals(Long.valueOf(360), pictures.times.get(1));
+		assertEquals(Long.valueOf(640), pictures.times.get(2));
+	}
+
+	/**
+	 * Burst picks the sharpest frame, and a new request replaces one 
+	 * midway through its shot.
+	 */
+	public void testBurstReplacedMidShot() {
+		PictureRecorder pictures = new PictureRecorder(10);
+		MBFImage flat = new MBFImage(32, 24, 3);
+		MBFImage sharp = new MBFImage(32, 24, 3);
+		for(int y = 0; y < 24; y++)
+			for(int x = 0; x < 32; x++)
+				for(int band = 0; band < 3; band++)
+					sharp.getBand(band).pixels[y][x] = (x + y) % 2;
+
+		pictures.request(CamPictureRequestEvent.burst(5));
+		pictures.feed(flat, 0);
+		pictures.feed(sharp, 40);
+		pictures.request(CamPictureRequestEvent.burst(3));
+		pictures.feed(flat, 80);
+		pictures.feed(sharp, 120);
+		assertEquals(0, pictures.times.size());
+		pictures.feed(flat, 160);
+		assertEquals(1, pictures.times.size());
+		assertEquals(Long.valueOf(160), pictures.times.get(0));
+		assertEquals(FrameKernels.sharpness(sharp), pictures.sharpness.get(0));
+		for(long time = 200; time < 1000; time += 40)
+			pictures.feed(sharp, time);
+		assertEquals(1, pictures.times.size());
+	}
+
+	/**
+	 * Filter runs on the worker rather than the capture thread, on the 
+	 * frame picked, which later frames of the next shot don't overwrite.
+	 */
+	public void testBurstFilteredOnWorker() {
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		Executor worker = new Executor() {
+			@Override
+			public void execute(Runnable task) {
+				tasks.add(task);
+			}
+		};
+		final List<MBFImage> processed = new ArrayList<MBFImage>();
+		FrameProcessor brighten = new FrameProcessor() {
+			@Override
+			public boolean process(MBFImage frame) {
+				for(int band = 0; band < 3; band++) frame.getBand(band).addInplace(0.5f);
+				processed.add(frame);
+				return true;
+			}
+		};
+		final List<Float> taken = new ArrayList<Float>();
+		BurstCapture pictures = new BurstCapture(4, brighten, worker) {
+			@Override
+			protected void pictureTaken(MBFImage picture) {
+				taken.add(picture.getBand(0).pixels[0][0]);
+			}
+		};
+		MBFImage dark = new MBFImage(8, 6, 3);
+		MBFImage light = new MBFImage(8, 6, 3);
+		light.fill(new Float[] { 1f, 1f, 1f });
+
+		pictures.request(CamPictureRequestEvent.burst(1));
+		pictures.frameCaptured(dark, 0);
+		assertEquals(1, tasks.size());
+		assertEquals(0, processed.size());
+		pictures.request(CamPictureRequestEvent.burst(1));
+		pictures.frameCaptured(light, 40);
+		assertEquals(2, tasks.size());
+
+		for(Runnable task : tasks) task.run();
+		assertEquals(2, taken.size());
+		assertEquals(0.5f, taken.get(0));
+		assertEquals(1.5f, taken.get(1));
+		assertNotSame(processed.get(0), processed.get(1));
+	}
+
+	/**
+	 * Records when pictures were taken and how sharp they were.
+	 */
+	private static class PictureRecorder extends BurstCapture {
+
+		final List<Long> times = new ArrayList<Long>();
+
+		final List<Double> sharpness = new ArrayList<Double>();
+
+		private long time;
+
+		PictureRecorder(int maxFramesPerShot) {
+			super(maxFramesPerShot, null);
+		}
+
+		void feed(MBFImage frame, long timestamp) {
+			time = timestamp;
+			frameCaptured(frame, timestamp);
+		}
+
+		@Override
+		protected void pictureTaken(MBFImage picture) {
+			times.add(time);
+			sharpness.add(FrameKernels.sharpness(picture));
+		}
+	}
+
+	private static boolean pixelsEqual(MBFImage a, MBFImage b) {
+		for(int band = 0; band < 3; band++) {
+			float[][] pa = a.getBand(band).pixels;
+			float[][] pb = b.getBand(band).pixels;
+			for(int y = 0; y < pa.length; y++)
+				for(int x = 0; x < pa[y].length; x++)
+					if(pa[y][x] != pb[y][x]) return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,316 @@
+package org.zimowski.bambi.test;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.zimowski.bambi.editor.filters.BandScheduler;
+import org.zimowski.bambi.editor.filters.ColorAdjustFilter;
+import org.zimowski.bambi.editor.filters.FilterCancelledException;
+import org.zimowski.bambi.editor.filters.FilterListener;
+import org.zimowski.bambi.jhlabs.image.BoxBlurFilter;
+import org.zimowski.bambi.jhlabs.image.ConvolveFilter;
+import org.zimowski.bambi.jhlabs.image.GaussianFilter;
+import org.zimowski.bambi.jhlabs.image.HSBAdjustFilter;
+import org.zimowski.bambi.jhlabs.image.LensBlurFilter;
+import org.zimowski.bambi.jhlabs.image.OilFilter;
+import org.zimowski.bambi.jhlabs.image.RotateFilter;
+import org.zimowski.bambi.jhlabs.image.ScaleFilter;
+import org.zimowski.bambi.jhlabs.image.SphereFilter;
+
+import com.jhlabs.image.AbstractBufferedImageOp;
+import com.jhlabs.image.GrayscaleFilter;
+import com.jhlabs.image.InverseMapCache;
+import com.jhlabs.image.InvertFilter;
+import com.jhlabs.image.PosterizeFilter;
+import com.jhlabs.image.SolarizeFilter;
+import com.jhlabs.image.TransformFilter;
+import com.jhlabs.image.TwirlFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that filters processed in parallel bands produce exactly the same
+ * pixels as a serial pass, that opaque images stay opaque, and that filter
+ * loops honor cancellation.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class ParallelFilterTest extends TestCase {
+
+	private static final int WIDTH = 640;
+
+	private static final int HEIGHT = 480;
+
+	private int parallelism;
+
+	@Override
+	protected void setUp() throws Exception {
+		parallelism = BandScheduler.getParallelism();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		BandScheduler.setParallelism(Integer.MAX_VALUE);
+	}
+
+	public void testGrayscale() {
+		assertSerialEqualsParallel(new GrayscaleFilter());
+	}
+
+	public void testInvert() {
+		assertSerialEqualsParallel(new InvertFilter());
+	}
+
+	public void testPosterize() {
+		assertSerialEqualsParallel(new PosterizeFilter());
+	}
+
+	public void testSolarize() {
+		assertSerialEqualsParallel(new SolarizeFilter());
+	}
+
+	public void testColorAdjust() {
+		ColorAdjustFilter f = new ColorAdjustFilter();
+		f.setRed(0.3f);
+		f.setHue(0.2f);
+		f.setSaturation(-0.4f);
+		f.setContrast(1.3f);
+		f.setBrightness(0.9f);
+		assertSerialEqualsParallel(f);
+	}
+
+	public void testHSBAdjust() {
+		assertSerialEqualsParallel(new HSBAdjustFilter(0.3f, -0.2f, 0.1f));
+	}
+
+	public void testGaussian() {
+		assertSerialEqualsParallel(new GaussianFilter(5));
+	}
+
+	public void testRecursiveGaussian() {
+		assertSerialEqualsParallel(new GaussianFilter(GaussianFilter.RECURSIVE_MIN_RADIUS * 2));
+	}
+
+	public void testOil() {
+		OilFilter f = new OilFilter();
+		f.setRange(4);
+		assertSerialEqualsParallel(f);
+	}
+
+	public void testConvolve() {
+		float[] matrix = new float[5*5];
+		for(int i = 0; i < matrix.length; i++) matrix[i] = (i % 3 - 0.8f) / 5;
+		assertSerialEqualsParallel(new ConvolveFilter(5, 5, matrix));
+	}
+
+	public void testLensBlur() {
+		LensBlurFilter f = new LensBlurFilter();
+		f.setRadius(20);
+		assertSerialEqualsParallel(f);
+	}
+
+	/**
+	 * Raster of an opaque image has no alpha; blur of it must stay opaque 
+	 * and keep a flat color as it is.
+	 */
+	public void testLensBlurOpaque() {
+		BufferedImage src = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+		for(int y = 0; y < src.getHeight(); y++)
+			for(int x = 0; x < src.getWidth(); x++)
+				src.setRGB(x, y, 0x336699);
+		LensBlurFilter f = new LensBlurFilter();
+		f.setRadius(5);
+		BufferedImage dst = f.filter(src, null);
+		assertEquals(BufferedImage.TYPE_INT_RGB, dst.getType());
+		for(int y = 0; y < dst.getHeight(); y++) {
+			for(int x = 0; x < dst.getWidth(); x++) {
+				int rgb = dst.getRGB(x, y);
+				assertEquals(0xff, rgb >>> 24);
+				assertEquals(0x33, (rgb >> 16) & 0xff, 1);
+				assertEquals(0x66, (rgb >> 8) & 0xff, 1);
+				assertEquals(0x99, rgb & 0xff, 1);
+			}
+		}
+	}
+
+	public void testBoxBlur() {
+		BoxBlurFilter f = new BoxBlurFilter(4.5f, 3.2f, 3);
+		assertSerialEqualsParallel(f);
+	}
+
+	public void testTwirl() {
+		TwirlFilter f = new TwirlFilter();
+		f.setAngle(2);
+		f.setRadius(200);
+		assertSerialEqualsParallel(f);
+	}
+
+	public void testLanczosRotate() {
+		RotateFilter f = new RotateFilter(0.3f, false);
+		f.setInterpolation(RotateFilter.LANCZOS3);
+		assertSerialEqualsParallel(f);
+		f.setAngle(1.2f);
+		assertSerialEqualsParallel(f);
+	}
+
+	/**
+	 * Transparent pixels are black; scaling a white oval down must not blend 
+	 * that black into its edge.
+	 */
+	public void testLanczosScaleTransparentEdge() {
+		BufferedImage src = new BufferedImage(400, 400, BufferedImage.TYPE_INT_ARGB);
+		for(int y = 0; y < 400; y++) {
+			for(int x = 0; x < 400; x++) {
+				double dx = (x - 199.5) / 200, dy = (y - 199.5) / 200;
+				if(dx * dx + dy * dy <= 1) src.setRGB(x, y, 0xffffffff);
+			}
+		}
+		ScaleFilter f = new ScaleFilter(150, 150);
+		f.setInterpolation(TransformFilter.LANCZOS3);
+		BufferedImage dst = f.filter(src, null);
+		int edge = 0;
+		for(int y = 0; y < 150; y++) {
+			for(int x = 0; x < 150; x++) {
+				int argb = dst.getRGB(x, y);
+				if(argb >>> 24 == 0) continue;
+				if(argb >>> 24 < 255) edge++;
+				for(int shift = 0; shift < 24; shift += 8)
+					assertTrue("pixel " + x + "," + y, ((argb >> shift) & 0xff) >= 250);
+			}
+		}
+		assertTrue(edge > 0);
+	}
+
+	public void testCachedInverseMap() {
+		SphereFilter f = new SphereFilter();
+		f.setCacheInverseMap(true);
+		assertSerialEqualsParallel(f);
+		assertTrue(InverseMapCache.getHitRate() > 0);
+	}
+
+	/**
+	 * Maps too big for the cache are neither kept nor needed for output.
+	 */
+	public void testInverseMapOverCapacity() {
+		long capacity = InverseMapCache.getCapacity();
+		InverseMapCache.clear();
+		InverseMapCache.setCapacity(WIDTH * HEIGHT);
+		try {
+			SphereFilter f = new SphereFilter();
+			f.setCacheInverseMap(true);
+			assertSerialEqualsParallel(f);
+			assertEquals(0, InverseMapCache.getRetainedBytes());
+		}
+		finally {
+			InverseMapCache.setCapacity(capacity);
+		}
+	}
+
+	public void testProgressIsOrdered() {
+		ProgressRecorder recorder = new ProgressRecorder();
+		GrayscaleFilter f = new GrayscaleFilter();
+		f.setFilterListener(recorder);
+		f.filter(createImage(BufferedImage.TYPE_INT_ARGB), null);
+		assertTrue(recorder.updates > 0);
+		assertTrue(recorder.last <= 100);
+		assertTrue(recorder.done);
+	}
+
+	/**
+	 * Large kernels report progress of frequency domain convolution, which
+	 * the filter keeps for repeated runs.
+	 */
+	public void testFFTConvolveProgress() {
+		float[] matrix = new float[ConvolveFilter.FFT_MIN_TAPS];
+		Arrays.fill(matrix, 1f / matrix.length);
+		int size = (int)Math.sqrt(matrix.length);
+		ProgressRecorder recorder = new ProgressRecorder();
+		ConvolveFilter f = new ConvolveFilter(size, size, matrix);
+		f.setFilterListener(recorder);
+		BufferedImage src = createImage(BufferedImage.TYPE_INT_ARGB);
+		int[] first = f.filter(src, null).getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+		assertTrue(recorder.updates > 0);
+		assertTrue(recorder.last <= 100);
+		f.setFilterListener(null);
+		int[] second = f.filter(src, null).getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+		assertTrue(Arrays.equals(first, second));
+	}
+
+	public void testCancel() {
+		ProgressRecorder recorder = new ProgressRecorder();
+		recorder.cancelAfter = 1;
+		GrayscaleFilter f = new GrayscaleFilter();
+		f.setFilterListener(recorder);
+		try {
+			f.filter(createImage(BufferedImage.TYPE_INT_ARGB), null);
+			fail("filter not cancelled");
+		}
+		catch(FilterCancelledException e) {
+			assertEquals(1, recorder.updates);
+			assertFalse(recorder.done);
+		}
+	}
+
+	private void assertSerialEqualsParallel(AbstractBufferedImageOp filter) {
+		int[] types = { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB,
+				BufferedImage.TYPE_3BYTE_BGR };
+		for(int type : types) {
+			BufferedImage src = createImage(type);
+			BandScheduler.setParallelism(1);
+			BufferedImage serial = filter.filter(src, null);
+			BandScheduler.setParallelism(Math.max(2, parallelism));
+			BufferedImage parallel = filter.filter(src, null);
+			int[] expected = serial.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+			int[] actual = parallel.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+			for(int i = 0; i < expected.length; i++) {
+				if(expected[i] != actual[i]) {
+					fail(String.format("%s, type %d: pixel %d differs",
+							filter.getClass().getSimpleName(), type, i));
+				}
+			}
+		}
+	}
+
+	private BufferedImage createImage(int type) {
+		Random random = new Random(7);
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+		for(int y = 0; y < HEIGHT; y++)
+			for(int x = 0; x < WIDTH; x++)
+				image.setRGB(x, y, random.nextInt());
+		return image;
+	}
+
+	private static class ProgressRecorder implements FilterListener {
+
+		int updates = 0;
+		int last = -1;
+		int cancelAfter = Integer.MAX_VALUE;
+		boolean done = false;
+
+		@Override
+		public void filterInitialize() {
+		}
+
+		@Override
+		public void filterStart(int totalPixels) {
+		}
+
+		@Override
+		public void filterProgress(int percentComplete) {
+			assertTrue(percentComplete >= last);
+			last = percentComplete;
+			updates++;
+		}
+
+		@Override
+		public void filterDone() {
+			done = true;
+		}
+
+		@Override
+		public boolean isFilterCancelled() {
+			return updates >= cancelAfter;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package org.zimowski.bambi.test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Kernel;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.zimowski.bambi.jhlabs.image.BlurFilter;
+import org.zimowski.bambi.jhlabs.image.ConvolveFilter;
+import org.zimowski.bambi.jhlabs.image.GaussianFilter;
+import org.zimowski.bambi.jhlabs.image.GlowFilter;
+import org.zimowski.bambi.jhlabs.image.HighPassFilter;
+import org.zimowski.bambi.jhlabs.image.ImageMath;
+import org.zimowski.bambi.jhlabs.image.PlanarConvolution;
+import org.zimowski.bambi.jhlabs.image.PlanarImage;
+import org.zimowski.bambi.jhlabs.image.SharpenFilter;
+import org.zimowski.bambi.jhlabs.image.UnsharpFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies conversions of planar images, that planar filter chains match
+ * filtering packed pixels, and that integer convolution stays within a level
+ * of the floating point reference, which convolve filter uses by default.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class PlanarImageTest extends TestCase {
+
+	private static final int WIDTH = 97;
+
+	private static final int HEIGHT = 64;
+
+	public void testRoundTrip() {
+		int[] pixels = createPixels(0);
+		for(PlanarImage.Type type : PlanarImage.Type.values()) {
+			PlanarImage planar = PlanarImage.fromARGB(pixels, WIDTH, HEIGHT, true, type);
+			assertTrue(type.toString(), Arrays.equals(pixels, planar.toARGB(null)));
+		}
+	}
+
+	public void testChain() {
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, WIDTH, HEIGHT, createPixels(0xff000000), 0, WIDTH);
+		GaussianFilter blur = new GaussianFilter(3);
+		SharpenFilter sharpen = new SharpenFilter();
+
+		BufferedImage expected = sharpen.filter(blur.filter(image, null), null);
+		for(PlanarImage.Type type : PlanarImage.Type.values()) {
+			BufferedImage actual = PlanarImage.filter(image, null, type, blur, sharpen);
+			for(int y = 0; y < HEIGHT; y++)
+				for(int x = 0; x < WIDTH; x++)
+					assertEquals(type + " " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+		}
+	}
+
+	/**
+	 * Filters which combine the image with its blur do so on planes. Blur
+	 * may be a level off packed pixels, which these filters amplify by up
+	 * to 4 times amount, plus a level of truncation.
+	 */
+	public void testBlurCombiningFilters() {
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, WIDTH, HEIGHT, createPixels(0xff000000), 0, WIDTH);
+		GaussianFilter[] filters = { new HighPassFilter(), new UnsharpFilter(), new GlowFilter() };
+		int[] tolerances = { 1, 3, 3 };
+		for(int f = 0; f < filters.length; f++) {
+			BufferedImage expected = filters[f].filter(image, null);
+			for(PlanarImage.Type type : PlanarImage.Type.values()) {
+				BufferedImage actual = PlanarImage.filter(image, null, type, filters[f]);
+				for(int y = 0; y < HEIGHT; y++) {
+					for(int x = 0; x < WIDTH; x++) {
+						int e = expected.getRGB(x, y), a = actual.getRGB(x, y);
+						for(int shift = 0; shift < 32; shift += 8) {
+							int difference = ((e >> shift) & 0xff) - ((a >> shift) & 0xff);
+							assertTrue(filters[f] + " " + type + " " + x + "," + y,
+									Math.abs(difference) <= tolerances[f]);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fixed point weights may round a sum on the other side of a half than
+	 * floats do, so interior pixels are allowed 1 level off, alpha weighted
+	 * ones included. Unpremultiplying scales that level by 255 / alpha.
+	 */
+	public void testConvolutionMatchesFloat() {
+		Random random = new Random(3);
+		Kernel[] kernels = { new BlurFilter().getKernel(), null, null, null };
+		for(int k = 1; k < kernels.length; k++) {
+			int size = 2 * k + 3;
+			float[] matrix = new float[size * size];
+			float total = 0;
+			for(int i = 0; i < matrix.length; i++) total += matrix[i] = random.nextFloat() - 0.2f;
+			for(int i = 0; i < matrix.length; i++) matrix[i] /= total;
+			kernels[k] = new Kernel(size, size, matrix);
+		}
+		for(int mask : new int[] { 0, 0xff000000 }) {
+			int[] pixels = createPixels(mask);
+			for(Kernel kernel : kernels) {
+				int[] expected = new int[pixels.length];
+				int[] actual = new int[pixels.length];
+				ConvolveFilter.convolveHV(kernel, pixels, expected, WIDTH, HEIGHT, true, ConvolveFilter.CLAMP_EDGES);
+				new PlanarConvolution(kernel).filter(pixels, actual, WIDTH, HEIGHT, true, ConvolveFilter.CLAMP_EDGES, null);
+				int left = kernel.getWidth() / 2, top = kernel.getHeight() / 2;
+				for(int y = top; y < HEIGHT - top; y++) {
+					for(int x = left; x < WIDTH - left; x++) {
+						int i = y * WIDTH + x;
+						for(int shift = 0; shift < 32; shift += 8) {
+							int difference = ((expected[i] >> shift) & 0xff) - ((actual[i] >> shift) & 0xff);
+							assertTrue(kernel.getWidth() + "x" + kernel.getHeight() + " at " + x + "," + y, 
+									Math.abs(difference) <= 1);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Convolve filter keeps convolving in floating point unless fixed point
+	 * is asked for, so that filtered images, edges and translucent pixels
+	 * included, stay as they were. Fixed point color and alpha may each be
+	 * a level off, which unpremultiplying scales by 255 / alpha.
+	 */
+	public void testConvolveFilterUnpremultiplied() {
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, WIDTH, HEIGHT, createPixels(0), 0, WIDTH);
+		float[] matrix = new float[25];
+		Random random = new Random(9);
+		for(int i = 0; i < matrix.length; i++) matrix[i] = random.nextFloat() / 12.5f;
+		Kernel[] kernels = { new BlurFilter().getKernel(), new SharpenFilter().getKernel(), 
+				new Kernel(5, 5, matrix) };
+		for(Kernel kernel : kernels) {
+			int[] pixels = createPixels(0);
+			int[] expected = new int[pixels.length];
+			ImageMath.premultiply(pixels, 0, pixels.length);
+			ConvolveFilter.convolveHV(kernel, pixels, expected, WIDTH, HEIGHT, true, ConvolveFilter.CLAMP_EDGES);
+			ImageMath.unpremultiply(expected, 0, expected.length);
+
+			ConvolveFilter filter = new ConvolveFilter(kernel);
+			int[] actual = filter.filter(image, null).getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+			assertTrue(Arrays.equals(expected, actual));
+
+			filter.setFixedPoint(true);
+			actual = filter.filter(image, null).getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+			int left = kernel.getWidth() / 2, top = kernel.getHeight() / 2;
+			for(int y = top; y < HEIGHT - top; y++) {
+				for(int x = left; x < WIDTH - left; x++) {
+					int i = y * WIDTH + x;
+					int alpha = expected[i] >>> 24;
+					if(alpha == 0) continue;
+					for(int shift = 0; shift < 32; shift += 8) {
+						int difference = ((expected[i] >> shift) & 0xff) - ((actual[i] >> shift) & 0xff);
+						assertTrue(kernel.getWidth() + "x" + kernel.getHeight() + " at " + x + "," + y, 
+								Math.abs(difference) <= 1 + 2 * 255 / alpha);
+					}
+				}
+			}
+		}
+	}
+
+	private int[] createPixels(int mask) {
+		Random random = new Random(5);
+		int[] pixels = new int[WIDTH * HEIGHT];
+		for(int i = 0; i < pixels.length; i++) pixels[i] = random.nextInt() | mask;
+		return pixels;
+	}
+}
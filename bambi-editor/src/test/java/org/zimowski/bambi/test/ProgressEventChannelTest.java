@@ -0,0 +1,174 @@
+package org.zimowski.bambi.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+import org.zimowski.bambi.editor.filters.ImageFilterOps;
+import org.zimowski.bambi.editor.studio.eventbus.ProgressEventChannel;
+import org.zimowski.bambi.editor.studio.eventbus.events.ImageFilterMonitorEvent;
+
+import com.google.common.base.Ticker;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that progress events posted from a worker reach the EDT with 
+ * start and finalize phases in order, progress coalesced to the latest 
+ * value and throttled. Time is read off a ticker the test advances; the 
+ * EDT runs headless.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class ProgressEventChannelTest extends TestCase {
+
+	private static final long INTERVAL = 
+			TimeUnit.SECONDS.toNanos(1) / ProgressEventChannel.MAX_PROGRESS_RATE;
+
+	private static final int[] START = { ImageFilterMonitorEvent.PHASE_START, 0 };
+
+	private static final int[] FINALIZE = { ImageFilterMonitorEvent.PHASE_FINALIZE, 100 };
+
+	private final AtomicLong nanos = new AtomicLong(TimeUnit.SECONDS.toNanos(1));
+
+	private final Recorder recorder = new Recorder();
+
+	private ProgressEventChannel channel;
+
+	@Override
+	protected void setUp() throws Exception {
+		EventBus bus = new EventBus();
+		bus.register(recorder);
+		channel = new ProgressEventChannel(bus, new Ticker() {
+			@Override
+			public long read() {
+				return nanos.get();
+			}
+		});
+	}
+
+	public void testPhasesInOrderLatestProgress() throws Exception {
+		postOnEdt(START, progress(10), progress(20), progress(30));
+		assertEquals(Arrays.asList("start", "30"), recorder.getEvents());
+
+		// progress pending when a phase is posted is stale
+		postOnEdt(progress(60), FINALIZE, START);
+		assertEquals(Arrays.asList("start", "30", "finalize", "start"), recorder.getEvents());
+	}
+
+	public void testProgressThrottled() throws Exception {
+		postOnEdt(progress(10));
+		assertEquals(Arrays.asList("10"), recorder.getEvents());
+
+		// too soon after the last update; only the latest is delivered
+		// once the interval passes
+		recorder.expect(1);
+		postOnEdt(progress(20), progress(30));
+		assertEquals(Arrays.asList("10"), recorder.getEvents());
+		post(progress(40));
+		nanos.addAndGet(INTERVAL);
+		assertTrue(recorder.await());
+		waitForEdt();
+		assertEquals(Arrays.asList("10", "40"), recorder.getEvents());
+	}
+
+	public void testDrain() throws Exception {
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				post(FINALIZE);
+				post(progress(50));
+				channel.drain();
+			}
+		});
+		assertEquals(Arrays.asList("finalize"), recorder.getEvents());
+		waitForEdt();
+		assertEquals(Arrays.asList("finalize"), recorder.getEvents());
+	}
+
+	private static int[] progress(int pct) {
+		return new int[] { ImageFilterMonitorEvent.PHASE_PROGRESS, pct };
+	}
+
+	/**
+	 * @param event phase and percent complete
+	 */
+	private void post(int[] event) {
+		ImageFilterMonitorEvent monitor = new ImageFilterMonitorEvent(ImageFilterOps.Grayscale, event[0]);
+		monitor.setPctComplete(event[1]);
+		channel.post(monitor);
+		// channel keeps a snapshot, so the worker may reuse its event
+		monitor.setPctComplete(-1);
+	}
+
+	/**
+	 * Posts events in a single EDT task, so that delivery scheduled by the
+	 * first one runs after the last, as it does when a worker posts faster
+	 * than the EDT drains; then waits for delivery.
+	 */
+	private void postOnEdt(final int[]... events) throws Exception {
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				for(int[] event : events) post(event);
+			}
+		});
+		waitForEdt();
+	}
+
+	/**
+	 * Waits until EDT runs everything queued so far.
+	 */
+	private static void waitForEdt() throws Exception {
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+	}
+
+	/**
+	 * Records phases, and values of progress, as delivered.
+	 */
+	public static class Recorder {
+
+		private final List<String> events = new ArrayList<String>();
+
+		private CountDownLatch latch = new CountDownLatch(0);
+
+		@Subscribe
+		public synchronized void onMonitor(ImageFilterMonitorEvent event) {
+			// bus swallows exceptions of subscribers, so this is recorded
+			if(!SwingUtilities.isEventDispatchThread()) events.add("off EDT");
+			switch(event.getPhase()) {
+			case ImageFilterMonitorEvent.PHASE_START: events.add("start"); break;
+			case ImageFilterMonitorEvent.PHASE_FINALIZE: events.add("finalize"); break;
+			default: events.add(Integer.toString(event.getPctComplete()));
+			}
+			latch.countDown();
+		}
+
+		synchronized List<String> getEvents() {
+			return new ArrayList<String>(events);
+		}
+
+		synchronized void expect(int count) {
+			latch = new CountDownLatch(count);
+		}
+
+		boolean await() throws InterruptedException {
+			CountDownLatch current;
+			synchronized(this) {
+				current = latch;
+			}
+			return current.await(5, TimeUnit.SECONDS);
+		}
+	}
+}
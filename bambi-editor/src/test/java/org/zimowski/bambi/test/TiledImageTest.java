@@ -0,0 +1,99 @@
+package org.zimowski.bambi.test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.zimowski.bambi.editor.batch.FilterChain;
+import org.zimowski.bambi.editor.filters.TiledImage;
+import org.zimowski.bambi.editor.filters.TiledImageOp;
+import org.zimowski.bambi.jhlabs.image.GaussianFilter;
+
+import com.jhlabs.image.InvertFilter;
+
+import junit.framework.TestCase;
+
+/**
+ * Verifies that images filtered tile by tile are identical to images
+ * filtered whole.
+ *
+ * @author Adam Zimowski (mrazjava)
+ */
+public class TiledImageTest extends TestCase {
+
+	// spans several tiles with partial tiles on the right and bottom
+	private static final int WIDTH = 600;
+
+	private static final int HEIGHT = 300;
+
+	public void testRoundTrip() throws Exception {
+		BufferedImage image = createImage();
+		TiledImage tiled = TiledImage.fromImage(image);
+		try {
+			assertEquals(3, tiled.getTilesX());
+			assertEquals(2, tiled.getTilesY());
+			assertTrue(Arrays.equals(pixels(image), pixels(tiled.toBufferedImage(1))));
+		}
+		finally {
+			tiled.close();
+		}
+	}
+
+	public void testPointFilter() throws Exception {
+		InvertFilter filter = new InvertFilter();
+		assertTiledEqualsWhole(filter, new TiledImageOp(filter));
+	}
+
+	public void testNeighbourhoodFilter() throws Exception {
+		GaussianFilter filter = new GaussianFilter(7);
+		assertTiledEqualsWhole(filter, new TiledImageOp(filter, 7));
+	}
+
+	public void testFilterChain() throws Exception {
+		FilterChain chain = FilterChain.parse("Hue=0.2,Contrast=+0.3,Grayscale,Posterize");
+		assertTrue(chain.isTileable());
+		BufferedImage image = createImage();
+		TiledImage src = TiledImage.fromImage(image);
+		TiledImage dst = chain.apply(src);
+		try {
+			assertTrue(Arrays.equals(pixels(chain.apply(image)), pixels(dst.toBufferedImage(1))));
+		}
+		finally {
+			src.close();
+			dst.close();
+		}
+		assertFalse(FilterChain.parse("Grayscale,Scale=50").isTileable());
+		assertFalse(FilterChain.parse("Emboss").isTileable());
+	}
+
+	private void assertTiledEqualsWhole(
+			BufferedImageOp filter, TiledImageOp tiledOp) throws Exception {
+		BufferedImage image = createImage();
+		int[] expected = pixels(filter.filter(image, null));
+
+		TiledImage src = TiledImage.fromImage(image);
+		TiledImage dst = new TiledImage(WIDTH, HEIGHT);
+		try {
+			tiledOp.filter(src, dst);
+			assertTrue(Arrays.equals(expected, pixels(dst.toBufferedImage(1))));
+		}
+		finally {
+			src.close();
+			dst.close();
+		}
+	}
+
+	private static int[] pixels(BufferedImage image) {
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+
+	private static BufferedImage createImage() {
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		Random random = new Random(42);
+		for(int y = 0; y < HEIGHT; y++)
+			for(int x = 0; x < WIDTH; x++)
+				image.setRGB(x, y, 0xff000000 | random.nextInt(0x1000000));
+		return image;
+	}
+}